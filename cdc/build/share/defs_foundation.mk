@@ -384,7 +384,10 @@ CVM_SHAREOBJS_SPACE += \
 #
 
 CVM_TEST_CLASSES += \
-   foundation.TimerThreadTest
+   foundation.TimerThreadTest \
+   foundation.KeepAliveBench \
+   foundation.HttpPipelineBench \
+   foundation.ClassPathBench
 
 ifeq ($(CVM_SERIALIZATION), true)
 CVM_TEST_CLASSES += \
@@ -398,12 +401,16 @@ endif
 #
 CVM_TESTCLASSES_SRCDIRS += \
 	$(CVM_TOP)/test/share/foundation/java/net/URI \
-	$(CVM_TOP)/test/share/foundation/java/net/Inet6Address
+	$(CVM_TOP)/test/share/foundation/java/net/Inet6Address \
+	$(CVM_TOP)/test/share/foundation/sun/net/ResolverCache \
+	$(CVM_TOP)/test/share/foundation/sun/net/KeepAliveCache
 
 CVM_TEST_CLASSES  += \
 	URITest \
 	URItoURLTest \
-	IPv6Test 
+	IPv6Test \
+	ResolverCacheTest \
+	KeepAliveCacheTest
 
 #
 # The name of the HTML file that is generated with the names of all public
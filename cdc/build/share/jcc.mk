@@ -107,6 +107,20 @@ CVM_JCC_DEPEND	= $(CVM_JCC_CLASSPATH)/JavaCodeCompact.class
 #
 JCC_EXCLUDES +=
 
+#
+# Set JCC_PROFILE to something like "-profile <path_to_file>" to lay out
+# the methods, classes and strings listed in a warmup profile together.
+#
+JCC_PROFILE +=
+
+#
+# Set JCC_STRIP to something like "-stripUnreachable <path_to_file>" to
+# remove the classes and members that cannot be reached from the roots
+# listed in the file. The roots must include everything the VM and
+# native code use by name.
+#
+JCC_STRIP +=
+
 # 
 #  At this time, all natives would be JNI,
 #  and we are ROM only -- no impure constant pools allowed,
@@ -129,6 +143,8 @@ CVM_JCC_OPTIONS += \
 		  -headersDir JNI $(CVM_DERIVEDROOT)/jni \
 		  -headersDir CVMOffsets $(CVM_DERIVEDROOT)/offsets \
 		  $(JCC_EXCLUDES) \
+		  $(JCC_PROFILE) \
+		  $(JCC_STRIP) \
 		  $(CVM_PROFILE_JCC_OPTIONS) \
 	          $(CVM_GENERATE_OFFSETS)
 
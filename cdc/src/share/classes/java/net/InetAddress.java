@@ -27,15 +27,12 @@
 
 package java.net;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Random;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.security.AccessController;
 import java.io.ObjectStreamException;
 import sun.security.action.*;
-import sun.net.InetAddressCachePolicy;
+import sun.net.ResolverCache;
 import sun.misc.Service;
 import sun.net.spi.nameservice.*;
 
@@ -601,227 +598,22 @@ class InetAddress implements java.io.Serializable {
 
     /*
      * Cached addresses - our own litle nis, not!
+     * Created once the name service is known, see below.
      */
-    private static Cache addressCache =
-        new Cache(InetAddressCachePolicy.get());
-
-    private static Cache negativeCache =
-        new Cache(InetAddressCachePolicy.getNegative());
-
-    private static boolean addressCacheInit = false;
+    private static ResolverCache addressCache;
 
     static InetAddress[]    unknown_array; // put THIS in cache
 
     static InetAddressImpl  impl;
 
-    private static HashMap          lookupTable = new HashMap();
-
-    /**
-     * Represents a cache entry 
-     */
-    static final class CacheEntry {
-
-        CacheEntry(Object address, long expiration) {
-            this.address = address;
-            this.expiration = expiration;
-        }
-
-        Object address;
-        long expiration;
-    }
-
-    /**
-     * A cache that manages entries based on a policy specified
-     * at creation time.
-     */
-    static final class Cache {
-	private int policy;
-	private LinkedHashMap cache; 
-
-	/**
-	 * Create cache with specific policy 
-	 */
-	public Cache(int policy) {
-	    this.policy = policy;
-	    cache = new LinkedHashMap();
-	}
-
-	/**
-	 * Add an entry to the cache. If there's already an
-	 * entry then for this host then the entry will be 
-	 * replaced.
-	 */
-	public Cache put(String host, Object address) {
-	    if (policy == InetAddressCachePolicy.NEVER) {
-                return this;
-	    }
-
-	    // purge any expired entries
-
-	    if (policy != InetAddressCachePolicy.FOREVER) {
-
-		// As we iterate in insertion order we can
-		// terminate when a non-expired entry is found.		
-                LinkedList expired = new LinkedList();
-                Iterator i = cache.keySet().iterator();
-		long now = System.currentTimeMillis();
-                while (i.hasNext()) {
-                    String key = (String)i.next();
-                    CacheEntry entry = (CacheEntry)cache.get(key);
-
-                    if (entry.expiration >= 0 && entry.expiration < now) {
-                        expired.add(key);
-                    } else {
-                        break;
-                    }
-                }
-
-                i = expired.iterator();
-                while (i.hasNext()) {
-                    cache.remove(i.next());
-		}
-            }
-
-	    // create new entry and add it to the cache
-	    // -- as a HashMap replaces existing entries we
-	    //    don't need to explicitly check if there is 
-	    //    already an entry for this host.
-	    long expiration;
-	    if (policy == InetAddressCachePolicy.FOREVER) {
-		expiration = -1;
-	    } else {
-		expiration = System.currentTimeMillis() + (policy * 1000);
-	    }
-	    CacheEntry entry = new CacheEntry(address, expiration);
-	    cache.put(host, entry);
-	    return this;
-	}
-
-	/**
-	 * Query the cache for the specific host. If found then
-	 * return its CacheEntry, or null if not found.
-	 */
-	public CacheEntry get(String host) {
-	    if (policy == InetAddressCachePolicy.NEVER) {
-		return null;
-	    }
-	    CacheEntry entry = (CacheEntry)cache.get(host);
-
-	    // check if entry has expired
-	    if (entry != null && policy != InetAddressCachePolicy.FOREVER) {
-		if (entry.expiration >= 0 && 
-		    entry.expiration < System.currentTimeMillis()) {
-		    cache.remove(host);
-		    entry = null;
-		}
-	    }
-
-	    return entry;
-	}
-
-	boolean containsDomainMatch(String domain, InetAddress ia) {
-	    Iterator i = cache.keySet().iterator();
-	    long now = System.currentTimeMillis();
-	    while (i.hasNext()) {
-		String key = (String)i.next();
-		CacheEntry entry = (CacheEntry)cache.get(key);
-
-		if (entry.expiration >= 0 && entry.expiration < now) {
-		    // expired? ignore.
-		    continue;
-		}
-
-		InetAddress[] addrs = (InetAddress[])entry.address;
-		if (addrs.length == 1) {
-		    // Optimize for common case
-		    if (ia.equals(addrs[0]) &&
-			SocketPermission.checkDomain(key, domain))
-		    {
-			return true;
-		    }
-		} else {
-		    if (SocketPermission.checkDomain(key, domain)) {
-			for (int j = 0; j < addrs.length; ++j) {
-			    if (ia.equals(addrs[j])) {
-				return true;
-			    }
-			}
-		    }
-		}
-	    }
-	    return false;
-	}
-
-    }
-
-    /*
-     * Initialize cache and insert anyLocalAddress into the
-     * unknown array with no expiry.
-     */
-    private static void cacheInitIfNeeded() {
-	// Uncomment this line if assertions are always
-	//    turned on for libraries
-        //assert Thread.holdsLock(addressCache);
-        if (addressCacheInit) {
-            return;
-        }
-        unknown_array = new InetAddress[1];
-        unknown_array[0] = impl.anyLocalAddress();
-
-	addressCache.put(impl.anyLocalAddress().getHostName(), 
-	                 unknown_array);
-
-        addressCacheInit = true;
-    }
-
-    /*
-     * Cache the given hostname and address.
-     */
-    private static void cacheAddress(String hostname, Object address,
-				     boolean success) {
-        hostname = hostname.toLowerCase();
-	synchronized (addressCache) {
-	    cacheInitIfNeeded();
-	    if (success) {
-		addressCache.put(hostname, address);
-	    } else {
-		negativeCache.put(hostname, address);
-	    }
-	}
-    }
-
-    /*
-     * Lookup hostname in cache (positive & negative cache). If
-     * found return address, null if not found.
-     */
-    private static Object getCachedAddress(String hostname) {
-        hostname = hostname.toLowerCase();
-
-	// search both positive & negative caches 
-
-	synchronized (addressCache) {
-	    CacheEntry entry;
-
-	    cacheInitIfNeeded();
-
-	    entry = (CacheEntry)addressCache.get(hostname);
-	    if (entry == null) {
-		entry = (CacheEntry)negativeCache.get(hostname);
-	    }
-
-	    if (entry != null) {
-	        return entry.address;
-	    }
- 	}
-
-	// not found
-	return null;
-    }
-
     static boolean containsDomainMatch(String domain, InetAddress i) {
-	synchronized (addressCache) {
-	    return addressCache.containsDomainMatch(domain, i);
+	String[] hosts = addressCache.getHostsFor(i);
+	for (int j = 0; j < hosts.length; j++) {
+	    if (SocketPermission.checkDomain(hosts[j], domain)) {
+		return true;
+	    }
 	}
+	return false;
     }
 
     static {
@@ -884,6 +676,13 @@ class InetAddress implements java.io.Serializable {
 		}
 
 	    }
+
+	addressCache = new ResolverCache(nameService);
+	/* the name of anyLocalAddress never resolves */
+	unknown_array = new InetAddress[1];
+	unknown_array[0] = impl.anyLocalAddress();
+	addressCache.putPermanent(impl.anyLocalAddress().getHostName(), null);
+	ResolverCache.setDefault(addressCache);
     }
     
     /**
@@ -1062,9 +861,6 @@ class InetAddress implements java.io.Serializable {
     static InetAddress[] getAllByName0 (String host, boolean check)
 	throws UnknownHostException  {
 	/* If it gets here it is presumed to be a hostname */
-	/* Cache.get can return: null, unknownAddress, or InetAddress[] */
-        Object obj = null;
-	Object objcopy = null;
 
 	/* make sure the connection to the host is allowed, before we
 	 * give out a hostname
@@ -1076,139 +872,19 @@ class InetAddress implements java.io.Serializable {
 	    }
 	}
 
-	obj = getCachedAddress(host);
-
-	/* If no entry in cache, then do the host lookup */
-	if (obj == null) {
-	    try {
-	        obj = getAddressFromNameService(host);
-	    } catch (UnknownHostException uhe) {
-		throw new UnknownHostException(host + ": " + uhe.getMessage());
+	InetAddress[] addrs;
+	try {
+	    addrs = addressCache.lookup(host);
+	} catch (UnknownHostException uhe) {
+	    String msg = uhe.getMessage();
+	    if (msg == null || msg.equals(host)) {
+		throw new UnknownHostException(host);
 	    }
+	    throw new UnknownHostException(host + ": " + msg);
 	}
 
-	if (obj == unknown_array) 
-	    throw new UnknownHostException(host);
-
 	/* Make a copy of the InetAddress array */
-	objcopy = ((InetAddress [])obj).clone();
-
-	return (InetAddress [])objcopy;
-    }
-
-    private static Object getAddressFromNameService(String host) 
-	throws UnknownHostException 
-    {
-	Object obj = null;
-	boolean success = false;
-
-	// Check whether the host is in the lookupTable.
-	// 1) If the host isn't in the lookupTable when
-	//    checkLookupTable() is called, checkLookupTable()
-	//    would add the host in the lookupTable and
-	//    return null. So we will do the lookup.
-	// 2) If the host is in the lookupTable when
-	//    checkLookupTable() is called, the current thread
-	//    would be blocked until the host is removed
-	//    from the lookupTable. Then this thread
-	//    should try to look up the addressCache.
-	//     i) if it found the address in the
-	//        addressCache, checkLookupTable()  would
-	//        return the address.
-	//     ii) if it didn't find the address in the
-	//         addressCache for any reason,
-	//         it should add the host in the
-	//         lookupTable and return null so the
-	//         following code would do  a lookup itself.
-	if ((obj = checkLookupTable(host)) == null) {
-	    // This is the first thread which looks up the address 
-	    // this host or the cache entry for this host has been
-	    // expired so this thread should do the lookup.
-	    try {
-		/*
-		 * Do not put the call to lookup() inside the
-		 * constructor.  if you do you will still be
-		 * allocating space when the lookup fails.
-		 */
-		byte[][] byte_array;
-		byte_array = nameService.lookupAllHostAddr(host);
-		InetAddress[] addr_array =
-		    new InetAddress[byte_array.length];
-
-		for (int i = 0; i < byte_array.length; i++) {
-		    byte addr[] = byte_array[i];
-		    if (addr.length == Inet4Address.INADDRSZ) {
-			addr_array[i] = new Inet4Address(host, addr);
-		    } else {
-			addr_array[i] = new Inet6Address(host, addr);
-		    }
-		}
-		obj = addr_array;
-		success = true;
-	    } catch (UnknownHostException uhe) {
-		obj  = unknown_array; 
-		success = false;
-		throw uhe;
-	    } finally {
-		try {
-		    // Cache the address.
-		    cacheAddress(host, obj, success);
-		} finally {
-		    // Delete the host from the lookupTable, and
-		    // notify all threads waiting for the monitor
-		    // for lookupTable.
-		    updateLookupTable(host);
-		}
-	    }
-	}
-
-	return obj;
-    }
-	
-		
-    private static Object checkLookupTable(String host) {
-	// make sure obj  is null.
-	Object obj = null;
-	
-	synchronized (lookupTable) {
-	    // If the host isn't in the lookupTable, add it in the
-	    // lookuptable and return null. The caller should do
-	    // the lookup.
-	    if (lookupTable.containsKey(host) == false) {
-		lookupTable.put(host, null);
-		return obj;
-	    }
-
-	    // If the host is in the lookupTable, it means that another
-	    // thread is trying to look up the address of this host.
-	    // This thread should wait.
-	    while (lookupTable.containsKey(host)) {
-		try {
-		    lookupTable.wait();
-		} catch (InterruptedException e) {
-		}
-	    }
-	}
-
-	// The other thread has finished looking up the address of
-	// the host. This thread should retry to get the address
-	// from the addressCache. If it doesn't get the address from
-	// the cache,  it will try to look up the address itself.
-	obj = getCachedAddress(host);
-	if (obj == null) {
-	    synchronized (lookupTable) {
-		lookupTable.put(host, null);
-	    }
-	}
-	 
-	return obj;
-    }
-
-    private static void updateLookupTable(String host) {
-	synchronized (lookupTable) {
-	    lookupTable.remove(host);
-	    lookupTable.notifyAll();
-	}
+	return (InetAddress [])addrs.clone();
     }
 
     /**
@@ -1263,8 +939,7 @@ class InetAddress implements java.io.Serializable {
 
 	    InetAddress[] localAddrs;
 	    try {
-		localAddrs =
-		    (InetAddress[]) InetAddress.getAddressFromNameService(local);
+		localAddrs = addressCache.lookupUncached(local);
 	    } catch (UnknownHostException uhe) {
 		throw new UnknownHostException(local + ": " + uhe.getMessage());
 	    }
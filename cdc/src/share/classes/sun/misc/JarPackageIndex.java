@@ -0,0 +1,282 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package sun.misc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import sun.security.action.GetPropertyAction;
+
+/**
+ * This class maintains the set of packages contained in each JAR file
+ * on a class path. URLClassPath uses it to look up a resource only in
+ * the JAR files that can contain it, instead of probing every JAR file
+ * on the path.
+ *
+ * Computing the package set of a JAR file means enumerating all of its
+ * entries. If the <code>sun.misc.classpath.indexFile</code> property
+ * names an index file, the package sets of local JAR files are
+ * persisted there and reused by later runs for as long as the
+ * modification time and size of the JAR file are unchanged. The index
+ * file is only a cache: it may be deleted at any time and is rewritten
+ * as needed. Without the property the package sets are kept for the
+ * current run only.
+ *
+ * Resources at the root of a JAR file belong to the package "".
+ */
+class JarPackageIndex {
+
+    /* Header line of the index file */
+    private static final String VERSION = "ClassPathIndex-Version: 1.0";
+
+    /* Stands for the root package "" in the index file */
+    private static final String ROOT = "/";
+
+    /* Upper bound on the number of JAR files kept in the index file */
+    private static final int MAX_ENTRIES = 256;
+
+    /* JAR file path -> Entry */
+    private static HashMap entries = null;
+
+    /* Whether entries differ from the index file */
+    private static boolean dirty = false;
+
+    private static File indexFile = null;
+
+    private static class Entry {
+	final long lastModified;
+	final long length;
+	final String[] packages;
+	boolean used;
+
+	Entry(long lastModified, long length, String[] packages) {
+	    this.lastModified = lastModified;
+	    this.length = length;
+	    this.packages = packages;
+	}
+    }
+
+    private JarPackageIndex() {
+    }
+
+    /**
+     * Returns the package of the specified resource name, i.e. the
+     * part before the last '/', or "" for a resource at the root.
+     */
+    static String packageOf(String name) {
+	int pos = name.lastIndexOf('/');
+	return (pos == -1) ? "" : name.substring(0, pos);
+    }
+
+    /**
+     * Returns the names of all packages contained in the specified JAR
+     * file. If <code>path</code> is not null it is the local file the
+     * JAR file was opened from, and the result may be taken from, and
+     * is added to, the persisted index.
+     */
+    static String[] getPackages(JarFile jar, final String path) {
+	if (path == null) {
+	    return computePackages(jar);
+	}
+	final File file = new File(path);
+	long[] stat = (long[])AccessController.doPrivileged(
+	    new PrivilegedAction() {
+		public Object run() {
+		    return new long[] {file.lastModified(), file.length()};
+		}
+	    });
+	synchronized (JarPackageIndex.class) {
+	    load();
+	    Entry e = (Entry)entries.get(path);
+	    if (e != null && e.lastModified == stat[0] &&
+		e.length == stat[1]) {
+		e.used = true;
+		return e.packages;
+	    }
+	}
+	String[] packages = computePackages(jar);
+	synchronized (JarPackageIndex.class) {
+	    Entry e = new Entry(stat[0], stat[1], packages);
+	    e.used = true;
+	    entries.put(path, e);
+	    dirty = true;
+	}
+	return packages;
+    }
+
+    private static String[] computePackages(JarFile jar) {
+	HashSet packages = new HashSet();
+	Enumeration e = jar.entries();
+	while (e.hasMoreElements()) {
+	    String name = ((ZipEntry)e.nextElement()).getName();
+	    packages.add(packageOf(name));
+	    // ZipFile.getEntry("a/b") also finds the directory entry "a/b/"
+	    if (name.endsWith("/")) {
+		packages.add(packageOf(name.substring(0, name.length() - 1)));
+	    }
+	}
+	return (String[])packages.toArray(new String[packages.size()]);
+    }
+
+    /*
+     * Reads the index file, once. No index file, or a missing or
+     * malformed one, simply yields an empty index.
+     */
+    private static void load() {
+	if (entries != null) {
+	    return;
+	}
+	entries = new HashMap();
+	String name = (String)AccessController.doPrivileged(
+	    new GetPropertyAction("sun.misc.classpath.indexFile"));
+	if (name == null) {
+	    return;
+	}
+	indexFile = new File(name);
+	AccessController.doPrivileged(new PrivilegedAction() {
+	    public Object run() {
+		try {
+		    read();
+		} catch (IOException e) {
+		    entries.clear();
+		} catch (RuntimeException e) {
+		    // malformed index file
+		    entries.clear();
+		}
+		return null;
+	    }
+	});
+    }
+
+    private static void read() throws IOException {
+	if (!indexFile.exists()) {
+	    return;
+	}
+	BufferedReader in = new BufferedReader(new InputStreamReader(
+	    new FileInputStream(indexFile), "UTF8"));
+	try {
+	    if (!VERSION.equals(in.readLine())) {
+		return;
+	    }
+	    String line;
+	    while ((line = in.readLine()) != null) {
+		if (line.length() == 0) {
+		    continue;
+		}
+		String path = line;
+		String stat = in.readLine();
+		int sp = stat.indexOf(' ');
+		long lastModified = Long.parseLong(stat.substring(0, sp));
+		long length = Long.parseLong(stat.substring(sp + 1));
+		ArrayList packages = new ArrayList();
+		while ((line = in.readLine()) != null && line.length() > 0) {
+		    packages.add(line.equals(ROOT) ? "" : line);
+		}
+		entries.put(path, new Entry(lastModified, length,
+		    (String[])packages.toArray(new String[packages.size()])));
+	    }
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Writes the index file if any JAR file was indexed since it was
+     * last read or written. Failures are silently ignored.
+     */
+    static synchronized void save() {
+	if (!dirty || indexFile == null) {
+	    return;
+	}
+	dirty = false;
+	// Keep the index file bounded, preferring the entries used by
+	// this VM.
+	if (entries.size() > MAX_ENTRIES) {
+	    Iterator i = entries.values().iterator();
+	    while (i.hasNext() && entries.size() > MAX_ENTRIES) {
+		if (!((Entry)i.next()).used) {
+		    i.remove();
+		}
+	    }
+	}
+	AccessController.doPrivileged(new PrivilegedAction() {
+	    public Object run() {
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		try {
+		    write(tmp);
+		    // renameTo() does not replace an existing file everywhere
+		    indexFile.delete();
+		    tmp.renameTo(indexFile);
+		} catch (IOException e) {
+		    tmp.delete();
+		}
+		return null;
+	    }
+	});
+    }
+
+    private static void write(File file) throws IOException {
+	BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+	    new FileOutputStream(file), "UTF8"));
+	try {
+	    out.write(VERSION);
+	    out.newLine();
+	    Iterator i = entries.keySet().iterator();
+	    while (i.hasNext()) {
+		String path = (String)i.next();
+		Entry e = (Entry)entries.get(path);
+		out.newLine();
+		out.write(path);
+		out.newLine();
+		out.write(e.lastModified + " " + e.length);
+		out.newLine();
+		for (int j = 0; j < e.packages.length; j++) {
+		    String pkg = e.packages[j];
+		    out.write(pkg.length() == 0 ? ROOT : pkg);
+		    out.newLine();
+		}
+	    }
+	} finally {
+	    out.close();
+	}
+    }
+}
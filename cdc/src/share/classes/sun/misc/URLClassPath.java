@@ -35,6 +35,7 @@ import java.util.NoSuchElementException;
 import java.util.Stack;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.StringTokenizer;
 import java.util.ArrayList;
 import java.util.jar.JarFile;
@@ -72,9 +73,16 @@ public class URLClassPath {
     final static String USER_AGENT_JAVA_VERSION = "UA-Java-Version";
     final static String JAVA_VERSION;
 
+    /* Whether lookups go through a LookupIndex */
+    private final static boolean INDEX_ENABLED;
+
     static {
 	JAVA_VERSION = (String) java.security.AccessController.doPrivileged(
            new sun.security.action.GetPropertyAction("java.version"));
+	String s = (String) java.security.AccessController.doPrivileged(
+	   new sun.security.action.GetPropertyAction(
+	       "sun.misc.classpath.index", "true"));
+	INDEX_ENABLED = s.equalsIgnoreCase("true");
     }
 
     /* The original search path of URLs. */
@@ -92,6 +100,9 @@ public class URLClassPath {
     /* The jar protocol handler to use when creating new URLs */
     private URLStreamHandler jarHandler;
 
+    /* Package index over all of the Loaders, built on first lookup */
+    private LookupIndex lookupIndex;
+
     /**
      * Creates a new URLClassPath for the given URLs. The URLs will be
      * searched in the order specified for classes and resources. A URL
@@ -125,6 +136,11 @@ public class URLClassPath {
 	    urls.add(0, url);
 	    path.add(url);
 	}
+	// The search path has grown, so the index has to be rebuilt.
+	// (Not while holding urls: getLoader(int) locks this, then urls.)
+	synchronized (this) {
+	    lookupIndex = null;
+	}
     }
 
     /**
@@ -146,6 +162,10 @@ public class URLClassPath {
      * if the resource could not be found.
      */
     public URL findResource(String name, boolean check) {
+	LookupIndex index = getLookupIndex();
+	if (index != null) {
+	    return index.findResource(name, check);
+	}
 	Loader loader;
         for (int i = 0; (loader = getLoader(i)) != null; i++) {
             URL url = loader.findResource(name, check);
@@ -165,6 +185,10 @@ public class URLClassPath {
      * @return the Resource, or null if not found
      */
     public Resource getResource(String name, boolean check) {
+	LookupIndex index = getLookupIndex();
+	if (index != null) {
+	    return index.getResource(name, check);
+	}
 	Loader loader;
 	for (int i = 0; (loader = getLoader(i)) != null; i++) {
 	    Resource res = loader.getResource(name, check);
@@ -314,6 +338,24 @@ public class URLClassPath {
 	return (Loader)loaders.get(index);
     }
 
+    /*
+     * Returns the LookupIndex over the fully expanded search path, or
+     * null if indexing is disabled (-Dsun.misc.classpath.index=false).
+     * Building the index opens all of the URLs on the search path.
+     */
+    private synchronized LookupIndex getLookupIndex() {
+	if (lookupIndex == null && INDEX_ENABLED) {
+	    int n = 0;
+	    while (getLoader(n) != null) {
+		n++;
+	    }
+	    lookupIndex =
+		new LookupIndex((Loader[])loaders.toArray(new Loader[n]));
+	    JarPackageIndex.save();
+	}
+	return lookupIndex;
+    }
+
     /*
      * Returns the Loader for the specified base URL.
      */
@@ -431,6 +473,134 @@ public class URLClassPath {
 	}
     }
 
+    /*
+     * Inner class used to look up resources only in the Loaders that
+     * can contain them. Each JAR file without a JarIndex of its own is
+     * indexed by package; any other Loader (directories, remote URLs,
+     * JAR files with an INDEX.LIST) is always searched. When all of
+     * the Loaders are indexed the contents of the search path cannot
+     * change, and resources that were not found are remembered too.
+     */
+    private static class LookupIndex {
+	/* Upper bound on the number of remembered misses */
+	private static final int MAX_MISSES = 1024;
+
+	private final Loader[] loaders;
+
+	/* Package name -> int[] of candidate Loader positions, in order */
+	private final HashMap packages = new HashMap();
+
+	/* Positions of the Loaders that are not indexed */
+	private final int[] unindexed;
+
+	/* Names of resources known not to be on the search path */
+	private final HashSet misses;
+
+	LookupIndex(Loader[] loaders) {
+	    this.loaders = loaders;
+	    HashMap found = new HashMap();
+	    int[] others = new int[loaders.length];
+	    int numOthers = 0;
+	    for (int i = 0; i < loaders.length; i++) {
+		String[] pkgs = null;
+		if (loaders[i] instanceof JarLoader) {
+		    pkgs = ((JarLoader)loaders[i]).getPackages();
+		}
+		if (pkgs == null) {
+		    others[numOthers++] = i;
+		    continue;
+		}
+		for (int j = 0; j < pkgs.length; j++) {
+		    ArrayList l = (ArrayList)found.get(pkgs[j]);
+		    if (l == null) {
+			l = new ArrayList(2);
+			found.put(pkgs[j], l);
+		    }
+		    l.add(new Integer(i));
+		}
+	    }
+	    unindexed = new int[numOthers];
+	    System.arraycopy(others, 0, unindexed, 0, numOthers);
+	    misses = (numOthers == 0) ? new HashSet() : null;
+
+	    // Merge the unindexed Loaders into each package's list,
+	    // keeping the search path order.
+	    Iterator i = found.keySet().iterator();
+	    while (i.hasNext()) {
+		String pkg = (String)i.next();
+		ArrayList l = (ArrayList)found.get(pkg);
+		int[] merged = new int[l.size() + numOthers];
+		int a = 0, b = 0, k = 0;
+		while (a < l.size() || b < numOthers) {
+		    if (b == numOthers || (a < l.size() &&
+			((Integer)l.get(a)).intValue() < unindexed[b])) {
+			merged[k++] = ((Integer)l.get(a++)).intValue();
+		    } else {
+			merged[k++] = unindexed[b++];
+		    }
+		}
+		packages.put(pkg, merged);
+	    }
+	}
+
+	private int[] candidates(String name) {
+	    int[] c = (int[])packages.get(JarPackageIndex.packageOf(name));
+	    return (c != null) ? c : unindexed;
+	}
+
+	private boolean isMiss(String name) {
+	    if (misses != null) {
+		synchronized (misses) {
+		    return misses.contains(name);
+		}
+	    }
+	    return false;
+	}
+
+	private void addMiss(String name, boolean check) {
+	    // A failed security check does not mean the resource is
+	    // not there.
+	    if (misses != null && !check) {
+		synchronized (misses) {
+		    if (misses.size() >= MAX_MISSES) {
+			misses.clear();
+		    }
+		    misses.add(name);
+		}
+	    }
+	}
+
+	Resource getResource(String name, boolean check) {
+	    if (name == null || isMiss(name)) {
+		return null;
+	    }
+	    int[] c = candidates(name);
+	    for (int i = 0; i < c.length; i++) {
+		Resource res = loaders[c[i]].getResource(name, check);
+		if (res != null) {
+		    return res;
+		}
+	    }
+	    addMiss(name, check);
+	    return null;
+	}
+
+	URL findResource(String name, boolean check) {
+	    if (name == null || isMiss(name)) {
+		return null;
+	    }
+	    int[] c = candidates(name);
+	    for (int i = 0; i < c.length; i++) {
+		URL url = loaders[c[i]].findResource(name, check);
+		if (url != null) {
+		    return url;
+		}
+	    }
+	    addMiss(name, check);
+	    return null;
+	}
+    }
+
     /**
      * Inner class used to represent a loader of resources and classes
      * from a base URL.
@@ -528,6 +698,7 @@ public class URLClassPath {
     private static class JarLoader extends Loader {
 	private JarFile jar;
 	private URL csu;
+	private String localPath;
         private JarIndex index;
         private URLStreamHandler handler;
         private HashMap lmap;
@@ -573,6 +744,7 @@ public class URLClassPath {
 		if (!p.exists()) {
 		    throw new FileNotFoundException(p.getPath());
 		}
+		localPath = p.getPath();
 		return new JarFile (p.getPath());
 	    }
 	    URLConnection uc = getBaseURL().openConnection();
@@ -586,6 +758,18 @@ public class URLClassPath {
         JarIndex getIndex() {
             return index;
         }
+
+	/*
+	 * Returns the packages in this JAR file, or null if lookups must
+	 * not be restricted by package because the JAR file has an index
+	 * that may refer to other JAR files.
+	 */
+	String[] getPackages() {
+	    if (index != null) {
+		return null;
+	    }
+	    return JarPackageIndex.getPackages(jar, localPath);
+	}
         
 	/* 
 	 * Creates the resource and if the check flag is set to true, checks if
@@ -39,6 +39,13 @@ import sun.misc.CVM;
 //
 // Each list is in its own file
 //
+// A warmup profile combines both lists in a single versioned file.
+// It can be recorded from a representative run (-recordProfile, or
+// -Xwarmup:record=<file> on the cvm command line, which writes the
+// profile at VM exit) and replayed at a later launch (-replayProfile,
+// or -Xwarmup:replay=<file>, which replays it on a background thread
+// while the application starts up).
+//
 public class Warmup
 {
     private static String classNamesFileString = null;
@@ -51,6 +58,25 @@ public class Warmup
         System.getProperty("sun.midp.home.path", "midp/midp_fb") + "/classes.zip";
     private static File midpPath[] = null;
 
+    //
+    // Warmup profile format. The first token identifies the format
+    // version; the CLASSES and METHODS markers start the lists of
+    // classes to load and methods to compile respectively. Each list
+    // may contain CLASSLOADER= directives, as in the plain lists.
+    //
+    private static final String PROFILE_VERSION = "WARMUP_PROFILE=1";
+    private static final String PROFILE_CLASSES = "CLASSES";
+    private static final String PROFILE_METHODS = "METHODS";
+    private static final String APP_CLASSLOADER =
+        "sun.misc.Launcher$AppClassLoader";
+
+    private static String recordProfileFileString = null;
+    private static String replayProfileFileString = null;
+
+    // The profile given by -Xwarmup:replay=<file>, replayed once the
+    // launcher has set up the system class loader
+    private static String launchProfileFileString = null;
+
     private static boolean verbose = 
         (System.getProperty("cdcams.verbose") != null) &&
          (System.getProperty("cdcams.verbose").toLowerCase().equals("true"));
@@ -64,12 +90,20 @@ public class Warmup
     {
 	processOptions(args);
 	runit(classNamesFileString, memberNamesFileString);
+        if (replayProfileFileString != null) {
+            replayProfile(replayProfileFileString, false);
+        }
+        if (recordProfileFileString != null) {
+            recordProfile(recordProfileFileString);
+        }
     }
     
     private static void processOptions(String[] args)
     {
 	classNamesFileString = null;
 	memberNamesFileString = null;
+        recordProfileFileString = null;
+        replayProfileFileString = null;
 	for (int i = 0; i < args.length; i++) {
 	    if (args[i].equals("-initClasses")) {
 		classNamesFileString = args[++i];
@@ -77,6 +111,10 @@ public class Warmup
 	    } else if (args[i].equals("-precompileMethods")) {
 		memberNamesFileString = args[++i];
                 memberNamesFiles = split(memberNamesFileString);
+	    } else if (args[i].equals("-recordProfile")) {
+		recordProfileFileString = args[++i];
+	    } else if (args[i].equals("-replayProfile")) {
+		replayProfileFileString = args[++i];
 	    } else {
                 if (verbose) {
 		    System.err.println("UNRECOGNIZED OPTION \""+args[i]+"\"");
@@ -570,7 +608,373 @@ public class Warmup
 	}
     }
 
-    public static void runit(String cnfs, String mnfs)
+    //
+    // Handle the -Xwarmup:record=<file> and -Xwarmup:replay=<file>
+    // command line options. Returns false if the option is malformed.
+    // The replay option is only recorded here: the options that follow
+    // it may still change the class path, so the replay is started by
+    // startLaunchProfile().
+    //
+    public static boolean parseProfileOption(String option)
+    {
+        if (option.startsWith("record=") && option.length() > 7) {
+            final String fileName = option.substring(7);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    recordProfile(fileName);
+                }
+            });
+            return true;
+        } else if (option.startsWith("replay=") && option.length() > 7) {
+            launchProfileFileString = option.substring(7);
+            return true;
+        }
+        return false;
+    }
+
+    //
+    // Start replaying the profile given by -Xwarmup:replay=<file>, if
+    // any, on a background thread. Called by the launcher after the
+    // command line options have been parsed and the system class
+    // loader has been set up.
+    //
+    public static void startLaunchProfile()
+    {
+        if (launchProfileFileString != null) {
+            String fileName = launchProfileFileString;
+            launchProfileFileString = null;
+            replayProfile(fileName, true);
+        }
+    }
+
+    //
+    // Write a warmup profile of the current VM: the classes loaded so
+    // far, and the methods that the JIT has compiled so far. Only
+    // classes defined by the boot and application class loaders are
+    // recorded. Classes are written supertypes first, so that replaying
+    // the list does not recursively load superclasses in the middle of
+    // it.
+    //
+    public static boolean recordProfile(String fileName)
+    {
+        ClassLoader loaders[] = {null, ClassLoader.getSystemClassLoader()};
+        String loaderNames[] = {"", APP_CLASSLOADER};
+        PrintWriter out;
+
+        if (!loaders[1].getClass().getName().equals(APP_CLASSLOADER)) {
+            // A custom system class loader cannot be re-created at replay
+            loaders[1] = null;
+        }
+
+        try {
+            out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        } catch (IOException e) {
+            if (verbose) {
+                System.err.println("write to " + fileName + " failed...");
+            }
+            e.printStackTrace();
+            return false;
+        }
+
+        int numClasses = 0;
+        int numMethods = 0;
+        out.println("# Warmup profile recorded by sun.misc.Warmup");
+        out.println(PROFILE_VERSION);
+        out.println(PROFILE_CLASSES);
+        for (int i = 0; i < loaders.length; i++) {
+            if (i > 0 && loaders[i] == null) {
+                continue;
+            }
+            String classes[] = JIT.getLoadedClasses(loaders[i]);
+            if (classes == null || classes.length == 0) {
+                continue;
+            }
+            out.println("CLASSLOADER=" + loaderNames[i]);
+            classes = sortBySupertypes(classes, loaders[i]);
+            for (int j = 0; j < classes.length; j++) {
+                out.println(classes[j]);
+            }
+            numClasses += classes.length;
+        }
+        out.println(PROFILE_METHODS);
+        for (int i = 0; i < loaders.length; i++) {
+            if (i > 0 && loaders[i] == null) {
+                continue;
+            }
+            String methods[] = JIT.getCompiledMethods(loaders[i]);
+            if (methods == null || methods.length == 0) {
+                continue;
+            }
+            out.println("CLASSLOADER=" + loaderNames[i]);
+            for (int j = 0; j < methods.length; j++) {
+                // There is no way to find <clinit> using reflection,
+                // and it only runs once anyway.
+                if (methods[j].indexOf(".<clinit>(") == -1) {
+                    out.println(methods[j]);
+                    numMethods++;
+                }
+            }
+        }
+        out.close();
+
+        if (out.checkError()) {
+            if (verbose) {
+                System.err.println("write to " + fileName + " failed...");
+            }
+            return false;
+        }
+        if (verbose) {
+            System.err.println("recorded " + numClasses + " classes and " +
+                               numMethods + " methods to " + fileName);
+        }
+        return true;
+    }
+
+    //
+    // Order a list of (already loaded) classes so that every class comes
+    // after its superclass and superinterfaces.
+    //
+    private static String[] sortBySupertypes(String classes[],
+                                             ClassLoader loader)
+    {
+        Hashtable depths = new Hashtable();
+        Vector buckets = new Vector();
+        for (int i = 0; i < classes.length; i++) {
+            String name = classes[i].replace('/', '.');
+            int depth = 0;
+            try {
+                depth = supertypeDepth(Class.forName(name, false, loader),
+                                       depths);
+            } catch (ClassNotFoundException e) {
+                // Unloaded since it was listed. Keep it, it's harmless.
+            }
+            while (buckets.size() <= depth) {
+                buckets.addElement(new Vector());
+            }
+            ((Vector)buckets.elementAt(depth)).addElement(name);
+        }
+
+        String sorted[] = new String[classes.length];
+        int n = 0;
+        for (int i = 0; i < buckets.size(); i++) {
+            Vector bucket = (Vector)buckets.elementAt(i);
+            for (int j = 0; j < bucket.size(); j++) {
+                sorted[n++] = (String)bucket.elementAt(j);
+            }
+        }
+        return sorted;
+    }
+
+    private static int supertypeDepth(Class c, Hashtable depths)
+    {
+        if (c == null) {
+            return 0;
+        }
+        Integer known = (Integer)depths.get(c);
+        if (known != null) {
+            return known.intValue();
+        }
+        int depth = supertypeDepth(c.getSuperclass(), depths);
+        Class interfaces[] = c.getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) {
+            depth = Math.max(depth, supertypeDepth(interfaces[i], depths));
+        }
+        depth++;
+        depths.put(c, new Integer(depth));
+        return depth;
+    }
+
+    //
+    // Replay a warmup profile written by recordProfile(). Classes are
+    // loaded (but not initialized, since the profile says nothing about
+    // the order in which static initializers may safely run) before any
+    // method is compiled. If 'background' is true, the work is done by a
+    // low-priority daemon thread and this method returns immediately.
+    //
+    public static void replayProfile(final String fileName,
+                                     boolean background)
+    {
+        if (!background) {
+            doReplayProfile(fileName);
+            return;
+        }
+        Thread t = new Thread("Warmup Replay") {
+            public void run() {
+                doReplayProfile(fileName);
+            }
+        };
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private static synchronized boolean doReplayProfile(String fileName)
+    {
+        long start = System.currentTimeMillis();
+        TimeStamps.recordTimeStamps("Warmup replay start");
+
+        Vector sections = readProfile(fileName);
+        if (sections == null) {
+            return false;
+        }
+
+        // Load classes
+        int numClasses = 0;
+        int failedClasses = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            ProfileSection section = (ProfileSection)sections.elementAt(i);
+            if (section.methods || !setProfileClassLoader(section)) {
+                continue;
+            }
+            for (int j = 0; j < section.names.size(); j++) {
+                String name = (String)section.names.elementAt(j);
+                if (getClassFromName(name.replace('/', '.'), false) == null) {
+                    if (verbose) {
+                        System.err.println("Could not find class " + name);
+                    }
+                    failedClasses++;
+                } else {
+                    numClasses++;
+                }
+            }
+        }
+        long classesDone = System.currentTimeMillis();
+        TimeStamps.recordTimeStamps("Warmup replay classes loaded");
+
+        // Compile methods
+        int numMethods = 0;
+        int failedMethods = 0;
+        if (CVM.isCompilerSupported()) {
+            for (int i = 0; i < sections.size(); i++) {
+                ProfileSection section =
+                    (ProfileSection)sections.elementAt(i);
+                if (!section.methods || !setProfileClassLoader(section)) {
+                    continue;
+                }
+                for (int j = 0; j < section.names.size(); j++) {
+                    // Keep going on failure, the rest is still useful.
+                    if (parseAndPrecompileMethods(
+                            (String)section.names.elementAt(j))) {
+                        numMethods++;
+                    } else {
+                        failedMethods++;
+                    }
+                }
+            }
+        } else if (verbose) {
+            System.err.println("Compiler not supported, cannot precompile");
+        }
+        long methodsDone = System.currentTimeMillis();
+        TimeStamps.recordTimeStamps("Warmup replay methods compiled");
+
+        currClassLoader = null;
+        if (verbose) {
+            System.err.println("replayed " + fileName + ": " +
+                numClasses + " classes loaded (" + failedClasses +
+                " failed) in " + (classesDone - start) + " ms, " +
+                numMethods + " methods compiled (" + failedMethods +
+                " failed) in " + (methodsDone - classesDone) + " ms");
+        }
+        return true;
+    }
+
+    private static boolean setProfileClassLoader(ProfileSection section)
+    {
+        try {
+            setCurrClassLoader("CLASSLOADER=" + section.loader);
+            return true;
+        } catch (IOException e) {
+            if (verbose) {
+                System.err.println(e.getMessage() + ", skipping " +
+                                   section.names.size() + " entries");
+            }
+            return false;
+        }
+    }
+
+    //
+    // One CLASSLOADER= run of classes or methods in a warmup profile.
+    //
+    private static class ProfileSection
+    {
+        final boolean methods;
+        final String loader;
+        final Vector names = new Vector();
+
+        ProfileSection(boolean methods, String loader)
+        {
+            this.methods = methods;
+            this.loader = loader;
+        }
+    }
+
+    //
+    // Read a warmup profile and return its sections, or null if the
+    // file cannot be read or is not a profile of a supported version.
+    //
+    private static Vector readProfile(String fileName)
+    {
+        Vector sections = new Vector();
+        try {
+            BufferedReader inReader =
+                new BufferedReader(new FileReader(fileName));
+            try {
+                StreamTokenizer in = new StreamTokenizer(inReader);
+                in.resetSyntax();
+                in.eolIsSignificant( false );
+                in.whitespaceChars( 0, 0x20 );
+                in.wordChars( '!', '~' );
+                in.commentChar('#');
+
+                if (in.nextToken() == StreamTokenizer.TT_EOF ||
+                    !in.sval.equals(PROFILE_VERSION)) {
+                    if (verbose) {
+                        System.err.println(fileName +
+                            " is not a supported warmup profile");
+                    }
+                    return null;
+                }
+
+                boolean methods = false;
+                ProfileSection section = null;
+                while (in.nextToken() != StreamTokenizer.TT_EOF) {
+                    if (in.sval.equals(PROFILE_CLASSES)) {
+                        methods = false;
+                        section = null;
+                    } else if (in.sval.equals(PROFILE_METHODS)) {
+                        methods = true;
+                        section = null;
+                    } else if (in.sval.startsWith("CLASSLOADER=")) {
+                        section = new ProfileSection(methods,
+                                                     in.sval.substring(12));
+                        sections.addElement(section);
+                    } else {
+                        if (section == null) {
+                            // Entries before any CLASSLOADER= directive
+                            // belong to the null ClassLoader.
+                            section = new ProfileSection(methods, "");
+                            sections.addElement(section);
+                        }
+                        section.names.addElement(in.sval);
+                    }
+                }
+            } finally {
+                inReader.close();
+            }
+        } catch (IOException e) {
+            if (verbose) {
+                System.err.println("read from " + fileName + " failed...");
+            }
+            e.printStackTrace();
+            return null;
+        }
+        if (verbose) {
+            System.err.println("read from " + fileName + " done...");
+        }
+        return sections;
+    }
+
+    public static synchronized void runit(String cnfs, String mnfs)
     {
         int i;
 
@@ -0,0 +1,618 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package sun.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import sun.net.spi.nameservice.NameService;
+
+/**
+ * A bounded cache of host name lookups in front of a
+ * {@link NameService}.
+ * <p>
+ * Successful and failed lookups are kept for the time given by the
+ * cache policies (see {@link InetAddressCachePolicy}).  At most
+ * <code>maxEntries</code> hosts are remembered; the least recently
+ * used one is dropped when the cache is full.  Concurrent lookups of
+ * the same host share a single name service call: the first thread
+ * resolves the name and the others wait on that host only.  A
+ * successful entry that is used during the last fifth of its lifetime
+ * is refreshed on a background thread, so that a host in steady use
+ * does not stall its callers when the entry expires.
+ * <p>
+ * <code>InetAddress</code> registers its cache with
+ * {@link #setDefault}; {@link #getDefault} returns it, e.g. for
+ * {@link #lookupAsync asynchronous lookups}.
+ *
+ * @version %I%, %G%
+ */
+public final class ResolverCache {
+
+    /**
+     * Receives the result of an asynchronous lookup.
+     */
+    public interface Callback {
+	/**
+	 * Called once the lookup of <code>host</code> has finished.
+	 * Exactly one of <code>addrs</code> and <code>e</code> is null.
+	 */
+	void lookupDone(String host, InetAddress[] addrs,
+			UnknownHostException e);
+    }
+
+    /**
+     * A lookup in progress.  Threads that need the same host wait on
+     * its <code>Lookup</code> object.
+     */
+    public static final class Lookup {
+	private final String host;
+	private boolean done = false;
+	private InetAddress[] addrs;
+	private UnknownHostException failure;
+	private ArrayList callbacks = null;
+
+	Lookup(String host) {
+	    this.host = host;
+	}
+
+	public String getHost() {
+	    return host;
+	}
+
+	public synchronized boolean isDone() {
+	    return done;
+	}
+
+	/**
+	 * Wait for the lookup to finish.
+	 *
+	 * @return a copy of the addresses of the host
+	 * @exception UnknownHostException if the host could not be found
+	 */
+	public InetAddress[] get() throws UnknownHostException {
+	    return get(0);
+	}
+
+	/**
+	 * Wait at most <code>timeout</code> milliseconds (0 means
+	 * forever) for the lookup to finish.
+	 *
+	 * @return a copy of the addresses of the host, or null on timeout
+	 * @exception UnknownHostException if the host could not be found
+	 */
+	public synchronized InetAddress[] get(long timeout)
+	    throws UnknownHostException {
+	    long end = System.currentTimeMillis() + timeout;
+	    while (!done) {
+		long wait = 0;
+		if (timeout > 0) {
+		    wait = end - System.currentTimeMillis();
+		    if (wait <= 0) {
+			return null;
+		    }
+		}
+		try {
+		    wait(wait);
+		} catch (InterruptedException e) {
+		}
+	    }
+	    if (failure != null) {
+		throw new UnknownHostException(failure.getMessage());
+	    }
+	    return (InetAddress[])addrs.clone();
+	}
+
+	void addCallback(Callback cb) {
+	    boolean call;
+	    synchronized (this) {
+		call = done;
+		if (!done) {
+		    if (callbacks == null) {
+			callbacks = new ArrayList(2);
+		    }
+		    callbacks.add(cb);
+		}
+	    }
+	    if (call) {
+		invoke(cb);
+	    }
+	}
+
+	void complete(InetAddress[] addrs, UnknownHostException failure) {
+	    ArrayList cbs;
+	    synchronized (this) {
+		this.addrs = addrs;
+		this.failure = failure;
+		done = true;
+		cbs = callbacks;
+		callbacks = null;
+		notifyAll();
+	    }
+	    if (cbs != null) {
+		for (int i = 0; i < cbs.size(); i++) {
+		    invoke((Callback)cbs.get(i));
+		}
+	    }
+	}
+
+	private void invoke(Callback cb) {
+	    try {
+		cb.lookupDone(host,
+		    (addrs != null) ? (InetAddress[])addrs.clone() : null,
+		    failure);
+	    } catch (RuntimeException e) {
+		// a faulty callback must not kill the resolver thread
+	    }
+	}
+    }
+
+    /* A cached lookup result; addrs is null for a failed lookup */
+    private static final class Entry {
+	final InetAddress[] addrs;
+	final long created;
+	final long expiration;	// -1 for never
+	boolean refreshing = false;
+
+	Entry(InetAddress[] addrs, long created, long expiration) {
+	    this.addrs = addrs;
+	    this.created = created;
+	    this.expiration = expiration;
+	}
+    }
+
+    static final int DEFAULT_MAX_ENTRIES = 512;
+    static final int DEFAULT_THREADS = 2;
+
+    /* idle time after which a resolver thread exits */
+    static final long THREAD_KEEPALIVE = 30000;
+
+    private static ResolverCache defaultCache = null;
+
+    private final NameService nameService;
+    private final int policy;
+    private final int negativePolicy;
+    private final int maxEntries;
+    private final int maxThreads;
+
+    /* lower case host name -> Entry, in access order */
+    private final LinkedHashMap entries;
+
+    /* lower case host name -> Lookup being resolved */
+    private final HashMap inFlight = new HashMap();
+
+    /* work for the resolver threads */
+    private final LinkedList tasks = new LinkedList();
+    private int threads = 0;
+    private int idleThreads = 0;
+
+    private long hits, misses, lookups, refreshes, evictions;
+
+    /**
+     * Create a cache using the system cache policies and the
+     * "sun.net.inetaddr.cacheSize" and "sun.net.inetaddr.asyncThreads"
+     * properties.
+     */
+    public ResolverCache(NameService nameService) {
+	this(nameService, InetAddressCachePolicy.get(),
+	     InetAddressCachePolicy.getNegative(),
+	     getIntProperty("sun.net.inetaddr.cacheSize", DEFAULT_MAX_ENTRIES),
+	     getIntProperty("sun.net.inetaddr.asyncThreads", DEFAULT_THREADS));
+    }
+
+    /**
+     * @param nameService     resolves names that are not cached
+     * @param policy          seconds to keep successful lookups, or
+     *                        InetAddressCachePolicy.FOREVER / NEVER
+     * @param negativePolicy  the same for failed lookups
+     * @param maxEntries      the maximum number of cached hosts
+     * @param maxThreads      the maximum number of background resolver
+     *                        threads
+     */
+    public ResolverCache(NameService nameService, int policy,
+			 int negativePolicy, int maxEntries, int maxThreads) {
+	if (maxEntries <= 0 || maxThreads <= 0) {
+	    throw new IllegalArgumentException();
+	}
+	this.nameService = nameService;
+	this.policy = policy;
+	this.negativePolicy = negativePolicy;
+	this.maxEntries = maxEntries;
+	this.maxThreads = maxThreads;
+	this.entries = new LinkedHashMap(16, 0.75f, true) {
+	    protected boolean removeEldestEntry(Map.Entry eldest) {
+		if (size() > ResolverCache.this.maxEntries) {
+		    evictions++;
+		    return true;
+		}
+		return false;
+	    }
+	};
+    }
+
+    /**
+     * Make <code>cache</code> the cache returned by getDefault().
+     * Called by InetAddress during its initialization.
+     *
+     * @exception IllegalStateException if a default is already set
+     */
+    public static void setDefault(ResolverCache cache) {
+	initInetAddress();
+	synchronized (ResolverCache.class) {
+	    if (defaultCache != null) {
+		throw new IllegalStateException("default already set");
+	    }
+	    defaultCache = cache;
+	}
+    }
+
+    /**
+     * @return the cache used by <code>InetAddress</code>
+     */
+    public static ResolverCache getDefault() {
+	initInetAddress();
+	synchronized (ResolverCache.class) {
+	    return defaultCache;
+	}
+    }
+
+    /* InetAddress sets the default while it is initialized */
+    private static void initInetAddress() {
+	try {
+	    Class.forName("java.net.InetAddress");
+	} catch (ClassNotFoundException e) {
+	    throw new InternalError(e.toString());
+	}
+    }
+
+    /**
+     * Resolve <code>host</code>, from the cache if possible.  No
+     * security check is made; the caller is responsible for that.
+     *
+     * @return the addresses of the host.  The array is shared with the
+     *         cache and must not be modified.
+     * @exception UnknownHostException if the host could not be found
+     */
+    public InetAddress[] lookup(String host) throws UnknownHostException {
+	String key = host.toLowerCase();
+	Lookup l;
+	boolean owner = false;
+	synchronized (this) {
+	    Entry e = getEntry(key);
+	    if (e != null) {
+		return result(host, e);
+	    }
+	    l = (Lookup)inFlight.get(key);
+	    if (l == null) {
+		l = new Lookup(host);
+		inFlight.put(key, l);
+		owner = true;
+	    }
+	}
+	if (owner) {
+	    resolve(key, l, false);
+	}
+	return l.get();
+    }
+
+    /**
+     * Resolve <code>host</code> without blocking the caller.  If the
+     * host is cached the returned Lookup is already done and the
+     * callback, if any, is invoked before this method returns;
+     * otherwise the callback is invoked on a resolver thread.
+     *
+     * @param host the host name
+     * @param cb   the callback, or null
+     * @exception SecurityException if a security manager exists and
+     *            its checkConnect method doesn't allow the lookup
+     */
+    public Lookup lookupAsync(String host, Callback cb) {
+	SecurityManager security = System.getSecurityManager();
+	if (security != null) {
+	    security.checkConnect(host, -1);
+	}
+	String key = host.toLowerCase();
+	Lookup l;
+	synchronized (this) {
+	    Entry e = getEntry(key);
+	    if (e != null) {
+		l = new Lookup(host);
+		if (e.addrs != null) {
+		    l.complete(e.addrs, null);
+		} else {
+		    l.complete(null, new UnknownHostException(host));
+		}
+	    } else {
+		l = (Lookup)inFlight.get(key);
+		if (l == null) {
+		    l = new Lookup(host);
+		    inFlight.put(key, l);
+		    schedule(new Task(key, l, false));
+		}
+	    }
+	}
+	if (cb != null) {
+	    l.addCallback(cb);
+	}
+	return l;
+    }
+
+    /**
+     * Resolve <code>host</code> through the name service, bypassing
+     * (but updating) the cache.  Concurrent lookups of the same host
+     * are still shared.
+     */
+    public InetAddress[] lookupUncached(String host)
+	throws UnknownHostException {
+	String key = host.toLowerCase();
+	Lookup l;
+	boolean owner = false;
+	synchronized (this) {
+	    l = (Lookup)inFlight.get(key);
+	    if (l == null) {
+		l = new Lookup(host);
+		inFlight.put(key, l);
+		owner = true;
+	    }
+	}
+	if (owner) {
+	    resolve(key, l, false);
+	}
+	return l.get();
+    }
+
+    /**
+     * Add an entry that never expires.  A null <code>addrs</code>
+     * makes every lookup of <code>host</code> fail.
+     */
+    public synchronized void putPermanent(String host, InetAddress[] addrs) {
+	entries.put(host.toLowerCase(),
+		    new Entry(addrs, System.currentTimeMillis(), -1));
+    }
+
+    /**
+     * @return the names of all cached hosts that currently resolve
+     *         to <code>addr</code>
+     */
+    public synchronized String[] getHostsFor(InetAddress addr) {
+	ArrayList hosts = new ArrayList();
+	long now = System.currentTimeMillis();
+	Iterator i = entries.entrySet().iterator();
+	while (i.hasNext()) {
+	    Map.Entry me = (Map.Entry)i.next();
+	    Entry e = (Entry)me.getValue();
+	    if (e.addrs == null ||
+		(e.expiration >= 0 && e.expiration < now)) {
+		continue;
+	    }
+	    for (int j = 0; j < e.addrs.length; j++) {
+		if (addr.equals(e.addrs[j])) {
+		    hosts.add(me.getKey());
+		    break;
+		}
+	    }
+	}
+	return (String[])hosts.toArray(new String[hosts.size()]);
+    }
+
+    public synchronized int size() {
+	return entries.size();
+    }
+
+    public synchronized long getHits() {
+	return hits;
+    }
+
+    public synchronized long getMisses() {
+	return misses;
+    }
+
+    /**
+     * @return the number of name service calls made
+     */
+    public synchronized long getNameServiceLookups() {
+	return lookups;
+    }
+
+    /**
+     * @return the number of background refreshes started
+     */
+    public synchronized long getRefreshes() {
+	return refreshes;
+    }
+
+    public synchronized long getEvictions() {
+	return evictions;
+    }
+
+    public synchronized String toString() {
+	return "ResolverCache[size=" + entries.size() + ",hits=" + hits
+	    + ",misses=" + misses + ",lookups=" + lookups
+	    + ",refreshes=" + refreshes + ",evictions=" + evictions + "]";
+    }
+
+    /* Find a live entry; called with the lock held */
+    private Entry getEntry(String key) {
+	Entry e = (Entry)entries.get(key);
+	long now = System.currentTimeMillis();
+	if (e != null && e.expiration >= 0 && e.expiration < now) {
+	    entries.remove(key);
+	    e = null;
+	}
+	if (e == null) {
+	    misses++;
+	    return null;
+	}
+	hits++;
+	/* refresh a busy entry before it runs out */
+	if (e.addrs != null && !e.refreshing && e.expiration >= 0 &&
+	    (e.expiration - now) * 5 < (e.expiration - e.created) &&
+	    !inFlight.containsKey(key)) {
+	    e.refreshing = true;
+	    refreshes++;
+	    schedule(new Task(key, new Lookup(key), true));
+	}
+	return e;
+    }
+
+    private static InetAddress[] result(String host, Entry e)
+	throws UnknownHostException {
+	if (e.addrs == null) {
+	    throw new UnknownHostException(host);
+	}
+	return e.addrs;
+    }
+
+    /* Call the name service and publish the result */
+    private void resolve(String key, Lookup l, boolean refresh) {
+	InetAddress[] addrs = null;
+	UnknownHostException failure = null;
+	try {
+	    synchronized (this) {
+		lookups++;
+	    }
+	    byte[][] raw = nameService.lookupAllHostAddr(l.getHost());
+	    addrs = new InetAddress[raw.length];
+	    for (int i = 0; i < raw.length; i++) {
+		addrs[i] = InetAddress.getByAddress(l.getHost(), raw[i]);
+	    }
+	} catch (UnknownHostException e) {
+	    addrs = null;
+	    failure = e;
+	} catch (RuntimeException e) {
+	    addrs = null;
+	    failure = new UnknownHostException(e.toString());
+	}
+	synchronized (this) {
+	    long now = System.currentTimeMillis();
+	    if (failure == null) {
+		if (policy != InetAddressCachePolicy.NEVER) {
+		    entries.put(key, new Entry(addrs, now,
+			(policy == InetAddressCachePolicy.FOREVER) ? -1 :
+			now + policy * 1000L));
+		}
+	    } else if (refresh) {
+		/* keep serving the old entry until it expires */
+	    } else if (negativePolicy != InetAddressCachePolicy.NEVER) {
+		entries.put(key, new Entry(null, now,
+		    (negativePolicy == InetAddressCachePolicy.FOREVER) ? -1 :
+		    now + negativePolicy * 1000L));
+	    }
+	    if (refresh) {
+		Entry e = (Entry)entries.get(key);
+		if (e != null) {
+		    e.refreshing = false;
+		}
+	    } else {
+		inFlight.remove(key);
+	    }
+	}
+	l.complete(addrs, failure);
+    }
+
+    private final class Task implements Runnable {
+	final String key;
+	final Lookup lookup;
+	final boolean refresh;
+
+	Task(String key, Lookup lookup, boolean refresh) {
+	    this.key = key;
+	    this.lookup = lookup;
+	    this.refresh = refresh;
+	}
+
+	public void run() {
+	    resolve(key, lookup, refresh);
+	}
+    }
+
+    /* Queue a task, starting a resolver thread if needed; called with
+     * the lock held.
+     */
+    private void schedule(Task t) {
+	tasks.addLast(t);
+	if (idleThreads > 0) {
+	    notify();
+	} else if (threads < maxThreads) {
+	    threads++;
+	    final Runnable worker = new Runnable() {
+		public void run() {
+		    work();
+		}
+	    };
+	    java.security.AccessController.doPrivileged(
+		new java.security.PrivilegedAction() {
+		public Object run() {
+		    // create resolver threads in the system threadgroup
+		    ThreadGroup grp = Thread.currentThread().getThreadGroup();
+		    ThreadGroup parent = null;
+		    while ((parent = grp.getParent()) != null) {
+			grp = parent;
+		    }
+		    Thread th = new Thread(grp, worker, "Resolver");
+		    th.setDaemon(true);
+		    th.start();
+		    return null;
+		}
+	    });
+	}
+    }
+
+    private void work() {
+	for (;;) {
+	    Task t;
+	    synchronized (this) {
+		if (tasks.isEmpty()) {
+		    idleThreads++;
+		    try {
+			wait(THREAD_KEEPALIVE);
+		    } catch (InterruptedException e) {
+		    }
+		    idleThreads--;
+		}
+		if (tasks.isEmpty()) {
+		    threads--;
+		    return;
+		}
+		t = (Task)tasks.removeFirst();
+	    }
+	    t.run();
+	}
+    }
+
+    private static int getIntProperty(String name, int def) {
+	int v = ((Integer)java.security.AccessController.doPrivileged(
+	    new sun.security.action.GetIntegerAction(name, def))).intValue();
+	return (v > 0) ? v : def;
+    }
+}
@@ -59,6 +59,12 @@ public class HttpClient extends NetworkClient {
     // if we've had one io error
     boolean failedOnce = false;
 
+    // true if the request body was streamed and cannot be sent again
+    boolean streaming = false;
+
+    // buffered server input shared by all responses of a pipeline
+    private InputStream pipelineInput = null;
+
     /** regexp pool of hosts for which we should connect directly, not Proxy
      *  these are intialized from a property.
      */
@@ -148,6 +154,14 @@ public class HttpClient extends NetworkClient {
     int getKeepAliveTimeout() {
 	return keepAliveTimeout;
     }
+
+    /**
+     * @return the cache of idle keep-alive connections shared by all
+     * HttpClients, e.g. to read its hit/miss/eviction statistics.
+     */
+    public static KeepAliveCache getKeepAliveCache() {
+	return kac;
+    }
     
     /**
      * @return the proxy host to use, as defined by system properties.
@@ -709,8 +723,20 @@ public class HttpClient extends NetworkClient {
 
     public int writeRequests(MessageHeader head, 
 			      PosterOutputStream pos) throws IOException {
+	return writeRequests(head, pos, false);
+    }
+
+    /**
+     * Write the request header and the buffered body, if any.  If
+     * <code>streaming</code> is true the caller sends the body itself
+     * right after the header, so the request cannot be silently
+     * re-sent on a fresh connection if reading the response fails.
+     */
+    public int writeRequests(MessageHeader head, PosterOutputStream pos,
+			     boolean streaming) throws IOException {
         int bytesWritten;
 	requests = head;
+	this.streaming = streaming;
 	bytesWritten = requests.print(serverOutput);
 	poster = pos;
 	if (poster != null) {
@@ -741,7 +767,7 @@ public class HttpClient extends NetworkClient {
             return (parseHTTPHeader(responses, pe));
 	} catch (IOException e) {
 	    closeServer();
-            if (!failedOnce && requests != null) {
+            if (!failedOnce && requests != null && !streaming) {
                 // try once more
 		failedOnce = true;
 		openServer();
@@ -834,7 +860,7 @@ public class HttpClient extends NetworkClient {
 		    }
 		}
 	    } else if (nread != 8) {
-                if (!failedOnce && requests != null) {
+                if (!failedOnce && requests != null && !streaming) {
 		    failedOnce = true;
 		    closeServer();
 		    openServer();
@@ -937,6 +963,40 @@ public class HttpClient extends NetworkClient {
 	return ret;
     }
 
+    /**
+     * Write one request of a pipeline.  The request is not remembered
+     * for a retry; HttpPipeline re-sends unanswered requests itself.
+     */
+    void writePipelinedRequest(MessageHeader head) throws IOException {
+	requests = null;
+	streaming = false;
+	head.print(serverOutput);
+	serverOutput.flush();
+	if (serverOutput.checkError()) {
+	    throw new IOException("Error writing to server");
+	}
+    }
+
+    /**
+     * Parse the next response of a pipeline.  Unlike parseHTTP() the
+     * buffered server input is kept across responses, since it may
+     * already hold the beginning of the following one.
+     */
+    boolean parsePipelinedResponse(MessageHeader responses, ProgressEntry pe)
+    throws IOException {
+	if (pipelineInput == null) {
+	    pipelineInput = new HttpClientInputStream(
+		serverSocket.getInputStream());
+	}
+	serverInput = pipelineInput;
+	return parseHTTPHeader(responses, pe);
+    }
+
+    /* Called when the pipeline using this client is done with it */
+    void endPipeline() {
+	pipelineInput = null;
+    }
+
     public synchronized InputStream getInputStream() {
 	return serverInput;
     }
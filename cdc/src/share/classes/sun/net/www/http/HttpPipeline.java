@@ -0,0 +1,401 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package sun.net.www.http;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.LinkedList;
+import sun.net.ProgressData;
+import sun.net.ProgressEntry;
+import sun.net.www.MessageHeader;
+
+/**
+ * Sends several idempotent requests to one server over a single
+ * persistent connection without waiting for each response (HTTP/1.1
+ * pipelining).  Responses are returned by <code>nextResponse()</code>
+ * in the order the requests were queued; the body of the previous
+ * response is drained automatically before the next one is parsed.
+ * <p>
+ * Only GET and HEAD requests may be pipelined.  If the server closes
+ * the connection, or answers with a response that does not allow the
+ * connection to be kept alive, the requests that have not been answered
+ * yet are sent again on a new connection.
+ * <p>
+ * Pipelining is opt-in: it is only used when the system property
+ * "http.pipelining" is true.  Otherwise requests are still queued, but
+ * each one is sent only once the response to the one before it has
+ * been read.  The number of outstanding requests is limited by
+ * "http.pipelining.maxDepth" (default 8).
+ *
+ * @version %I%, %G%
+ */
+public class HttpPipeline {
+
+    static final int MAX_DEPTH = 8;
+
+    private static int maxDepth = -1;
+    private static Boolean enabled = null;
+
+    /**
+     * @return true if the "http.pipelining" system property is set.
+     */
+    public static synchronized boolean isEnabled() {
+	if (enabled == null) {
+	    enabled = (Boolean)java.security.AccessController.doPrivileged(
+		new sun.security.action.GetBooleanAction("http.pipelining"));
+	}
+	return enabled.booleanValue();
+    }
+
+    static synchronized int getMaxDepth() {
+	if (maxDepth == -1) {
+	    maxDepth = ((Integer)java.security.AccessController.doPrivileged(
+		new sun.security.action.GetIntegerAction(
+		    "http.pipelining.maxDepth", MAX_DEPTH))).intValue();
+	    if (maxDepth <= 0) {
+		maxDepth = MAX_DEPTH;
+	    }
+	}
+	return maxDepth;
+    }
+
+    /**
+     * A response read from the pipeline.  Its body must be read (or
+     * abandoned) before the next call to <code>nextResponse()</code>,
+     * which discards whatever is left of it.
+     */
+    public static class Response {
+	private final URL url;
+	private final MessageHeader headers;
+	private final int code;
+	private final InputStream body;
+
+	Response(URL url, MessageHeader headers, int code, InputStream body) {
+	    this.url = url;
+	    this.headers = headers;
+	    this.code = code;
+	    this.body = body;
+	}
+
+	public URL getURL() {
+	    return url;
+	}
+
+	public int getResponseCode() {
+	    return code;
+	}
+
+	public MessageHeader getHeaders() {
+	    return headers;
+	}
+
+	public String getHeaderField(String name) {
+	    return headers.findValue(name);
+	}
+
+	public InputStream getInputStream() {
+	    return body;
+	}
+    }
+
+    /* a queued request that has not been answered yet */
+    private static class Pending {
+	final String method;
+	final URL url;
+	final MessageHeader headers;
+	boolean sent;
+	boolean resent;
+
+	Pending(String method, URL url, MessageHeader headers) {
+	    this.method = method;
+	    this.url = url;
+	    this.headers = headers;
+	}
+    }
+
+    private final URL base;
+    private HttpClient http;
+    private final LinkedList pending = new LinkedList();
+    private InputStream lastBody = null;
+    private boolean closed = false;
+
+    /**
+     * Create a pipeline to the server of <code>url</code>, reusing an
+     * idle keep-alive connection if one is cached.
+     */
+    public HttpPipeline(URL url) throws IOException {
+	if (!"http".equals(url.getProtocol())) {
+	    throw new IllegalArgumentException("not an http URL: " + url);
+	}
+	this.base = url;
+	this.http = open(true);
+    }
+
+    private HttpClient open(boolean useCache) throws IOException {
+	HttpClient hc = HttpClient.New(base, useCache);
+	/* keep the client out of the keep-alive cache while we use it */
+	hc.reuse = true;
+	return hc;
+    }
+
+    /**
+     * Queue a request and write it to the server immediately.
+     *
+     * @param method  "GET" or "HEAD"
+     * @param url     the resource, on the same server as the pipeline
+     * @param headers additional request headers, or null
+     * @exception ProtocolException if the method is not idempotent or
+     *            the pipeline is full
+     */
+    public synchronized void enqueue(String method, URL url,
+				     MessageHeader headers)
+	throws IOException {
+	if (closed) {
+	    throw new IOException("pipeline closed");
+	}
+	if (!"GET".equals(method) && !"HEAD".equals(method)) {
+	    throw new ProtocolException("HTTP method " + method +
+					" cannot be pipelined");
+	}
+	if (!base.getProtocol().equals(url.getProtocol()) ||
+	    !base.getHost().equalsIgnoreCase(url.getHost()) ||
+	    base.getPort() != url.getPort()) {
+	    throw new IllegalArgumentException(
+		"URL not on the pipeline's server: " + url);
+	}
+	if (pending.size() >= getMaxDepth()) {
+	    throw new ProtocolException("pipeline full");
+	}
+	SecurityManager security = System.getSecurityManager();
+	if (security != null) {
+	    security.checkConnect(url.getHost(), url.getPort());
+	}
+	Pending p = new Pending(method, url,
+				requestHeader(method, url, headers));
+	pending.addLast(p);
+	if (!isEnabled() && pending.size() > 1) {
+	    /* not pipelining: nextResponse() sends it in turn */
+	    return;
+	}
+	send(p);
+    }
+
+    /* Write a queued request to the server */
+    private void send(Pending p) {
+	p.sent = true;
+	try {
+	    http.writePipelinedRequest(p.headers);
+	} catch (IOException e) {
+	    /* nextResponse() re-sends it on a new connection */
+	    http.closeServer();
+	}
+    }
+
+    /**
+     * @return the number of queued requests not yet answered.
+     */
+    public synchronized int size() {
+	return pending.size();
+    }
+
+    /**
+     * Read the response to the oldest outstanding request.
+     *
+     * @return the response, or null if no request is outstanding
+     */
+    public synchronized Response nextResponse() throws IOException {
+	if (closed) {
+	    throw new IOException("pipeline closed");
+	}
+	drainLastBody();
+	if (pending.isEmpty()) {
+	    return null;
+	}
+	Pending p = (Pending)pending.getFirst();
+	if (!p.sent) {
+	    send(p);
+	}
+	MessageHeader responses = new MessageHeader();
+	ProgressEntry pe = new ProgressEntry(p.url.getFile(), null);
+	ProgressData.pdata.register(pe);
+	try {
+	    http.parsePipelinedResponse(responses, pe);
+	} catch (IOException e) {
+	    ProgressData.pdata.unregister(pe);
+	    if (p.resent) {
+		throw e;
+	    }
+	    /* the connection went away: replay what is unanswered */
+	    resend();
+	    return nextResponse();
+	}
+	pending.removeFirst();
+
+	int code = responseCode(responses);
+	InputStream body;
+	if ("HEAD".equals(p.method) || (code >= 100 && code < 200) ||
+	    code == java.net.HttpURLConnection.HTTP_NO_CONTENT ||
+	    code == java.net.HttpURLConnection.HTTP_NOT_MODIFIED) {
+	    ProgressData.pdata.unregister(pe);
+	    body = new java.io.ByteArrayInputStream(new byte[0]);
+	} else {
+	    body = http.getInputStream();
+	    lastBody = body;
+	}
+	if (!http.isKeepingAlive()) {
+	    /* Can't be used for the rest of the pipeline.  Read this
+	     * body to its end first, then replay the others.
+	     */
+	    if (lastBody != null) {
+		body = buffer(lastBody);
+		lastBody = null;
+	    }
+	    http.closeServer();
+	    if (!pending.isEmpty()) {
+		resend();
+	    }
+	}
+	return new Response(p.url, responses, code, body);
+    }
+
+    /**
+     * Discard all outstanding responses and return the connection to
+     * the keep-alive cache if it is still usable.
+     */
+    public synchronized void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	try {
+	    while (!pending.isEmpty() && http.isKeepingAlive()) {
+		nextResponse();
+	    }
+	    drainLastBody();
+	} finally {
+	    closed = true;
+	    http.endPipeline();
+	    http.reuse = false;
+	    if (pending.isEmpty() && http.isKeepingAlive()) {
+		http.finished();
+	    } else {
+		http.closeServer();
+	    }
+	    pending.clear();
+	}
+    }
+
+    /* Open a new connection and send the unanswered requests again */
+    private void resend() throws IOException {
+	http.endPipeline();
+	http.closeServer();
+	http = open(false);
+	for (int i = 0; i < pending.size(); i++) {
+	    Pending p = (Pending)pending.get(i);
+	    if (i > 0 && !isEnabled()) {
+		/* not pipelining: nextResponse() sends it in turn */
+		p.sent = false;
+		continue;
+	    }
+	    if (p.resent) {
+		throw new IOException("Unexpected end of file from server");
+	    }
+	    p.resent = true;
+	    p.sent = true;
+	    http.writePipelinedRequest(p.headers);
+	}
+    }
+
+    /* Read the rest of the previous body so the next response can be parsed */
+    private void drainLastBody() throws IOException {
+	if (lastBody == null) {
+	    return;
+	}
+	byte[] buf = new byte[512];
+	while (lastBody.read(buf, 0, buf.length) >= 0) {
+	}
+	lastBody = null;
+    }
+
+    private static InputStream buffer(InputStream in) throws IOException {
+	java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+	byte[] buf = new byte[512];
+	int n;
+	while ((n = in.read(buf, 0, buf.length)) >= 0) {
+	    out.write(buf, 0, n);
+	}
+	return new java.io.ByteArrayInputStream(out.toByteArray());
+    }
+
+    private MessageHeader requestHeader(String method, URL url,
+					MessageHeader headers)
+	throws IOException {
+	String file = url.getFile();
+	if (file == null || file.length() == 0) {
+	    file = "/";
+	}
+	if (http.usingProxy) {
+	    file = url.toExternalForm();
+	}
+	if (file.indexOf('\n') != -1) {
+	    throw new java.net.MalformedURLException(
+		"Illegal character in URL");
+	}
+	MessageHeader h = (headers != null) ? headers : new MessageHeader();
+	h.prepend(method + " " + file + " HTTP/1.1", null);
+	String host = url.getHost();
+	int port = url.getPort();
+	if (port != -1 && port != 80) {
+	    host += ":" + port;
+	}
+	h.setIfNotSet("User-Agent",
+		      sun.net.www.protocol.http.HttpURLConnection.userAgent);
+	h.setIfNotSet("Host", host);
+	h.setIfNotSet("Accept", "*/*");
+	if (http.usingProxy) {
+	    h.setIfNotSet("Proxy-Connection", "keep-alive");
+	} else {
+	    h.setIfNotSet("Connection", "keep-alive");
+	}
+	return h;
+    }
+
+    private static int responseCode(MessageHeader responses) {
+	try {
+	    String resp = responses.getValue(0);
+	    int ind = resp.indexOf(' ');
+	    while (resp.charAt(ind) == ' ') {
+		ind++;
+	    }
+	    return Integer.parseInt(resp.substring(ind, ind + 3));
+	} catch (Exception e) {
+	    return -1;
+	}
+    }
+}
@@ -27,21 +27,29 @@
 
 package sun.net.www.http;
 
-import java.io.InputStream;
-import java.io.IOException;
-import java.io.NotSerializableException;
 import java.util.*;
 import java.net.URL;
 
 /**
- * A class that implements a cache of idle Http connections for keep-alive
+ * A class that implements a cache of idle Http connections for keep-alive.
+ * <p>
+ * Idle connections are kept per destination (protocol, host, port) in
+ * most-recently-used order, and all idle connections are additionally
+ * linked into a single least-recently-used list so that the oldest
+ * connection can be evicted when the global limit is reached.  Idle
+ * timeouts are tracked by a hashed timing wheel, so the Keep-Alive-Timer
+ * only looks at the connections that are due in the current tick instead
+ * of scanning the whole cache.
+ * <p>
+ * Every operation on the cache is constant time while the cache lock is
+ * held; closing evicted or expired sockets, which may block, is always
+ * done after the lock has been released.
  *
  * @version 1.28 10/10/06 
  * @author Stephen R. Pietrowicz (NCSA)
  * @author Dave Brown
  */
-public class KeepAliveCache extends Hashtable implements Runnable {
-    private static final long serialVersionUID = -2937172892064557949L;
+public class KeepAliveCache implements Runnable {
 
     /* maximum # keep-alive connections to maintain at once
      * This should be 2 by the HTTP spec, but because we don't support pipe-lining
@@ -62,10 +70,51 @@ public class KeepAliveCache extends Hashtable implements Runnable {
 	    return result;
     }
 
+    /* maximum # of idle keep-alive connections over all destinations.
+     * When the limit is reached the least-recently used idle connection
+     * is closed.  It can be reset by setting the system property
+     * "http.maxTotalConnections".
+     */
+    static final int MAX_TOTAL_CONNECTIONS = 32;
+    static int totalResult = -1;
+    static int getMaxTotalConnections() {
+	if (totalResult == -1) {
+	    totalResult = ((Integer)java.security.AccessController.doPrivileged(
+		new sun.security.action.GetIntegerAction(
+		    "http.maxTotalConnections",
+		    MAX_TOTAL_CONNECTIONS))).intValue();
+	    if (totalResult <= 0)
+		totalResult = MAX_TOTAL_CONNECTIONS;
+	}
+	return totalResult;
+    }
+
     static final int LIFETIME = 5000;
 
+    /* granularity of the timing wheel, in milliseconds, and its size */
+    static final int TICK = 500;
+    static final int WHEEL_SIZE = 64;
+
     private Thread keepAliveTimer = null;
 
+    /* destination -> ClientVector */
+    private HashMap routes = new HashMap();
+
+    /* global LRU list of idle connections, oldest at lruHead */
+    private KeepAliveEntry lruHead = null;
+    private KeepAliveEntry lruTail = null;
+    private int idleCount = 0;
+
+    /* timing wheel buckets, each a doubly linked list of entries */
+    private KeepAliveEntry[] wheel = new KeepAliveEntry[WHEEL_SIZE];
+    private long lastTick = -1;
+
+    /* pool statistics */
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
     /**
      * Constructor
      */
@@ -76,216 +125,369 @@ public class KeepAliveCache extends Hashtable implements Runnable {
      * @param url  The URL contains info about the host and port
      * @param http The HttpClient to be cached
      */
-    public synchronized void put(final URL url, Object obj, HttpClient http) {
-	boolean startThread = (keepAliveTimer == null);
-	if (!startThread) {
-	    if (!keepAliveTimer.isAlive()) {
-		startThread = true;
+    public void put(final URL url, Object obj, HttpClient http) {
+	ArrayList toClose = null;
+	synchronized (this) {
+	    ensureTimer();
+
+	    KeepAliveKey key = new KeepAliveKey(url, obj);
+	    ClientVector v = (ClientVector)routes.get(key);
+
+	    /* make room for the new connection, per destination first */
+	    if (v != null && v.size() >= getMaxConnections()) {
+		toClose = evict(v.oldest(), toClose);
+	    }
+	    if (idleCount >= getMaxTotalConnections()) {
+		toClose = evict(lruHead, toClose);
+	    }
+
+	    /* the evictions may have emptied and dropped the destination */
+	    v = (ClientVector)routes.get(key);
+	    if (v == null) {
+		int keepAliveTimeout = http.getKeepAliveTimeout();
+		v = new ClientVector(key, keepAliveTimeout > 0?
+				     keepAliveTimeout*1000 : LIFETIME);
+		routes.put(key, v);
 	    }
+
+	    long now = System.currentTimeMillis();
+	    KeepAliveEntry e = new KeepAliveEntry(http, v);
+	    e.deadline = now + v.nap;
+	    v.push(e);
+	    lruAppend(e);
+	    wheelAdd(e);
+	    idleCount++;
 	}
-	if (startThread) {
-	    clear();
-	    /* Unfortunately, we can't always believe the keep-alive timeout we got
-	     * back from the server.  If I'm connected through a Netscape proxy
-	     * to a server that sent me a keep-alive
-	     * time of 15 sec, the proxy unilaterally terminates my connection
-	     * The robustness to to get around this is in HttpClient.parseHTTP()
-	     */
-	    final KeepAliveCache cache = this;
-	    java.security.AccessController.doPrivileged(
-		new java.security.PrivilegedAction() {
-		public Object run() {
-                   // We want to create the Keep-Alive-Timer in the
-		    // system threadgroup
-		    ThreadGroup grp = Thread.currentThread().getThreadGroup();
-		    ThreadGroup parent = null;
-		    while ((parent = grp.getParent()) != null) {
-			grp = parent;
-		    }
+	closeAll(toClose);
+    }
 
-		    keepAliveTimer = new Thread(grp, cache, "Keep-Alive-Timer");
-		    keepAliveTimer.setDaemon(true);
-		    keepAliveTimer.setPriority(Thread.MAX_PRIORITY - 2);
-		    keepAliveTimer.start();
-		    return null;
+    /* remove an obsolete HttpClient from it's VectorCache */
+    public synchronized void remove (HttpClient h, Object obj) {
+	KeepAliveKey key = new KeepAliveKey(h.url, obj);
+	ClientVector v = (ClientVector)routes.get(key);
+	if (v != null) {
+	    KeepAliveEntry e = v.find(h);
+	    if (e != null) {
+		unlink(e);
+	    }
+	}
+    }
+
+    /**
+     * Check to see if this URL has a cached HttpClient
+     */
+    public Object get(URL url, Object obj) {
+	HttpClient hc = null;
+	ArrayList toClose = null;
+	synchronized (this) {
+	    KeepAliveKey key = new KeepAliveKey(url, obj);
+	    ClientVector v = (ClientVector)routes.get(key);
+	    if (v != null) {
+		/* Loop until we find a connection that has not timed out */
+		long currentTime = System.currentTimeMillis();
+		KeepAliveEntry e;
+		while (hc == null && (e = v.newest()) != null) {
+		    unlink(e);
+		    if (currentTime >= e.deadline) {
+			expirations++;
+			if (toClose == null) {
+			    toClose = new ArrayList();
+			}
+			toClose.add(e.hc);
+		    } else {
+			hc = e.hc;
+		    }
 		}
-	    });
+	    }
+	    if (hc != null) {
+		hits++;
+	    } else {
+		misses++;
+	    }
 	}
+	closeAll(toClose);
+	return hc;
+    }
 
-	KeepAliveKey key = new KeepAliveKey(url, obj);
-	ClientVector v = (ClientVector)super.get(key);
+    /**
+     * Returns the number of lookups that were satisfied from the cache.
+     */
+    public synchronized long getHits() {
+	return hits;
+    }
 
-	if (v == null) {
-	    int keepAliveTimeout = http.getKeepAliveTimeout();
-	    v = new ClientVector(keepAliveTimeout > 0?
-				 keepAliveTimeout*1000 : LIFETIME);
-	    v.put(http);
-	    super.put(key, v);
-	} else {
-	    v.put(http);
-	}
+    /**
+     * Returns the number of lookups that found no usable connection.
+     */
+    public synchronized long getMisses() {
+	return misses;
     }
 
-    /* remove an obsolete HttpClient from it's VectorCache */
-    public synchronized void remove (HttpClient h, Object obj) {
- 	KeepAliveKey key = new KeepAliveKey(h.url, obj);
-  	ClientVector v = (ClientVector)super.get(key);
- 	if (v != null) {
- 	    v.remove(h);
- 	    if (v.empty()) {
- 		removeVector(key);
- 	    }
-  	}
-    }
-
-    /* called by a clientVector thread when all it's connections have timed out
-     * and that vector of connections should be removed.
+    /**
+     * Returns the number of idle connections closed to stay within
+     * the per-destination or global limits.
      */
-    synchronized void removeVector(KeepAliveKey k) {
-	super.remove(k);
+    public synchronized long getEvictions() {
+	return evictions;
     }
 
     /**
-     * Check to see if this URL has a cached HttpClient
+     * Returns the number of idle connections closed because their
+     * keep-alive timeout elapsed.
      */
-    public synchronized Object get(URL url, Object obj) {
+    public synchronized long getExpirations() {
+	return expirations;
+    }
 
-	KeepAliveKey key = new KeepAliveKey(url, obj);
-	ClientVector v = (ClientVector)super.get(key);
-	if (v == null) { // nothing in cache yet
-	    return null;
-	}
-	return v.get();
+    /**
+     * Returns the number of idle connections currently in the cache.
+     */
+    public synchronized int size() {
+	return idleCount;
     }
 
-    /* Sleeps for an alloted timeout, then checks for timed out connections.
-     * Errs on the side of caution (leave connections idle for a relatively
-     * short time).
+    public synchronized String toString() {
+	return "KeepAliveCache[idle=" + idleCount + ",routes=" + routes.size()
+	    + ",hits=" + hits + ",misses=" + misses
+	    + ",evictions=" + evictions + ",expirations=" + expirations + "]";
+    }
+
+    /* Advances the timing wheel one tick at a time and closes the
+     * connections whose idle timeout has elapsed.  Only the bucket for
+     * the current tick is examined; entries that hash to it but are due
+     * in a later revolution of the wheel are left in place.
      */
     public void run() {
-	int total_cache;
+	boolean done;
 	do {
 	    try {
-		Thread.sleep(LIFETIME);
+		Thread.sleep(TICK);
 	    } catch (InterruptedException e) {}
+	    ArrayList toClose = null;
+	    done = false;
 	    synchronized (this) {
-		/* Remove all unused HttpClients.  Starting from the
-		 * bottom of the stack (the least-recently used first).
-		 * TODO: It'd be nice to not remove *all* connections
-		 * that aren't presently in use.  One could have been added
-		 * a second ago that's still perfectly valid, and we're
-		 * needlessly axing it.  But it's not clear how to do this
-		 * cleanly, and doing it right may be more trouble than it's
-		 * worth.
-		 */
-		
-		long currentTime = System.currentTimeMillis(); 
-
-		Iterator itr = keySet().iterator();
-		ArrayList keysToRemove = new ArrayList();
-		
-		while (itr.hasNext()) {
-		    KeepAliveKey key = (KeepAliveKey)itr.next();
-		    ClientVector v = (ClientVector)get(key);
-		    synchronized (v) {
-			int i; 
-
-			for (i = 0; i < v.size(); i++) { 
-			    KeepAliveEntry e = (KeepAliveEntry)v.elementAt(i);
-			    if ((currentTime - e.idleStartTime) > v.nap) { 
-				HttpClient h = e.hc; 
-				h.closeServer();
-			    } else {
-				break;
+		long currentTime = System.currentTimeMillis();
+		long tick = currentTime / TICK;
+		if (lastTick < 0 || tick - lastTick > WHEEL_SIZE) {
+		    lastTick = tick - WHEEL_SIZE;
+		}
+		while (lastTick < tick) {
+		    lastTick++;
+		    int slot = (int)(lastTick % WHEEL_SIZE);
+		    KeepAliveEntry e = wheel[slot];
+		    while (e != null) {
+			KeepAliveEntry next = e.wheelNext;
+			if (currentTime >= e.deadline) {
+			    unlink(e);
+			    expirations++;
+			    if (toClose == null) {
+				toClose = new ArrayList();
 			    }
-			} 
-			v.subList(0, i).clear(); 
-			
-			if (v.size() == 0) { 
-			    keysToRemove.add(key);
+			    toClose.add(e.hc);
 			}
+			e = next;
 		    }
 		}
-		itr = keysToRemove.iterator();
-		while (itr.hasNext()) {
-		    removeVector((KeepAliveKey)itr.next());
+		/* let the timer die with an empty cache; put() restarts it */
+		if (idleCount == 0) {
+		    keepAliveTimer = null;
+		    done = true;
 		}
 	    }
-	} while (size() > 0); 
-	
-	return;
+	    closeAll(toClose);
+	} while (!done);
     }
 
-    /*
-     * Do not serialize this class!
+    /* Start the Keep-Alive-Timer if it is not running. Called with the
+     * cache lock held.
      */
-    private void writeObject(java.io.ObjectOutputStream stream)
-    throws IOException {
-	throw new NotSerializableException();
+    private void ensureTimer() {
+	if (keepAliveTimer != null && keepAliveTimer.isAlive()) {
+	    return;
+	}
+	/* Unfortunately, we can't always believe the keep-alive timeout we got
+	 * back from the server.  If I'm connected through a Netscape proxy
+	 * to a server that sent me a keep-alive
+	 * time of 15 sec, the proxy unilaterally terminates my connection
+	 * The robustness to to get around this is in HttpClient.parseHTTP()
+	 */
+	final KeepAliveCache cache = this;
+	java.security.AccessController.doPrivileged(
+	    new java.security.PrivilegedAction() {
+	    public Object run() {
+	       // We want to create the Keep-Alive-Timer in the
+		// system threadgroup
+		ThreadGroup grp = Thread.currentThread().getThreadGroup();
+		ThreadGroup parent = null;
+		while ((parent = grp.getParent()) != null) {
+		    grp = parent;
+		}
+
+		keepAliveTimer = new Thread(grp, cache, "Keep-Alive-Timer");
+		keepAliveTimer.setDaemon(true);
+		keepAliveTimer.setPriority(Thread.MAX_PRIORITY - 2);
+		keepAliveTimer.start();
+		return null;
+	    }
+	});
     }
 
-    private void readObject(java.io.ObjectInputStream stream)
-    throws IOException, ClassNotFoundException {
-	throw new NotSerializableException();
+    /* Remove e from the cache and queue its connection for closing */
+    private ArrayList evict(KeepAliveEntry e, ArrayList toClose) {
+	if (e == null) {
+	    return toClose;
+	}
+	unlink(e);
+	evictions++;
+	if (toClose == null) {
+	    toClose = new ArrayList();
+	}
+	toClose.add(e.hc);
+	return toClose;
     }
-}
 
-/* FILO order for recycling HttpClients, should run in a thread
- * to time them out.  If > maxConns are in use, block.
- */
+    /* Remove e from its destination, the LRU list and the timing wheel */
+    private void unlink(KeepAliveEntry e) {
+	ClientVector v = e.owner;
+	v.remove(e);
+	if (v.empty()) {
+	    routes.remove(v.key);
+	}
+	lruRemove(e);
+	wheelRemove(e);
+	idleCount--;
+    }
+
+    private void lruAppend(KeepAliveEntry e) {
+	e.lruPrev = lruTail;
+	e.lruNext = null;
+	if (lruTail != null) {
+	    lruTail.lruNext = e;
+	} else {
+	    lruHead = e;
+	}
+	lruTail = e;
+    }
+
+    private void lruRemove(KeepAliveEntry e) {
+	if (e.lruPrev != null) {
+	    e.lruPrev.lruNext = e.lruNext;
+	} else {
+	    lruHead = e.lruNext;
+	}
+	if (e.lruNext != null) {
+	    e.lruNext.lruPrev = e.lruPrev;
+	} else {
+	    lruTail = e.lruPrev;
+	}
+	e.lruPrev = e.lruNext = null;
+    }
 
+    private void wheelAdd(KeepAliveEntry e) {
+	int slot = (int)((e.deadline / TICK + 1) % WHEEL_SIZE);
+	e.slot = slot;
+	e.wheelPrev = null;
+	e.wheelNext = wheel[slot];
+	if (wheel[slot] != null) {
+	    wheel[slot].wheelPrev = e;
+	}
+	wheel[slot] = e;
+    }
 
-class ClientVector extends java.util.Stack {
-    private static final long serialVersionUID = -8680532108106489459L;
+    private void wheelRemove(KeepAliveEntry e) {
+	if (e.wheelPrev != null) {
+	    e.wheelPrev.wheelNext = e.wheelNext;
+	} else {
+	    wheel[e.slot] = e.wheelNext;
+	}
+	if (e.wheelNext != null) {
+	    e.wheelNext.wheelPrev = e.wheelPrev;
+	}
+	e.wheelPrev = e.wheelNext = null;
+    }
+
+    private static void closeAll(ArrayList clients) {
+	if (clients == null) {
+	    return;
+	}
+	for (int i = 0; i < clients.size(); i++) {
+	    ((HttpClient)clients.get(i)).closeServer();
+	}
+    }
+}
+
+/* FILO order for recycling HttpClients of a single destination.  The
+ * entries are linked through KeepAliveEntry.prev/next, newest at the
+ * head.  All access is guarded by the owning KeepAliveCache.
+ */
+class ClientVector {
 
     // sleep time in milliseconds, before cache clear
     int nap;
 
-    
+    final KeepAliveKey key;
+
+    private KeepAliveEntry head = null;
+    private KeepAliveEntry tail = null;
+    private int count = 0;
 
-    ClientVector (int nap) {
+    ClientVector (KeepAliveKey key, int nap) {
+	this.key = key;
 	this.nap = nap;
     }
 
-    synchronized HttpClient get() {
-	if (empty()) {
-	    return null;
-	} else {
-	    // Loop until we find a connection that has not timed out
-	    HttpClient hc = null;
-	    long currentTime = System.currentTimeMillis();
-	    do {
-		KeepAliveEntry e = (KeepAliveEntry)pop();
-		if ((currentTime - e.idleStartTime) > nap) {
-		    e.hc.closeServer();
-		} else {
-		    hc = e.hc;
-		}
-	    } while ((hc== null) && (!empty()));
-	    return hc;
-	}
+    int size() {
+	return count;
+    }
+
+    boolean empty() {
+	return count == 0;
+    }
+
+    /* most recently returned connection */
+    KeepAliveEntry newest() {
+	return head;
     }
 
-    /* return a still valid, unused HttpClient */
-    synchronized void put(HttpClient h) {
-	if (size() > KeepAliveCache.getMaxConnections()) { 
-	    h.closeServer(); // otherwise the connection remains in limbo
+    /* least recently returned connection */
+    KeepAliveEntry oldest() {
+	return tail;
+    }
+
+    void push(KeepAliveEntry e) {
+	e.prev = null;
+	e.next = head;
+	if (head != null) {
+	    head.prev = e;
 	} else {
-	    push(new KeepAliveEntry(h, System.currentTimeMillis()));
+	    tail = e;
 	}
+	head = e;
+	count++;
     }
 
-    /*
-     * Do not serialize this class!
-     */
-    private void writeObject(java.io.ObjectOutputStream stream)
-    throws IOException {
-	throw new NotSerializableException();
+    void remove(KeepAliveEntry e) {
+	if (e.prev != null) {
+	    e.prev.next = e.next;
+	} else {
+	    head = e.next;
+	}
+	if (e.next != null) {
+	    e.next.prev = e.prev;
+	} else {
+	    tail = e.prev;
+	}
+	e.prev = e.next = null;
+	count--;
     }
 
-    private void readObject(java.io.ObjectInputStream stream)
-    throws IOException, ClassNotFoundException {
-	throw new NotSerializableException();
+    KeepAliveEntry find(HttpClient h) {
+	for (KeepAliveEntry e = head; e != null; e = e.next) {
+	    if (e.hc == h) {
+		return e;
+	    }
+	}
+	return null;
     }
 }
 
@@ -334,10 +536,21 @@ class KeepAliveKey {
 
 class KeepAliveEntry {
     HttpClient hc;
-    long idleStartTime;
+    long deadline;
+
+    /* destination list */
+    ClientVector owner;
+    KeepAliveEntry prev, next;
+
+    /* global LRU list */
+    KeepAliveEntry lruPrev, lruNext;
+
+    /* timing wheel bucket */
+    int slot;
+    KeepAliveEntry wheelPrev, wheelNext;
     
-    KeepAliveEntry(HttpClient hc, long idleStartTime) {
+    KeepAliveEntry(HttpClient hc, ClientVector owner) {
 	this.hc = hc;
-	this.idleStartTime = idleStartTime;
+	this.owner = owner;
     }
 }
@@ -145,6 +145,16 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
     /* post stream _to_ the server, if any */
     private PosterOutputStream poster = null;
 
+    /* request body streaming, see setFixedLengthStreamingMode() and
+     * setChunkedStreamingMode().  At most one of them is set.
+     */
+    private int fixedContentLength = -1;
+    private int chunkLength = -1;
+    private StreamingOutputStream strOutputStream = null;
+
+    /* default chunk size for setChunkedStreamingMode(0) */
+    static final int DEFAULT_CHUNK_SIZE = 4096;
+
     /* Indicates if the std. request headers have been set in requests. */
     private boolean setRequests=false;
 
@@ -304,10 +314,23 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
 		    requests.set("Content-Length", 
 				 String.valueOf(poster.size()));
 		}
+	    } else if (streaming()) {
+		/* the body follows the header directly */
+		if (!method.equals("PUT")) {
+		    String type = "application/x-www-form-urlencoded";
+		    requests.setIfNotSet("Content-Type", type);
+		}
+		if (fixedContentLength != -1) {
+		    requests.set("Content-Length",
+				 String.valueOf(fixedContentLength));
+		} else {
+		    requests.set("Transfer-Encoding", "chunked");
+		}
 	    }
 	    setRequests=true;
 	}
-	final int bytesWritten = http.writeRequests(requests, poster);
+	final int bytesWritten = http.writeRequests(requests, poster,
+						    streaming());
         java.security.AccessController.doPrivileged(new java.security.PrivilegedAction() {
             public Object run() {
                 if (NetworkMetrics.metricsAvailable()) {
@@ -531,6 +554,61 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
         return result[0];
     }
 
+    /**
+     * Send the request body without buffering it, with a
+     * Content-Length header of <code>contentLength</code>.  The body
+     * is written to the connection as the application writes it, so
+     * exactly that many bytes must be written.  Requests that need
+     * authentication or are redirected cannot be retried in this mode.
+     *
+     * @param contentLength the number of bytes that will be written
+     * @exception IllegalStateException if already connected or if a
+     *            different streaming mode has been set
+     * @exception IllegalArgumentException if contentLength is negative
+     */
+    public void setFixedLengthStreamingMode(int contentLength) {
+	if (connected) {
+	    throw new IllegalStateException("Already connected");
+	}
+	if (chunkLength != -1) {
+	    throw new IllegalStateException(
+		"Chunked encoding streaming mode set");
+	}
+	if (contentLength < 0) {
+	    throw new IllegalArgumentException("invalid content length");
+	}
+	fixedContentLength = contentLength;
+    }
+
+    /**
+     * Send the request body without buffering it, using the chunked
+     * transfer coding.  Data is sent in chunks of at most
+     * <code>chunklen</code> bytes as it is written.  Requests that need
+     * authentication or are redirected cannot be retried in this mode.
+     *
+     * @param chunklen the chunk size, or a value <= 0 for the default
+     * @exception IllegalStateException if already connected or if a
+     *            different streaming mode has been set
+     */
+    public void setChunkedStreamingMode(int chunklen) {
+	if (connected) {
+	    throw new IllegalStateException("Already connected");
+	}
+	if (fixedContentLength != -1) {
+	    throw new IllegalStateException(
+		"Fixed length streaming mode set");
+	}
+	chunkLength = (chunklen <= 0) ? DEFAULT_CHUNK_SIZE : chunklen;
+    }
+
+    /* true if the request body is streamed rather than buffered.
+     * A streaming mode is ignored when there is no request body.
+     */
+    boolean streaming() {
+	return doOutput &&
+	    ((fixedContentLength != -1) || (chunkLength != -1));
+    }
+
     // overridden in HTTPS subclass
 
     public void connect() throws IOException {
@@ -613,6 +691,15 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
 	     */
 	    ps = (PrintStream)http.getOutputStream();
 
+	    if (streaming()) {
+		if (strOutputStream == null) {
+		    writeRequests();
+		    strOutputStream = new StreamingOutputStream(ps,
+			fixedContentLength, chunkLength);
+		}
+		return strOutputStream;
+	    }
+
 	    if (poster == null)
 		poster = new PosterOutputStream();
 	    return poster;
@@ -656,7 +743,18 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
 	AuthenticationInfo serverAuthentication = null;
 	AuthenticationInfo proxyAuthentication = null;
 	AuthenticationHeader srvHdr = null; 
+	boolean streamedRequest = false;
 	try {
+	    if (streaming()) {
+		/* send the header now if the body was never asked for */
+		if (strOutputStream == null) {
+		    getOutputStream();
+		}
+		strOutputStream.close();
+		if (!strOutputStream.writtenOK()) {
+		    throw new IOException("Incomplete request body");
+		}
+	    }
 	    do {
 
 		pe = new ProgressEntry(url.getFile(), null);
@@ -670,7 +768,20 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
 		 */
 		ps = (PrintStream)http.getOutputStream();
 
-		writeRequests();
+		if (strOutputStream != null) {
+		    /* a streamed body is gone once it has been sent, so
+		     * authentication and redirects cannot be retried
+		     */
+		    if (streamedRequest) {
+			disconnectInternal();
+			throw new ProtocolException("cannot retry due to "
+			    + "server authentication or redirection, "
+			    + "in streaming mode");
+		    }
+		    streamedRequest = true;
+		} else {
+		    writeRequests();
+		}
 		http.parseHTTP(responses, pe);
 		inputStream = new HttpInputStream (http.getInputStream());
 
@@ -1583,6 +1694,132 @@ public class HttpURLConnection extends java.net.HttpURLConnection {
 	return method;
     }
 
+    /**
+     * Writes the request body straight to the server, either with a
+     * fixed Content-Length or using the chunked transfer coding.
+     */
+    static class StreamingOutputStream extends FilterOutputStream {
+
+	private final PrintStream out;
+	private final int expected;
+	private int written = 0;
+	private final byte[] chunk;
+	private int chunkCount = 0;
+	private boolean closed = false;
+	private boolean error = false;
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+	/**
+	 * @param out the server output stream
+	 * @param expectedLength the Content-Length, or -1 if chunked
+	 * @param chunkLength the chunk size if expectedLength is -1
+	 */
+	StreamingOutputStream(PrintStream out, int expectedLength,
+			      int chunkLength) {
+	    super(out);
+	    this.out = out;
+	    this.expected = expectedLength;
+	    this.chunk = (expectedLength == -1) ? new byte[chunkLength] : null;
+	}
+
+	public void write(int b) throws IOException {
+	    checkWrite(1);
+	    if (chunk != null) {
+		if (chunkCount == chunk.length) {
+		    writeChunk();
+		}
+		chunk[chunkCount++] = (byte)b;
+	    } else {
+		out.write(b);
+	    }
+	    written++;
+	    checkError();
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (off < 0 || len < 0 || off + len > b.length) {
+		throw new IndexOutOfBoundsException();
+	    }
+	    checkWrite(len);
+	    written += len;
+	    if (chunk == null) {
+		out.write(b, off, len);
+	    } else {
+		while (len > 0) {
+		    if (chunkCount == chunk.length) {
+			writeChunk();
+		    }
+		    int n = Math.min(len, chunk.length - chunkCount);
+		    System.arraycopy(b, off, chunk, chunkCount, n);
+		    chunkCount += n;
+		    off += n;
+		    len -= n;
+		}
+	    }
+	    checkError();
+	}
+
+	public void flush() throws IOException {
+	    if (chunk != null && chunkCount > 0) {
+		writeChunk();
+	    }
+	    out.flush();
+	    checkError();
+	}
+
+	/* Finish the body; does not close the connection */
+	public void close() throws IOException {
+	    if (closed) {
+		return;
+	    }
+	    closed = true;
+	    if (chunk != null) {
+		if (chunkCount > 0) {
+		    writeChunk();
+		}
+		out.write(LAST_CHUNK, 0, LAST_CHUNK.length);
+	    } else if (written != expected) {
+		error = true;
+		throw new IOException("insufficient data written");
+	    }
+	    out.flush();
+	    checkError();
+	}
+
+	/* true if the complete body has been sent */
+	boolean writtenOK() {
+	    return closed && !error;
+	}
+
+	private void checkWrite(int len) throws IOException {
+	    if (closed) {
+		throw new IOException("Stream is closed");
+	    }
+	    if (expected != -1 && written + len > expected) {
+		error = true;
+		throw new IOException("too many bytes written");
+	    }
+	}
+
+	private void writeChunk() {
+	    byte[] header = (Integer.toHexString(chunkCount) + "\r\n")
+		.getBytes();
+	    out.write(header, 0, header.length);
+	    out.write(chunk, 0, chunkCount);
+	    out.write(CRLF, 0, CRLF.length);
+	    chunkCount = 0;
+	}
+
+	private void checkError() throws IOException {
+	    if (out.checkError()) {
+		error = true;
+		throw new IOException("Error writing request body to server");
+	    }
+	}
+    }
+
     /* The purpose of this wrapper is just to capture the close() call
      * so we can check authentication information that may have
      * arrived in a Trailer field
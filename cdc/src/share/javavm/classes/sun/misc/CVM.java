@@ -156,6 +156,15 @@ public final class CVM {
 		    return parseStatus;
 		}
 		// continue with VM execution
+	    } else if (args[i].startsWith("-Xwarmup:")) {
+		String warmupArg = args[i].substring(9);
+		if (!Warmup.parseProfileOption(warmupArg)) {
+		    System.err.println("Error parsing warmup args " + args[i]);
+		    usage(nativeOptions);
+		    parseStatus = ARG_PARSE_ERR;
+		    return parseStatus;
+		}
+		// continue with VM execution
 	    } else if (args[i].startsWith("-Xverify:")) {
 		String verifyArg = args[i].substring(9);
 		if (!CVM.parseVerifyOptions(verifyArg)) {
@@ -515,6 +524,7 @@ public final class CVM {
 
 	{
 	    ClassLoader sys = ClassLoader.getSystemClassLoader();
+	    Warmup.startLaunchProfile();
 	    Class mainClass = sys.loadClass(mainClassName);
 	    Class [] args = {mainArgs.getClass()};
 	    Method mainMethod = mainClass.getMethod("main", args);
@@ -44,4 +44,14 @@ public class JIT {
     public static native boolean neverCompileMethod(Member m);
 
     public static native boolean reparseJitOptions(String optionString);
+
+    //
+    // Profile support for sun.misc.Warmup
+    // Both return the VM-internal ("slashified") names of classes defined
+    // by the given loader (null for the boot loader). ROMized classes
+    // are not reported by getLoadedClasses(). getCompiledMethods()
+    // returns null if JIT unsupported.
+    //
+    public static native String[] getLoadedClasses(ClassLoader loader);
+    public static native String[] getCompiledMethods(ClassLoader loader);
 }
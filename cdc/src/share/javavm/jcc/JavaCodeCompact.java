@@ -32,6 +32,8 @@ import runtime.*;
 import util.Assert;
 import util.*;
 import jcc.*;
+import dependenceAnalyzer.MemberDependenceAnalyzer;
+import dependenceAnalyzer.MemberReachability;
 
 import java.io.FileReader;
 import java.io.BufferedReader;
@@ -42,7 +44,10 @@ import java.io.File;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.Vector;
 import components.ClassLoader;
 
@@ -74,6 +79,21 @@ public class JavaCodeCompact extends LinkerUtil {
     ClassnameFilterList extraHeaders = new ClassnameFilterList();
     int		maxSegmentSize = -1;
     boolean	firstTimeOnly = true;
+    /** Number of threads used to parse class files. */
+    int		threads = Runtime.getRuntime().availableProcessors();
+    /** Optional method profile used to lay out hot code together. */
+    MethodProfile profile;
+    /** Files of roots for -stripUnreachable. If none, nothing is stripped. */
+    Vector	stripRootFiles = new Vector();
+    /** Names of the classes that -stripUnreachable removed. */
+    Hashtable	strippedClasses = new Hashtable();
+
+    /* Time spent in each phase, in milliseconds, for -v. */
+    long	readTime;
+    long	closureTime;
+    long	tableTime;
+    long	prepareTime;
+    long	writeTime;
 
     /* arguments for JavaAPILister */
     static String      APIListerArgs = null;
@@ -101,6 +121,8 @@ public class JavaCodeCompact extends LinkerUtil {
 	if (rdr == null){
 	    rdr = new ClassReader(verbosity);
 	}
+	rdr.setThreads(threads);
+	long start = System.currentTimeMillis();
 	try {
 	    if (fileName.endsWith(".zip") || fileName.endsWith(".jar")){ 
 		rdr.readZip(fileName, classesRead);
@@ -113,6 +135,8 @@ public class JavaCodeCompact extends LinkerUtil {
                 "javacodecompact.could_not_read_file", fileName));
 	    e.printStackTrace();
 	    return false;
+	} finally {
+	    readTime += System.currentTimeMillis() - start;
 	}
 	return true;
     }
@@ -203,6 +227,16 @@ public class JavaCodeCompact extends LinkerUtil {
 	    } else if ( clist[i].equals(/*NOI18N*/"-v") ){
 		verbosity++;
 		continue;
+	    } else if ( clist[i].equals(/*NOI18N*/"-threads") ){
+		String arg = clist[++i];
+		try {
+		    threads = Math.max(Integer.parseInt(arg), 1);
+		} catch (NumberFormatException ex) {
+		    System.err.println(Localizer.getString(
+                        "javacodecompact.invalid_thread_count"));
+		    success = false;
+		}
+		continue;
 	    } else if ( clist[i].equals(/*NOI18N*/"-o")  ){
 		outName =  clist[ ++i ];
 	    } else if ( clist[i].equals(/*NOI18N*/"-classpath")  ){
@@ -266,6 +300,19 @@ public class JavaCodeCompact extends LinkerUtil {
 	    } else if ( clist[i].equals("-validate") ){
 		// validate data structures before writing output
 		validate = true;
+            } else if ( clist[i].equals("-profile") ){
+		// methods and classes used at startup, hot first
+		String fileName = clist[++i];
+		try {
+		    profile = MethodProfile.read(fileName);
+		} catch (IOException ioe) {
+		    System.err.println(Localizer.getString(
+			"javacodecompact.bad_profile_file", fileName));
+		    success = false;
+		}
+            } else if ( clist[i].equals("-stripUnreachable") ){
+		// keep only what is reachable from the roots in the file
+		stripRootFiles.addElement(clist[++i]);
             } else if ( clist[i].equals("-excludeFile") ){
                 // A file containing a list of methods & fields to exclude
                 readExcludeFile(clist[++i]);
@@ -326,35 +373,32 @@ public class JavaCodeCompact extends LinkerUtil {
 	return success;
     }
 
-    private boolean loadClass(ClassLoader cl, String classname,
-	Vector oneClass) throws Exception
+    /*
+     * Reads the named class using the search path of cl or, first, of
+     * its parents.  Returns the loader whose search path had the class,
+     * or null if none did.  The class is not entered into the class
+     * table, so this may run on several threads at once.
+     */
+    private ClassLoader findClass(ClassLoader cl, String classname,
+	Vector oneClass)
     {
 	ClassLoader parent = cl.getParent();
 	if (parent != null) {
-	    if (loadClass(parent, classname, oneClass)) {
-		return true;
+	    ClassLoader found = findClass(parent, classname, oneClass);
+	    if (found != null) {
+		return found;
 	    }
 	}
 	ClassFileFinder searchPath = cl.getSearchPath();
 	if (searchPath == null) {
 	    // If the search path is empty, then there is no place else
 	    // to look for the class.  So, fail:
-	    return false;
+	    return null;
 	}
 
 	int nfound = rdr.readClass(classname, searchPath, oneClass);
 
-	if (nfound == 1) {
-	    // Add class to the appropriate classloader
-	    ClassInfo ci = (ClassInfo)oneClass.elementAt(0);
-
-	    if (!ClassTable.enterClass(ci, cl)) {
-		throw new Exception();
-	    }
-	    return true;
-	} else {
-	    return false;
-	}
+	return (nfound == 1) ? cl : null;
     }
 
     /**
@@ -379,17 +423,35 @@ public class JavaCodeCompact extends LinkerUtil {
             Assert.allowClassloading();
             if (unresolved == null)
 		break; // none left!
-	    int nfound = 0;
 	    Vector processedThisTime = new Vector();
-	    for( int i=0; i < unresolved.length; i++){
-		try {
-		    Vector oneClass = new Vector();
-		    loadClass(ClassTable.getClassLoader(), unresolved[i],
-			oneClass);
-		    processedThisTime.addAll(oneClass);
-		} catch (Exception e) {
+	    // Read this round's classes in parallel, then add them to
+	    // the class table in a fixed order.
+	    final String names[] = unresolved;
+	    final ClassLoader loader = ClassTable.getClassLoader();
+	    final Vector found[] = new Vector[names.length];
+	    final ClassLoader foundIn[] = new ClassLoader[names.length];
+	    try {
+		ParallelRunner.run(threads, names.length,
+				   new ParallelRunner.Job() {
+		    public void run(int i) {
+			found[i] = new Vector(1);
+			foundIn[i] = findClass(loader, names[i], found[i]);
+		    }
+		});
+	    } catch (Exception e) {
+		e.printStackTrace();
+		return false;
+	    }
+	    for( int i=0; i < names.length; i++){
+		if (foundIn[i] == null) {
+		    continue;
+		}
+		// Add class to the appropriate classloader
+		ClassInfo ci = (ClassInfo)found[i].elementAt(0);
+		if (!ClassTable.enterClass(ci, foundIn[i])) {
 		    return false;
 		}
+		processedThisTime.addAll(found[i]);
 	    }
 
 	    // If we have gone through an iteration when we weren't able to
@@ -426,10 +488,17 @@ public class JavaCodeCompact extends LinkerUtil {
          * processing associated with resolution yet.  That part is done
          * later.
          */
-        if (!doClosure()) {
+	long start = System.currentTimeMillis();
+	boolean closed = doClosure();
+	closureTime += System.currentTimeMillis() - start;
+        if (!closed) {
 	    return false;
 	}
 
+	start = System.currentTimeMillis();
+	if (doWrite && stripRootFiles.size() != 0 && !stripUnreachable()) {
+	    return false;
+	}
 	ClassInfo c[] = ClassTable.allClasses();
 	nclasses = c.length;
 
@@ -451,6 +520,8 @@ public class JavaCodeCompact extends LinkerUtil {
 	    }
 	}
 
+	tableTime += System.currentTimeMillis() - start;
+
         // Warn if fields or methods marked for exclusion were not found
         checkExcludedClassEntries();
 
@@ -462,6 +533,7 @@ public class JavaCodeCompact extends LinkerUtil {
 	if (verbosity != 0) System.out.println(Localizer.getString(
 		"javacodecompact.writing_output_file"));
 
+	start = System.currentTimeMillis();
 	writeNativeHeaders( nativeTypes, c, nclasses );
 	writeNativeHeaders( extraHeaders, c, nclasses );
 
@@ -480,7 +552,9 @@ public class JavaCodeCompact extends LinkerUtil {
         // prepareClasses() is responsible for quickening bytecodes,
         // optimizing the bytecode, constantpools, etc.  This is where
         // CP resolution as the VM knows it is done.
-        if (!prepareClasses(c) || !good) {
+        good = prepareClasses(c) && good;
+	prepareTime += System.currentTimeMillis() - start;
+        if (!good) {
 	    return false;
 	}
 
@@ -488,7 +562,13 @@ public class JavaCodeCompact extends LinkerUtil {
 	    makeOutfileName();
 	}
 
+	start = System.currentTimeMillis();
 	good = writeROMFile( outName, c, romAttributes, doWrite );
+	writeTime += System.currentTimeMillis() - start;
+
+	if (verbosity != 0) {
+	    printTimes();
+	}
 
         /* Don't destroy class vector. The JavaAPILister
          * needs to access class typeids, which come
@@ -500,6 +580,21 @@ public class JavaCodeCompact extends LinkerUtil {
 	return good;
     }
 
+    private void printTimes() {
+	System.out.println(Localizer.getString("javacodecompact.times",
+	    Integer.toString(threads)));
+	printTime("javacodecompact.time_read", readTime);
+	printTime("javacodecompact.time_closure", closureTime);
+	printTime("javacodecompact.time_tables", tableTime);
+	printTime("javacodecompact.time_prepare", prepareTime);
+	printTime("javacodecompact.time_write", writeTime);
+    }
+
+    private static void printTime(String key, long millis) {
+	System.out.println("\t" + Localizer.getString(key,
+	    Long.toString(millis)));
+    }
+
     public static void main( String clist[] ){
 	boolean success = false;
 	try {
@@ -592,6 +687,14 @@ public class JavaCodeCompact extends LinkerUtil {
 		    if (cc.isResolved()){
 			continue; // not interesting
 		    }
+		    int base = cname.lastIndexOf(Const.SIGC_ARRAY) + 1;
+		    if (cname.charAt(base) == Const.SIGC_CLASS &&
+			strippedClasses.get(cname.substring(base + 1,
+				cname.length() - 1)) != null) {
+			// only code that was stripped used this array class
+			cc.forget();
+			continue;
+		    }
 		    if (!vm.ArrayClassInfo.collectArrayClass(cname, c.loader, verbose)) {
 			good = false;
 		    }
@@ -807,6 +910,7 @@ public class JavaCodeCompact extends LinkerUtil {
 	//
 	w.init(classDebug, qlossless, nativeTypes, verbosity>0, 
 	       maxSegmentSize, true);
+	w.setProfile(profile);
 
 	Enumeration attr = attributes.elements();
 	while ( attr.hasMoreElements() ){
@@ -823,10 +927,10 @@ public class JavaCodeCompact extends LinkerUtil {
 	    return false;
 	} else {
 	    boolean good = w.writeClasses(sharedConstantPools, doWrite);
-	    w.printSpaceStats(System.out);
 	    if (doWrite) {
 		w.close();
 	    }
+	    w.printSpaceStats(System.out);
 	    return good;
 	}
     }
@@ -1081,6 +1185,310 @@ public class JavaCodeCompact extends LinkerUtil {
         return;
     }
 
+    /*
+     * Members the VM, or the serialization code, use by name. They
+     * are kept in every class that is used at all.
+     */
+    private static final String implicitMembers[] = {
+	"<clinit>()V",
+	"writeObject(Ljava/io/ObjectOutputStream;)V",
+	"readObject(Ljava/io/ObjectInputStream;)V",
+	"readObjectNoData()V",
+	"writeReplace()Ljava/lang/Object;",
+	"readResolve()Ljava/lang/Object;",
+	"serialVersionUID",
+	"serialPersistentFields",
+    };
+
+    /*
+     * Rough sizes, in bytes, of the ROM structures written for a
+     * class, a method and a field. Used only to report savings.
+     */
+    private static final int CLASSBLOCK_SIZE  = 96;
+    private static final int METHODBLOCK_SIZE = 32;
+    private static final int FIELDBLOCK_SIZE  = 8;
+
+    private static boolean isStrippable(ClassInfo ci) {
+	return !(ci instanceof PrimitiveClassInfo) &&
+	       !(ci instanceof ArrayClassInfo);
+    }
+
+    /*
+     * -stripUnreachable: find the members reachable from the roots
+     * using the member dependence analyzer, then remove all other
+     * members, and the classes nothing reachable needs. Classes that
+     * the VM reaches from native code are kept whole. This must run
+     * before the field and method tables are built.
+     */
+    private boolean stripUnreachable() {
+	if (ClassTable.getNumClassLoaders() != 0) {
+	    // The tables of the earlier loaders' classes are built.
+	    System.err.println(Localizer.getString(
+		"javacodecompact.strip_with_classloaders"));
+	    return true;
+	}
+	ClassInfo all[] = ClassTable.allClasses();
+	Hashtable byName = new Hashtable();
+	for (int i = 0; i < all.length; i++) {
+	    if (isStrippable(all[i])) {
+		byName.put(all[i].className, all[i]);
+	    }
+	}
+	MemberDependenceAnalyzer analyzer = new MemberDependenceAnalyzer(byName);
+	for (int i = 0; i < all.length; i++) {
+	    if (isStrippable(all[i])) {
+		analyzer.analyzeDependences(
+		    analyzer.classByName(all[i].className));
+	    }
+	}
+
+	MemberReachability reach = new MemberReachability(analyzer);
+	for (int i = 0; i < stripRootFiles.size(); i++) {
+	    if (!readStripRoots((String)stripRootFiles.elementAt(i),
+				reach, all)) {
+		return false;
+	    }
+	}
+	for (int i = 0; i < all.length; i++) {
+	    ClassInfo ci = all[i];
+	    if (isStrippable(ci) && (hasNativeMethods(ci) ||
+		    extraHeaders.getTypes(ci.className).length != 0 ||
+		    nativeTypes.isType(ci.className, "CNI"))) {
+		reach.keepClass(ci.className);
+	    }
+	}
+	reach.keepMember("java/lang/Object", "finalize()V");
+	for (int i = 0; i < implicitMembers.length; i++) {
+	    reach.keepInLiveClasses(implicitMembers[i]);
+	}
+	reach.compute();
+
+	// package name -> { bytes, classes, methods, fields } removed
+	TreeMap removed = new TreeMap();
+	for (int i = 0; i < all.length; i++) {
+	    ClassInfo ci = all[i];
+	    if (!isStrippable(ci)) {
+		continue;
+	    }
+	    String name = ci.className;
+	    if (!reach.isRetained(name)) {
+		int size = CLASSBLOCK_SIZE;
+		for (int j = 0; j < ci.methods.length; j++) {
+		    size += methodSize(ci.methods[j]);
+		}
+		size += FIELDBLOCK_SIZE * ci.fields.length;
+		countRemoved(removed, name, size, 1, ci.methods.length,
+			     ci.fields.length);
+		if (!ClassTable.removeClass(ci)) {
+		    return false;
+		}
+		classesProcessed.removeElement(ci);
+		strippedClasses.put(name, name);
+		continue;
+	    }
+	    Vector keptMethods = new Vector();
+	    for (int j = 0; j < ci.methods.length; j++) {
+		MethodInfo m = ci.methods[j];
+		if (reach.isReachable(name, m.name.string + m.type.string)) {
+		    m.index = keptMethods.size();
+		    keptMethods.addElement(m);
+		} else {
+		    countRemoved(removed, name, methodSize(m), 0, 1, 0);
+		}
+	    }
+	    Vector keptFields = new Vector();
+	    for (int j = 0; j < ci.fields.length; j++) {
+		FieldInfo f = ci.fields[j];
+		if (reach.isReachable(name, f.name.string)) {
+		    f.index = keptFields.size();
+		    keptFields.addElement(f);
+		} else {
+		    countRemoved(removed, name, FIELDBLOCK_SIZE, 0, 0, 1);
+		}
+	    }
+	    if (keptMethods.size() != ci.methods.length) {
+		ci.methods = new MethodInfo[keptMethods.size()];
+		keptMethods.copyInto(ci.methods);
+	    }
+	    if (keptFields.size() != ci.fields.length) {
+		ci.fields = new FieldInfo[keptFields.size()];
+		keptFields.copyInto(ci.fields);
+	    }
+	}
+
+	// Forget the inner classes that were removed.
+	ClassInfo kept[] = ClassTable.allClasses();
+	for (int i = 0; i < kept.length; i++) {
+	    InnerClassAttribute ica = kept[i].innerClassAttr;
+	    if (ica == null) {
+		continue;
+	    }
+	    ConstantObject cp[] = kept[i].getConstantPool().getConstants();
+	    for (int j = ica.getInnerClassCount() - 1; j >= 0; j--) {
+		if (isStripped(cp, ica.getInnerInfoIndex(j)) ||
+		    isStripped(cp, ica.getOuterInfoIndex(j))) {
+		    ica.removeEntry(j);
+		}
+	    }
+	}
+	printStripped(removed);
+	return true;
+    }
+
+    private boolean isStripped(ConstantObject cp[], int index) {
+	return index != 0 &&
+	    strippedClasses.get(((ClassConstant)cp[index]).name.string) != null;
+    }
+
+    private static boolean hasNativeMethods(ClassInfo ci) {
+	for (int i = 0; i < ci.methods.length; i++) {
+	    if ((ci.methods[i].access & Const.ACC_NATIVE) != 0) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static int methodSize(MethodInfo m) {
+	int size = METHODBLOCK_SIZE;
+	if (m.code != null) {
+	    size += m.code.length;
+	}
+	if (m.exceptionTable != null) {
+	    size += 8 * m.exceptionTable.length;
+	}
+	return size;
+    }
+
+    private static void countRemoved(TreeMap removed, String className,
+	int bytes, int classes, int methods, int fields)
+    {
+	int slash = className.lastIndexOf('/');
+	String pkg = (slash < 0) ? "" : className.substring(0, slash);
+	int counts[] = (int[])removed.get(pkg);
+	if (counts == null) {
+	    counts = new int[4];
+	    removed.put(pkg, counts);
+	}
+	counts[0] += bytes;
+	counts[1] += classes;
+	counts[2] += methods;
+	counts[3] += fields;
+    }
+
+    private void printStripped(TreeMap removed) {
+	int total[] = new int[4];
+	Iterator iter = removed.values().iterator();
+	while (iter.hasNext()) {
+	    int counts[] = (int[])iter.next();
+	    for (int i = 0; i < total.length; i++) {
+		total[i] += counts[i];
+	    }
+	}
+	System.out.println(Localizer.getString("javacodecompact.stripped",
+	    new String[] {
+		Integer.toString(total[1]), Integer.toString(total[2]),
+		Integer.toString(total[3]), Integer.toString(total[0]) }));
+	iter = removed.entrySet().iterator();
+	while (iter.hasNext()) {
+	    Map.Entry e = (Map.Entry)iter.next();
+	    int counts[] = (int[])e.getValue();
+	    String pkg = ((String)e.getKey()).replace('/', '.');
+	    System.out.println("\t" + Localizer.getString(
+		"javacodecompact.stripped_package", new String[] {
+		    Integer.toString(counts[0]),
+		    pkg.length() == 0 ? "<unnamed>" : pkg,
+		    Integer.toString(counts[1]), Integer.toString(counts[2]),
+		    Integer.toString(counts[3]) }));
+	}
+    }
+
+    /*
+     * Reads a file of roots for -stripUnreachable. Its lines are:
+     *	KEEP <classes>	every member of the classes is a root
+     *	API <classes>	the public and protected members of the public
+     *			classes are roots
+     *	CLASS <class>	the members listed after it, under FIELDS and
+     *			METHODS, are roots
+     * <classes> is a class name, or a package name ending in '*'.
+     * Members are listed as name:type, as -listapi writes them (mout=),
+     * so an API list can be used as it is. '#' starts a comment.
+     */
+    private boolean readStripRoots(String fileName, MemberReachability reach,
+	ClassInfo all[])
+    {
+	ClassnameFilter keep = new ClassnameFilter();
+	ClassnameFilter api = new ClassnameFilter();
+	try {
+	    BufferedReader r = new BufferedReader(new FileReader(fileName));
+	    String line;
+	    String clazz = null;
+	    while ((line = r.readLine()) != null) {
+		line = line.trim();
+		int colon = line.indexOf(':');
+		if (line.length() == 0 || line.startsWith("#") ||
+		    line.equals("FIELDS") || line.equals("METHODS")) {
+		    continue;
+		} else if (line.startsWith("KEEP ")) {
+		    keep.includeName(sanitizeClassname(
+			line.substring("KEEP ".length()).trim()));
+		} else if (line.startsWith("API ")) {
+		    api.includeName(sanitizeClassname(
+			line.substring("API ".length()).trim()));
+		} else if (line.startsWith("CLASS ")) {
+		    clazz = sanitizeClassname(
+			line.substring("CLASS ".length()).trim());
+		} else if (clazz != null && colon > 0 &&
+			   colon < line.length() - 1) {
+		    String type = line.substring(colon + 1);
+		    String member = line.substring(0, colon);
+		    if (type.charAt(0) == '(') {
+			member += type;
+		    }
+		    if (!reach.keepMember(clazz, member)) {
+			System.err.println(Localizer.getString(
+			    "javacodecompact.strip_root_not_found",
+			    clazz + "." + member, fileName));
+		    }
+		} else {
+		    System.err.println(Localizer.getString(
+			"javacodecompact.strip_parse_error", line));
+		}
+	    }
+	    r.close();
+	} catch (IOException ioe) {
+	    System.err.println(Localizer.getString(
+		"javacodecompact.bad_strip_file", fileName));
+	    return false;
+	}
+	for (int i = 0; i < all.length; i++) {
+	    ClassInfo ci = all[i];
+	    if (!isStrippable(ci)) {
+		continue;
+	    }
+	    if (keep.accept(null, ci.className)) {
+		reach.keepClass(ci.className);
+	    } else if (api.accept(null, ci.className) &&
+		       (ci.access & Const.ACC_PUBLIC) != 0) {
+		keepVisible(reach, ci.className, ci.methods, true);
+		keepVisible(reach, ci.className, ci.fields, false);
+	    }
+	}
+	return true;
+    }
+
+    private static void keepVisible(MemberReachability reach,
+	String className, ClassMemberInfo members[], boolean methods)
+    {
+	for (int i = 0; i < members.length; i++) {
+	    ClassMemberInfo m = members[i];
+	    if ((m.access & (Const.ACC_PUBLIC|Const.ACC_PROTECTED)) != 0) {
+		reach.keepMember(className, methods ?
+		    m.name.string + m.type.string : m.name.string);
+	    }
+	}
+    }
+
     // Ensure that we don't have any fields or methods marked for
     // exclusion which weren't found.
     private void checkExcludedClassEntries()
@@ -109,6 +109,11 @@ class ClassLoader
 	return true;
     }
 
+    void
+    removeClass(ClassInfo c){
+	classes.remove( c.className );
+    }
+
     public String getName() {
 	return name;
     }
@@ -147,6 +147,23 @@ class ClassTable
 	return true;
     }
 
+    /**
+     * Removes a class that is not to be part of the image, such as
+     * one found unreachable. Like enterClass, this must happen
+     * before the class vector is built.
+     */
+    public static boolean
+    removeClass(ClassInfo cinfo) {
+	if (vm.ClassClass.hasClassVector()){
+	    System.err.println(Localizer.getString(
+                "classtable.class_vector_in_place", cinfo.className));
+	    return false;
+	}
+	cinfo.loader.removeClass(cinfo);
+	allClasses.removeElement(cinfo);
+	return true;
+    }
+
     public static boolean
     enterClass(ClassInfo cinfo){
 	if (!(cinfo instanceof vm.ArrayClassInfo)) {
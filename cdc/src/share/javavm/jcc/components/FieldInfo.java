@@ -97,13 +97,16 @@ class FieldInfo extends ClassMemberInfo {
             // See if this field is to be discarded. The vector holds
             // the signature of fields to be excluded parsed into
             // class and fieldname portions
-            for (int i = 0 ; i < excludeList.size() ; i++) {
-                MemberNameTriple t =
-                    (MemberNameTriple)excludeList.elementAt(i);
-                if (t.sameMember(p.className, cpEntryName, null)) {
-                    excludeList.remove(i);
-                    return (FieldInfo)null;
-                } 
+            // Classes may be read on several threads at once.
+            synchronized (excludeList) {
+                for (int i = 0 ; i < excludeList.size() ; i++) {
+                    MemberNameTriple t =
+                        (MemberNameTriple)excludeList.elementAt(i);
+                    if (t.sameMember(p.className, cpEntryName, null)) {
+                        excludeList.remove(i);
+                        return (FieldInfo)null;
+                    } 
+                }
             }
         }
 	fi.flatten(cp);
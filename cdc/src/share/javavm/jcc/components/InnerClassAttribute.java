@@ -211,7 +211,6 @@ class InnerClassAttribute extends Attribute {
 
     public void
     removeEntry(int i) {
-System.out.println("*** Removing inner class "+ myInnerClassesArray[i].getFullName());
 //	myInnerClassesVector.remove(myInnerClassesArray[i]);
 	myInnerClassesVector.removeElement(myInnerClassesArray[i]);
 	
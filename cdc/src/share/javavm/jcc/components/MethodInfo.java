@@ -302,16 +302,19 @@ class MethodInfo extends ClassMemberInfo implements Const, Cloneable
             // See if this method is to be discarded. The vector holds
             // the signature of methods to be excluded parsed into
             // class, method & type portions.
-            for (int i = 0 ; i < excludeList.size() ; i++) {
-                String paramlist = constants[sig].toString();
-                paramlist = paramlist.substring(0, paramlist.indexOf(')')+1);
-                MemberNameTriple t =
-                    (MemberNameTriple)excludeList.elementAt(i);
-                if (t.sameMember(p.className, constants[name].toString(),
-                                 paramlist)) {
-                    excludeList.remove(i);
-                    return (MethodInfo)null;
-                } 
+            // Classes may be read on several threads at once.
+            synchronized (excludeList) {
+                for (int i = 0 ; i < excludeList.size() ; i++) {
+                    String paramlist = constants[sig].toString();
+                    paramlist = paramlist.substring(0, paramlist.indexOf(')')+1);
+                    MemberNameTriple t =
+                        (MemberNameTriple)excludeList.elementAt(i);
+                    if (t.sameMember(p.className, constants[name].toString(),
+                                     paramlist)) {
+                        excludeList.remove(i);
+                        return (MethodInfo)null;
+                    } 
+                }
             }
         }
 	return m;
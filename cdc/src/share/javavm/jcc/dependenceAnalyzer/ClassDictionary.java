@@ -57,6 +57,17 @@ class ClassDictionary {
 	cdict  = new Hashtable();
     }
 
+    /*
+     * For classes that have already been read, such as those
+     * JavaCodeCompact holds. loaded maps a class name to its ClassInfo.
+     * No class is excluded.
+     */
+    public
+    ClassDictionary( Dictionary loaded ){
+	this.loaded = loaded;
+	cdict  = new Hashtable();
+    }
+
     public ClassEntry lookup( String cname ){
 	return (ClassEntry)(cdict.get( cname ) );
     }
@@ -65,7 +76,7 @@ class ClassDictionary {
 	ClassEntry ce = (ClassEntry)(cdict.get( cname ) );
 	if ( ce == null ){
 	    ce = new ClassEntry( cname );
-	    if ( filter.accept( null, cname ) ){
+	    if ( filter != null && filter.accept( null, cname ) ){
 		ce.flags |= ClassEntry.EXCLUDED;
 	    }
 	    cdict.put( cname, ce );
@@ -81,6 +92,9 @@ class ClassDictionary {
      * and as a public service to ClassEntry...
      */
     ClassInfo findClassInfo( String cname ){
+	if ( loaded != null ){
+	    return (ClassInfo)(loaded.get( cname ));
+	}
 	InputStream fin = finder.findClassFile( cname );
 	if ( fin == null ) return null;
 	ClassFile cfile = new ClassFile( cname, fin, false );
@@ -96,5 +110,6 @@ class ClassDictionary {
      */
     private ClassFileFinder finder;
     private FilenameFilter  filter;
+    private Dictionary      loaded;
     private Hashtable       cdict;
 }
@@ -48,6 +48,16 @@ public class MemberDependenceAnalyzer extends DependenceAnalyzer {
 	cdict = new ClassDictionary( find, filt );
     }
 
+    /*
+     * To analyze classes that have already been read, rather than
+     * reading them from class files. classes maps each class name
+     * to its ClassInfo.
+     */
+    public MemberDependenceAnalyzer( Dictionary classes ){
+	super( );
+	cdict = new ClassDictionary( classes );
+    }
+
     public void useSignatureDependence(boolean f) {
 	signatureFlag = f;
     }
@@ -0,0 +1,281 @@
+/*
+ * @(#)MemberReachability.java	%I% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ *
+ */
+
+package dependenceAnalyzer;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/*
+ * Finds the members of a member dependence graph that can be reached
+ * from a set of roots, and the classes that must remain for them.
+ * JavaCodeCompact uses this to strip unreachable members and classes
+ * from the image.
+ *
+ * A member is reachable if it is a root, or if a reachable method
+ * refers to it. A reference to a member that a class inherits
+ * reaches the inherited declaration. A reachable method that can be
+ * overridden may be dispatched to any class that stays in the image,
+ * so the overriding methods of those classes are reachable too.
+ *
+ * A class is live if it declares a reachable member; its
+ * superclasses are live too, as they are initialized with it.
+ * Members named by keepInLiveClasses, such as <clinit>, are
+ * reachable in every live class. A class is retained if it is live,
+ * if reachable code names it, or if it is a superclass or interface
+ * of a retained class. Only retained classes need to remain.
+ *
+ * All the classes must have been analyzed before the roots are given.
+ */
+public class MemberReachability {
+
+    public MemberReachability( MemberDependenceAnalyzer a ){
+	analyzer = a;
+    }
+
+    /*
+     * Make every member of the named class reachable.
+     * Returns false if there is no such class.
+     */
+    public boolean keepClass( String cname ){
+	ClassEntry c = lookupClass( cname );
+	if ( c == null ) return false;
+	markLive( c );
+	Enumeration e = c.members();
+	while ( e.hasMoreElements() ){
+	    MemberDependenceNode m = (MemberDependenceNode)(e.nextElement());
+	    if ( isDeclared( m ) ){
+		markMember( m );
+	    }
+	}
+	return true;
+    }
+
+    /*
+     * Make a member of the named class reachable. A method is
+     * named with its signature, a field without. Returns false if the
+     * class does not declare the member.
+     */
+    public boolean keepMember( String cname, String mname ){
+	ClassEntry c = lookupClass( cname );
+	if ( c == null ) return false;
+	MemberDependenceNode m = c.lookupMember( mname );
+	if ( m == null || ! isDeclared( m ) ) return false;
+	markMember( m );
+	return true;
+    }
+
+    /*
+     * Make the named member reachable in every live class that
+     * declares it. For members the VM uses implicitly.
+     */
+    public void keepInLiveClasses( String mname ){
+	liveMembers.addElement( mname );
+	// marking may make more classes live: work on a copy.
+	Object classes[] = new Object[ live.size() ];
+	Enumeration e = live.elements();
+	for ( int i = 0; i < classes.length; i++ ){
+	    classes[i] = e.nextElement();
+	}
+	for ( int i = 0; i < classes.length; i++ ){
+	    ClassEntry c = (ClassEntry)(classes[i]);
+	    MemberDependenceNode m = c.lookupMember( mname );
+	    if ( m != null && isDeclared( m ) ){
+		markMember( m );
+	    }
+	}
+    }
+
+    /*
+     * Follow references from the roots until nothing new is found.
+     */
+    public void compute(){
+	do {
+	    newlyRetained = false;
+	    while ( work.size() != 0 ){
+		int last = work.size() - 1;
+		MemberDependenceNode m =
+		    (MemberDependenceNode)(work.elementAt( last ));
+		work.removeElementAt( last );
+		scan( m );
+	    }
+	    // Dispatch may mark more members, which land on the
+	    // work list and come back here.
+	    int n = virtuals.size();
+	    for ( int i = 0; i < n; i++ ){
+		MemberDependenceNode v =
+		    (MemberDependenceNode)(virtuals.elementAt( i ));
+		MemberName vn = (MemberName)(v.name());
+		dispatch( vn.classEntry, vn.name, new Hashtable() );
+	    }
+	} while ( work.size() != 0 || newlyRetained );
+    }
+
+    public boolean isLive( String cname ){
+	ClassEntry c = lookupClass( cname );
+	return c != null && live.get( c ) != null;
+    }
+
+    public boolean isRetained( String cname ){
+	ClassEntry c = lookupClass( cname );
+	return c != null && retained.get( c ) != null;
+    }
+
+    public boolean isReachable( String cname, String mname ){
+	ClassEntry c = lookupClass( cname );
+	if ( c == null ) return false;
+	MemberDependenceNode m = c.lookupMember( mname );
+	return m != null && reachable.get( m ) != null;
+    }
+
+    /*
+     * Implementation parts.
+     */
+    private MemberDependenceAnalyzer analyzer;
+    private Hashtable	live = new Hashtable();
+    private Hashtable	retained = new Hashtable();
+    private Hashtable	reachable = new Hashtable();
+    private Vector	liveMembers = new Vector();
+    private Vector	work = new Vector();     // reachable, not yet scanned
+    private Vector	virtuals = new Vector(); // reachable, overridable
+    private boolean	newlyRetained;
+
+    /*
+     * An array class stands for its element class. Returns null for
+     * primitive types and classes that were not analyzed.
+     */
+    private ClassEntry lookupClass( String cname ){
+	int dims = 0;
+	while ( dims < cname.length() && cname.charAt( dims ) == '[' ){
+	    dims++;
+	}
+	if ( dims != 0 ){
+	    if ( cname.charAt( dims ) != 'L' ) return null;
+	    cname = cname.substring( dims+1, cname.length()-1 );
+	}
+	ClassEntry c = analyzer.classByName( cname );
+	return ( c.state() == DependenceNode.ANALYZED ) ? c : null;
+    }
+
+    private static boolean isDeclared( MemberDependenceNode m ){
+	return ( m.flags & ( MemberDependenceNode.METHOD |
+			     MemberDependenceNode.FIELD ) ) != 0;
+    }
+
+    private void markLive( ClassEntry c ){
+	if ( c == null || live.get( c ) != null ) return;
+	live.put( c, c );
+	markRetained( c );
+	markLive( c.superClass() );
+	for ( int i = 0; i < liveMembers.size(); i++ ){
+	    MemberDependenceNode m =
+		c.lookupMember( (String)(liveMembers.elementAt( i )) );
+	    if ( m != null && isDeclared( m ) ){
+		markMember( m );
+	    }
+	}
+    }
+
+    private void markRetained( ClassEntry c ){
+	if ( c == null || c.state() != DependenceNode.ANALYZED ) return;
+	if ( retained.get( c ) != null ) return;
+	retained.put( c, c );
+	newlyRetained = true;
+	markRetained( c.superClass() );
+	Enumeration e = c.interfaces();
+	while ( e.hasMoreElements() ){
+	    markRetained( (ClassEntry)(e.nextElement()) );
+	}
+    }
+
+    private void markMember( MemberDependenceNode m ){
+	if ( ! isDeclared( m ) ){
+	    // named through a class that inherits it.
+	    MemberName mn = (MemberName)(m.name());
+	    ClassEntry c = mn.classEntry;
+	    if ( c.name().toString().charAt( 0 ) == '[' ){
+		// arrays inherit from Object.
+		c = lookupClass( "java/lang/Object" );
+	    }
+	    m = findDeclaration( c, mn.name );
+	    if ( m == null ) return;
+	}
+	if ( reachable.get( m ) != null ) return;
+	reachable.put( m, m );
+	work.addElement( m );
+	markLive( ((MemberName)(m.name())).classEntry );
+    }
+
+    private MemberDependenceNode findDeclaration( ClassEntry c, String mname ){
+	if ( c == null ) return null;
+	MemberDependenceNode m = c.lookupMember( mname );
+	if ( m != null && isDeclared( m ) ) return m;
+	m = findDeclaration( c.superClass(), mname );
+	if ( m != null ) return m;
+	Enumeration e = c.interfaces();
+	while ( e.hasMoreElements() ){
+	    m = findDeclaration( (ClassEntry)(e.nextElement()), mname );
+	    if ( m != null ) return m;
+	}
+	return null;
+    }
+
+    private void scan( MemberDependenceNode m ){
+	Enumeration e = m.dependsOn();
+	while ( e.hasMoreElements() ){
+	    DependenceNode target = ((DependenceArc)(e.nextElement())).to();
+	    if ( target instanceof ClassEntry ){
+		markRetained( lookupClass( (String)(target.name()) ) );
+	    } else {
+		markMember( (MemberDependenceNode)target );
+	    }
+	}
+	if ( ( m.flags & MemberDependenceNode.METHOD ) != 0 &&
+	     ( m.flags & MemberDependenceNode.NO_OVERRIDING ) == 0 ){
+	    virtuals.addElement( m );
+	}
+    }
+
+    /*
+     * A call of c's method mname may run the method that any retained
+     * subclass, or implementor, of c declares or inherits.
+     */
+    private void dispatch( ClassEntry c, String mname, Hashtable seen ){
+	Enumeration e = c.subclasses();
+	while ( e.hasMoreElements() ){
+	    ClassEntry sub = (ClassEntry)(e.nextElement());
+	    if ( seen.put( sub, sub ) != null ) continue;
+	    if ( retained.get( sub ) != null ){
+		MemberDependenceNode m = findDeclaration( sub, mname );
+		if ( m != null ){
+		    markMember( m );
+		}
+	    }
+	    dispatch( sub, mname, seen );
+	}
+    }
+}
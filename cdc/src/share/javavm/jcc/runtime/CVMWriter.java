@@ -36,6 +36,7 @@ import java.util.Comparator;
 import java.util.Vector;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.io.File;
 import java.io.OutputStream;
 
 
@@ -72,6 +73,16 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
     protected int		  nClassfileOut;
     protected BufferedPrintStream listOut;
 
+    /*
+     * Output files that already exist are written to a temporary
+     * file first and only copied over the old one at close() if the
+     * contents differ. Unchanged files keep their timestamps, so make
+     * does not recompile segments whose classes did not change.
+     */
+    private Vector		  pendingOutputs = new Vector();
+    private int			  nOutputFiles = 0;
+    private int			  nUnchangedFiles = 0;
+
     protected CVMStringTable	  stringTable;
     protected CVMClass	  	  classes[];
 
@@ -107,6 +118,19 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
     private String			sharedConstantPoolName;
     private int				sharedConstantPoolSize;
 
+    /*
+     * Startup profile, from -profile. Classes and methods in it are
+     * written first, hottest first, so that startup touches fewer
+     * pages of the image. See writeClasses().
+     */
+    private MethodProfile		profile;
+    private Hashtable			hotCodeWritten = new Hashtable();
+    private int				nHotMethods;
+    private int				nHotClasses;
+    private int				hotCodePages[];
+    private int				hotStringPages[];
+    private static final int		PAGE_SIZE = 4096;
+
     private CVMMethodType[]		methodTypes;
     private int[]			nMethodTypes;
     private int				totalMethodTypes;
@@ -214,6 +238,10 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	return nativeTypes.isType( classname, "JNI" );
     }
 
+    public void setProfile( MethodProfile profile ){
+	this.profile = profile;
+    }
+
     public boolean setAttribute( String attribute ){
 	if ( parseClassListAttribute("invisible=", attribute,
 				     invisibleClassList)){
@@ -257,7 +285,7 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 		headerFileName = "jcc.output.h";
 	    } else {
 		try {
-		    xxx = new java.io.FileOutputStream( filename );
+		    xxx = openOutput( filename );
 		} catch ( java.io.IOException e ){
 		    failureMode = e;
 		    return false;
@@ -266,11 +294,11 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	    }
 	    try {
 		classOut = auxOut = new CCodeWriter( xxx );
-		yyy = new java.io.FileOutputStream( headerFileName );
+		yyy = openOutput( headerFileName );
 		headerOut = new CCodeWriter( yyy );
 		
 		globalHeaderFileName = filename+"Globals.h";
-		www = new java.io.FileOutputStream( globalHeaderFileName );
+		www = openOutput( globalHeaderFileName );
 		globalHeaderOut = new CCodeWriter ( www );
 	    } catch ( java.io.IOException e ){
 		failureMode = e;
@@ -289,14 +317,17 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	    nClassfileOut = 0;
 	    headerFileName = outputFileName+".h";
 	    try {
-		yyy = new java.io.FileOutputStream( headerFileName );
+		yyy = openOutput( headerFileName );
 		headerOut = new CCodeWriter( yyy );
 		
 		globalHeaderFileName = outputFileName+"Globals.h";
-		www = new java.io.FileOutputStream( globalHeaderFileName );
+		www = openOutput( globalHeaderFileName );
 		globalHeaderOut = new CCodeWriter ( www );
-		zzz = new java.io.FileOutputStream( filename+"Aux.c");
+		zzz = openOutput( filename+"Aux.c");
 		auxOut = new CCodeWriter( zzz );
+		// The list file is the target of the JCC make rule, so it
+		// is always written, even when its contents are unchanged,
+		// to show that the generated files are up to date.
 		listOut = new BufferedPrintStream(
                               new java.io.FileOutputStream(outputFileName +
                                                            "List"));
@@ -352,7 +383,7 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	    classOut.close();
 	}
 	String newName = outputFileName+(nClassfileOut++)+".c";
-	xxx = new java.io.FileOutputStream( newName );
+	xxx = openOutput( newName );
 	classOut = new CCodeWriter( xxx );
 	listOut.println( newName );
 	writePrologue( classOut );
@@ -387,10 +418,37 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	    globalHeaderOut.close();
 	    globalHeaderOut = null;
 	}
+	replaceChangedOutputs();
 	outputFileName = null;
 	return;
     }
 
+    private OutputStream
+    openOutput( String filename ) throws java.io.IOException {
+	File destFile = new File( filename );
+	nOutputFiles++;
+	if ( ! destFile.exists() ){
+	    return new java.io.FileOutputStream( destFile );
+	}
+	File dumpFile = new File( filename+".TMP" );
+	pendingOutputs.addElement( new File[]{ dumpFile, destFile } );
+	return new java.io.FileOutputStream( dumpFile );
+    }
+
+    private void
+    replaceChangedOutputs(){
+	for ( int i = 0; i < pendingOutputs.size(); i++ ){
+	    File f[] = (File[])pendingOutputs.elementAt( i );
+	    if ( FileCompare.cmp( f[0], f[1] ) ){
+		nUnchangedFiles++;
+	    } else {
+		FileCompare.cpy( f[0], f[1] );
+	    }
+	    f[0].delete();
+	}
+	pendingOutputs.removeAllElements();
+    }
+
     public void printError( java.io.PrintStream o ){
 	if ( failureMode != null ){
 	    failureMode.printStackTrace( o );
@@ -417,6 +475,15 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
      * line numbers, exceptions, local variables
      */
     private void writeCode(CVMMethodInfo meth) {
+	writeCode(meth, false);
+    }
+
+    /*
+     * If exported is set, a read-only code block is given external
+     * linkage, so that it can be written away from its class (hot code
+     * is written ahead of all classes, possibly in another segment).
+     */
+    private void writeCode(CVMMethodInfo meth, boolean exported) {
 	MethodInfo 		  mi 	  = meth.method;
 	LineNumberTableEntry[]	  lntab	  = mi.getLineNumberTable();
 	LocalVariableTableEntry[] locvartab = mi.getLocalVariableTable();
@@ -447,7 +514,7 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	 * In fact, the only reason this is not an anonimous structure is the
 	 * case where it has to be writable and initialized, for JVMTI.
 	 */
-	if ( ! impureCode ){
+	if ( ! impureCode && ! exported ){
 	    // this might as well be static since there will be
 	    // no external references to it
 	    classOut.print("STATIC ");
@@ -514,6 +581,11 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
             initInfo.addInfo("&" + codeBlockName + "Master",
                              "&" + codeBlockName,
                              "sizeof( struct " + descriptorTypeTag + ")");
+	} else if ( exported ){
+	    declareOut.println( codeBlockName + ";" );
+
+	    classOut.print( "const struct " + descriptorTypeTag + " " );
+            classOut.print(codeBlockName);
 	} else {
             classOut.print(codeBlockName);
 	}
@@ -869,7 +941,7 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 		if ( n != 0 )
 		    nCheckedExceptions += n+1; // "1" is for the count word.
 	    }
-	    if ( mi.code != null ){
+	    if ( mi.code != null && hotCodeWritten.get( meth ) == null ){
 		writeCode( meth );
 	    }
 	    if ( meth.codeHasJsr() ){
@@ -2324,21 +2396,26 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
     }
 
     private void processStrings( ConstantPool cp ){
+	processStrings( cp, false );
+    }
+
+    private void processStrings( ConstantPool cp, boolean hot ){
 	int n = cp.getLength();
 	for ( int i = 1; i < n; ){
 	    ConstantObject obj = cp.elementAt(i);
 	    if ( obj instanceof StringConstant ){
-		stringTable.intern( (StringConstant) obj );
+		stringTable.intern( (StringConstant) obj, hot );
 	    }
 	    i += obj.nSlots;
 	}
     }
 
-    private void classProcessStrings( ClassInfo c, boolean doShared ){
+    private void classProcessStrings( ClassInfo c, boolean doShared,
+				      boolean hot ){
 	FieldInfo f[] = c.fields;
 	int fieldCount = ( f== null ) ? 0 : f.length;
 	if ( ! doShared ){
-	    processStrings( c.getConstantPool() );
+	    processStrings( c.getConstantPool(), hot );
 	}
 	//
 	// make sure that strings appearing ONLY as static final
@@ -2347,7 +2424,7 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	for ( int i = 0; i < fieldCount; i++ ){
 	    FieldInfo fi = f[i];
 	    if ( fi.isStaticMember() && fi.value instanceof StringConstant ){
-		stringTable.intern( (StringConstant) (fi.value) );
+		stringTable.intern( (StringConstant) (fi.value), hot );
 	    }
 	}
     }
@@ -3214,12 +3291,17 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 	}
 	try {
 	    //mungeAllIDsAndWriteExternals(classes);
+	    int writeOrder[] = profiledClassOrder();
 	    for ( i = 0; i < nClasses; i++ ){
-		classProcessStrings(classes[i].classInfo, doShared);
+		ClassInfo ci = classes[writeOrder[i]].classInfo;
+		classProcessStrings(ci, doShared, isHot(ci));
 	    }
 
 	    if (doWrite) {
 		instantiateAllStrings();
+		if (profile != null) {
+		    hotStringPages = stringTable.countHotPages(PAGE_SIZE);
+		}
 		CVMInterfaceMethodTable.writeInterfaceTables(classes,
 		    auxOut, headerOut);
 		int nStaticWords = writeStaticStore( classes );
@@ -3245,12 +3327,22 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
 		//
 		methStats.dump(auxOut);
 		/*
-		 * Now do the writing 
+		 * Now do the writing.
+		 * Classes keep their numbers, and so their <clinit> slots,
+		 * whatever order they are written in.
 		 */
+		int clinitIdx[] = new int[ nClasses ];
 		for ( i = 0; i < nClasses; i++ ){
+		    clinitIdx[i] = classes[i].hasStaticInitializer
+				   ? maxClinitIdx++ : 0;
+		}
+		if (profile != null) {
+		    writeHotCode();
+		}
+		for ( int k = 0; k < nClasses; k++ ){
+		    i = writeOrder[k];
 		    CVMClass c = classes[i];
-		    int clinitIdx = c.hasStaticInitializer ? maxClinitIdx++ : 0;
-		    writeClass( i, c, clinitIdx, nStaticWords );
+		    writeClass( i, c, clinitIdx[i], nStaticWords );
 		    if ( segmentedOutput && ( curClasses++ >= maxClasses) ){
 			curClasses = 0;
 			openNextClassFile();
@@ -3302,6 +3394,124 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
                 (!classOut.checkError() && !headerOut.checkError()));
     }
 
+    private boolean isHot( ClassInfo ci ){
+	return profile != null && profile.classRank( ci.className ) >= 0;
+    }
+
+    /*
+     * The order to write classes in: classes in the profile first,
+     * hottest first, then the rest in class number order.
+     */
+    private int[] profiledClassOrder(){
+	int n = classes.length;
+	int order[] = new int[ n ];
+	int rank[] = new int[ n ];
+	int nhot = 0;
+	for ( int i = 0; i < n; i++ ){
+	    rank[i] = (profile == null) ? -1
+			: profile.classRank( classes[i].classInfo.className );
+	    if ( rank[i] >= 0 ){
+		order[nhot++] = i;
+	    }
+	}
+	nHotClasses = nhot;
+	// Insertion sort of the hot ones by rank; there are few of them.
+	for ( int i = 1; i < nhot; i++ ){
+	    int c = order[i];
+	    int j = i;
+	    while ( j > 0 && rank[order[j-1]] > rank[c] ){
+		order[j] = order[j-1];
+		j--;
+	    }
+	    order[j] = c;
+	}
+	int k = nhot;
+	for ( int i = 0; i < n; i++ ){
+	    if ( rank[i] < 0 ){
+		order[k++] = i;
+	    }
+	}
+	return order;
+    }
+
+    /*
+     * Roughly the number of bytes writeCode() emits for a method.
+     */
+    private int codeSize( MethodInfo mi ){
+	int size = 8 + ((mi.code.length+3)&~3);
+	if ( mi.exceptionTable != null ){
+	    size += 8 * mi.exceptionTable.length;
+	}
+	return size;
+    }
+
+    private static int pagesTouched( int start, int size, int lastPage ){
+	int first = start / PAGE_SIZE;
+	int last = (start + size - 1) / PAGE_SIZE;
+	if ( first == lastPage ){
+	    first++;
+	}
+	return Math.max( last - first + 1, 0 );
+    }
+
+    /*
+     * Write the code of all profiled methods ahead of the classes,
+     * hottest first, and count how many pages their code would touch
+     * with and without this. The estimate assumes code blocks are laid
+     * out in the order they are written and ignores everything else.
+     */
+    private void writeHotCode(){
+	Vector hot = new Vector();
+	Vector ranks = new Vector();
+	int before = 0;
+	int offset = 0;
+	int lastPage = -1;
+	for ( int i = 0; i < classes.length; i++ ){
+	    CVMMethodInfo m[] = classes[i].methods;
+	    if ( m == null ) continue;
+	    for ( int j = 0; j < m.length; j++ ){
+		MethodInfo mi = m[j].method;
+		if ( mi.code == null ) continue;
+		int size = codeSize( mi );
+		int rank = profile.methodRank( mi.parent.className,
+					       mi.name.string,
+					       mi.type.string );
+		if ( rank >= 0 ){
+		    before += pagesTouched( offset, size, lastPage );
+		    lastPage = (offset + size - 1) / PAGE_SIZE;
+		    // keep hot sorted by rank
+		    int k = hot.size();
+		    while ( k > 0 &&
+			((Integer)ranks.elementAt(k-1)).intValue() > rank ){
+			k--;
+		    }
+		    hot.insertElementAt( m[j], k );
+		    ranks.insertElementAt( new Integer( rank ), k );
+		}
+		offset += size;
+	    }
+	}
+	nHotMethods = hot.size();
+	if ( nHotMethods == 0 ){
+	    hotCodePages = new int[]{ 0, 0 };
+	    return;
+	}
+	classOut.println("\n/* ******** Code of profiled methods ******** */");
+	int after = 0;
+	offset = 0;
+	lastPage = -1;
+	for ( int k = 0; k < nHotMethods; k++ ){
+	    CVMMethodInfo meth = (CVMMethodInfo)hot.elementAt( k );
+	    int size = codeSize( meth.method );
+	    after += pagesTouched( offset, size, lastPage );
+	    lastPage = (offset + size - 1) / PAGE_SIZE;
+	    offset += size;
+	    writeCode( meth, true );
+	    hotCodeWritten.put( meth, meth );
+	}
+	hotCodePages = new int[]{ before, after };
+    }
+
     public void printSpaceStats(java.io.PrintStream o) {
         //ClassClass classes[] = ClassClass.getClassVector(classMaker);
         o.println("\t" + Localizer.getString("cwriter.total_classes",
@@ -3334,6 +3544,25 @@ public class CVMWriter implements CoreImageWriter, Const, CVMConst {
                                                Integer.toString(nconstants)));
         o.println("\t\t" + Localizer.getString("cwriter.java_strings",
                                                Integer.toString(njavastrings)));
+        if (profile != null && hotCodePages != null) {
+            o.println("\t" + Localizer.getString("cwriter.profile_matched",
+                                  Integer.toString(nHotClasses),
+                                  Integer.toString(nHotMethods)));
+            o.println("\t\t" + Localizer.getString("cwriter.profile_code_pages",
+                                  Integer.toString(hotCodePages[0]),
+                                  Integer.toString(hotCodePages[1])));
+            if (hotStringPages != null) {
+                o.println("\t\t" + Localizer.getString(
+                                  "cwriter.profile_string_pages",
+                                  Integer.toString(hotStringPages[0]),
+                                  Integer.toString(hotStringPages[1])));
+            }
+        }
+        if (nOutputFiles > 0) {
+            o.println("\t" + Localizer.getString("cwriter.files_unchanged",
+                                  Integer.toString(nUnchangedFiles),
+                                  Integer.toString(nOutputFiles)));
+        }
     }
 
 }
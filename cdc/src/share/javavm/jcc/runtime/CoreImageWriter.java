@@ -56,6 +56,12 @@ interface CoreImageWriter {
 	 *		 true:  flag recognized and well-formed.
 	 */
 
+    void    setProfile( util.MethodProfile profile );
+	/*
+	 * Supply a method profile. Hot methods, classes and strings
+	 * are laid out together. May be null: no profile.
+	 */
+
     boolean open( String filename );
 
 	/*
@@ -33,11 +33,18 @@ public class Assert
     /**
      * Indicates if classloading is allowed in the current state.
      * A non-zero value indicates that classloading is not currently allowed.
-     * NOTE: this assertion assumes that JCC is executing as a single-
-     * threaded app as is the case currently.  In a multi-threaded app,
-     * this variable will need to be converted into a thread local var.
+     * NOTE: class files may be parsed on several threads at once (see
+     * util.ParallelRunner), so the count is kept per thread.
      */
-    private static int disallowClassloadingCount = 0;
+    private static ThreadLocal disallowClassloadingCount = new ThreadLocal() {
+        protected Object initialValue() {
+            return new int[1];
+        }
+    };
+
+    private static int[] count() {
+        return (int[])disallowClassloadingCount.get();
+    }
 
     /**
      * Declares that classloading is allowed again.  However, classloading is
@@ -47,8 +54,9 @@ public class Assert
      *number of preceeding calls to disallowClassloading().
      */
     public static void allowClassloading() {
-        disallowClassloadingCount--;
-        assert(disallowClassloadingCount >= 0);
+        int[] count = count();
+        count[0]--;
+        assert(count[0] >= 0);
     }
     /**
      * Declares that classloading is disallowed.  May be called repeatedly.
@@ -59,11 +67,11 @@ public class Assert
      *number of preceeding calls to disallowClassloading().
      */
     public static void disallowClassloading() {
-        disallowClassloadingCount++;
+        count()[0]++;
     }
     /** Asserts that classloading is currently allowed. */
     public static void assertClassloadingIsAllowed() {
-        assert(disallowClassloadingCount == 0);
+        assert(count()[0] == 0);
     }
 
-}
+}
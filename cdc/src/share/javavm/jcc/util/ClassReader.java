@@ -52,11 +52,20 @@ import consts.Const;
 public class ClassReader {
 
     int verbosity;
+    int threads = 1;
 
     public ClassReader(int verb){
 	verbosity = verb;
     }
 
+    /*
+     * Number of threads used to parse the members of a zip file.
+     */
+    public void
+    setThreads(int n){
+	threads = Math.max(n, 1);
+    }
+
     private int
     getMagic( InputStream file ) throws IOException {
 	DataInputStream data = new DataInputStream( file );
@@ -97,27 +106,50 @@ public class ClassReader {
     public int
     readZip(String fileName, Vector classesRead) throws IOException
     {
-        ZipFile  zf;
+        final ZipFile  zf;
         Enumeration zipEntries;
         ZipEntry ent;
         int i = 0;
         zf = new ZipFile( fileName );
         zipEntries = zf.entries();
+        final Vector entries = new Vector();
         while (zipEntries.hasMoreElements() ){
             ent = (ZipEntry)(zipEntries.nextElement());
             String name = ent.getName();
             if (!ent.isDirectory() &&
                 (name.endsWith(".class") || name.endsWith(".mclass"))) {
-                try {
-                    i += readStream(name,
+                entries.addElement(ent);
+            }    
+        }
+        // Parse the members in parallel, but hand the classes back in
+        // zip order so the output does not depend on thread timing.
+        final Vector read[] = new Vector[entries.size()];
+        try {
+            ParallelRunner.run(threads, read.length, new ParallelRunner.Job() {
+                public void run(int n) {
+                    ZipEntry ent = (ZipEntry)entries.elementAt(n);
+                    String name = ent.getName();
+                    read[n] = new Vector(1);
+                    try {
+                        readStream(name,
                             new BufferedInputStream(zf.getInputStream( ent )),
-                            classesRead);
-                } catch (IOException e) {
-                    System.out.println(
-                        Localizer.getString("classreader.failed_on", name));
-                    e.printStackTrace();
+                            read[n]);
+                    } catch (IOException e) {
+                        System.out.println(
+                            Localizer.getString("classreader.failed_on", name));
+                        e.printStackTrace();
+                    }
                 }
-            }    
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Jobs only throw unchecked exceptions.
+            throw new RuntimeException(e.toString());
+        }
+        for (int n = 0; n < read.length; n++) {
+            i += read[n].size();
+            classesRead.addAll(read[n]);
         }
         return i;
     }
@@ -0,0 +1,193 @@
+/*
+ * @(#)MethodProfile.java	%I% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+package util;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.StringTokenizer;
+
+/*
+ * A startup profile: the classes and methods that are used early,
+ * hottest first. JCC uses it to lay out the ROM image so that the
+ * hot items share as few pages as possible.
+ *
+ * The file holds one class or method per line, in the form written
+ * by sun.misc.Warmup (-Xwarmup:record=<file>):
+ *
+ *	java.lang.String
+ *	java.lang.String.charAt(I)C
+ *
+ * Class names may use '.' or '/'. A method's return type is ignored.
+ * An entry may be followed by an invocation count, in which case
+ * entries are ranked by count; otherwise they are ranked in the order
+ * they appear. '#' starts a comment. The WARMUP_PROFILE, CLASSES,
+ * METHODS and CLASSLOADER= lines of a Warmup profile are skipped.
+ */
+public class MethodProfile {
+
+    /* method key (see methodKey()) -> Integer rank */
+    private Hashtable	methodRanks = new Hashtable();
+    /* class name, with '/' -> Integer rank */
+    private Hashtable	classRanks = new Hashtable();
+    private int		nMethods;
+    private int		nClasses;
+
+    private static String
+    methodKey( String className, String name, String type ){
+	int endArgs = type.indexOf(')');
+	if ( endArgs >= 0 ){
+	    type = type.substring( 0, endArgs+1 );
+	}
+	return className + '.' + name + type;
+    }
+
+    /*
+     * Read a profile. Entries that cannot be parsed are reported
+     * and skipped.
+     */
+    public static MethodProfile
+    read( String fileName ) throws IOException {
+	BufferedReader in = new BufferedReader( new FileReader( fileName ) );
+	java.util.Vector names = new java.util.Vector();
+	java.util.Vector counts = new java.util.Vector();
+	boolean haveCounts = false;
+	try {
+	    String line;
+	    while ( ( line = in.readLine() ) != null ){
+		int comment = line.indexOf('#');
+		if ( comment >= 0 ){
+		    line = line.substring( 0, comment );
+		}
+		StringTokenizer t = new StringTokenizer( line );
+		if ( ! t.hasMoreTokens() ){
+		    continue;
+		}
+		String name = t.nextToken();
+		if ( name.startsWith("WARMUP_PROFILE=") ||
+		     name.startsWith("CLASSLOADER=") ||
+		     name.equals("CLASSES") || name.equals("METHODS") ){
+		    continue;
+		}
+		long count = 0;
+		if ( t.hasMoreTokens() ){
+		    try {
+			count = Long.parseLong( t.nextToken() );
+			haveCounts = true;
+		    } catch ( NumberFormatException e ){
+			System.err.println(Localizer.getString(
+			    "methodprofile.bad_line", fileName, line));
+			continue;
+		    }
+		}
+		names.addElement( name );
+		counts.addElement( new Long( count ) );
+	    }
+	} finally {
+	    in.close();
+	}
+
+	int order[] = new int[ names.size() ];
+	for ( int i = 0; i < order.length; i++ ){
+	    order[i] = i;
+	}
+	if ( haveCounts ){
+	    // Insertion sort by descending count; stable, so equal
+	    // counts keep their file order.
+	    for ( int i = 1; i < order.length; i++ ){
+		int o = order[i];
+		long c = ((Long)counts.elementAt(o)).longValue();
+		int j = i;
+		while ( j > 0 &&
+		    ((Long)counts.elementAt(order[j-1])).longValue() < c ){
+		    order[j] = order[j-1];
+		    j--;
+		}
+		order[j] = o;
+	    }
+	}
+
+	MethodProfile p = new MethodProfile();
+	for ( int i = 0; i < order.length; i++ ){
+	    p.add( (String)names.elementAt( order[i] ), i );
+	}
+	return p;
+    }
+
+    private void
+    add( String entry, int rank ){
+	Integer r = new Integer( rank );
+	int beginArgs = entry.indexOf('(');
+	String className;
+	if ( beginArgs < 0 ){
+	    className = entry.replace('.', '/');
+	} else {
+	    int methodDot = entry.lastIndexOf('.', beginArgs);
+	    if ( methodDot < 0 ){
+		return;
+	    }
+	    className = entry.substring( 0, methodDot ).replace('.', '/');
+	    String key = methodKey( className,
+				    entry.substring( methodDot+1, beginArgs ),
+				    entry.substring( beginArgs ) );
+	    if ( methodRanks.get( key ) == null ){
+		methodRanks.put( key, r );
+		nMethods++;
+	    }
+	}
+	// A class is as hot as its hottest entry.
+	if ( classRanks.get( className ) == null ){
+	    classRanks.put( className, r );
+	    nClasses++;
+	}
+    }
+
+    /*
+     * Rank of a method (0 is hottest), or -1 if it is not in the
+     * profile. className uses '/'; type is the method descriptor.
+     */
+    public int
+    methodRank( String className, String name, String type ){
+	Integer r = (Integer)methodRanks.get( methodKey( className, name, type ) );
+	return ( r == null ) ? -1 : r.intValue();
+    }
+
+    /*
+     * Rank of a class (0 is hottest), or -1 if neither it nor any of
+     * its methods is in the profile. className uses '/'.
+     */
+    public int
+    classRank( String className ){
+	Integer r = (Integer)classRanks.get( className );
+	return ( r == null ) ? -1 : r.intValue();
+    }
+
+    public int methodCount(){ return nMethods; }
+
+    public int classCount(){ return nClasses; }
+}
@@ -0,0 +1,115 @@
+/*
+ * @(#)ParallelRunner.java	%I% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+package util;
+
+/*
+ * Runs a number of independent jobs on a small set of worker
+ * threads. Jobs are handed out by index, so callers that want
+ * deterministic results should store each job's result in a slot
+ * of their own and combine them in index order afterwards.
+ *
+ * Most of JCC is not thread safe. Only use this for work that
+ * touches nothing shared, such as parsing class files.
+ */
+public class ParallelRunner {
+
+    public interface Job {
+	void run( int index ) throws Exception;
+    }
+
+    private final Job	job;
+    private final int	njobs;
+    private int		next = 0;
+    private Throwable	failure = null;
+
+    private ParallelRunner( Job job, int njobs ){
+	this.job = job;
+	this.njobs = njobs;
+    }
+
+    private synchronized int
+    nextIndex(){
+	if ( failure != null || next >= njobs ) return -1;
+	return next++;
+    }
+
+    private synchronized void
+    fail( Throwable t ){
+	if ( failure == null ) failure = t;
+    }
+
+    private void
+    work(){
+	int i;
+	try {
+	    while ( ( i = nextIndex() ) >= 0 ){
+		job.run( i );
+	    }
+	} catch ( Throwable t ){
+	    fail( t );
+	}
+    }
+
+    /*
+     * Runs job.run(0) .. job.run(njobs-1) on up to nthreads threads,
+     * including the calling one, and returns when all are done.
+     * If any job fails, no new ones are started and the first
+     * failure is rethrown.
+     */
+    public static void
+    run( int nthreads, int njobs, Job job ) throws Exception {
+	ParallelRunner r = new ParallelRunner( job, njobs );
+	int nworkers = Math.min( nthreads, njobs ) - 1;
+	Thread workers[] = new Thread[ Math.max( nworkers, 0 ) ];
+	for ( int i = 0; i < workers.length; i++ ){
+	    final ParallelRunner runner = r;
+	    workers[i] = new Thread( "jcc-worker-" + i ){
+		public void run(){
+		    runner.work();
+		}
+	    };
+	    workers[i].setDaemon( true );
+	    workers[i].start();
+	}
+	r.work();
+	for ( int i = 0; i < workers.length; i++ ){
+	    while ( true ){
+		try {
+		    workers[i].join();
+		    break;
+		} catch ( InterruptedException e ){
+		    // keep waiting; the job must finish.
+		}
+	    }
+	}
+	if ( r.failure instanceof Exception ){
+	    throw (Exception)r.failure;
+	} else if ( r.failure != null ){
+	    throw (Error)r.failure;
+	}
+    }
+}
@@ -82,6 +82,11 @@ public class StringTable implements Comparator {
     private int		aggregateSize;
     private int		numUniqueStrings = 0;
     private StringConstant[] stringTable;
+    /*
+     * Interned strings used by hot (profiled) classes. They are
+     * placed ahead of all others so that they share fewer pages.
+     */
+    private Hashtable	hotStrings = new Hashtable();
 
     //
     // Comparison for sorting in ascending order of string length 
@@ -89,6 +94,11 @@ public class StringTable implements Comparator {
     public int compare(Object o1, Object o2) {
         StringConstant obj1 = (StringConstant) o1;
         StringConstant obj2 = (StringConstant) o2;
+        boolean hot1 = hotStrings.get(obj1) != null;
+        boolean hot2 = hotStrings.get(obj2) != null;
+        if (hot1 != hot2) {
+            return hot1 ? -1 : 1;
+        }
         int len1 = obj1.str.string.length();
 	int len2 = obj2.str.string.length();
 
@@ -122,6 +132,10 @@ public class StringTable implements Comparator {
     // the strings of that length.
     //
     public void intern( StringConstant s ){
+	intern( s, false );
+    }
+
+    public void intern( StringConstant s, boolean hot ){
 	int len = s.str.string.length();
 	Integer lenObj = new Integer(len);
 	Hashtable lenTab = (Hashtable)htable.get( lenObj );
@@ -152,7 +166,13 @@ public class StringTable implements Comparator {
 	    stringHash.getID( s.str , s );
 	    aggregateSize += len;
 	    numUniqueStrings++;
+	    if ( hot ){
+		hotStrings.put( s, s );
+	    }
 	} else {
+	    if ( hot ){
+		hotStrings.put( entry, entry );
+	    }
 	    // This string was already interned. 
 	    // Add this instance to list of aliases for the interned copy
 	    Set aliases;
@@ -210,6 +230,43 @@ public class StringTable implements Comparator {
 
     public int internedStringCount(){ return numUniqueStrings; }
 
+    /*
+     * Returns the number of pages the character data of the hot
+     * strings spans, first if they were ordered by length alone, then
+     * in the actual (hot first) order. Characters take two bytes.
+     */
+    public int[] countHotPages( int pageSize ){
+	StringConstant byLength[] = (StringConstant[])allStrings().clone();
+	Arrays.sort( byLength, new Comparator() {
+	    public int compare( Object o1, Object o2 ){
+		return ((StringConstant)o1).str.string.length() -
+		       ((StringConstant)o2).str.string.length();
+	    }
+	});
+	return new int[]{ countHotPages( byLength, pageSize ),
+			  countHotPages( allStrings(), pageSize ) };
+    }
+
+    private int countHotPages( StringConstant order[], int pageSize ){
+	int pages = 0;
+	int lastPage = -1;
+	int offset = 0;
+	for ( int i = 0; i < order.length; i++ ){
+	    int size = 2 * order[i].str.string.length();
+	    if ( size > 0 && hotStrings.get( order[i] ) != null ){
+		int first = offset / pageSize;
+		int last = (offset + size - 1) / pageSize;
+		if ( first == lastPage ){
+		    first++;
+		}
+		pages += Math.max( last - first + 1, 0 );
+		lastPage = last;
+	    }
+	    offset += size;
+	}
+	return pages;
+    }
+
     /*
      * Arrange for the "data" buffer to hold all the string bodies
      * in some form.
@@ -0,0 +1,162 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package foundation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Measures class loading time from a class path of many JAR files.
+ * A number of JAR files, each holding its own package of trivial
+ * classes, are written to a scratch directory; the classes are then
+ * loaded through a URLClassLoader, first in class path order and then
+ * in reverse, followed by lookups of classes and resources that are
+ * not on the class path at all.
+ *
+ * Run once with -Dsun.misc.classpath.index=false to get the baseline
+ * for the package index in sun.misc.URLClassPath.
+ *
+ * Usage: foundation.ClassPathBench [jars [classes-per-jar [dir]]]
+ */
+public class ClassPathBench {
+
+    public static void main(String[] args) throws Exception {
+	int nJars = (args.length > 0) ? Integer.parseInt(args[0]) : 24;
+	int nClasses = (args.length > 1) ? Integer.parseInt(args[1]) : 50;
+	File dir = new File((args.length > 2) ? args[2]
+			    : System.getProperty("java.io.tmpdir", "."));
+	dir = new File(dir, "ClassPathBench");
+	dir.mkdirs();
+
+	URL[] urls = new URL[nJars];
+	for (int i = 0; i < nJars; i++) {
+	    File jar = new File(dir, "bench" + i + ".jar");
+	    writeJar(jar, "bench/p" + i, nClasses);
+	    urls[i] = jar.toURL();
+	}
+
+	long start = System.currentTimeMillis();
+	ClassLoader loader = new URLClassLoader(urls);
+	int loaded = 0;
+	for (int i = 0; i < nJars; i++) {
+	    loaded += loadClasses(loader, i, nClasses);
+	}
+	long forward = System.currentTimeMillis() - start;
+
+	start = System.currentTimeMillis();
+	loader = new URLClassLoader(urls);
+	for (int i = nJars - 1; i >= 0; i--) {
+	    loaded += loadClasses(loader, i, nClasses);
+	}
+	long reverse = System.currentTimeMillis() - start;
+
+	int lookups = nJars * nClasses;
+	int found = 0;
+	start = System.currentTimeMillis();
+	for (int i = 0; i < lookups; i++) {
+	    // Every other lookup repeats a name, as class loaders do
+	    String name = "bench/missing/C" + (i / 2);
+	    if (loader.getResource(name + ".properties") != null) {
+		found++;
+	    }
+	    try {
+		loader.loadClass(name.replace('/', '.'));
+		found++;
+	    } catch (ClassNotFoundException e) {
+	    }
+	}
+	long missing = System.currentTimeMillis() - start;
+
+	System.out.println("jars=" + nJars + " classes=" + (nJars * nClasses)
+			   + " loaded=" + loaded);
+	System.out.println("load in path order=" + forward + "ms"
+			   + ", in reverse order=" + reverse + "ms");
+	System.out.println("missing lookups=" + (2 * lookups) + " found="
+			   + found + " elapsed=" + missing + "ms");
+    }
+
+    static int loadClasses(ClassLoader loader, int jar, int nClasses) {
+	int loaded = 0;
+	for (int j = 0; j < nClasses; j++) {
+	    try {
+		loader.loadClass("bench.p" + jar + ".C" + j);
+		loaded++;
+	    } catch (ClassNotFoundException e) {
+		System.err.println("not found: " + e.getMessage());
+	    }
+	}
+	return loaded;
+    }
+
+    static void writeJar(File file, String pkg, int nClasses)
+	throws IOException
+    {
+	JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+	for (int j = 0; j < nClasses; j++) {
+	    String name = pkg + "/C" + j;
+	    out.putNextEntry(new JarEntry(name + ".class"));
+	    out.write(classFile(name));
+	    out.closeEntry();
+	}
+	out.close();
+    }
+
+    /* An empty class with no members, that can be loaded but not used */
+    static byte[] classFile(String name) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(bytes);
+	out.writeInt(0xCAFEBABE);
+	out.writeShort(3);		// minor_version
+	out.writeShort(45);		// major_version
+	out.writeShort(5);		// constant_pool_count
+	out.writeByte(1);		// #1 Utf8 this class name
+	out.writeUTF(name);
+	out.writeByte(7);		// #2 Class #1
+	out.writeShort(1);
+	out.writeByte(1);		// #3 Utf8 super class name
+	out.writeUTF("java/lang/Object");
+	out.writeByte(7);		// #4 Class #3
+	out.writeShort(3);
+	out.writeShort(0x0021);		// ACC_PUBLIC | ACC_SUPER
+	out.writeShort(2);		// this_class
+	out.writeShort(4);		// super_class
+	out.writeShort(0);		// interfaces_count
+	out.writeShort(0);		// fields_count
+	out.writeShort(0);		// methods_count
+	out.writeShort(0);		// attributes_count
+	out.close();
+	return bytes.toByteArray();
+    }
+}
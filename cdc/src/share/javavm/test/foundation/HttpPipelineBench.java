@@ -0,0 +1,228 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package foundation;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import sun.net.www.http.HttpPipeline;
+
+/**
+ * Measures request latency against a local loopback HTTP server for
+ * sequential GETs, pipelined GETs (sun.net.www.http.HttpPipeline),
+ * and POSTs whose body is buffered, streamed with a fixed length or
+ * streamed chunked.
+ *
+ * Usage: foundation.HttpPipelineBench [requests [post-body-bytes]]
+ */
+public class HttpPipelineBench {
+
+    static final byte[] BODY = new byte[256];
+
+    public static void main(String[] args) throws Exception {
+	int nRequests = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+	int postSize = (args.length > 1) ? Integer.parseInt(args[1]) : 65536;
+
+	final ServerSocket serv = new ServerSocket(0);
+	Thread acceptor = new Thread() {
+	    public void run() {
+		try {
+		    for (;;) {
+			final Socket s = serv.accept();
+			new Thread() {
+			    public void run() {
+				serve(s);
+			    }
+			}.start();
+		    }
+		} catch (IOException e) {
+		    // server socket closed
+		}
+	    }
+	};
+	acceptor.setDaemon(true);
+	acceptor.start();
+	String base = "http://127.0.0.1:" + serv.getLocalPort();
+	URL url = new URL(base + "/get");
+	URL postUrl = new URL(base + "/post");
+	byte[] buf = new byte[1024];
+
+	/* warm up the connection and the code paths */
+	get(url, buf);
+
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < nRequests; i++) {
+	    get(url, buf);
+	}
+	report("sequential GET", nRequests, System.currentTimeMillis() - start);
+
+	int depths[] = { 2, 4, 8 };
+	for (int d = 0; d < depths.length; d++) {
+	    start = System.currentTimeMillis();
+	    HttpPipeline pipe = new HttpPipeline(url);
+	    int sent = 0;
+	    while (sent < nRequests) {
+		int batch = Math.min(depths[d], nRequests - sent);
+		for (int i = 0; i < batch; i++) {
+		    pipe.enqueue("GET", url, null);
+		}
+		for (int i = 0; i < batch; i++) {
+		    readAll(pipe.nextResponse().getInputStream(), buf);
+		}
+		sent += batch;
+	    }
+	    pipe.close();
+	    report("pipelined GET, depth " + depths[d], nRequests,
+		   System.currentTimeMillis() - start);
+	}
+
+	byte[] post = new byte[postSize];
+	int nPosts = Math.max(1, nRequests / 10);
+	String[] modes = { "buffered", "fixed-length", "chunked" };
+	for (int m = 0; m < modes.length; m++) {
+	    start = System.currentTimeMillis();
+	    for (int i = 0; i < nPosts; i++) {
+		HttpURLConnection c = (HttpURLConnection)postUrl.openConnection();
+		c.setDoOutput(true);
+		if (m == 1) {
+		    ((sun.net.www.protocol.http.HttpURLConnection)c)
+			.setFixedLengthStreamingMode(post.length);
+		} else if (m == 2) {
+		    ((sun.net.www.protocol.http.HttpURLConnection)c)
+			.setChunkedStreamingMode(0);
+		}
+		OutputStream out = c.getOutputStream();
+		for (int off = 0; off < post.length; off += 4096) {
+		    out.write(post, off, Math.min(4096, post.length - off));
+		}
+		out.close();
+		readAll(c.getInputStream(), buf);
+	    }
+	    report("POST " + postSize + " bytes, " + modes[m], nPosts,
+		   System.currentTimeMillis() - start);
+	}
+	serv.close();
+    }
+
+    static void get(URL url, byte[] buf) throws IOException {
+	readAll(url.openConnection().getInputStream(), buf);
+    }
+
+    static void readAll(InputStream in, byte[] buf) throws IOException {
+	while (in.read(buf, 0, buf.length) >= 0) {
+	}
+	in.close();
+    }
+
+    static void report(String what, int n, long elapsed) {
+	System.out.println(what + ": " + n + " requests in " + elapsed
+			   + "ms, " + (elapsed * 1000 / n) + "us/request");
+    }
+
+    /* Answer requests on one connection until the client closes it */
+    static void serve(Socket s) {
+	try {
+	    InputStream in = new java.io.BufferedInputStream(
+		s.getInputStream());
+	    OutputStream out = new java.io.BufferedOutputStream(
+		s.getOutputStream());
+	    byte[] header = ("HTTP/1.1 200 OK\r\n"
+			     + "Content-Type: application/octet-stream\r\n"
+			     + "Content-Length: " + BODY.length + "\r\n"
+			     + "Keep-Alive: timeout=5, max=100000\r\n"
+			     + "Connection: keep-alive\r\n\r\n").getBytes();
+	    String line;
+	    while ((line = readLine(in)) != null) {
+		int length = 0;
+		boolean chunked = false;
+		while ((line = readLine(in)) != null && line.length() > 0) {
+		    String l = line.toLowerCase();
+		    if (l.startsWith("content-length:")) {
+			length = Integer.parseInt(l.substring(15).trim());
+		    } else if (l.startsWith("transfer-encoding:") &&
+			       l.indexOf("chunked") >= 0) {
+			chunked = true;
+		    }
+		}
+		if (chunked) {
+		    while ((length = Integer.parseInt(
+				readLine(in).trim(), 16)) > 0) {
+			skip(in, length);
+			readLine(in);
+		    }
+		    readLine(in);
+		} else {
+		    skip(in, length);
+		}
+		out.write(header);
+		out.write(BODY);
+		/* only flush when the client is waiting for us */
+		if (in.available() == 0) {
+		    out.flush();
+		}
+	    }
+	} catch (IOException e) {
+	} finally {
+	    try {
+		s.close();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
+    static String readLine(InputStream in) throws IOException {
+	StringBuffer sb = new StringBuffer();
+	int c;
+	while ((c = in.read()) >= 0) {
+	    if (c == '\n') {
+		return sb.toString();
+	    }
+	    if (c != '\r') {
+		sb.append((char)c);
+	    }
+	}
+	return (sb.length() > 0) ? sb.toString() : null;
+    }
+
+    static void skip(InputStream in, int n) throws IOException {
+	while (n > 0) {
+	    long k = in.skip(n);
+	    if (k <= 0) {
+		if (in.read() < 0) {
+		    throw new IOException("unexpected EOF");
+		}
+		k = 1;
+	    }
+	    n -= k;
+	}
+    }
+}
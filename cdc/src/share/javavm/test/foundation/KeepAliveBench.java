@@ -0,0 +1,173 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+package foundation;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import sun.net.www.http.HttpClient;
+import sun.net.www.http.KeepAliveCache;
+
+/**
+ * Measures HTTP request throughput through the keep-alive cache.
+ * A local stand-in server answers every request on a persistent
+ * connection; a number of client threads fetch the same URL
+ * concurrently and the elapsed time, the number of connections the
+ * server had to accept and the keep-alive cache statistics are printed.
+ *
+ * Usage: foundation.KeepAliveBench [threads [requests-per-thread]]
+ */
+public class KeepAliveBench {
+
+    static final byte[] BODY = new byte[512];
+
+    static int accepted = 0;
+
+    public static void main(String[] args) throws Exception {
+	int nThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+	int nRequests = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+	final ServerSocket serv = new ServerSocket(0);
+	Thread acceptor = new Thread() {
+	    public void run() {
+		try {
+		    for (;;) {
+			final Socket s = serv.accept();
+			synchronized (KeepAliveBench.class) {
+			    accepted++;
+			}
+			new Thread() {
+			    public void run() {
+				serve(s);
+			    }
+			}.start();
+		    }
+		} catch (IOException e) {
+		    // server socket closed
+		}
+	    }
+	};
+	acceptor.setDaemon(true);
+	acceptor.start();
+
+	final URL url = new URL("http://127.0.0.1:" + serv.getLocalPort()
+				+ "/bench");
+	final int requests = nRequests;
+	final int[] failures = new int[1];
+	Thread[] clients = new Thread[nThreads];
+	long start = System.currentTimeMillis();
+	for (int i = 0; i < nThreads; i++) {
+	    clients[i] = new Thread() {
+		public void run() {
+		    byte[] buf = new byte[1024];
+		    for (int j = 0; j < requests; j++) {
+			try {
+			    HttpURLConnection c =
+				(HttpURLConnection)url.openConnection();
+			    InputStream in = c.getInputStream();
+			    while (in.read(buf) >= 0) {
+			    }
+			    in.close();
+			} catch (IOException e) {
+			    synchronized (failures) {
+				failures[0]++;
+			    }
+			}
+		    }
+		}
+	    };
+	    clients[i].start();
+	}
+	for (int i = 0; i < nThreads; i++) {
+	    clients[i].join();
+	}
+	long elapsed = System.currentTimeMillis() - start;
+	serv.close();
+
+	int total = nThreads * nRequests;
+	KeepAliveCache kac = HttpClient.getKeepAliveCache();
+	System.out.println("threads=" + nThreads + " requests=" + total
+			   + " failures=" + failures[0]);
+	System.out.println("elapsed=" + elapsed + "ms, "
+			   + ((elapsed > 0) ? (total * 1000L / elapsed) : total)
+			   + " requests/s");
+	System.out.println("server connections accepted=" + accepted);
+	System.out.println("cache hits=" + kac.getHits()
+			   + " misses=" + kac.getMisses()
+			   + " evictions=" + kac.getEvictions()
+			   + " expirations=" + kac.getExpirations()
+			   + " idle=" + kac.size());
+    }
+
+    /* Answer requests on one connection until the client closes it */
+    static void serve(Socket s) {
+	try {
+	    InputStream in = s.getInputStream();
+	    OutputStream out = s.getOutputStream();
+	    byte[] header = ("HTTP/1.1 200 OK\r\n"
+			     + "Content-Type: application/octet-stream\r\n"
+			     + "Content-Length: " + BODY.length + "\r\n"
+			     + "Keep-Alive: timeout=5, max=100000\r\n"
+			     + "Connection: keep-alive\r\n\r\n").getBytes();
+	    while (skipRequest(in)) {
+		out.write(header);
+		out.write(BODY);
+		out.flush();
+	    }
+	} catch (IOException e) {
+	} finally {
+	    try {
+		s.close();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
+    /* Consume one request header; returns false at end of stream */
+    static boolean skipRequest(InputStream in) throws IOException {
+	int state = 0;
+	int c;
+	while ((c = in.read()) >= 0) {
+	    if (c == '\r') {
+		continue;
+	    }
+	    if (c == '\n') {
+		if (++state == 2) {
+		    return true;
+		}
+	    } else {
+		state = 0;
+	    }
+	}
+	return false;
+    }
+}
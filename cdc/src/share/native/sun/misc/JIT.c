@@ -31,6 +31,161 @@
 #include "jni.h"
 #include "jvm.h"
 
+#include "javavm/include/objects.h"
+#include "javavm/include/classes.h"
+#include "javavm/include/globals.h"
+#include "javavm/include/indirectmem.h"
+#include "javavm/include/common_exceptions.h"
+#include "javavm/include/utils.h"
+#include "javavm/include/porting/ansi/stdlib.h"
+#include "javavm/include/porting/ansi/string.h"
+
+/*
+ * Support for recording warmup profiles (see sun.misc.Warmup).
+ *
+ * The class table is walked with the class table lock held, so the
+ * names are first collected into a C buffer and only turned into
+ * Java strings once the lock has been dropped.
+ */
+typedef struct {
+    CVMObjectICell* loader;	/* only classes defined by this loader */
+    CVMBool	    methods;	/* collect compiled methods, not classes */
+    CVMBool	    outOfMemory;
+    char**	    names;
+    int		    count;
+    int		    capacity;
+} CVMWarmupNameList;
+
+static void
+CVMwarmupAddName(CVMWarmupNameList* list, const char* name)
+{
+    char* copy;
+
+    if (list->outOfMemory) {
+	return;
+    }
+    if (list->count == list->capacity) {
+	int newCapacity = (list->capacity == 0) ? 256 : list->capacity * 2;
+	char** newNames = (char**)realloc(list->names,
+					  newCapacity * sizeof(char*));
+	if (newNames == NULL) {
+	    list->outOfMemory = CVM_TRUE;
+	    return;
+	}
+	list->names = newNames;
+	list->capacity = newCapacity;
+    }
+    copy = (char*)malloc(strlen(name) + 1);
+    if (copy == NULL) {
+	list->outOfMemory = CVM_TRUE;
+	return;
+    }
+    strcpy(copy, name);
+    list->names[list->count++] = copy;
+}
+
+static void
+CVMwarmupCollectCallback(CVMExecEnv* ee, CVMClassBlock* cb, void* data)
+{
+    CVMWarmupNameList* list = (CVMWarmupNameList*)data;
+    CVMClassLoaderICell* cbLoader = CVMcbClassLoader(cb);
+    CVMBool sameLoader;
+    char buf[512];
+
+    if (CVMisArrayClass(cb) || CVMcbIs(cb, PRIMITIVE) ||
+	CVMcbCheckErrorFlag(ee, cb)) {
+	return;
+    }
+    if (cbLoader == NULL || list->loader == NULL) {
+	sameLoader = (cbLoader == NULL && list->loader == NULL);
+    } else {
+	CVMID_icellSameObject(ee, (CVMObjectICell*)cbLoader, list->loader,
+			      sameLoader);
+    }
+    if (!sameLoader) {
+	return;
+    }
+
+    if (!list->methods) {
+	/* ROMized classes are always present, so there is no point
+	   in preloading them. */
+	if (!CVMcbIsInROM(cb)) {
+	    CVMformatString(buf, sizeof(buf), "%C", cb);
+	    CVMwarmupAddName(list, buf);
+	}
+    }
+#ifdef CVM_JIT
+    else {
+	int i;
+	for (i = 0; i < CVMcbMethodCount(cb); i++) {
+	    CVMMethodBlock* mb = CVMcbMethodSlot(cb, i);
+	    if (CVMmbIsCompiled(mb)) {
+		CVMformatString(buf, sizeof(buf), "%C.%M", cb, mb);
+		CVMwarmupAddName(list, buf);
+	    }
+	}
+    }
+#endif
+}
+
+static jobjectArray
+CVMwarmupCollectNames(JNIEnv *env, jobject loader, CVMBool methods)
+{
+    CVMExecEnv *ee = CVMjniEnv2ExecEnv(env);
+    CVMWarmupNameList list;
+    jobjectArray result = NULL;
+    jclass stringClass;
+    int i;
+
+    list.loader = (CVMObjectICell*)loader;
+    list.methods = methods;
+    list.outOfMemory = CVM_FALSE;
+    list.names = NULL;
+    list.count = 0;
+    list.capacity = 0;
+
+    CVM_CLASSTABLE_LOCK(ee);
+    CVMclassIterateAllClasses(ee, &CVMwarmupCollectCallback, &list);
+    CVM_CLASSTABLE_UNLOCK(ee);
+
+    if (list.outOfMemory) {
+	CVMthrowOutOfMemoryError(ee, NULL);
+	goto done;
+    }
+
+    stringClass = (*env)->FindClass(env, "java/lang/String");
+    if (stringClass == NULL) {
+	goto done; /* exception already thrown */
+    }
+    result = (*env)->NewObjectArray(env, list.count, stringClass, NULL);
+    (*env)->DeleteLocalRef(env, stringClass);
+    if (result == NULL) {
+	goto done; /* exception already thrown */
+    }
+    for (i = 0; i < list.count; i++) {
+	jstring name = (*env)->NewStringUTF(env, list.names[i]);
+	if (name == NULL) {
+	    result = NULL; /* exception already thrown */
+	    goto done;
+	}
+	(*env)->SetObjectArrayElement(env, result, i, name);
+	(*env)->DeleteLocalRef(env, name);
+    }
+
+ done:
+    for (i = 0; i < list.count; i++) {
+	free(list.names[i]);
+    }
+    free(list.names);
+    return result;
+}
+
+JNIEXPORT jobjectArray JNICALL
+Java_sun_misc_JIT_getLoadedClasses(JNIEnv *env, jclass cls, jobject loader)
+{
+    return CVMwarmupCollectNames(env, loader, CVM_FALSE);
+}
+
 #ifndef CVM_JIT
 JNIEXPORT jboolean JNICALL 
 Java_sun_misc_JIT_compileMethod(JNIEnv *env, jclass cls, jobject methodObject,
@@ -52,6 +207,12 @@ Java_sun_misc_JIT_reparseJitOptions(JNIEnv *env, jclass cls,
 {
     return JNI_FALSE;
 }
+
+JNIEXPORT jobjectArray JNICALL
+Java_sun_misc_JIT_getCompiledMethods(JNIEnv *env, jclass cls, jobject loader)
+{
+    return NULL; /* Nothing is ever compiled if !CVM_JIT */
+}
 #else
 #include "javavm/include/reflect.h"
 #include "javavm/include/objects.h"
@@ -180,4 +341,10 @@ Java_sun_misc_JIT_reparseJitOptions(JNIEnv *env, jclass cls,
     return result;
 }
 
+JNIEXPORT jobjectArray JNICALL
+Java_sun_misc_JIT_getCompiledMethods(JNIEnv *env, jclass cls, jobject loader)
+{
+    return CVMwarmupCollectNames(env, loader, CVM_TRUE);
+}
+
 #endif /* CVM_JIT */
@@ -0,0 +1,77 @@
+/*
+ * %W% %E%
+ * @test
+ * @summary Unit test for sun.net.www.http.KeepAliveCache eviction
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+import java.net.URL;
+import sun.net.www.http.HttpClient;
+import sun.net.www.http.KeepAliveCache;
+
+public class KeepAliveCacheTest {
+
+    static int failures = 0;
+
+    static void check(boolean cond, String what) {
+	if (!cond) {
+	    System.out.println("FAILED: " + what);
+	    failures++;
+	} else {
+	    System.out.println("passed: " + what);
+	}
+    }
+
+    /* an idle client that has no connection to close */
+    static HttpClient client() {
+	return new HttpClient() {};
+    }
+
+    public static void main(String[] args) throws Exception {
+	System.setProperty("http.maxConnections", "1");
+	testReplaceOnlyEntry();
+	if (failures > 0) {
+	    throw new RuntimeException(failures + " test(s) failed");
+	}
+	System.out.println("KeepAliveCacheTest passed");
+    }
+
+    /* the second connection to a destination replaces the first */
+    static void testReplaceOnlyEntry() throws Exception {
+	KeepAliveCache cache = new KeepAliveCache();
+	URL url = new URL("http://www.example.com:8080/");
+	HttpClient first = client();
+	HttpClient second = client();
+
+	cache.put(url, null, first);
+	cache.put(url, null, second);
+	check(cache.getEvictions() == 1, "first connection evicted");
+	check(cache.get(url, null) == second, "second connection cached");
+	check(cache.get(url, null) == null, "no other connection cached");
+
+	cache.put(url, null, first);
+	check(cache.get(url, null) == first, "destination usable again");
+    }
+}
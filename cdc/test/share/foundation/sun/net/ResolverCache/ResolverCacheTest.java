@@ -0,0 +1,203 @@
+/*
+ * %W% %E%
+ * @test
+ * @summary Unit test for sun.net.ResolverCache with a stub name service
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.  
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER  
+ *   
+ * This program is free software; you can redistribute it and/or  
+ * modify it under the terms of the GNU General Public License version  
+ * 2 only, as published by the Free Software Foundation.   
+ *   
+ * This program is distributed in the hope that it will be useful, but  
+ * WITHOUT ANY WARRANTY; without even the implied warranty of  
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU  
+ * General Public License version 2 for more details (a copy is  
+ * included at /legal/license.txt).   
+ *   
+ * You should have received a copy of the GNU General Public License  
+ * version 2 along with this work; if not, write to the Free Software  
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  
+ * 02110-1301 USA   
+ *   
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa  
+ * Clara, CA 95054 or visit www.sun.com if you need additional  
+ * information or have any questions. 
+ *
+ */
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import sun.net.ResolverCache;
+import sun.net.spi.nameservice.NameService;
+
+public class ResolverCacheTest {
+
+    /* Answers every name except "unknown.*" after a delay, and counts calls */
+    static class StubNameService implements NameService {
+	int calls = 0;
+	long delay;
+
+	StubNameService(long delay) {
+	    this.delay = delay;
+	}
+
+	public byte[][] lookupAllHostAddr(String host)
+	    throws UnknownHostException {
+	    synchronized (this) {
+		calls++;
+	    }
+	    try {
+		Thread.sleep(delay);
+	    } catch (InterruptedException e) {
+	    }
+	    if (host.startsWith("unknown")) {
+		throw new UnknownHostException(host);
+	    }
+	    return new byte[][] { { 10, 0, 0, (byte)host.length() } };
+	}
+
+	public String getHostByAddr(byte[] addr) throws UnknownHostException {
+	    throw new UnknownHostException();
+	}
+
+	synchronized int calls() {
+	    return calls;
+	}
+    }
+
+    static int failures = 0;
+
+    static void check(boolean cond, String what) {
+	if (!cond) {
+	    System.out.println("FAILED: " + what);
+	    failures++;
+	} else {
+	    System.out.println("passed: " + what);
+	}
+    }
+
+    public static void main(String[] args) throws Exception {
+	testSharedLookup();
+	testLru();
+	testNegative();
+	testRefresh();
+	testAsync();
+	if (failures > 0) {
+	    throw new RuntimeException(failures + " test(s) failed");
+	}
+	System.out.println("ResolverCacheTest passed");
+    }
+
+    /* many threads, one name service call */
+    static void testSharedLookup() throws Exception {
+	StubNameService ns = new StubNameService(200);
+	final ResolverCache cache = new ResolverCache(ns, 30, 10, 16, 2);
+	final InetAddress[][] results = new InetAddress[10][];
+	Thread[] t = new Thread[results.length];
+	for (int i = 0; i < t.length; i++) {
+	    final int n = i;
+	    t[i] = new Thread() {
+		public void run() {
+		    try {
+			results[n] = cache.lookup("www.example.com");
+		    } catch (UnknownHostException e) {
+		    }
+		}
+	    };
+	    t[i].start();
+	}
+	for (int i = 0; i < t.length; i++) {
+	    t[i].join();
+	}
+	check(ns.calls() == 1, "concurrent lookups share one call");
+	boolean allOk = true;
+	for (int i = 0; i < results.length; i++) {
+	    allOk &= results[i] != null && results[i].length == 1 &&
+		results[i][0].getAddress()[3] == "www.example.com".length();
+	}
+	check(allOk, "all waiting threads get the address");
+	cache.lookup("WWW.EXAMPLE.COM");
+	check(ns.calls() == 1, "host names are case insensitive");
+    }
+
+    /* the least recently used host is dropped */
+    static void testLru() throws Exception {
+	StubNameService ns = new StubNameService(0);
+	ResolverCache cache = new ResolverCache(ns, 30, 10, 3, 1);
+	cache.lookup("a");
+	cache.lookup("bb");
+	cache.lookup("ccc");
+	cache.lookup("a");	// a is now the most recently used
+	cache.lookup("dddd");	// evicts bb
+	check(cache.size() == 3, "size bounded");
+	check(cache.getEvictions() == 1, "one eviction");
+	int before = ns.calls();
+	cache.lookup("a");
+	check(ns.calls() == before, "recently used host kept");
+	cache.lookup("bb");
+	check(ns.calls() == before + 1, "least recently used host evicted");
+    }
+
+    /* failures are cached for the negative policy */
+    static void testNegative() throws Exception {
+	StubNameService ns = new StubNameService(0);
+	ResolverCache cache = new ResolverCache(ns, 30, 10, 16, 1);
+	for (int i = 0; i < 3; i++) {
+	    try {
+		cache.lookup("unknown.example.com");
+		check(false, "unknown host throws");
+	    } catch (UnknownHostException e) {
+	    }
+	}
+	check(ns.calls() == 1, "negative result cached");
+    }
+
+    /* an entry used near its expiry is refreshed in the background */
+    static void testRefresh() throws Exception {
+	StubNameService ns = new StubNameService(0);
+	ResolverCache cache = new ResolverCache(ns, 1, 10, 16, 1);
+	cache.lookup("refresh.example.com");
+	Thread.sleep(900);
+	cache.lookup("refresh.example.com");	// hit, starts a refresh
+	Thread.sleep(300);
+	check(cache.getRefreshes() == 1, "refresh started");
+	check(ns.calls() == 2, "refresh called the name service");
+	long misses = cache.getMisses();
+	cache.lookup("refresh.example.com");
+	check(cache.getMisses() == misses, "refreshed entry still cached");
+    }
+
+    static void testAsync() throws Exception {
+	StubNameService ns = new StubNameService(100);
+	ResolverCache cache = new ResolverCache(ns, 30, 10, 16, 2);
+	final int[] called = new int[1];
+	ResolverCache.Callback cb = new ResolverCache.Callback() {
+	    public void lookupDone(String host, InetAddress[] addrs,
+				   UnknownHostException e) {
+		synchronized (called) {
+		    if (addrs != null) {
+			called[0]++;
+		    }
+		    called.notifyAll();
+		}
+	    }
+	};
+	ResolverCache.Lookup l1 = cache.lookupAsync("async.example.com", cb);
+	ResolverCache.Lookup l2 = cache.lookupAsync("async.example.com", cb);
+	check(!l1.isDone(), "lookup does not block the caller");
+	check(l1 == l2, "pending lookups are shared");
+	check(l1.get(5000) != null, "async lookup completes");
+	synchronized (called) {
+	    long end = System.currentTimeMillis() + 5000;
+	    while (called[0] < 2 && System.currentTimeMillis() < end) {
+		called.wait(500);
+	    }
+	}
+	check(called[0] == 2, "callbacks invoked");
+	check(ns.calls() == 1, "one call for async lookups");
+	ResolverCache.Lookup l3 = cache.lookupAsync("async.example.com", null);
+	check(l3.isDone(), "cached async lookup is done at once");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ *
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+
+package com.sun.cldchi.tools.memoryprofiler.data;
+
+/**
+ * Maps object addresses to object indices of a <code>HeapSnapshot</code>.
+ * Keys and values are kept in two primitive arrays with open addressing
+ * and linear probing, so no objects are allocated per entry.
+ *
+ * @see com.sun.cldchi.tools.memoryprofiler.data.HeapSnapshot
+ *
+ */
+class AddressMap {
+  private final int[] _keys;
+  private final int[] _values;
+  private final int _mask;
+
+  /**
+   * creates a map which can hold up to <code>capacity</code> entries
+   */
+  AddressMap(int capacity) {
+    int size = 16;
+    while (size < capacity * 2) {
+      size <<= 1;
+    }
+    _keys = new int[size];
+    _values = new int[size];
+    _mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      _values[i] = -1;
+    }
+  }
+
+  private int slot(int address) {
+    int h = address * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & _mask;
+  }
+
+  /**
+   * maps address to index, index must not be negative
+   */
+  void put(int address, int index) {
+    int i = slot(address);
+    while (_values[i] != -1 && _keys[i] != address) {
+      i = (i + 1) & _mask;
+    }
+    _keys[i] = address;
+    _values[i] = index;
+  }
+
+  /**
+   * return index of the object at the address or -1 if there is no such object
+   */
+  int get(int address) {
+    int i = slot(address);
+    while (_values[i] != -1) {
+      if (_keys[i] == address) {
+        return _values[i];
+      }
+      i = (i + 1) & _mask;
+    }
+    return -1;
+  }
+}
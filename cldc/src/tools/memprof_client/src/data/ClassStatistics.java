@@ -69,14 +69,18 @@ public class ClassStatistics {
   }
 
   public void add(JavaObject obj, int old_gen_end) {
-    _total_heap_size += obj.size;
+    add(obj.address, obj.size, obj.alive(), old_gen_end);
+  }
+
+  void add(int address, int size, boolean alive, int old_gen_end) {
+    _total_heap_size += size;
     _count++;
-    _total_size += obj.size;
-    if (!obj.alive()) {
-      _dead_size += obj.size;
+    _total_size += size;
+    if (!alive) {
+      _dead_size += size;
     }
-    if (obj.address < old_gen_end) {
-      _old_gen_size += obj.size;
+    if (address < old_gen_end) {
+      _old_gen_size += size;
     }
   }
  
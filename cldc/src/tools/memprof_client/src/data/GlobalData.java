@@ -38,11 +38,8 @@ import java.util.*;
 
 class GlobalData implements MPDataProvider {
   private VMConnection _connector;
-  private int _heap_start;
-  private int _heap_top;
-  private int _old_gen_end;
-  private int _allocation_top;
-  private HashMap _allJavaObjects = new HashMap();
+  private HeapSnapshot _snapshot;
+  private HeapSnapshot.Builder _builder;
   private HashMap _allClasses = new HashMap();
 
     // memory profiler command constants
@@ -63,25 +60,32 @@ class GlobalData implements MPDataProvider {
   private static final int  TASK_ID_OFFSET = 16;
   private static final int  OBJ_TYPE_OFFSET = 23;
 
-  public int get_heap_start() {return _heap_start;};
-  public int get_heap_top() {return _heap_top;};
-  public int get_old_gen_end() {return _old_gen_end;};
-  public int get_allocation_top() {return _allocation_top;};
+  public int get_heap_start() {return _snapshot == null ? 0 : _snapshot.get_heap_start();};
+  public int get_heap_top() {return _snapshot == null ? 0 : _snapshot.get_heap_top();};
+  public int get_old_gen_end() {return _snapshot == null ? 0 : _snapshot.get_old_gen_end();};
+  public int get_allocation_top() {return _snapshot == null ? 0 : _snapshot.get_allocation_top();};
 
   GlobalData(VMConnection connection) {
     _connector = connection;
   }
 
   private void update() throws SocketException {
-    getClassList();
+    reset();
+    _builder = new HeapSnapshot.Builder();
+    JavaClass[] classes = getClassList();
+    for (int i = 0; i < classes.length; i++) {
+      _builder.addClass(classes[i]);
+    }
     getAllData();
     getRoots();
     try {
       VMReply r = _connector.sendReplyCommand(MPGetGlobalData);
-      _heap_start =     r.getInt();
-      _heap_top =       r.getInt();
-      _old_gen_end =    r.getInt();
-      _allocation_top = r.getInt();
+      int heap_start =     r.getInt();
+      int heap_top =       r.getInt();
+      int old_gen_end =    r.getInt();
+      int allocation_top = r.getInt();
+      _snapshot = _builder.build(heap_start, heap_top, old_gen_end, allocation_top);
+      _builder = null;
     }catch(DebugeeException e) {
       reset();
       throw new SocketException(e.getMessage());
@@ -89,10 +93,12 @@ class GlobalData implements MPDataProvider {
       reset();
       throw new SocketException(e.getMessage());
     }
-    calculateDeadObjects();
   }
 
   public JavaClass[] getClassList() throws SocketException {
+    if (_snapshot != null && !_connector.isConnected()) {
+      return _snapshot.getClassList();
+    }
     _allClasses.clear();
     JavaClass[] result = null;
     try {
@@ -114,9 +120,6 @@ class GlobalData implements MPDataProvider {
   }
 
   private void getAllData() throws SocketException {
-    int read = 1;
-    int oread = 1;
-    _allJavaObjects.clear();
     try {
       while (true) {
         VMReply r = _connector.sendReplyCommand(MPGetHeapData);
@@ -128,21 +131,16 @@ class GlobalData implements MPDataProvider {
           int stack_number = -1;
           if (object_type == STACK_OBJECT) {
             stack_number = r.getInt();
-            read++;
           } 
           int links = r.getInt();
           int[] refs = new int[links];
-          HashMap offsets = new HashMap(links);
+          int[] offsets = null;
           if (object_type == STACK_OBJECT) {
+            offsets = new int[links];
             for (int i = 0; i < links; i++) {
               refs[i] = r.getInt();
-              int offset = r.getInt();
-              Integer cur_offset = (Integer)offsets.get(new Integer(refs[i]));
-              if (cur_offset == null || cur_offset.intValue() < offset) {
-                offsets.put(new Integer(refs[i]), new Integer(offset));
-              }
+              offsets[i] = r.getInt();
             }
-            read += links;
           } else {
             for (int i = 0; i < links; i++) {
               refs[i] = r.getInt();
@@ -154,25 +152,16 @@ class GlobalData implements MPDataProvider {
           if (class_item != null) {
             class_id = class_item.id;
           }
-          if (object_type == JAVA_OBJECT) {
-            _allJavaObjects.put(new Integer(object_address), 
-               new JavaObject(object_address, class_id, size, refs, JAVA_OBJECT));
-          } else if (object_type == STATICS_OBJECT) {
-            _allJavaObjects.put(new Integer(object_address), 
-               new JavaObject(object_address, class_id, size, refs, STATICS_OBJECT));
+          if (object_type == JAVA_OBJECT || object_type == STATICS_OBJECT) {
+            _builder.addObject(object_address, size, class_id, object_type, refs, null, -1);
           } else if (object_type == STACK_OBJECT) {
-            _allJavaObjects.put(new Integer(object_address), 
-               new JavaObject(object_address, -1, size, refs, STACK_OBJECT, offsets, stack_number));
+            _builder.addObject(object_address, size, -1, STACK_OBJECT, refs, offsets, stack_number);
           } else if (object_type == VM_OBJECT) {
-            _allJavaObjects.put(new Integer(object_address), 
-               new JavaObject(object_address, -1, size, refs, VM_OBJECT));
+            _builder.addObject(object_address, size, -1, VM_OBJECT, refs, null, -1);
           } else {
             System.out.println("Wrong response from VM! Unknown object type. Skipped!");
           }
           object_address = r.getInt();
-          read += 4;
-          read += links;
-          oread++;
         }         
         if (object_address == -1) break;
       }
@@ -180,75 +169,50 @@ class GlobalData implements MPDataProvider {
       reset();
       throw new SocketException(e.getMessage());
     }
-    updateAllObjects();
-  }
-
-  private void updateAllObjects() {
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext();) {
-      JavaObject obj = (JavaObject)it.next();
-      for (int i = 0; i < obj._references_addresses.length; i++) {
-        JavaObject ref = getObjectByAddress(obj._references_addresses[i]);
-        if (ref != null) {
-          obj.add_reference(ref);
-          ref.add_referee(obj);
-        } 
-      }
-    }
-  }
-
-  private JavaObject getObjectByAddress(int address) {
-    Integer key = new Integer(address);
-    return (JavaObject)_allJavaObjects.get(key);
   }
 
   public JavaObject[] getObjectsOfClass(JavaClass jc) {
-    if (jc == null) return new JavaObject[0];
+    if (jc == null || _snapshot == null) return new JavaObject[0];
     int obj_count = 0;
     int class_id = jc.id;
-
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext(); ) {
-      JavaObject elem = (JavaObject)it.next();
-      if (elem.object_type == JAVA_OBJECT && elem.class_id == class_id)
+    int count = _snapshot.getObjectCount();
+    for (int i = 0; i < count; i++) {
+      if (_snapshot.getObjectType(i) == JAVA_OBJECT && _snapshot.getClassId(i) == class_id)
         obj_count++;
     } 
     JavaObject result[] = new JavaObject[obj_count];
     obj_count = 0;
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext(); ) {
-      JavaObject elem = (JavaObject)it.next();
-      if (elem.object_type == JAVA_OBJECT && elem.class_id == class_id)
-        result[obj_count++] = elem;
+    for (int i = 0; i < count; i++) {
+      if (_snapshot.getObjectType(i) == JAVA_OBJECT && _snapshot.getClassId(i) == class_id)
+        result[obj_count++] = new JavaObject(_snapshot, i);
     }
     return result;
   }
 
   public Iterator getObjects() {
-    return _allJavaObjects.values().iterator();
+    final HeapSnapshot snapshot = _snapshot;
+    return new Iterator() {
+      private int _next = 0;
+      public boolean hasNext() {
+        return snapshot != null && _next < snapshot.getObjectCount();
+      }
+      public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return new JavaObject(snapshot, _next++);
+      }
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
   }
+
   public void connect(String hostName, int port) throws java.net.ConnectException, SocketException  {
     _connector.connect(hostName, port);
     pauseVM();
   }
 
   public String getObjectTypeName(JavaObject obj) {
-    if (obj.object_type == JAVA_OBJECT || obj.object_type == STATICS_OBJECT) {
-      JavaClass item = (JavaClass)_allClasses.get(new Integer(obj.class_id)); 
-      if (item == null) { //this is just for debug!
-        System.out.println(obj.class_id);
-        System.out.println(obj.object_type);
-        return "null!";
-      }
-      if (obj.object_type == JAVA_OBJECT) {
-        return item.name;
-      } else { //statics object
-        return StaticsObjectName + item.name;
-      }    
-    } else if (obj.object_type == STACK_OBJECT) {
-      return StackObjectName;
-    } else if (obj.object_type == VM_OBJECT) {        
-      return InternalObjectName;
-    } else {
-      return "Wrong object type! Report a bug please!";
-    }
+    return obj._heap.getTypeName(obj._index);
   }
 
   private void getRoots() throws SocketException {
@@ -256,11 +220,7 @@ class GlobalData implements MPDataProvider {
       VMReply r = _connector.sendReplyCommand(MPGetRoots);
       int root = r.getInt();
       while (root != -1) {
-        Integer key = new Integer(root);
-        JavaObject obj = (JavaObject)_allJavaObjects.get(key);
-        if (obj != null) {
-          obj.setRootDistance(0);
-        }
+        _builder.addRoot(root);
         root = r.getInt();
       }
     } catch (Exception e) {
@@ -270,71 +230,27 @@ class GlobalData implements MPDataProvider {
 
   }
 
-  private void calculateDeadObjects() {
-    boolean was_updated = true;
-    while (was_updated) {
-      was_updated = false;
-      for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext(); ) {
-        JavaObject elem = (JavaObject)it.next();
-        if (elem.getRootDistance() == -1)
-          continue;
-        Object[] refs = elem.get_references();
-        for (int i = 0; i < refs.length; i++) {
-          JavaObject obj = (JavaObject)refs[i];
-          if (obj.getRootDistance() == -1) {
-            obj.setRootDistance(elem.getRootDistance() + 1);
-            was_updated = true;
-          } else if (obj.getRootDistance() > 1 + elem.getRootDistance()) {
-            obj.setRootDistance(elem.getRootDistance() + 1);
-            was_updated = true;
-          }
-        }
-      } 
-    }   
-  }
-
   public JavaObject[] pathFromTheRoot(JavaObject obj) {
     if (obj == null) return null;
-    if (obj.getRootDistance() == -1) return null;
-    JavaObject[] result = new JavaObject[obj.getRootDistance() + 1];
-    int dst = obj.getRootDistance();
-    while (dst > 0) { 
-      result[dst--] = obj;
-      Object[] referees = obj.get_referees();
-      for (int i = 0; i < referees.length; i++) {
-        JavaObject elem = (JavaObject)referees[i];
-        if (elem.getRootDistance() == obj.getRootDistance() - 1) {
-          obj = elem; break;
-        }
-      }      
-      if (dst != obj.getRootDistance()) throw new RuntimeException("problem here!");      
-    }
-    result[dst--] = obj;
+    int[] path = obj._heap.pathFromTheRoot(obj._index);
+    if (path == null) return null;
+    JavaObject[] result = JavaObject.objects(obj._heap, path);
+    result[result.length - 1] = obj;
     return result;
   } 
 
   public JavaObject[] getObjectsFromTheAddresses(int start, int end) {
     if (start > end) throw new RuntimeException();
-    int obj_count = 0;
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext(); ) {
-      JavaObject obj = (JavaObject)it.next();
-      if (obj.address + obj.size > start && obj.address < end) {
-        obj_count++;
-      }
+    if (_snapshot == null) return new JavaObject[0];
+    int first = _snapshot.firstObjectAfter(start);
+    int last = first;
+    while (last < _snapshot.getObjectCount() && _snapshot.getAddress(last) < end) {
+      last++;
     }
-    JavaObject[] result = new JavaObject[obj_count];
-    obj_count = 0;
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext(); ) {
-      JavaObject obj = (JavaObject)it.next();
-      if (obj.address + obj.size > start && obj.address < end) {
-        result[obj_count++] = obj;
-      }
+    JavaObject[] result = new JavaObject[last - first];
+    for (int i = first; i < last; i++) {
+      result[i - first] = new JavaObject(_snapshot, i);
     }
-    Arrays.sort(result, new Comparator() {
-     public int	compare(Object o1, Object o2) {
-       return ((JavaObject)o1).address - ((JavaObject)o2).address;
-     } 
-    });
     return result;
   } 
 
@@ -361,22 +277,22 @@ class GlobalData implements MPDataProvider {
   public ClassStatistics[] calculateStatistics() {
 
     ClassStatistics.reset();
-    int count = _allClasses.values().size() + 1;
-    HashMap result = new HashMap(count);
+    HashMap result = new HashMap(_allClasses.values().size() + 1);
     for (Iterator it = _allClasses.values().iterator(); it.hasNext();) {
       JavaClass item = (JavaClass)it.next();
       result.put(new Integer(item.id), new ClassStatistics(item.name));
     }
     result.put(new Integer(-1), new ClassStatistics("Internal VM Objects"));
-    for (Iterator it = _allJavaObjects.values().iterator(); it.hasNext();) {
-      JavaObject obj = (JavaObject)it.next();
-      int type_id = obj.class_id;      
-      if (obj.object_type != JAVA_OBJECT) {
+    int count = _snapshot == null ? 0 : _snapshot.getObjectCount();
+    for (int i = 0; i < count; i++) {
+      int type_id = _snapshot.getClassId(i);
+      if (_snapshot.getObjectType(i) != JAVA_OBJECT) {
          type_id = -1;
       }
       ClassStatistics cls = (ClassStatistics)result.get(new Integer(type_id));
       if (cls == null) continue; //shall not happend
-      cls.add(obj, get_old_gen_end());
+      cls.add(_snapshot.getAddress(i), _snapshot.getSize(i),
+              _snapshot.getRootDistance(i) != -1, get_old_gen_end());
     }
     Object[] arr = result.values().toArray();
     Arrays.sort(arr, new Comparator() {
@@ -441,9 +357,8 @@ class GlobalData implements MPDataProvider {
                    "Please report a bug!";
     }
     int[] params = new int[2];    
-    params[0] = stack_object._stack_id;
-    Integer offset = (Integer)stack_object._stack_offsets.get(new Integer(ptr));
-    params[1] = offset.intValue();
+    params[0] = stack_object._heap.getStackId(stack_object._index);
+    params[1] = stack_object._heap.getStackOffset(stack_object._index, ptr);
     String result = null;
     try {
       VMReply reply = _connector.sendReplyCommand(MPVMStackTrace, params);
@@ -456,12 +371,24 @@ class GlobalData implements MPDataProvider {
     return result;
   }
 
+  public HeapSnapshot getSnapshot() {
+    return _snapshot;
+  }
+
+  public void setSnapshot(HeapSnapshot snapshot) {
+    if (_connector.isConnected()) {
+      throw new IllegalStateException("Snapshot can not be replaced while connected to the VM");
+    }
+    reset();
+    _snapshot = snapshot;
+    JavaClass[] classes = snapshot.getClassList();
+    for (int i = 0; i < classes.length; i++) {
+      _allClasses.put(new Integer(classes[i].id), classes[i]);
+    }
+  }
+
   private void reset() {
-    _heap_start = 0;
-    _heap_top = 0;
-    _old_gen_end = 0;
-    _allocation_top = 0;
-    _allJavaObjects.clear();
+    _snapshot = null;
     _allClasses.clear();
     ClassStatistics.reset();
   }
@@ -0,0 +1,758 @@
+/*
+ *
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+
+package com.sun.cldchi.tools.memoryprofiler.data;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * This class contains the state of the VM heap at one moment.
+ *
+ * Objects are numbered in the order of their addresses, and each object
+ * property is kept in a primitive array indexed by that number. References
+ * of object <code>i</code> are the indices
+ * <code>_refs[_ref_start[i]] .. _refs[_ref_start[i+1]-1]</code>, referees
+ * are kept the same way. <code>JavaObject</code> instances are created only
+ * when the GUI asks for them.
+ *
+ * Besides the distance from the roots the snapshot computes the dominator
+ * tree of the object graph: object <code>d</code> dominates object
+ * <code>o</code> if every path from the roots to <code>o</code> goes through
+ * <code>d</code>. The retained size of an object is the total size of the
+ * objects it dominates, that is the memory which is freed when the object
+ * becomes unreachable.
+ *
+ * A snapshot can be saved to a stream, loaded back and compared with another
+ * snapshot.
+ *
+ * @see com.sun.cldchi.tools.memoryprofiler.data.JavaObject
+ * @see com.sun.cldchi.tools.memoryprofiler.data.SnapshotDiff
+ *
+ */
+public class HeapSnapshot {
+  private static final int MAGIC   = 0x4D504853; // "MPHS"
+  private static final int VERSION = 1;
+
+  private int _heap_start;
+  private int _heap_top;
+  private int _old_gen_end;
+  private int _allocation_top;
+
+  private int[] _class_ids;
+  private String[] _class_names;
+  private HashMap _class_by_id;
+
+  private int _count;
+  private int[] _address;
+  private int[] _size;
+  private int[] _class_id;
+  private byte[] _type;
+  private int[] _ref_start;
+  private int[] _refs;
+  private int[] _referee_start;
+  private int[] _referees;
+  private int[] _roots;
+  private AddressMap _index;
+
+  /**
+   * stack objects sorted by index, their stack numbers and offsets of their
+   * references (in the order of the references)
+   */
+  private int[] _stack_objects;
+  private int[] _stack_ids;
+  private int[] _stack_offsets_start;
+  private int[] _stack_offsets;
+
+  private int[] _root_distance;
+  private int[] _parent;
+  private int[] _idom;
+  private int[] _retained;
+
+  private HeapSnapshot() {}
+
+  public int get_heap_start() {return _heap_start;}
+  public int get_heap_top() {return _heap_top;}
+  public int get_old_gen_end() {return _old_gen_end;}
+  public int get_allocation_top() {return _allocation_top;}
+
+  /**
+   * return classes of the snapshot
+   */
+  public JavaClass[] getClassList() {
+    JavaClass[] result = new JavaClass[_class_ids.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new JavaClass(_class_ids[i], _class_names[i]);
+    }
+    return result;
+  }
+
+  public String getClassName(int class_id) {
+    return (String)_class_by_id.get(new Integer(class_id));
+  }
+
+  public int getObjectCount() {return _count;}
+  public int getAddress(int index) {return _address[index];}
+  public int getSize(int index) {return _size[index];}
+  public int getClassId(int index) {return _class_id[index];}
+  public int getObjectType(int index) {return _type[index];}
+
+  /**
+   * return index of the object at the address or -1 if there is no such object
+   */
+  public int indexOf(int address) {
+    return _index.get(address);
+  }
+
+  /**
+   * return index of the first object which ends after the address
+   */
+  public int firstObjectAfter(int address) {
+    int lo = 0;
+    int hi = _count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (_address[mid] < address) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    if (lo > 0 && _address[lo - 1] + _size[lo - 1] > address) {
+      lo--;
+    }
+    return lo;
+  }
+
+  /**
+   * return indices of the objects which are referenced by the object
+   */
+  public int[] getReferences(int index) {
+    return slice(_refs, _ref_start[index], _ref_start[index + 1]);
+  }
+
+  /**
+   * return indices of the objects which reference the object
+   */
+  public int[] getReferees(int index) {
+    return slice(_referees, _referee_start[index], _referee_start[index + 1]);
+  }
+
+  private static int[] slice(int[] data, int from, int to) {
+    int[] result = new int[to - from];
+    System.arraycopy(data, from, result, 0, result.length);
+    return result;
+  }
+
+  /**
+   * return minimal size of a chain of linked objects started from
+   * a root object and finished in the object, -1 for dead objects
+   */
+  public int getRootDistance(int index) {
+    return _root_distance[index];
+  }
+
+  /**
+   * return indices of the shortest chain of linked objects from a root
+   * object to the object or null if the object is dead
+   */
+  public int[] pathFromTheRoot(int index) {
+    int dst = _root_distance[index];
+    if (dst == -1) return null;
+    int[] result = new int[dst + 1];
+    for (; dst >= 0; dst--) {
+      result[dst] = index;
+      index = _parent[index];
+    }
+    return result;
+  }
+
+  /**
+   * return index of the immediate dominator of the object, or -1 if the
+   * object is dead or no single object dominates it
+   */
+  public int getDominator(int index) {
+    return _idom[index];
+  }
+
+  /**
+   * return total size of the objects which are reachable only through
+   * the object, including the object itself
+   */
+  public int getRetainedSize(int index) {
+    return _retained[index];
+  }
+
+  private int stackIndex(int index) {
+    return _stack_objects == null ? -1 : Arrays.binarySearch(_stack_objects, index);
+  }
+
+  /**
+   * return number of the stack for a stack object, -1 for other objects
+   */
+  public int getStackId(int index) {
+    int s = stackIndex(index);
+    return s < 0 ? -1 : _stack_ids[s];
+  }
+
+  /**
+   * return the largest offset of a pointer to ptr in the stack object
+   * or -1 if the stack does not reference ptr
+   */
+  public int getStackOffset(int index, int ptr) {
+    int s = stackIndex(index);
+    if (s < 0) return -1;
+    int result = -1;
+    int offsets = _stack_offsets_start[s];
+    for (int i = _ref_start[index]; i < _ref_start[index + 1]; i++, offsets++) {
+      if (_address[_refs[i]] == ptr && _stack_offsets[offsets] > result) {
+        result = _stack_offsets[offsets];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * return name of the type of the object
+   */
+  public String getTypeName(int index) {
+    int type = _type[index];
+    if (type == MPDataProvider.JAVA_OBJECT || type == MPDataProvider.STATICS_OBJECT) {
+      String name = getClassName(_class_id[index]);
+      if (name == null) {
+        return "null!";
+      }
+      if (type == MPDataProvider.JAVA_OBJECT) {
+        return name;
+      } else {
+        return GlobalData.StaticsObjectName + name;
+      }
+    } else if (type == MPDataProvider.STACK_OBJECT) {
+      return GlobalData.StackObjectName;
+    } else if (type == MPDataProvider.VM_OBJECT) {
+      return GlobalData.InternalObjectName;
+    } else {
+      return "Wrong object type! Report a bug please!";
+    }
+  }
+
+  /**
+   * Compares the snapshot with an older one. The objects are grouped by
+   * their type names, groups which did not change are not reported.
+   *
+   * @param base - the older snapshot
+   *
+   * @return changes sorted by the size difference, largest first
+   */
+  public SnapshotDiff[] diff(HeapSnapshot base) {
+    HashMap types = new HashMap();
+    for (int i = 0; i < base._count; i++) {
+      String name = base.getTypeName(i);
+      SnapshotDiff item = (SnapshotDiff)types.get(name);
+      if (item == null) {
+        item = new SnapshotDiff(name);
+        types.put(name, item);
+      }
+      item.addBefore(base._size[i]);
+    }
+    for (int i = 0; i < _count; i++) {
+      String name = getTypeName(i);
+      SnapshotDiff item = (SnapshotDiff)types.get(name);
+      if (item == null) {
+        item = new SnapshotDiff(name);
+        types.put(name, item);
+      }
+      item.addAfter(_size[i]);
+    }
+    ArrayList changed = new ArrayList();
+    for (Iterator it = types.values().iterator(); it.hasNext();) {
+      SnapshotDiff item = (SnapshotDiff)it.next();
+      if (item.getCountDelta() != 0 || item.getSizeDelta() != 0) {
+        changed.add(item);
+      }
+    }
+    SnapshotDiff[] result = (SnapshotDiff[])changed.toArray(new SnapshotDiff[changed.size()]);
+    Arrays.sort(result, new Comparator() {
+      public int compare(Object o1, Object o2) {
+        int d1 = Math.abs(((SnapshotDiff)o1).getSizeDelta());
+        int d2 = Math.abs(((SnapshotDiff)o2).getSizeDelta());
+        if (d1 != d2) return d2 > d1 ? 1 : -1;
+        return ((SnapshotDiff)o1)._type_name.compareTo(((SnapshotDiff)o2)._type_name);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Writes the snapshot to the stream. Distances, dominators and retained
+   * sizes are not written, they are computed again by <code>load</code>.
+   */
+  public void save(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(_heap_start);
+    out.writeInt(_heap_top);
+    out.writeInt(_old_gen_end);
+    out.writeInt(_allocation_top);
+    out.writeInt(_class_ids.length);
+    for (int i = 0; i < _class_ids.length; i++) {
+      out.writeInt(_class_ids[i]);
+      out.writeUTF(_class_names[i]);
+    }
+    out.writeInt(_count);
+    for (int i = 0; i < _count; i++) {
+      out.writeInt(_address[i]);
+      out.writeInt(_size[i]);
+      out.writeInt(_class_id[i]);
+      out.writeByte(_type[i]);
+    }
+    writeInts(out, _ref_start);
+    writeInts(out, _refs);
+    writeInts(out, _roots);
+    writeInts(out, _stack_objects);
+    writeInts(out, _stack_ids);
+    writeInts(out, _stack_offsets_start);
+    writeInts(out, _stack_offsets);
+    out.flush();
+  }
+
+  /**
+   * Reads a snapshot written by <code>save</code>.
+   *
+   * @throws IOException if the stream does not contain a snapshot
+   */
+  public static HeapSnapshot load(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a heap snapshot");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported heap snapshot version " + version);
+    }
+    HeapSnapshot s = new HeapSnapshot();
+    s._heap_start = in.readInt();
+    s._heap_top = in.readInt();
+    s._old_gen_end = in.readInt();
+    s._allocation_top = in.readInt();
+    int classes = in.readInt();
+    s._class_ids = new int[classes];
+    s._class_names = new String[classes];
+    for (int i = 0; i < classes; i++) {
+      s._class_ids[i] = in.readInt();
+      s._class_names[i] = in.readUTF();
+    }
+    s._count = in.readInt();
+    s._address = new int[s._count];
+    s._size = new int[s._count];
+    s._class_id = new int[s._count];
+    s._type = new byte[s._count];
+    for (int i = 0; i < s._count; i++) {
+      s._address[i] = in.readInt();
+      s._size[i] = in.readInt();
+      s._class_id[i] = in.readInt();
+      s._type[i] = in.readByte();
+    }
+    s._ref_start = readInts(in);
+    s._refs = readInts(in);
+    s._roots = readInts(in);
+    s._stack_objects = readInts(in);
+    s._stack_ids = readInts(in);
+    s._stack_offsets_start = readInts(in);
+    s._stack_offsets = readInts(in);
+    if (s._ref_start.length != s._count + 1) {
+      throw new IOException("Corrupted heap snapshot");
+    }
+    s.analyze();
+    return s;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] data) throws IOException {
+    out.writeInt(data.length);
+    for (int i = 0; i < data.length; i++) {
+      out.writeInt(data[i]);
+    }
+  }
+
+  private static int[] readInts(DataInputStream in) throws IOException {
+    int[] data = new int[in.readInt()];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = in.readInt();
+    }
+    return data;
+  }
+
+  /**
+   * computes everything which can be derived from the objects and references
+   */
+  private void analyze() {
+    _class_by_id = new HashMap(_class_ids.length);
+    for (int i = 0; i < _class_ids.length; i++) {
+      _class_by_id.put(new Integer(_class_ids[i]), _class_names[i]);
+    }
+    if (_index == null) {
+      _index = new AddressMap(_count);
+      for (int i = 0; i < _count; i++) {
+        _index.put(_address[i], i);
+      }
+    }
+    calculateReferees();
+    calculateRootDistances();
+    calculateDominators();
+  }
+
+  private void calculateReferees() {
+    _referee_start = new int[_count + 1];
+    for (int i = 0; i < _refs.length; i++) {
+      _referee_start[_refs[i] + 1]++;
+    }
+    for (int i = 0; i < _count; i++) {
+      _referee_start[i + 1] += _referee_start[i];
+    }
+    _referees = new int[_refs.length];
+    int[] fill = new int[_count];
+    System.arraycopy(_referee_start, 0, fill, 0, _count);
+    for (int i = 0; i < _count; i++) {
+      for (int j = _ref_start[i]; j < _ref_start[i + 1]; j++) {
+        _referees[fill[_refs[j]]++] = i;
+      }
+    }
+  }
+
+  /**
+   * breadth-first walk from the roots, remembers the parent of each object
+   * so the path from the root is found without searching
+   */
+  private void calculateRootDistances() {
+    _root_distance = new int[_count];
+    _parent = new int[_count];
+    Arrays.fill(_root_distance, -1);
+    Arrays.fill(_parent, -1);
+    int[] queue = new int[_count];
+    int head = 0;
+    int tail = 0;
+    for (int i = 0; i < _roots.length; i++) {
+      int root = _roots[i];
+      if (_root_distance[root] == -1) {
+        _root_distance[root] = 0;
+        queue[tail++] = root;
+      }
+    }
+    while (head < tail) {
+      int obj = queue[head++];
+      for (int j = _ref_start[obj]; j < _ref_start[obj + 1]; j++) {
+        int ref = _refs[j];
+        if (_root_distance[ref] == -1) {
+          _root_distance[ref] = _root_distance[obj] + 1;
+          _parent[ref] = obj;
+          queue[tail++] = ref;
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes immediate dominators with the iterative algorithm of Cooper,
+   * Harvey and Kennedy. A virtual node with index <code>_count</code>
+   * references all the roots, so the graph has a single entry.
+   */
+  private void calculateDominators() {
+    int entry = _count;
+    int[] post = new int[_count + 1];
+    int[] order = new int[_count + 1];
+    int num = postorder(post, order);
+
+    int[] idom = new int[_count + 1];
+    Arrays.fill(idom, -1);
+    idom[entry] = entry;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      // reverse postorder, the entry is the last one
+      for (int k = num - 2; k >= 0; k--) {
+        int obj = order[k];
+        int new_idom = (_root_distance[obj] == 0) ? entry : -1;
+        for (int j = _referee_start[obj]; j < _referee_start[obj + 1]; j++) {
+          int pred = _referees[j];
+          if (idom[pred] == -1) continue; // dead or not processed yet
+          new_idom = (new_idom == -1) ? pred : intersect(pred, new_idom, idom, post);
+        }
+        if (idom[obj] != new_idom) {
+          idom[obj] = new_idom;
+          changed = true;
+        }
+      }
+    }
+
+    // dominator is always finished later than the objects it dominates
+    _retained = new int[_count];
+    System.arraycopy(_size, 0, _retained, 0, _count);
+    _idom = new int[_count];
+    Arrays.fill(_idom, -1);
+    for (int k = 0; k < num - 1; k++) {
+      int obj = order[k];
+      int dom = idom[obj];
+      if (dom != entry) {
+        _idom[obj] = dom;
+        _retained[dom] += _retained[obj];
+      }
+    }
+  }
+
+  private static int intersect(int a, int b, int[] idom, int[] post) {
+    while (a != b) {
+      while (post[a] < post[b]) a = idom[a];
+      while (post[b] < post[a]) b = idom[b];
+    }
+    return a;
+  }
+
+  /**
+   * depth-first walk from the virtual entry, fills postorder numbers
+   * of the objects and objects by their numbers
+   *
+   * @return number of the visited objects including the entry
+   */
+  private int postorder(int[] post, int[] order) {
+    int entry = _count;
+    Arrays.fill(post, -1);
+    boolean[] visited = new boolean[_count + 1];
+    int[] stack = new int[_count + 1];
+    int[] next = new int[_count + 1];
+    int sp = 0;
+    int num = 0;
+    stack[0] = entry;
+    next[0] = 0;
+    visited[entry] = true;
+    while (sp >= 0) {
+      int obj = stack[sp];
+      int succ = -1;
+      if (obj == entry) {
+        if (next[sp] < _roots.length) {
+          succ = _roots[next[sp]++];
+        }
+      } else if (_ref_start[obj] + next[sp] < _ref_start[obj + 1]) {
+        succ = _refs[_ref_start[obj] + next[sp]++];
+      }
+      if (succ == -1) {
+        post[obj] = num;
+        order[num++] = obj;
+        sp--;
+      } else if (!visited[succ]) {
+        visited[succ] = true;
+        stack[++sp] = succ;
+        next[sp] = 0;
+      }
+    }
+    return num;
+  }
+
+  /**
+   * Collects objects received from the VM and turns them into a snapshot.
+   * Objects may be added in any order, references to addresses which are
+   * not objects are dropped.
+   */
+  static class Builder {
+    private int _count;
+    private int[] _address = new int[1024];
+    private int[] _size = new int[1024];
+    private int[] _class_id = new int[1024];
+    private byte[] _type = new byte[1024];
+    private int[] _ref_start = new int[1025];
+    private int _ref_count;
+    private int[] _refs = new int[4096];
+    private int _stack_count;
+    private int[] _stack_objects = new int[16];
+    private int[] _stack_ids = new int[16];
+    private int[] _stack_offsets = new int[256];
+    private int _root_count;
+    private int[] _roots = new int[256];
+    private ArrayList _classes = new ArrayList();
+
+    void addClass(JavaClass jc) {
+      _classes.add(jc);
+    }
+
+    /**
+     * adds an object, offsets are given only for stack objects
+     */
+    void addObject(int address, int size, int class_id, int type,
+                   int[] refs, int[] offsets, int stack_id) {
+      if (_count == _address.length) {
+        int n = _count * 2;
+        _address = grow(_address, n);
+        _size = grow(_size, n);
+        _class_id = grow(_class_id, n);
+        byte[] type_data = new byte[n];
+        System.arraycopy(_type, 0, type_data, 0, _count);
+        _type = type_data;
+        _ref_start = grow(_ref_start, n + 1);
+      }
+      _address[_count] = address;
+      _size[_count] = size;
+      _class_id[_count] = class_id;
+      _type[_count] = (byte)type;
+      if (_ref_count + refs.length > _refs.length) {
+        _refs = grow(_refs, Math.max(_refs.length * 2, _ref_count + refs.length));
+      }
+      System.arraycopy(refs, 0, _refs, _ref_count, refs.length);
+      if (offsets != null) {
+        if (_stack_count == _stack_objects.length) {
+          _stack_objects = grow(_stack_objects, _stack_count * 2);
+          _stack_ids = grow(_stack_ids, _stack_count * 2);
+        }
+        _stack_objects[_stack_count] = _count;
+        _stack_ids[_stack_count] = stack_id;
+        _stack_count++;
+        if (_stack_offsets.length < _refs.length) {
+          _stack_offsets = grow(_stack_offsets, _refs.length);
+        }
+        System.arraycopy(offsets, 0, _stack_offsets, _ref_count, offsets.length);
+      }
+      _ref_count += refs.length;
+      _count++;
+      _ref_start[_count] = _ref_count;
+    }
+
+    void addRoot(int address) {
+      if (_root_count == _roots.length) {
+        _roots = grow(_roots, _root_count * 2);
+      }
+      _roots[_root_count++] = address;
+    }
+
+    private static int[] grow(int[] data, int size) {
+      int[] result = new int[size];
+      System.arraycopy(data, 0, result, 0, Math.min(data.length, size));
+      return result;
+    }
+
+    HeapSnapshot build(int heap_start, int heap_top, int old_gen_end, int allocation_top) {
+      HeapSnapshot s = new HeapSnapshot();
+      s._heap_start = heap_start;
+      s._heap_top = heap_top;
+      s._old_gen_end = old_gen_end;
+      s._allocation_top = allocation_top;
+      s._class_ids = new int[_classes.size()];
+      s._class_names = new String[_classes.size()];
+      for (int i = 0; i < s._class_ids.length; i++) {
+        JavaClass jc = (JavaClass)_classes.get(i);
+        s._class_ids[i] = jc.id;
+        s._class_names[i] = jc.name;
+      }
+
+      // order[i] is the number in which the i-th object by address was added
+      int[] order = new int[_count];
+      boolean sorted = true;
+      for (int i = 0; i < _count; i++) {
+        order[i] = i;
+        if (i > 0 && _address[i - 1] > _address[i]) sorted = false;
+      }
+      if (!sorted) {
+        long[] keys = new long[_count];
+        for (int i = 0; i < _count; i++) {
+          keys[i] = ((long)_address[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < _count; i++) {
+          order[i] = (int)keys[i];
+        }
+      }
+
+      s._count = _count;
+      s._address = new int[_count];
+      s._size = new int[_count];
+      s._class_id = new int[_count];
+      s._type = new byte[_count];
+      AddressMap index = new AddressMap(_count);
+      for (int i = 0; i < _count; i++) {
+        int k = order[i];
+        s._address[i] = _address[k];
+        s._size[i] = _size[k];
+        s._class_id[i] = _class_id[k];
+        s._type[i] = _type[k];
+        index.put(_address[k], i);
+      }
+
+      int[] stack_of = new int[_count];
+      Arrays.fill(stack_of, -1);
+      for (int i = 0; i < _stack_count; i++) {
+        stack_of[_stack_objects[i]] = i;
+      }
+      s._stack_objects = new int[_stack_count];
+      s._stack_ids = new int[_stack_count];
+      s._stack_offsets_start = new int[_stack_count];
+      int stack_refs = 0;
+      for (int i = 0; i < _stack_count; i++) {
+        int k = _stack_objects[i];
+        stack_refs += _ref_start[k + 1] - _ref_start[k];
+      }
+      int[] stack_offsets = new int[stack_refs];
+
+      s._ref_start = new int[_count + 1];
+      int[] refs = new int[_ref_count];
+      int n = 0;
+      int stacks = 0;
+      int offsets = 0;
+      for (int i = 0; i < _count; i++) {
+        int k = order[i];
+        boolean is_stack = stack_of[k] != -1;
+        if (is_stack) {
+          s._stack_objects[stacks] = i;
+          s._stack_ids[stacks] = _stack_ids[stack_of[k]];
+          s._stack_offsets_start[stacks] = offsets;
+          stacks++;
+        }
+        for (int j = _ref_start[k]; j < _ref_start[k + 1]; j++) {
+          int ref = index.get(_refs[j]);
+          if (ref == -1) continue;
+          refs[n++] = ref;
+          if (is_stack) {
+            stack_offsets[offsets++] = _stack_offsets[j];
+          }
+        }
+        s._ref_start[i + 1] = n;
+      }
+      s._refs = grow(refs, n);
+      s._stack_offsets = grow(stack_offsets, offsets);
+
+      int roots = 0;
+      s._roots = new int[_root_count];
+      for (int i = 0; i < _root_count; i++) {
+        int root = index.get(_roots[i]);
+        if (root != -1) {
+          s._roots[roots++] = root;
+        }
+      }
+      s._roots = grow(s._roots, roots);
+      s._index = index;
+      s.analyze();
+      return s;
+    }
+  }
+}
@@ -27,14 +27,12 @@
 
 package com.sun.cldchi.tools.memoryprofiler.data;
 
-import java.util.Collection;
-import java.util.ArrayList;
-import java.util.HashMap;
-
 /**
- * This class is container for Java Object information. It contains all object data.
+ * This class is container for Java Object information. It is a view of one
+ * object of a <code>HeapSnapshot</code>, which keeps all object data.
  *
  * @see com.sun.cldchi.tools.memoryprofiler.data.MPDataProvider
+ * @see com.sun.cldchi.tools.memoryprofiler.data.HeapSnapshot
  *
  */
 public class JavaObject {
@@ -54,20 +52,32 @@ public class JavaObject {
   public final int size;
 
   public final int object_type;
-  private int root_distance = -1;
 
   /**
-   * these fields are used only for stacks
+   * the snapshot containing the object and index of the object in it
    */  
-  final int _stack_id;
-  final HashMap _stack_offsets;
+  final HeapSnapshot _heap;
+  final int _index;
+
+  JavaObject(HeapSnapshot heap, int index) {
+    _heap = heap;
+    _index = index;
+    address = heap.getAddress(index);
+    class_id = heap.getClassId(index);
+    size = heap.getSize(index);
+    object_type = heap.getObjectType(index);
+  }
 
   /**
-   * addresses of the objects which are referenced by this object
+   * return the array of JavaObject for given object indices of the snapshot
    */    
-  final int[] _references_addresses;
-  private Collection _references = new ArrayList();
-  private Collection _referees = new ArrayList();
+  static JavaObject[] objects(HeapSnapshot heap, int[] indices) {
+    JavaObject[] result = new JavaObject[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      result[i] = new JavaObject(heap, indices[i]);
+    }
+    return result;
+  }
 
   /**
    * return the array of objects which are referenced by this object
@@ -75,11 +85,7 @@ public class JavaObject {
    * @return array of JavaObject
    */    
   public Object[] get_references() {
-    return _references.toArray();
-  }
-
-  public void add_reference(JavaObject reference) {
-    _references.add(reference);
+    return objects(_heap, _heap.getReferences(_index));
   }
 
   /**
@@ -88,37 +94,40 @@ public class JavaObject {
    * @return array of JavaObject
    */    
   public Object[] get_referees() {
-    return _referees.toArray();
+    return objects(_heap, _heap.getReferees(_index));
   }
 
-  public void add_referee(JavaObject referee) {
-      _referees.add(referee);
+  /**
+   * return the immediate dominator of this object: the closest object
+   * every chain from a root to this object goes through
+   *
+   * @return the dominator or null if there is no such object
+   */    
+  public JavaObject getDominator() {
+    int dom = _heap.getDominator(_index);
+    return dom == -1 ? null : new JavaObject(_heap, dom);
   }
 
-  JavaObject(int p_address, int p_class_id, int p_size, int[] references, int p_obj_type) {
-    this(p_address, p_class_id, p_size, references, p_obj_type, null, -1);
+  /**
+   * return total size of the objects which become unreachable if this
+   * object becomes unreachable, including this object
+   */    
+  public int getRetainedSize() {
+    return _heap.getRetainedSize(_index);
   }
 
-  JavaObject(int p_address, int p_class_id, int p_size, 
-                            int[] references, int p_obj_tp, HashMap offsets, int stack_id) {
-    address = p_address;
-    class_id = p_class_id;
-    size = p_size;
-    object_type = p_obj_tp;
-    _references_addresses = references;
-    _stack_offsets = offsets;
-    _stack_id = stack_id;
-  }
   public String toString() {
-    return /*Integer.toString(root_distance) + */"0x" + Integer.toHexString(address);
+    return "0x" + Integer.toHexString(address);
   }
 
-  /**
-   * set the minimal size of a chain of linked objects started from 
-   * a root object and finished in this object
-   */      
-  void setRootDistance(int dist) {
-    root_distance = dist;
+  public boolean equals(Object obj) {
+    if (!(obj instanceof JavaObject)) return false;
+    JavaObject other = (JavaObject)obj;
+    return other._heap == _heap && other._index == _index;
+  }
+
+  public int hashCode() {
+    return address;
   }
 
   /**
@@ -126,7 +135,7 @@ public class JavaObject {
    * a root object and finished in this object
    */      
   public int getRootDistance() {
-    return root_distance;
+    return _heap.getRootDistance(_index);
   }  
 
   /**
@@ -135,5 +144,5 @@ public class JavaObject {
    *
    * @return true if it is a live object
    */      
-  public boolean alive() {return root_distance != -1;}
+  public boolean alive() {return getRootDistance() != -1;}
 }
@@ -241,4 +241,25 @@ public interface MPDataProvider {
    */  
   public String getStackTrace(JavaObject stackObject, int ptrAddress) throws SocketException;;  
 
+  /**
+   * Returns the heap snapshot taken when the VM was paused last time or
+   * the snapshot set by <code>setSnapshot</code>.
+   * The snapshot can be saved, and compared with other snapshots.
+   *
+   * @return current heap snapshot or null if there is no one.
+   *
+   * @see com.sun.cldchi.tools.memoryprofiler.data.HeapSnapshot
+   */  
+  public HeapSnapshot getSnapshot();
+
+  /**
+   * Makes all functions provide information of a previously saved snapshot.
+   * The provider must not be connected to a KDP.
+   *
+   * @param snapshot - snapshot loaded by <code>HeapSnapshot.load</code>
+   *
+   * @see com.sun.cldchi.tools.memoryprofiler.data.HeapSnapshot#load(InputStream)
+   */  
+  public void setSnapshot(HeapSnapshot snapshot);
+
 }
@@ -0,0 +1,64 @@
+/*
+ *
+ *
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+
+package com.sun.cldchi.tools.memoryprofiler.data;
+
+/**
+ * This class is container for the change of objects of one type between
+ * two heap snapshots: number and total size of the objects before and after.
+ *
+ * @see com.sun.cldchi.tools.memoryprofiler.data.HeapSnapshot#diff(HeapSnapshot)
+ *
+ */
+public class SnapshotDiff {
+  public final String _type_name;
+  private int _count_before;
+  private int _size_before;
+  private int _count_after;
+  private int _size_after;
+
+  SnapshotDiff(String type_name) {
+    _type_name = type_name;
+  }
+
+  void addBefore(int size) {
+    _count_before++;
+    _size_before += size;
+  }
+
+  void addAfter(int size) {
+    _count_after++;
+    _size_after += size;
+  }
+
+  public int getCountBefore() {return _count_before;}
+  public int getSizeBefore() {return _size_before;}
+  public int getCountAfter() {return _count_after;}
+  public int getSizeAfter() {return _size_after;}
+  public int getCountDelta() {return _count_after - _count_before;}
+  public int getSizeDelta() {return _size_after - _size_before;}
+}
@@ -55,6 +55,9 @@ public class Client {
   private JButton _vm_controller;
   private JButton _connection_controller;
   private JButton _statistics_btn;
+  private JButton _save_btn;
+  private JButton _load_btn;
+  private JButton _compare_btn;
   private JLabel _statusLabel;
   private boolean isConnected = false;
   private static String hostName = "localhost";
@@ -143,6 +146,15 @@ public class Client {
       }
     });
     button_panel.add(_statistics_btn);
+    _save_btn = new JButton("Save");
+    _save_btn.addActionListener(new SaveSnapshotListener());
+    button_panel.add(_save_btn);
+    _load_btn = new JButton("Load");
+    _load_btn.addActionListener(new LoadSnapshotListener());
+    button_panel.add(_load_btn);
+    _compare_btn = new JButton("Compare");
+    _compare_btn.addActionListener(new CompareSnapshotListener());
+    button_panel.add(_compare_btn);
     _vm_controller = new JButton("Resume");
     _vm_controller.addActionListener(new VMActionListener());
     button_panel.add(_vm_controller);
@@ -268,6 +280,74 @@ public class Client {
   }
 
 
+  private File chooseSnapshotFile(boolean save) {
+    JFileChooser chooser = new JFileChooser();
+    int result = save ? chooser.showSaveDialog(_frame) : chooser.showOpenDialog(_frame);
+    if (result != JFileChooser.APPROVE_OPTION) {
+      return null;
+    }
+    return chooser.getSelectedFile();
+  }
+
+  private HeapSnapshot loadSnapshot() {
+    File file = chooseSnapshotFile(false);
+    if (file == null) return null;
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        return HeapSnapshot.load(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      JOptionPane.showMessageDialog(_frame, "Could not load the snapshot: " + e.getMessage(),
+        "Snapshot Error", JOptionPane.ERROR_MESSAGE);
+      return null;
+    }
+  }
+
+  class SaveSnapshotListener implements ActionListener {
+    public void actionPerformed(ActionEvent event) {
+      HeapSnapshot snapshot = _data_provider.getSnapshot();
+      File file = chooseSnapshotFile(true);
+      if (snapshot == null || file == null) return;
+      try {
+        OutputStream out = new FileOutputStream(file);
+        try {
+          snapshot.save(out);
+        } finally {
+          out.close();
+        }
+      } catch (IOException e) {
+        JOptionPane.showMessageDialog(_frame, "Could not save the snapshot: " + e.getMessage(),
+          "Snapshot Error", JOptionPane.ERROR_MESSAGE);
+      }
+    }
+  }
+
+  class LoadSnapshotListener implements ActionListener {
+    public void actionPerformed(ActionEvent event) {
+      HeapSnapshot snapshot = loadSnapshot();
+      if (snapshot == null) return;
+      _data_provider.setSnapshot(snapshot);
+      update();
+      _statistics_btn.setEnabled(true);
+      _save_btn.setEnabled(true);
+      _compare_btn.setEnabled(true);
+      _statusLabel.setText("Snapshot loaded");
+    }
+  }
+
+  class CompareSnapshotListener implements ActionListener {
+    public void actionPerformed(ActionEvent event) {
+      HeapSnapshot current = _data_provider.getSnapshot();
+      if (current == null) return;
+      HeapSnapshot base = loadSnapshot();
+      if (base == null) return;
+      SnapshotDiffDialog.showDialog(_frame, current.diff(base));
+    }
+  }
+
   class VMActionListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
       try {
@@ -293,6 +373,8 @@ public class Client {
       if (!vm_run) {
         update();
       }
+      _save_btn.setEnabled(isConnected && !vm_run);
+      _compare_btn.setEnabled(isConnected && !vm_run);
 
     }
   }
@@ -303,6 +385,9 @@ public class Client {
     _memory_access_panel.update();
     _vm_controller.setEnabled(false);
     _statistics_btn.setEnabled(false);
+    _save_btn.setEnabled(false);
+    _load_btn.setEnabled(true);
+    _compare_btn.setEnabled(false);
     _connection_controller.setEnabled(true);
     _connection_controller.setText("Connect");
     _statusLabel.setText("Disconnected");
@@ -312,6 +397,9 @@ public class Client {
     isConnected = true;
     _vm_controller.setEnabled(true);
     _statistics_btn.setEnabled(true);
+    _save_btn.setEnabled(true);
+    _load_btn.setEnabled(false);
+    _compare_btn.setEnabled(true);
     _connection_controller.setText("Connected!");
     _statusLabel.setText("Connected");
     //prevent the user from diconnecting, after which he can not connect again
@@ -41,6 +41,8 @@ public class ViewObjectsPanel extends JPanel {
   private JTextField address_field = new JTextField();
   private JLabel type_label = new JLabel("type");
   private JTextField type_field = new JTextField();
+  private JLabel retained_label = new JLabel("retained");
+  private JTextField retained_field = new JTextField();
   private JTable references = new ObjectListTable(new ObjectListTableModel());
   private JTable referees = new ObjectListTable(new ObjectListTableModel());
   private JavaObject _obj = null;
@@ -62,11 +64,15 @@ public class ViewObjectsPanel extends JPanel {
     top_panel.add(address_field);
     address_field.setEditable(false);
     type_field.setEditable(false);
+    retained_field.setEditable(false);
     address_field.setPreferredSize(new Dimension(80, 20));
     type_field.setPreferredSize(new Dimension(120, 20));
+    retained_field.setPreferredSize(new Dimension(60, 20));
 
     top_panel.add(type_label);
     top_panel.add(type_field);
+    top_panel.add(retained_label);
+    top_panel.add(retained_field);
     if (add_show_root_path_button) {
       _root_path = new JButton("Show path from the root");
       _root_path.addActionListener(new ShowRootPathListener());
@@ -121,6 +127,7 @@ public class ViewObjectsPanel extends JPanel {
     if (obj != null) {
       address_field.setText(obj.toString());
       type_field.setText(_provider.getObjectTypeName(obj));
+      retained_field.setText(Integer.toString(obj.getRetainedSize()));
       refs.setData(obj.get_references());
       refes.setData(obj.get_referees());
       if (_root_path != null) {
@@ -132,6 +139,7 @@ public class ViewObjectsPanel extends JPanel {
     } else {
       address_field.setText("");
       type_field.setText("");
+      retained_field.setText("");
       refs.setData(null);
       refes.setData(null);
       if (_root_path != null) {
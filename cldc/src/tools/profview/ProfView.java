@@ -40,25 +40,56 @@ import javax.swing.table.*;
 import javax.swing.event.*;
 import javax.swing.text.NumberFormatter;
 
+/**
+ * All method names found in the graph files. Every name is kept once
+ * and gets a small integer id, so CallGraphNodes of the same method
+ * share the name string and can be indexed by the id.
+ */
+class NameTable {
+    Hashtable ids = new Hashtable();
+    String names[] = new String[256];
+    int count;
+
+    /**
+     * Returns the id of the name, adding the name if it's new.
+     */
+    int intern(String name) {
+        Integer id = (Integer)ids.get(name);
+        if (id != null) {
+            return id.intValue();
+        }
+        if (count == names.length) {
+            String n[] = new String[count * 2];
+            System.arraycopy(names, 0, n, 0, count);
+            names = n;
+        }
+        names[count] = name;
+        ids.put(name, new Integer(count));
+        return count++;
+    }
+
+    String getName(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return count;
+    }
+}
+
 class Profile {
     /**
-     * This hashtable is a collection of all CallGraphNodes in the callgraph.
-     * It's indexed by each CallGraphNode's <b>index</b> member, whose type
-     * is Integer.
+     * Names of all CallGraphNodes in the callgraph.
      */
-    Hashtable nodes;
+    NameTable names;
 
     /**
-     * This hashtable is a collection of all CallGraphNodes in the callgraph.
-     * It's indexed by each CallGraphNodes's <b>name</b>, whose type is
-     * String. <p>
-     *
-     * Each entry in this hashtable is either a CallGraphNodes (if only
-     * one CallGraphNode of that name exists in the callgraph), or
-     * a Vector (if two or more CallGraphNodes of that name exist in
-     * the callgraph).
+     * The index of all CallGraphNodes in the callgraph by their names.
+     * It's indexed by the id of the name in <b>names</b>. Each entry
+     * is the last CallGraphNode of that name, the others are linked
+     * through CallGraphNode.prevByName.
      */
-    Hashtable nodesByName;
+    CallGraphNode nodesByName[];
 
     /**
      * The root of all call records. This root is artificially created.
@@ -67,6 +98,14 @@ class Profile {
      */
     CallGraphNode root;
 
+    /**
+     * All graph files merged into one call graph: the calls with the
+     * same call stack in different files make a single node. It is
+     * built while the files are read, and only if the profile is read
+     * without keeping the graph of each file, as for the reports.
+     */
+    MergedCallGraphNode merged;
+
     /**
      * Number of CallGraphNodes in this profile that has one or more children,
      * including this.root.
@@ -84,21 +123,39 @@ class Profile {
     double period;
 
     Profile(String[] files) throws IOException {
-        nodes = new Hashtable();
-        nodesByName = new Hashtable();
+        this(files, true);
+    }
+
+    /**
+     * If keepGraphs is false, the graph of each file is dropped as soon
+     * as it is merged, and only <b>merged</b> is available. This is
+     * enough for the reports and needs much less memory.
+     */
+    Profile(String[] files, boolean keepGraphs) throws IOException {
+        names = new NameTable();
+        nodesByName = new CallGraphNode[256];
         root = createTopNode(null, -1, "root");
         numParents = 0;
         numFiles = files.length;
 
+        if (!keepGraphs) {
+            merged = new MergedCallGraphNode(null, root.name);
+        }
+
         if (isMultifile()) {
             for (int i = 0; i < numFiles; i++) {
-                readInputFile(new FileParserContext(files[i], i + 1, this));
+                readInputFile(new FileParserContext(files[i], i + 1, this,
+                                                    keepGraphs));
             }
         } else {
-            readInputFile(new FileParserContext(files[0], 0, this));
+            readInputFile(new FileParserContext(files[0], 0, this,
+                                                keepGraphs));
         }
 
-        createCallGraph();
+        if (!keepGraphs) {
+            root.children = null;
+            numParents = 0;
+        }
 
         if (numParents > 0) {
             root.endTime = period;
@@ -106,6 +163,9 @@ class Profile {
         }
 
         root.computePercentage();
+        if (merged != null) {
+            merged.computePercentage();
+        }
     }
 
     boolean isMultifile() {
@@ -116,11 +176,9 @@ class Profile {
         CallGraphNode r = new CallGraphNode(parent);
 
         r.parent = parent;
-        r.parentIdx = parent == null ? null : parent.index;
-        r.index = new Integer(index);
-        r.name = name;
-
-        nodes.put(r.index, r);
+        r.parentIdx = parent == null ? -1 : parent.index;
+        r.index = index;
+        r.setName(names, name);
 
         addToIndexByName(r);
         return r;
@@ -151,128 +209,62 @@ class Profile {
      */
     void readInputFile(FileParserContext ctx) throws IOException {
         FileReader fr = new FileReader(ctx.file);
-        BufferedReader reader = new BufferedReader(fr);
+        BufferedReader reader = new BufferedReader(fr, 64 * 1024);
         String line;
 
-        /* Skip the first line. It's for human consumption only */
-        line = reader.readLine();
-        //line = reader.readLine(); /* need revisit */
-
-        // Read all lines in the input file
-        //
-        while ((line = reader.readLine()) != null) {
-            readInputLine(line, ctx);
-        }
-    }
-
-    void readInputLine(String line, FileParserContext ctx) {
-        StringTokenizer st = new StringTokenizer(line);
-        if (st.countTokens() != 15) {
-            return;
-        }
-
-        // Read the raw content of the input line into the CallGraphNode
         try {
-            CallGraphNode cgNode;
-            int index = Integer.parseInt(st.nextToken());
-            if (index == -1) {
-                // We also have a predefined root node in our source file -
-                // so modify the existing root node
-                cgNode = ctx.root;
-                st.nextToken(); // parent token is meaningless for the root
-            } else {
-                cgNode = new CallGraphNode(ctx.root);
-                cgNode.index = new Integer(ctx.indexOffset + index);
-                cgNode.parentIdx = new Integer(ctx.indexOffset +
-                    Integer.parseInt(st.nextToken()));
-            }
-
-            cgNode.depth = Integer.parseInt(st.nextToken());
-            cgNode.name = st.nextToken();
-            cgNode.count = Integer.parseInt(st.nextToken());
-
-            cgNode.onlyCycles = Long.parseLong(st.nextToken());
-            cgNode.onlyMsec   = Double.parseDouble(st.nextToken());
-            cgNode.onlyPerc   = Double.parseDouble(st.nextToken());
-
-            if (index != -1) {
-                // kidsCylcles is calculated automatically for the root node
-                cgNode.kidsCycles = Long.parseLong(st.nextToken());
-                cgNode.kidsMsec   = Double.parseDouble(st.nextToken());
-                cgNode.kidsPerc   = Double.parseDouble(st.nextToken());
-
-                // Timeline information
-                cgNode.startTime  = Double.parseDouble(st.nextToken());
-                cgNode.endTime    = Double.parseDouble(st.nextToken());
-                if (cgNode.endTime > period) {
-                    period = cgNode.endTime;
-                }
+            /* Skip the first line. It's for human consumption only */
+            line = reader.readLine();
+            //line = reader.readLine(); /* need revisit */
 
-                // Store new CallGraphNode into the hashtable
-                nodes.put(cgNode.index, cgNode);
-                // Add it to another index table, searchable by cgNode.name
-                addToIndexByName(cgNode);
+            // Read all lines in the input file
+            //
+            while ((line = reader.readLine()) != null) {
+                ctx.readInputLine(line);
             }
-        } catch (NumberFormatException e) {
-            // IMPL_NOTE: warning
+        } finally {
+            reader.close();
         }
-    }
-
-    void createCallGraph() {
-        // Now all the CallGraphNodes are created. We're ready to
-        // construct the call graph
-        for (Enumeration e = nodes.elements(); e.hasMoreElements() ;) {
-            CallGraphNode cgNode = (CallGraphNode)e.nextElement();
-
-            if (cgNode.parentIdx == null) {
-                // This is the root record. Do nothing
-            } else {
-                CallGraphNode parent;
-                parent = (CallGraphNode)nodes.get(cgNode.parentIdx);
-                if (parent == null) {
-                    System.out.println("WARNING: no parent found for element " + 
-                                       cgNode);
-                    parent = root;
-                }
 
-                if (parent.children == null) {
-                    parent.children = new Vector();
-                    numParents ++;
-                }
-                parent.children.addElement(cgNode);
-                cgNode.parent = parent;
-            }
-        }
+        ctx.createCallGraph();
     }
 
     /**
      * Add this cgNode to the index of all CallGraphNodes by its name.
-     * This index is maintained by the hashtable <b>nodesByName</b>
+     * This index is maintained by the array <b>nodesByName</b>
      */
     void addToIndexByName(CallGraphNode cgNode) {
-        Object obj = nodesByName.get(cgNode.name);
+        int id = cgNode.nameId;
+        if (id >= nodesByName.length) {
+            CallGraphNode n[] = new CallGraphNode[Math.max(id + 1,
+                                                  nodesByName.length * 2)];
+            System.arraycopy(nodesByName, 0, n, 0, nodesByName.length);
+            nodesByName = n;
+        }
+        cgNode.prevByName = nodesByName[id];
+        nodesByName[id] = cgNode;
+    }
 
-        //System.out.println(cgNode.name + "=" + obj);
-        if (obj == null) {
-            // Not in the table yet, store the cgNode itself
-            nodesByName.put(cgNode.name, cgNode);
+    /**
+     * Returns all CallGraphNodes with the given name, in the order they
+     * were read.
+     */
+    CallGraphNode[] getNodesByName(String name) {
+        Integer id = (Integer)names.ids.get(name);
+        if (id == null || id.intValue() >= nodesByName.length) {
+            return new CallGraphNode[0];
         }
-        else if (obj instanceof Vector) {
-            // Already has two more more cgNodes of the same name, append
-            // to the list
-            ((Vector)obj).addElement(cgNode);
+        int n = 0;
+        for (CallGraphNode c = nodesByName[id.intValue()]; c != null;
+             c = c.prevByName) {
+            n++;
         }
-        else {
-            // We've seen the second cgNode of the same name. Store both
-            // cgNodes inside a Vector and put that Vector in the hashtable.
-            //
-            // By doing this, we only create Vector for those method names
-            // that correspond to more than one CallGraphNode
-            Vector v = new Vector(2);
-            v.addElement(obj);
-            v.addElement(cgNode);
-            nodesByName.put(cgNode.name, v);
+        CallGraphNode result[] = new CallGraphNode[n];
+        for (CallGraphNode c = nodesByName[id.intValue()]; c != null;
+             c = c.prevByName) {
+            result[--n] = c;
         }
+        return result;
     }
 }
 
@@ -299,9 +291,31 @@ class FileParserContext {
 
     static final int MAX_INDEX = 10000000;
 
-    FileParserContext(String fileName, int fileNo, Profile prof) {
+    Profile prof;
+
+    /**
+     * If false, the nodes of this file are only merged into prof.merged.
+     */
+    boolean keepGraph;
+
+    /**
+     * The CallGraphNodes read from the file, indexed by their index
+     * in the file (without indexOffset).
+     */
+    CallGraphNode nodes[] = new CallGraphNode[1024];
+
+    /**
+     * Start and end positions of the fields in the current line.
+     */
+    int fieldStart[] = new int[CallRecord.NUM_FIELDS];
+    int fieldEnd[] = new int[CallRecord.NUM_FIELDS];
+
+    FileParserContext(String fileName, int fileNo, Profile prof,
+                      boolean keepGraph) {
         file = fileName;
         indexOffset = fileNo * MAX_INDEX;
+        this.prof = prof;
+        this.keepGraph = keepGraph;
         if (fileNo == 0) {
             // do not create additional level when parsing
             // exactly one source file;
@@ -313,6 +327,176 @@ class FileParserContext {
             root = prof.createTopNode(prof.root, indexOffset - 1, fileName);
         }
     }
+
+    /**
+     * Finds the whitespace separated fields of the line.
+     * Returns the number of fields, but no more than NUM_FIELDS + 1.
+     */
+    int splitLine(String line) {
+        int n = 0;
+        int len = line.length();
+        int i = 0;
+        while (true) {
+            while (i < len && line.charAt(i) <= ' ') {
+                i++;
+            }
+            if (i == len) {
+                return n;
+            }
+            if (n == CallRecord.NUM_FIELDS) {
+                return n + 1;
+            }
+            fieldStart[n] = i;
+            while (i < len && line.charAt(i) > ' ') {
+                i++;
+            }
+            fieldEnd[n++] = i;
+        }
+    }
+
+    long parseLong(String line, int field) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = line.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException(line);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(line);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    int parseInt(String line, int field) {
+        return (int)parseLong(line, field);
+    }
+
+    double parseDouble(String line, int field) {
+        return Double.parseDouble(line.substring(fieldStart[field],
+                                                 fieldEnd[field]));
+    }
+
+    void readInputLine(String line) {
+        if (splitLine(line) != CallRecord.NUM_FIELDS) {
+            return;
+        }
+
+        // Read the raw content of the input line into the CallGraphNode
+        try {
+            CallGraphNode cgNode;
+            int index = parseInt(line, 0);
+            if (index == -1) {
+                // We also have a predefined root node in our source file -
+                // so modify the existing root node
+                cgNode = root;
+                // parent token is meaningless for the root
+            } else if (index < 0 || index >= MAX_INDEX) {
+                return;
+            } else {
+                cgNode = new CallGraphNode(root);
+                cgNode.index = indexOffset + index;
+                cgNode.parentIdx = indexOffset + parseInt(line, 1);
+            }
+
+            int depth = parseInt(line, 2);
+            int count = parseInt(line, 4);
+            long onlyCycles = parseLong(line, 5);
+            double onlyMsec = parseDouble(line, 6);
+            double onlyPerc = parseDouble(line, 7);
+
+            if (index != -1) {
+                // kidsCylcles is calculated automatically for the root node
+                cgNode.kidsCycles = parseLong(line, 8);
+                cgNode.kidsMsec   = parseDouble(line, 9);
+                cgNode.kidsPerc   = parseDouble(line, 10);
+
+                // Timeline information
+                cgNode.startTime  = parseDouble(line, 11);
+                cgNode.endTime    = parseDouble(line, 12);
+                if (cgNode.endTime > prof.period) {
+                    prof.period = cgNode.endTime;
+                }
+            }
+
+            cgNode.depth = depth;
+            cgNode.setName(prof.names,
+                           line.substring(fieldStart[3], fieldEnd[3]));
+            cgNode.count = count;
+            cgNode.onlyCycles = onlyCycles;
+            cgNode.onlyMsec   = onlyMsec;
+            cgNode.onlyPerc   = onlyPerc;
+
+            if (index != -1) {
+                // Store new CallGraphNode into the table
+                if (index >= nodes.length) {
+                    CallGraphNode n[] = new CallGraphNode[Math.max(index + 1,
+                                                          nodes.length * 2)];
+                    System.arraycopy(nodes, 0, n, 0, nodes.length);
+                    nodes = n;
+                }
+                nodes[index] = cgNode;
+                // Add it to another index table, searchable by cgNode.name
+                if (keepGraph) {
+                    prof.addToIndexByName(cgNode);
+                }
+            }
+        } catch (NumberFormatException e) {
+            // IMPL_NOTE: warning
+        }
+    }
+
+    /**
+     * Now all the CallGraphNodes of the file are created. Construct the
+     * call graph and merge it into prof.merged.
+     */
+    void createCallGraph() {
+        for (int i = 0; i < nodes.length; i++) {
+            CallGraphNode cgNode = nodes[i];
+            if (cgNode == null) {
+                continue;
+            }
+
+            CallGraphNode parent;
+            int parentIdx = cgNode.parentIdx - indexOffset;
+            if (parentIdx == -1) {
+                parent = root;
+            } else if (parentIdx >= 0 && parentIdx < nodes.length) {
+                parent = nodes[parentIdx];
+            } else {
+                parent = null;
+            }
+            if (parent == null) {
+                System.out.println("WARNING: no parent found for element " + 
+                                   cgNode);
+                parent = root;
+            }
+            addChild(parent, cgNode);
+        }
+        if (root != prof.root && keepGraph) {
+            addChild(prof.root, root);
+        }
+        if (prof.merged != null) {
+            prof.merged.mergeGraph(root);
+        }
+        nodes = null;
+    }
+
+    void addChild(CallGraphNode parent, CallGraphNode cgNode) {
+        if (parent.children == null) {
+            parent.children = new Vector();
+            prof.numParents ++;
+        }
+        parent.children.addElement(cgNode);
+        cgNode.parent = parent;
+    }
 }
 
 class Filter {
@@ -564,12 +748,24 @@ class CallGraphNode extends CallRecord {
      */
     CallRecord summary[];
 
-    Integer index;
-    Integer parentIdx;
+    int index;
+    int parentIdx;
+
+    /**
+     * Id of the name in Profile.names and the previous CallGraphNode
+     * of the same name, see Profile.nodesByName.
+     */
+    int nameId;
+    CallGraphNode prevByName;
 
     CallGraphNode(CallRecord owner) {
         super(owner);
     }
+
+    void setName(NameTable names, String name) {
+        nameId = names.intern(name);
+        this.name = names.getName(nameId);
+    }
     
     /**
      * Compute the summary of each CallGraphNodes that has at least one child.
@@ -636,7 +832,7 @@ class CallGraphNode extends CallRecord {
     boolean isTopNode() {
         // This node is global root or virtual file root
         // if and only if its index == -1 (mod MAX_INDEX)
-        return (index.intValue() + 1) % FileParserContext.MAX_INDEX == 0;
+        return (index + 1) % FileParserContext.MAX_INDEX == 0;
     }
 
     void computePercentage() {
@@ -738,7 +934,17 @@ class CallGraphNode extends CallRecord {
     }
 }
 
+/**
+ * A MergedCallGraphNode combines CallGraphNodes with similar call stacks.
+ * The call sites window merges callers this way, and Profile.merged is
+ * a call graph of MergedCallGraphNodes which combines all graph files.
+ */
 class MergedCallGraphNode extends CallGraphNode {
+    /**
+     * Children by their names, for Profile.merged only.
+     */
+    Hashtable kidsByName;
+
     MergedCallGraphNode(CallGraphNode src, int levels) {
         super(src.owner);
         if (levels > 0 && src.parent != null) {
@@ -761,6 +967,63 @@ class MergedCallGraphNode extends CallGraphNode {
         }
         super.add(other, addKids);
     }
+
+    /**
+     * Creates an empty node of the merged call graph. The root of the
+     * merged graph has no parent.
+     */
+    MergedCallGraphNode(MergedCallGraphNode parent, String name) {
+        super(parent == null ? null : parent.owner);
+        this.parent = parent;
+        this.name = name;
+        this.index = -1;
+        this.parentIdx = -1;
+        if (parent != null) {
+            this.depth = parent.depth + 1;
+            if (parent.children == null) {
+                parent.children = new Vector();
+                parent.kidsByName = new Hashtable();
+            }
+            parent.children.addElement(this);
+            parent.kidsByName.put(name, this);
+        }
+    }
+
+    MergedCallGraphNode getChild(String name, boolean create) {
+        MergedCallGraphNode child = null;
+        if (kidsByName != null) {
+            child = (MergedCallGraphNode)kidsByName.get(name);
+        }
+        if (child == null && create) {
+            child = new MergedCallGraphNode(this, name);
+        }
+        return child;
+    }
+
+    /**
+     * Merges the call graph of one file, given by its top node, into
+     * this merged graph, which must be a root.
+     */
+    void mergeGraph(CallGraphNode top) {
+        super.add(top, false);
+        mergeKids(top);
+    }
+
+    private void mergeKids(CallGraphNode src) {
+        // like the kids of a top node, the kids of the merged root
+        // are all the calls of the graph
+        owner.kidsCycles += src.onlyCycles;
+        owner.kidsMsec += src.onlyMsec;
+        if (src.children == null) {
+            return;
+        }
+        for (int i = 0; i < src.children.size(); i++) {
+            CallGraphNode kid = (CallGraphNode)src.children.elementAt(i);
+            MergedCallGraphNode myKid = getChild(kid.name, true);
+            myKid.add(kid, true);
+            myKid.mergeKids(kid);
+        }
+    }
 }
 
 class MergedCallRecord extends CallRecord {
@@ -1545,21 +1808,13 @@ class GotoFrame extends JFrame implements ListSelectionListener,
          * the given name.
          */
         void setCurrentDataSet(String name) {
-            Object obj = profile.nodesByName.get(name);
-            if (obj == null) {
-                this.nodes = new CallGraphNode[0];
-            }
-            else if (obj instanceof CallGraphNode) {
-                this.nodes = new CallGraphNode[1];
-                this.nodes[0] = (CallGraphNode)obj;
-            }
-            else {
-                Vector v = (Vector)obj;
-                if (merged) {
-                    v = mergeParents(v);
-                }
+            CallGraphNode found[] = profile.getNodesByName(name);
+            if (merged && found.length > 1) {
+                Vector v = mergeParents(new Vector(Arrays.asList(found)));
                 this.nodes = new CallGraphNode[v.size()];
                 v.toArray((Object[])nodes);
+            } else {
+                this.nodes = found;
             }
             currentName = name;
         }
@@ -1823,19 +2078,14 @@ class CalleeFrame extends JFrame implements ActionListener
          * the given name.
          */
         void setCurrentDataSet(String name) {
-            Object obj = profile.nodesByName.get(name);
-            if (obj == null) {
+            CallGraphNode found[] = profile.getNodesByName(name);
+            if (found.length == 0) {
                 this.nodes = new CallRecord[0];
             } else {
                 Hashtable h = new Hashtable();
 
-                if (obj instanceof CallGraphNode) {
-                    addToDataSet(h, (CallGraphNode)obj);
-                } else {
-                    Vector v = (Vector)obj;
-                    for (int i=0; i<v.size(); i++) {
-                        addToDataSet(h, (CallGraphNode)v.elementAt(i));
-                    }
+                for (int i=0; i<found.length; i++) {
+                    addToDataSet(h, found[i]);
                 }
 
                 this.nodes = new CallRecord[h.size()];
@@ -2204,14 +2454,13 @@ class ProfileWriter {
     ProfileWriter(CallGraphNode root, boolean needToNormalize) {
         this.root = root;
         this.normalize = needToNormalize;
-        this.rootIndex = root.index.intValue();
+        this.rootIndex = root.index;
     }
 
     // Normalizes indices of the graph nodes,
     // so the root node will always be -1 and the other nodes from
     // the multifile profile will obtain their original values
-    int getNormalizedIndex(Integer idx) {
-        int i = idx.intValue();
+    int getNormalizedIndex(int i) {
         if (!normalize) {
             return i;
         }
@@ -2269,6 +2518,238 @@ class ProfileWriter {
     }
 }
 
+/**
+ * Reports for the command line, to track profiles without the GUI
+ * (for example in regression tests):
+ * <pre>
+ *   -top n files          the n call paths with the most own time
+ *   -diff n base current  the n call paths which changed most
+ * </pre>
+ * A profile may consist of several graph files; they are merged and
+ * the times are averaged over the files. For -diff each profile is
+ * a list of files separated by File.pathSeparator.
+ */
+class ProfileReport {
+    static final String PATH_SEPARATOR = " > ";
+
+    PrintStream out;
+
+    ProfileReport(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs the report given by the command line and returns the exit
+     * code: 0, or 1 if -threshold is given and exceeded by -diff.
+     */
+    int run(String argv[]) throws IOException {
+        if (argv.length < 3) {
+            usage();
+            return 2;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(argv[1]);
+        } catch (NumberFormatException e) {
+            usage();
+            return 2;
+        }
+        if (argv[0].equals("-top")) {
+            String files[] = new String[argv.length - 2];
+            System.arraycopy(argv, 2, files, 0, files.length);
+            printTop(new Profile(files, false), n);
+            return 0;
+        }
+        if (argv[0].equals("-diff")) {
+            int i = 2;
+            double threshold = -1.0;
+            if (argv[i].equals("-threshold") && argv.length > i + 1) {
+                try {
+                    threshold = Double.parseDouble(argv[i + 1]) / 100;
+                } catch (NumberFormatException e) {
+                    usage();
+                    return 2;
+                }
+                i += 2;
+            }
+            if (argv.length != i + 2) {
+                usage();
+                return 2;
+            }
+            Profile base = new Profile(split(argv[i]), false);
+            Profile current = new Profile(split(argv[i + 1]), false);
+            return printDiff(base, current, n, threshold) ? 1 : 0;
+        }
+        usage();
+        return 2;
+    }
+
+    static void usage() {
+        System.out.println("Usage: java -cp ProfView.jar ProfView " +
+                           "-top <n> graphfile1 ... graphfileN");
+        System.out.println("       java -cp ProfView.jar ProfView " +
+                           "-diff <n> [-threshold <perc>] " +
+                           "<basefiles> <currentfiles>");
+    }
+
+    static String[] split(String files) {
+        StringTokenizer st = new StringTokenizer(files, File.pathSeparator);
+        String result[] = new String[st.countTokens()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = st.nextToken();
+        }
+        return result;
+    }
+
+    static String getPath(CallGraphNode cgNode) {
+        StringBuffer sbuf = new StringBuffer(cgNode.name);
+        for (cgNode = cgNode.parent;
+             cgNode != null && cgNode.parent != null;
+             cgNode = cgNode.parent) {
+            sbuf.insert(0, PATH_SEPARATOR);
+            sbuf.insert(0, cgNode.name);
+        }
+        return sbuf.toString();
+    }
+
+    static String perc(double val) {
+        long l = Math.round(val * 10000);
+        String sign = l < 0 ? "-" : "";
+        l = Math.abs(l);
+        return sign + (l / 100) + "." + (l % 100 < 10 ? "0" : "") + (l % 100);
+    }
+
+    /**
+     * Collects all the nodes of the merged graph except its root.
+     */
+    static void collect(CallGraphNode cgNode, Vector v) {
+        if (cgNode.children == null) {
+            return;
+        }
+        for (int i = 0; i < cgNode.children.size(); i++) {
+            CallGraphNode child = (CallGraphNode)cgNode.children.elementAt(i);
+            v.addElement(child);
+            collect(child, v);
+        }
+    }
+
+    void printTop(Profile profile, int n) {
+        Vector v = new Vector();
+        collect(profile.merged, v);
+        CallRecord paths[] = new CallRecord[v.size()];
+        v.copyInto(paths);
+        Arrays.sort(paths, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                long c1 = ((CallRecord)o1).onlyCycles;
+                long c2 = ((CallRecord)o2).onlyCycles;
+                return c1 < c2 ? 1 : (c1 > c2 ? -1 : 0);
+            }
+        });
+
+        int runs = profile.numFiles;
+        out.println("# Top " + Math.min(n, paths.length) + " of " +
+                    paths.length + " call paths, " + runs + " file(s)");
+        out.println("# only%\tkids%\tcount\tonly msec\tpath");
+        for (int i = 0; i < n && i < paths.length; i++) {
+            CallRecord rec = paths[i];
+            out.print(perc(rec.onlyPerc));
+            out.print('\t');
+            out.print(perc(rec.kidsPerc));
+            out.print('\t');
+            out.print(rec.count / runs);
+            out.print('\t');
+            out.print(rec.onlyMsec / runs);
+            out.print('\t');
+            out.println(getPath((CallGraphNode)rec));
+        }
+    }
+
+    /**
+     * A call path found in one or both of the compared profiles.
+     */
+    static class PathDelta {
+        String path;
+        double before;
+        double after;
+
+        PathDelta(String path, CallRecord b, CallRecord a) {
+            this.path = path;
+            this.before = b == null ? 0 : b.onlyPerc;
+            this.after = a == null ? 0 : a.onlyPerc;
+        }
+
+        double delta() {
+            return after - before;
+        }
+    }
+
+    /**
+     * Walks the merged graphs of both profiles together, matching the
+     * children by name.
+     */
+    static void diff(MergedCallGraphNode b, MergedCallGraphNode a,
+                     String prefix, Vector result) {
+        Hashtable seen = new Hashtable();
+        MergedCallGraphNode sides[] = {b, a};
+        for (int s = 0; s < sides.length; s++) {
+            if (sides[s] == null || sides[s].children == null) {
+                continue;
+            }
+            Vector kids = sides[s].children;
+            for (int i = 0; i < kids.size(); i++) {
+                String name = ((CallRecord)kids.elementAt(i)).name;
+                if (seen.put(name, name) != null) {
+                    continue;
+                }
+                MergedCallGraphNode kb = b == null ? null : b.getChild(name, false);
+                MergedCallGraphNode ka = a == null ? null : a.getChild(name, false);
+                String path = prefix == null ? name : prefix + PATH_SEPARATOR + name;
+                result.addElement(new PathDelta(path, kb, ka));
+                diff(kb, ka, path, result);
+            }
+        }
+    }
+
+    /**
+     * Prints the n call paths whose share of own time changed most.
+     * Returns true if some path has grown by more than threshold.
+     */
+    boolean printDiff(Profile base, Profile current, int n, double threshold) {
+        Vector v = new Vector();
+        diff(base.merged, current.merged, null, v);
+        PathDelta deltas[] = new PathDelta[v.size()];
+        v.copyInto(deltas);
+        Arrays.sort(deltas, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                double d1 = Math.abs(((PathDelta)o1).delta());
+                double d2 = Math.abs(((PathDelta)o2).delta());
+                return d1 < d2 ? 1 : (d1 > d2 ? -1 : 0);
+            }
+        });
+
+        boolean exceeded = false;
+        out.println("# Top " + Math.min(n, deltas.length) + " of " +
+                    deltas.length + " changed call paths");
+        out.println("# base only%\tonly%\tdelta\tpath");
+        for (int i = 0; i < deltas.length; i++) {
+            PathDelta d = deltas[i];
+            boolean over = threshold >= 0 && d.delta() > threshold;
+            if (i < n || over) {
+                out.print(perc(d.before));
+                out.print('\t');
+                out.print(perc(d.after));
+                out.print('\t');
+                out.print(perc(d.delta()));
+                out.print('\t');
+                out.print(d.path);
+                out.println(over ? "\t(over threshold)" : "");
+            }
+            exceeded |= over;
+        }
+        return exceeded;
+    }
+}
+
 public class ProfView implements TreeSelectionListener, ListSelectionListener,
                                  DocumentListener, ActionListener,
                                  TimeLineListener
@@ -2277,9 +2758,22 @@ public class ProfView implements TreeSelectionListener, ListSelectionListener,
         if (argv.length == 0) {
             System.out.println("No graph file specified!");
             System.out.println("Usage: java -cp ProfView.jar ProfView graphfile1 ... graphfileN");
+            ProfileReport.usage();
             System.exit(1);
         }
 
+        if (argv[0].equals("-top") || argv[0].equals("-diff")) {
+            // headless mode
+            int code;
+            try {
+                code = (new ProfileReport(System.out)).run(argv);
+            } catch (IOException e) {
+                e.printStackTrace();
+                code = 2;
+            }
+            System.exit(code);
+        }
+
         ProfView viewer = new ProfView();
         viewer.start(argv);
     }
@@ -26,8 +26,6 @@
 
 package com.sun.midp.io.j2me.sms;
 
-import java.io.ByteArrayOutputStream;
-
 /**
  * Text encoder and decoder for GSM 7-bit text and
  * UCS-2 characters.
@@ -346,6 +344,156 @@ public class TextEncoder {
 	0x20ac  // EURO SIGN
     };
 
+    /** Escape to the GSM 7-bit extension table. */
+    private static final int ESCAPE = 0x1b;
+
+    /** Marks a character that has no GSM 7-bit encoding. */
+    private static final short NO_GSM7 = -1;
+
+    /** Marks a GSM 7-bit code that is sent after an escape. */
+    private static final short ESCAPED = 0x100;
+
+    /**
+     * GSM 7-bit code of each UCS-2 character below 0x100, or'ed with
+     * ESCAPED for the extension table, or NO_GSM7.
+     */
+    private static short[] latin1ToGSM7 = new short[0x100];
+
+    /** UCS-2 characters from 0x100 up that have a GSM 7-bit code. */
+    private static char[] wideUCS2;
+
+    /** GSM 7-bit codes of the characters in wideUCS2. */
+    private static short[] wideToGSM7;
+
+    /**
+     * UCS-2 character of each escaped GSM 7-bit code, or 0 if the
+     * extension table does not define the code.
+     */
+    private static char[] escapedToUCS2 = new char[0x80];
+
+    static {
+	int wide = 0;
+
+	for (int i = 0; i < latin1ToGSM7.length; i++) {
+	    latin1ToGSM7[i] = NO_GSM7;
+	}
+
+	for (int i = 0; i < charsUCS2.length; i++) {
+	    if (charsUCS2[i] < 0x100) {
+		latin1ToGSM7[charsUCS2[i]] = chars7Bit[i];
+	    } else {
+		wide++;
+	    }
+	}
+
+	for (int i = 0; i < escapedUCS2.length; i++) {
+	    escapedToUCS2[escaped7BitChars[i]] = escapedUCS2[i];
+	    if (escapedUCS2[i] < 0x100) {
+		latin1ToGSM7[escapedUCS2[i]] =
+		    (short)(ESCAPED | escaped7BitChars[i]);
+	    } else {
+		wide++;
+	    }
+	}
+
+	wideUCS2 = new char[wide];
+	wideToGSM7 = new short[wide];
+	wide = 0;
+
+	for (int i = 0; i < charsUCS2.length; i++) {
+	    if (charsUCS2[i] >= 0x100) {
+		wideUCS2[wide] = charsUCS2[i];
+		wideToGSM7[wide++] = chars7Bit[i];
+	    }
+	}
+
+	for (int i = 0; i < escapedUCS2.length; i++) {
+	    if (escapedUCS2[i] >= 0x100) {
+		wideUCS2[wide] = escapedUCS2[i];
+		wideToGSM7[wide++] = (short)(ESCAPED | escaped7BitChars[i]);
+	    }
+	}
+    }
+
+    /**
+     * Looks up the GSM 7-bit code of a UCS-2 character.
+     *
+     * @param c UCS-2 character
+     * @return the GSM 7-bit code, or'ed with ESCAPED if it is in the
+     *   extension table, or NO_GSM7 if the character has no code
+     */
+    private static int toGSM7(char c) {
+	if (c < 0x100) {
+	    return latin1ToGSM7[c];
+	}
+
+	for (int i = 0; i < wideUCS2.length; i++) {
+	    if (wideUCS2[i] == c) {
+		return wideToGSM7[i];
+	    }
+	}
+
+	return NO_GSM7;
+    }
+
+    /**
+     * Gets the number of GSM 7-bit bytes needed to encode a string,
+     * counting two for the characters of the extension table. This
+     * tells in one pass whether the string can be sent as GSM 7-bit
+     * text and how long the text will be.
+     *
+     * @param data the string to be encoded
+     * @return the number of GSM 7-bit bytes, or -1 if some characters
+     *   can not be translated to the GSM 7-bit format
+     */
+    public static int encodedLength(String data) {
+	int length = data.length();
+	int count = length;
+
+	for (int i = 0; i < length; i++) {
+	    int code = toGSM7(data.charAt(i));
+	    if (code == NO_GSM7) {
+		return -1;
+	    }
+	    if (code >= ESCAPED) {
+		count++;
+	    }
+	}
+
+	return count;
+    }
+
+    /**
+     * Converts a string directly into GSM 7-bit bytes, one byte for
+     * each 7-bit value.
+     *
+     * @param data the string to be converted
+     * @return array of GSM 7-bit bytes if the conversion was
+     *   successful, otherwise return <code>null</code> to
+     *   indicate that some characters were included that can
+     *   not be translated to the GSM 7-bit format
+     */
+    public static byte[] encode(String data) {
+	int count = encodedLength(data);
+	if (count < 0) {
+	    return null;
+	}
+
+	byte[] gsm7bytes = new byte[count];
+	int length = data.length();
+	int j = 0;
+
+	for (int i = 0; i < length; i++) {
+	    int code = toGSM7(data.charAt(i));
+	    if (code >= ESCAPED) {
+		gsm7bytes[j++] = ESCAPE;
+	    }
+	    gsm7bytes[j++] = (byte)code;
+	}
+
+	return gsm7bytes;
+    }
+
     /**
      * Converts a UCS-2 character array into GSM 7-bit bytes.
      *
@@ -353,102 +501,134 @@ public class TextEncoder {
      * @return array of GSM 7-bit bytes if the conversion was
      *   successful, otherwise return <code>null</code> to
      *   indicate that some UCS-2 values were included that can
-     *   not be translated to the GSM 7-bit format
+     *   not be translated to the GSM 7-bit format, or that the
+     *   array ends with half a character
      */
     public static byte[] encode(byte[] ucsbytes) {
-	/*
-	 * Initialize a buffer with expected size twice that of
-	 * the 7-bit encoded text.
-	 */
-	ByteArrayOutputStream bos = new ByteArrayOutputStream(ucsbytes.length);
+	int length = ucsbytes.length;
+	int count = length / 2;
+
+	if ((length & 1) != 0) {
+	    return null;
+	}
 
 	/*
 	 * Walk through the UCS 2 characters 2 bytes at a time.
 	 * All characters must be in the direct or extended UCS
 	 * character tables. If not we reject the entire conversion.
 	 */
-	for (int i = 0; i < ucsbytes.length; i += 2) {
-	    int j;
-	    for (j = 0; j < charsUCS2.length; j++) {
-		if (ucsbytes[i] == (charsUCS2[j] >> 8) &&
-		    ucsbytes[i+1] == (charsUCS2[j] & 0xFF)) {
-		    bos.write(chars7Bit[j]);
-		    break;
-		}
+	for (int i = 0; i < length; i += 2) {
+	    int code = toGSM7((char)((ucsbytes[i] << 8) +
+				     (ucsbytes[i+1] & 0xFF)));
+	    if (code == NO_GSM7) {
+		return null;
+	    }
+	    if (code >= ESCAPED) {
+		count++;
 	    }
+	}
 
-	    /*
-	     * If you get to the end of the basic character table,
-	     * check the extra escaped sequence table, too.
-	     */
-	    if (j == charsUCS2.length) {
-		int k;
-		for (k = 0; k < escapedUCS2.length; k++) {
-		    if (ucsbytes[i] == (escapedUCS2[k] >> 8) &&
-			ucsbytes[i+1] == (escapedUCS2[k] & 0xFF)) {
-			bos.write(0x1b);
-			bos.write(escaped7BitChars[k]);
-			break;
-		    }
-		}
+	byte[] gsm7bytes = new byte[count];
+	int j = 0;
+
+	for (int i = 0; i < length; i += 2) {
+	    int code = toGSM7((char)((ucsbytes[i] << 8) +
+				     (ucsbytes[i+1] & 0xFF)));
+	    if (code >= ESCAPED) {
+		gsm7bytes[j++] = ESCAPE;
+	    }
+	    gsm7bytes[j++] = (byte)code;
+	}
+
+	return gsm7bytes;
+    }
+
+    /**
+     * Counts the characters encoded in a GSM 7-bit byte array.
+     *
+     * @param gsm7bytes an array of GSM 7-bit encoded characters
+     * @return the number of characters that decode() produces
+     */
+    private static int decodedLength(byte[] gsm7bytes) {
+	int count = 0;
+
+	for (int i = 0; i < gsm7bytes.length; i++) {
+	    int b = gsm7bytes[i];
+	    if (b == ESCAPE) {
 		/*
-		 * If no match is found in either table,
-		 * return null to indicate UCS 2 characters
-		 * were found that are not included in the
-		 * GSM 7 bit encoding.
+		 * Advance the pointer past the escape.
 		 */
-		if (k == escapedUCS2.length) {
-		    return null;
+		i++;
+		if (i < gsm7bytes.length && gsm7bytes[i] >= 0 &&
+			escapedToUCS2[gsm7bytes[i]] != 0) {
+		    count++;
 		}
+	    } else if (b >= 0) {
+		count++;
 	    }
 	}
-	return bos.toByteArray();
+
+	return count;
     }
 
     /**
-     * Converts a GSM 7-bit encoded byte array into a UCS-2 byte array.
+     * Converts a GSM 7-bit encoded byte array into characters.
      *
      * @param gsm7bytes an array of GSM 7-bit encoded characters
-     * @return an array of UCS-2 characters in a byte array
+     * @return the decoded characters
      */
-    public static byte[] decode(byte[] gsm7bytes) {
-	/*
-	 * Initialize a buffer with expected size twice that of
-	 * the 7-bit encoded text
-	 */
-	ByteArrayOutputStream bos =
-	    new ByteArrayOutputStream(gsm7bytes.length * 2);
+    private static char[] decodeChars(byte[] gsm7bytes) {
+	char[] c = new char[decodedLength(gsm7bytes)];
+	int j = 0;
 
 	for (int i = 0; i < gsm7bytes.length; i++) {
+	    int b = gsm7bytes[i];
+
 	    /*
 	     * Check for escaped characters first.
 	     */
-	    if (gsm7bytes[i] == 0x1b) {
-		/*
-		 * Advance the pointer past the escape.
-		 */
+	    if (b == ESCAPE) {
 		i++;
-
-		for (int j = 0; j < escaped7BitChars.length; j++) {
-		    if (gsm7bytes[i] == escaped7BitChars[j]) {
-			bos.write(escapedUCS2[j] >> 8);
-			bos.write(escapedUCS2[j] & 0xFF);
-			break;
-		    }
-		}
-
-	    } else {
-		for (int j = 0; j < chars7Bit.length; j++) {
-		    if (gsm7bytes[i] == chars7Bit[j]) {
-			bos.write(charsUCS2[j] >> 8);
-			bos.write(charsUCS2[j] & 0xFF);
-			break;
-		    }
+		if (i < gsm7bytes.length && gsm7bytes[i] >= 0 &&
+			escapedToUCS2[gsm7bytes[i]] != 0) {
+		    c[j++] = escapedToUCS2[gsm7bytes[i]];
 		}
+	    } else if (b >= 0) {
+		/* chars7Bit holds each 7-bit code at its own index */
+		c[j++] = charsUCS2[b];
 	    }
 	}
 
-	return bos.toByteArray();
+	return c;
+    }
+
+    /**
+     * Converts a GSM 7-bit encoded byte array into a UCS-2 byte array.
+     *
+     * @param gsm7bytes an array of GSM 7-bit encoded characters
+     * @return an array of UCS-2 characters in a byte array
+     */
+    public static byte[] decode(byte[] gsm7bytes) {
+	char[] c = decodeChars(gsm7bytes);
+	byte[] ucsbytes = new byte[c.length * 2];
+
+	for (int i = 0; i < c.length; i++) {
+	    ucsbytes[2 * i] = (byte)(c[i] >> 8);
+	    ucsbytes[2 * i + 1] = (byte)c[i];
+	}
+
+	return ucsbytes;
+    }
+
+    /**
+     * Converts a GSM 7-bit encoded byte array directly into a
+     * <code>String</code>.
+     *
+     * @param gsm7bytes an array of GSM 7-bit encoded characters
+     * @return Java string
+     */
+    public static String decodeToString(byte[] gsm7bytes) {
+	return new String(decodeChars(gsm7bytes));
     }
 
     /**
@@ -461,9 +641,9 @@ public class TextEncoder {
 	/*
 	 * Create a string from the raw UCS 2 bytes.
 	 */
-	for (int i = 0; i < ucsbytes.length; i += 2) {
-	    c[i/2] = (char)((ucsbytes[i] << 8)
-			    +  (ucsbytes[i+1] & 0xFF));
+	for (int i = 0; i < c.length; i++) {
+	    c[i] = (char)((ucsbytes[2 * i] << 8)
+			  +  (ucsbytes[2 * i + 1] & 0xFF));
 	}
 	return new String(c);
     }
@@ -475,14 +655,14 @@ public class TextEncoder {
      * @return an array of bytes in UCS-2 character
      */
     public static byte[] toByteArray(String data) {
-	char[] c = data.toCharArray();
-	ByteArrayOutputStream bos =
-	    new ByteArrayOutputStream(data.length());
-	for (int i = 0; i < c.length; i ++) {
-	    bos.write(c[i] >> 8);
-	    bos.write(c[i] & 0xFF);
+	int length = data.length();
+	byte[] ucsbytes = new byte[length * 2];
+	for (int i = 0; i < length; i ++) {
+	    char c = data.charAt(i);
+	    ucsbytes[2 * i] = (byte)(c >> 8);
+	    ucsbytes[2 * i + 1] = (byte)c;
 	}
-	return bos.toByteArray();
+	return ucsbytes;
     }
 
 }
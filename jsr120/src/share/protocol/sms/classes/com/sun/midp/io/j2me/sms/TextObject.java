@@ -40,6 +40,15 @@ public class TextObject extends MessageObject
     /** Buffer to be used. */
     byte[] buffer;
 
+    /** Payload as a <code>String</code>, once it is known. */
+    private String text;
+
+    /** GSM 7-bit encoding of the payload, if it has one. */
+    private byte[] gsm7bytes;
+
+    /** True once <code>gsm7bytes</code> is up to date with the payload. */
+    private boolean encoded;
+
     /**
      * Constructs a text-specific message.
      * @param  addr the destination address of the message
@@ -59,7 +68,10 @@ public class TextObject extends MessageObject
 	if (buffer == null) {
 	    return null;
 	}
-	return TextEncoder.toString(buffer);
+	if (text == null) {
+	    text = TextEncoder.toString(buffer);
+	}
+	return text;
     }
 
     /**
@@ -74,6 +86,9 @@ public class TextObject extends MessageObject
 	} else {
 	    buffer = null;
 	}
+	text = data;
+	gsm7bytes = null;
+	encoded = false;
 	return;
     }
 
@@ -94,6 +109,29 @@ public class TextObject extends MessageObject
      */
     void setBytes(byte[] data) {
 	buffer = data;
+	text = null;
+	gsm7bytes = null;
+	encoded = false;
+    }
+
+    /**
+     * Gets the payload encoded as GSM 7-bit text. The encoding is
+     * computed once and kept until the payload changes, so that
+     * counting the segments and sending the message share it.
+     *
+     * @return an array of GSM 7-bit bytes, or <code>null</code> if
+     *     the payload is not set or can not be encoded as GSM 7-bit text
+     */
+    byte[] getGSM7Bytes() {
+	if (!encoded) {
+	    if (text != null) {
+		gsm7bytes = TextEncoder.encode(text);
+	    } else if (buffer != null) {
+		gsm7bytes = TextEncoder.encode(buffer);
+	    }
+	    encoded = true;
+	}
+	return gsm7bytes;
     }
 }
 
@@ -0,0 +1,164 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.midp.io.j2me.sms;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * Measures how long GSM 7-bit encoding takes for the text of many
+ * messages, and checks that the text survives encoding and decoding.
+ * The times, and the bytes allocated for each message, are printed
+ * with info().
+ */
+public class TestTextEncoder extends TestCase {
+
+    /** number of messages encoded */
+    static final int MESSAGES = 2000;
+
+    /** text of a message that fits in one segment */
+    static final String SHORT_TEXT =
+        "Meet at 7 at the station. Bring \u00a35 for the ticket!";
+
+    /** text with characters of the extension table */
+    static final String ESCAPED_TEXT =
+        "Price {EUR}: \u20ac12 [incl. tax] ~ see http://example.com/a|b\\c^";
+
+    /** text with a character outside the GSM 7-bit alphabet */
+    static final String UCS2_TEXT = "Pay \u20b9120 by tomorrow";
+
+    /**
+     * Encodes a text the way the send path did before the text was
+     * encoded directly: into UCS-2 bytes first and then into GSM 7-bit.
+     *
+     * @param text the text
+     * @return the GSM 7-bit bytes, or null
+     */
+    static byte[] encodeThroughUCS2(String text) {
+        return TextEncoder.encode(TextEncoder.toByteArray(text));
+    }
+
+    /**
+     * Encodes a text many times both ways and checks the results.
+     *
+     * @param name name of the test
+     * @param text the text
+     * @param escapes number of characters of the extension table in text
+     */
+    void testText(String name, String text, int escapes) {
+        declare(name);
+
+        byte[] bytes = null;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            bytes = encodeThroughUCS2(text);
+        }
+        long ucs2Time = System.currentTimeMillis() - start;
+
+        byte[] direct = null;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            direct = TextEncoder.encode(text);
+        }
+        long directTime = System.currentTimeMillis() - start;
+
+        int length = TextEncoder.encodedLength(text);
+        int ucs2Bytes = text.length() * 2;
+
+        if (direct == null) {
+            assertNull("encoded through UCS-2", bytes);
+            assertEquals("length", -1, length);
+            info(name + ": not GSM 7-bit, " + MESSAGES + " x " +
+                 "through UCS-2 " + ucs2Time + " ms, direct " +
+                 directTime + " ms");
+            return;
+        }
+
+        assertNotNull("encoded through UCS-2", bytes);
+        assertEquals("length", text.length() + escapes, length);
+        assertEquals("encoded length", length, direct.length);
+        assertEquals("same encoding", new String(bytes), new String(direct));
+        assertEquals("decoded", text, TextEncoder.decodeToString(direct));
+        assertEquals("decoded to UCS-2", text,
+                     TextEncoder.toString(TextEncoder.decode(direct)));
+
+        info(name + ": " + length + " bytes, " + MESSAGES + " x " +
+             "through UCS-2 " + ucs2Time + " ms (" +
+             (ucs2Bytes + length) + " bytes allocated), direct " +
+             directTime + " ms (" + length + " bytes allocated)");
+    }
+
+    /**
+     * Checks that a text object encodes its payload once.
+     */
+    void testTextObject() {
+        declare("TextObject");
+
+        TextObject message = new TextObject("sms://+5559999:12345");
+        message.setPayloadText(SHORT_TEXT);
+        byte[] bytes = message.getGSM7Bytes();
+        assertNotNull("GSM 7-bit", bytes);
+        assertSame("cached", bytes, message.getGSM7Bytes());
+
+        message.setPayloadText(UCS2_TEXT);
+        assertNull("not GSM 7-bit", message.getGSM7Bytes());
+        assertEquals("text", UCS2_TEXT, message.getPayloadText());
+
+        message.setBytes(TextEncoder.toByteArray(ESCAPED_TEXT));
+        assertEquals("from bytes",
+                     new String(TextEncoder.encode(ESCAPED_TEXT)),
+                     new String(message.getGSM7Bytes()));
+        assertEquals("text from bytes", ESCAPED_TEXT,
+                     message.getPayloadText());
+    }
+
+    /**
+     * Checks that UCS-2 bytes ending with half a character are not
+     * encoded, so that the message is sent as UCS-2.
+     */
+    void testOddLength() {
+        declare("odd length");
+
+        byte[] ucs2 = TextEncoder.toByteArray(SHORT_TEXT);
+        byte[] odd = new byte[ucs2.length + 1];
+        System.arraycopy(ucs2, 0, odd, 0, ucs2.length);
+        odd[ucs2.length] = 'x';
+
+        assertNotNull("even length", TextEncoder.encode(ucs2));
+        assertNull("odd length", TextEncoder.encode(odd));
+    }
+
+    /**
+     * Runs all the tests.
+     */
+    public void runTests() throws Throwable {
+        testText("GSM 7-bit", SHORT_TEXT, 0);
+        testText("extension table", ESCAPED_TEXT, 9);
+        testText("UCS-2", UCS2_TEXT, 0);
+        testTextObject();
+        testOddLength();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.util.Vector;
+
+import com.sun.j2me.log.Logging;
+import com.sun.j2me.log.LogChannels;
+
+/**
+ * A clock shared by the players that show frames at set times.
+ *
+ * The players are kept in the order they are due and a single thread
+ * calls each of them in turn, instead of every player sleeping in a
+ * thread of its own between its frames.  The thread exits when no
+ * player has been due for a while and is started again when needed.
+ */
+final class FrameClock implements Runnable {
+    /**
+     * A player timed by the clock.
+     */
+    interface Client {
+        /**
+         * Called on the clock thread when the client is due.
+         *
+         * @return the time in milliseconds to be called again at,
+         *         or -1 not to be called again
+         */
+        long tick();
+    }
+
+    /* time in milliseconds the thread waits for clients before it exits */
+    private static final long IDLE_TIMEOUT = 5000;
+
+    /* the clock of all the players */
+    private static FrameClock clock;
+
+    /* the clients waiting, in the order they are due */
+    private final Vector entries = new Vector();
+
+    /* the clock thread, null when not running */
+    private Thread thread;
+
+    /* the client being called, null if none */
+    private Client running;
+
+    /* true if the client being called has been scheduled or cancelled
+     * since, so the time it returns is not used.
+     */
+    private boolean runningChanged;
+
+    /**
+     * A client and the time it is due at.
+     */
+    private static final class Entry {
+        final Client client;
+        long time;
+
+        Entry(Client client, long time) {
+            this.client = client;
+            this.time = time;
+        }
+    }
+
+    private FrameClock() {
+    }
+
+    /**
+     * Returns the clock shared by all the players.
+     */
+    static synchronized FrameClock getClock() {
+        if (clock == null) {
+            clock = new FrameClock();
+        }
+        return clock;
+    }
+
+    /**
+     * Schedules a client to be called, instead of at any time it was
+     * scheduled at before.
+     *
+     * @param client the client
+     * @param time the time in milliseconds to call the client at
+     */
+    synchronized void schedule(Client client, long time) {
+        remove(client);
+        if (client == running) {
+            runningChanged = true;
+        }
+        insert(new Entry(client, time));
+
+        if (thread == null) {
+            thread = new Thread(this);
+            thread.start();
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops calling a client.  If the client is being called on another
+     * thread, waits for it to return.
+     *
+     * @param client the client
+     */
+    synchronized void cancel(Client client) {
+        remove(client);
+
+        if (client == running) {
+            runningChanged = true;
+
+            while (client == running && Thread.currentThread() != thread) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * The run method of the clock thread.
+     */
+    public void run() {
+        long idleSince = System.currentTimeMillis();
+
+        while (true) {
+            Entry entry;
+
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+
+                if (entries.size() == 0) {
+                    if (now - idleSince >= IDLE_TIMEOUT) {
+                        thread = null;
+                        return;
+                    }
+                    waitFor(idleSince + IDLE_TIMEOUT - now);
+                    continue;
+                }
+
+                entry = (Entry)entries.elementAt(0);
+
+                if (entry.time > now) {
+                    waitFor(entry.time - now);
+                    continue;
+                }
+
+                entries.removeElementAt(0);
+                running = entry.client;
+                runningChanged = false;
+            }
+
+            long time = -1;
+
+            try {
+                time = entry.client.tick();
+            } catch (Exception e) {
+                if (Logging.REPORT_LEVEL <= Logging.ERROR) {
+                    Logging.report(Logging.ERROR, LogChannels.LC_MMAPI,
+                                   "FrameClock: tick failed: " + e);
+                }
+            }
+
+            synchronized (this) {
+                if (!runningChanged && time >= 0) {
+                    entry.time = time;
+                    insert(entry);
+                }
+                running = null;
+                idleSince = System.currentTimeMillis();
+
+                // wake up those waiting in cancel()
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits on the clock until notified or the time runs out.
+     *
+     * @param millis the time to wait in milliseconds
+     */
+    private void waitFor(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Inserts an entry after the ones due at the same time or earlier,
+     * so clients due together are called in turn.
+     */
+    private void insert(Entry entry) {
+        int i = 0;
+        int size = entries.size();
+
+        while (i < size && ((Entry)entries.elementAt(i)).time <= entry.time) {
+            i++;
+        }
+        entries.insertElementAt(entry, i);
+    }
+
+    /**
+     * Removes the entry of a client if it has one.
+     */
+    private void remove(Client client) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (((Entry)entries.elementAt(i)).client == client) {
+                entries.removeElementAt(i);
+                return;
+            }
+        }
+    }
+}
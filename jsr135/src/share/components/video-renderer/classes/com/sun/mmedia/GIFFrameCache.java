@@ -0,0 +1,200 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.mmedia;
+
+import java.lang.ref.WeakReference;
+import java.util.Vector;
+
+/**
+ * Decoded frames of a GIF animation, kept so that loops and seeks
+ * replay them instead of decoding the stream again.
+ *
+ * Each frame is kept as the rectangle it changed in the full frame
+ * shown before it, so the first frame is a full frame and the others
+ * are usually small.  The frames of all the players share one budget
+ * of bytes; an animation that does not fit is not cached at all.
+ *
+ * The budget is counted from the caches still reachable, so the share
+ * of a player dropped without being closed comes back once the player
+ * has been collected.
+ */
+final class GIFFrameCache {
+    /* bytes of pixels the caches of all the players may hold */
+    static final int MAX_BYTES = 512 * 1024;
+
+    /* weak references to the caches holding frames */
+    private static final Vector caches = new Vector();
+
+    /* the width of a full frame */
+    private final int width;
+
+    /* the frames kept, in the order they are shown */
+    private final Vector frames = new Vector();
+
+    /* bytes of pixels held by this cache */
+    private int bytes;
+
+    /* true once the last frame of the animation has been added */
+    private boolean complete;
+
+    /**
+     * A frame, as the rectangle it changed in the frame before it.
+     */
+    static final class Delta {
+        int x, y, w, h;
+        int[] pixels;
+    }
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param width the width of a full frame
+     */
+    GIFFrameCache(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Returns the number of frames kept.
+     */
+    int size() {
+        return frames.size();
+    }
+
+    /**
+     * Tells if all the frames of the animation are kept.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Marks the frames kept as all the frames of the animation.
+     */
+    void setComplete() {
+        complete = true;
+    }
+
+    /**
+     * Adds the next frame.
+     *
+     * @param frame the full frame
+     * @param x left of the area changed since the frame before
+     * @param y top of the area changed since the frame before
+     * @param w width of the area changed, may be 0
+     * @param h height of the area changed, may be 0
+     * @return true if the frame was added, false if it does not fit
+     */
+    boolean add(int[] frame, int x, int y, int w, int h) {
+        Delta delta = new Delta();
+
+        if (w > 0 && h > 0) {
+            if (!reserve(4 * w * h)) {
+                return false;
+            }
+
+            delta.x = x;
+            delta.y = y;
+            delta.w = w;
+            delta.h = h;
+            delta.pixels = new int[w * h];
+
+            int pixel = x + y * width;
+            for (int i = 0; i < h; i++, pixel += width) {
+                System.arraycopy(frame, pixel, delta.pixels, i * w, w);
+            }
+        }
+
+        frames.addElement(delta);
+        return true;
+    }
+
+    /**
+     * Draws a frame over the one shown before it.
+     *
+     * @param index the index of the frame
+     * @param frame the full frame to draw to
+     */
+    void apply(int index, int[] frame) {
+        Delta delta = (Delta)frames.elementAt(index);
+
+        int pixel = delta.x + delta.y * width;
+        for (int i = 0; i < delta.h; i++, pixel += width) {
+            System.arraycopy(delta.pixels, i * delta.w, frame, pixel, delta.w);
+        }
+    }
+
+    /**
+     * Drops all the frames and gives their bytes back to the budget.
+     */
+    void release() {
+        frames.removeAllElements();
+        complete = false;
+
+        synchronized (caches) {
+            for (int i = caches.size() - 1; i >= 0; i--) {
+                if (((WeakReference)caches.elementAt(i)).get() == this) {
+                    caches.removeElementAt(i);
+                }
+            }
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Takes bytes for this cache from the budget shared by all the
+     * caches.  The caches that have been collected are forgotten.
+     *
+     * @param count the number of bytes
+     * @return true if there were enough bytes left
+     */
+    private boolean reserve(int count) {
+        synchronized (caches) {
+            int used = 0;
+            boolean listed = false;
+
+            for (int i = caches.size() - 1; i >= 0; i--) {
+                GIFFrameCache cache =
+                    (GIFFrameCache)((WeakReference)caches.elementAt(i)).get();
+
+                if (cache == null) {
+                    caches.removeElementAt(i);
+                } else {
+                    used += cache.bytes;
+                    listed |= cache == this;
+                }
+            }
+
+            if (used + count > MAX_BYTES) {
+                return false;
+            }
+
+            if (!listed) {
+                caches.addElement(new WeakReference(this));
+            }
+            bytes += count;
+            return true;
+        }
+    }
+}
@@ -46,6 +46,15 @@ class GIFImageDecoder {
     private int framePosX, framePosY, frameWidth, frameHeight;
     private boolean interlace;
 
+    /// Image the last frame was decoded to, null when it has to be redone
+    private int[] lastOut;
+
+    /// Area of the saved image changed by the last undraw
+    private int undrawX, undrawY, undrawWidth, undrawHeight;
+
+    /// Area of the output changed by the last frame decoded
+    private int dirtyX, dirtyY, dirtyWidth, dirtyHeight;
+
     /// Initialize with Global Descriptor data
     GIFImageDecoder(int width, int height, int colorDepth) {
         this.width = width;
@@ -97,6 +106,7 @@ class GIFImageDecoder {
             for (int i = 0; i < width * height; ++i)
                 argb[i] = bkg;
         }
+        lastOut = null;
     }
 
     /// Get current image (after undraw)
@@ -149,10 +159,20 @@ class GIFImageDecoder {
 
     /// Decode frame data from dataBlocks to out
     boolean decodeImage(int lzwCodeSize, int dataSize, byte data[], int out[]) {
-        curArgb = out;                                            
-
-        // Get saved image
-        System.arraycopy(argb, 0, curArgb, 0, width * height);
+        curArgb = out;
+
+        if (out != lastOut) {
+            // Get saved image
+            System.arraycopy(argb, 0, curArgb, 0, width * height);
+            setDirty(0, 0, width, height);
+        } else {
+            // out still holds the last frame, which differs from the
+            // saved image only where that frame was undrawn
+            copyRect(undrawX, undrawY, undrawWidth, undrawHeight);
+            setDirty(undrawX, undrawY, undrawWidth, undrawHeight);
+            addDirty(framePosX, framePosY, frameWidth, frameHeight);
+        }
+        lastOut = out;
 
         // LZW decode
         boolean result = lzwImage(lzwCodeSize, dataSize, data);
@@ -184,11 +204,78 @@ class GIFImageDecoder {
             // Do nothing
             break;
         }
+
+        if (undrawFlag == UNDRAW_LEAVE) {
+            undrawWidth = 0;
+            undrawHeight = 0;
+        } else {
+            undrawX = framePosX;
+            undrawY = framePosY;
+            undrawWidth = frameWidth;
+            undrawHeight = frameHeight;
+        }
         resetLocalData();
 
         return result;
     }
 
+    /// Left of the area changed by the last frame decoded
+    int getDirtyX() {
+        return dirtyX;
+    }
+
+    /// Top of the area changed by the last frame decoded
+    int getDirtyY() {
+        return dirtyY;
+    }
+
+    /// Width of the area changed by the last frame decoded, may be 0
+    int getDirtyWidth() {
+        return dirtyWidth;
+    }
+
+    /// Height of the area changed by the last frame decoded, may be 0
+    int getDirtyHeight() {
+        return dirtyHeight;
+    }
+
+    /// Copy a rectangle of the saved image to the current output
+    private void copyRect(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0)
+            return;
+
+        int pixel = x + y * width;
+        for (int i = 0; i < h; ++i, pixel += width) {
+            System.arraycopy(argb, pixel, curArgb, pixel, w);
+        }
+    }
+
+    private void setDirty(int x, int y, int w, int h) {
+        dirtyX = x;
+        dirtyY = y;
+        dirtyWidth = w;
+        dirtyHeight = h;
+    }
+
+    /// Grow the dirty area to the bounds of itself and a rectangle
+    private void addDirty(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0)
+            return;
+
+        if (dirtyWidth <= 0 || dirtyHeight <= 0) {
+            setDirty(x, y, w, h);
+            return;
+        }
+
+        int right = Math.max(dirtyX + dirtyWidth, x + w);
+        int bottom = Math.max(dirtyY + dirtyHeight, y + h);
+
+        dirtyX = Math.min(dirtyX, x);
+        dirtyY = Math.min(dirtyY, y);
+        dirtyWidth = right - dirtyX;
+        dirtyHeight = bottom - dirtyY;
+    }
+
     // Should be called at the end of the image parsing
     private void resetLocalData() {
         undrawFlag = UNDRAW_LEAVE;
@@ -198,7 +285,8 @@ class GIFImageDecoder {
     }
 
     private void drawLine(byte[] line, int y/*, int multiply*/) {
-        if (y > frameHeight)
+        // lines past the frame would land outside the dirty area
+        if (y >= frameHeight)
             return;
         int pixel = (framePosY + y) * width + framePosX;
 
@@ -217,6 +305,9 @@ class GIFImageDecoder {
     private byte[] suffix = new byte[ 4096 ];
     private byte[] outCode = new byte[ 4097 ];
 
+    // Scan line buffer, kept for the next frames and only grown
+    private byte[] rasline = new byte[ 0 ];
+
     /**
      * Parses image, using current palette and graphics control.
      * Returns true if the image has been wholly parsed,
@@ -224,8 +315,9 @@ class GIFImageDecoder {
      */
     private boolean lzwImage(int initCodeSize, int dataSize, byte block[]) {
 
-        byte [] rasline = new byte[frameWidth];
-        
+        if (rasline.length < frameWidth)
+            rasline = new byte[frameWidth];
+
         int OUTCODELENGTH = 4097;
 
         int clearCode = (1 << initCodeSize);
@@ -41,7 +41,7 @@ import javax.microedition.media.protocol.SourceStream;
 /**
  * A player for the GIF89a.
  */
-final class GIFPlayer extends LowLevelPlayer implements Runnable {
+final class GIFPlayer extends LowLevelPlayer implements FrameClock.Client {
     /* Single image decoder */
     private GIFImageDecoder imageDecoder;
     
@@ -54,22 +54,29 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     /* a full GIF frame, also called the reference frame */
     private int[] referenceFrame = null;
 
-    /* the play thread */
-    private Thread playThread; // default is null
+    /* the decoded frames kept for loops and seeks, null if the
+     * animation does not fit in the cache
+     */
+    private GIFFrameCache frameCache;
 
-    /* flag indicating whether to end the play thread.
-     * done is set to true upon stopping or closing the player
+    /* flag indicating whether the player is timed by the frame clock.
+     * playing is set to false upon stopping or closing the player
      * or when the frame count progresses to the total number
      * of frames in this movie.
      */
-    private boolean done;
+    private boolean playing;
+
+    /* flag indicating that the last frame is shown until its
+     * display time ends.
+     */
+    private boolean atLastFrame;
 
     /* Used to synchronize access to mediatime- and rate- ralated fields
      */
     private Object mediaTimeLock = new Object();
 
     /* the start time in milliseconds.
-     * startTime is initialized upon start of the play thread.
+     * startTime is initialized upon start of the player.
      */
     private long startTime;
 
@@ -123,7 +130,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     /* stopped flag */
     private boolean stopped;
 
-    /* The lock object of play thread */
+    /* The lock object of the playing and stopped flags */
     private Object playLock = new Object();
 
     /* image data */
@@ -231,12 +238,13 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             }
 
             // skip frames
-            while (frameCount <= count && getFrame())
-                // We need to decode all frames to have the correct pixels
-                // for frames with transparent color
-                decodeFrame();
+            // We need to decode all frames to have the correct pixels
+            // for frames with transparent color
+            while (frameCount <= count && nextFrame())
+                ;
 
             displayTime = getDuration(frameCount) / 1000;
+            atLastFrame = false;
             //System.out.println("SetMediaTime: displayTime = " + displayTime + "; frameCount=" + frameCount);
 
             renderFrame();
@@ -301,20 +309,21 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
         if (referenceFrame == null)
             referenceFrame = new int[videoWidth * videoHeight];
 
+        if (frameCache == null)
+            frameCache = new GIFFrameCache(videoWidth);
+
         try { 
             frameCount = 0;
             seekFirstFrame();         
 
             // get first frame
-            if (!getFrame())
+            if (!nextFrame())
                 throw new MediaException("can't get first frame");
 
-            decodeFrame();
-
             // If duration is 0 prepare the last frame once.
             if (duration == 0) {
-                while (getFrame())
-                    decodeFrame();
+                while (nextFrame())
+                    ;
             }
             renderFrame();
 
@@ -331,46 +340,32 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      *            otherwise false.
      */
     protected boolean doStart() {
+        FrameClock clock = FrameClock.getClock();
+
+        // Ensure that a frame being shown is done with
+        clock.cancel(this);
+
         if (duration == 0) { // e.g. for non-animated GIFs
-            new Thread(new Runnable() {
-                public void run() {
-                    try {
-                        wait(ZERO_DURATION_WAIT);
-                    } catch (InterruptedException ie) { }
-                    getOwner().sendEvent(PlayerListener.END_OF_MEDIA, new Long(0));
-                }
-            }).start();
+            synchronized (playLock) {
+                playing = true;
+            }
+            clock.schedule(this, System.currentTimeMillis() + ZERO_DURATION_WAIT);
         } else {
             synchronized( mediaTimeLock ) {
                 startTime = System.currentTimeMillis(); 
             }
 
-            if (stopped) {
-                // wake up existing play thread
-                stopped = false;
-            
-                synchronized (playLock) {
-                    playLock.notifyAll();
-                }
-            } else {
-                displayTime = getFrameInterval(frameCount) / 1000;
-                
-                // Ensure that previous thread has finished
-                playThreadFinished();
-
-                synchronized (playLock) {
-                    if (playThread == null) {
-                        // Check for null is a protection against several
-                        // simultaneous doStart()'s trying to create a new thread.
-                        // But if playThreadFinished() failed to terminate
-                        // playThread, we can have a problem
-
-                        // create a new play thread
-                        playThread = new Thread(this);
-                        playThread.start();
-                    }
+            synchronized (playLock) {
+                if (stopped) {
+                    // go on from the frame the player was stopped at
+                    stopped = false;
+                } else {
+                    displayTime = getFrameInterval(frameCount) / 1000;
+                    atLastFrame = false;
                 }
+                playing = true;
             }
+            clock.schedule(this, System.currentTimeMillis());
         }
         return true;
     }
@@ -383,24 +378,20 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      *                           be stoppped.     
      */
     protected void doStop() throws MediaException {
-        if (stopped) return;    
-
         synchronized (playLock) {
-            try {
-                if (playThread != null) {
-                    stopped = true;
-                    playLock.notifyAll();
+            if (!playing)
+                return;
 
-                    synchronized( mediaTimeLock ) {
-                        mediaTimeOffset = getMicrosecondsFromStart();
-                        startTime = 0;
-                    }
+            playing = false;
+            stopped = true;
+        }
 
-                    playLock.wait();
-                }
-            } catch (InterruptedException ie) {
-                //do nothing
-            }
+        // wait for a frame being shown to be done with
+        FrameClock.getClock().cancel(this);
+
+        synchronized( mediaTimeLock ) {
+            mediaTimeOffset = getMicrosecondsFromStart();
+            startTime = 0;
         }
     }
 
@@ -410,10 +401,11 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * @see   Player#deallocate()
      */
     protected void doDeallocate() {
-        playThreadFinished();
+        stopPlaying();
         
         stopped = false;
         referenceFrame = null;
+        releaseFrameCache();
     }
 
     /**
@@ -422,7 +414,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * @see   Player#close()
      */
     protected void doClose() {
-        done = true;
+        stopPlaying();
 
         if (videoRenderer != null) {
             videoRenderer.close();
@@ -432,6 +424,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
         frameTimes = null;
         imageDecoder = null;
         imageData = null;
+        releaseFrameCache();
     }
     
     /* This means that 'Record Size Limit (reached)' event received */
@@ -446,30 +439,74 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     protected void doNotifySnapshotFinished() {}
 
     /**
-     * The run method driving the play thread.
+     * Called by the frame clock when the player is due.
+     *
+     * @return the time in milliseconds to be called again at,
+     *         or -1 if the player no longer plays
      */
-    public void run() {
-        done = false;
-        
-        while (!done) {
-            if (!stopped)
-                processFrame();
+    public long tick() {
+        synchronized (playLock) {
+            if (!playing)
+                return -1;
+        }
 
-            if (stopped) {
-                synchronized (playLock) {
-                    playLock.notifyAll();
-                
-                    try {
-                        playLock.wait();
-                    } catch (InterruptedException e) {
-                        // nothing to do
-                    }
-                }
+        if (duration == 0) {
+            synchronized (playLock) {
+                playing = false;
             }
+            getOwner().sendEvent(PlayerListener.END_OF_MEDIA, new Long(0));
+            return -1;
+        }
+
+        processFrame();
+
+        // report that stop time has been reached if
+        // the mediaTime is greater or equal to stop time.      
+        if (getOwner().getStopTime() != StopTimeControl.RESET &&
+            doGetMediaTime() >= getOwner().getStopTime()) {
+            stopTimeReached();
+            return -1;
+        }
+
+        // the media time in milliseconds
+        long mediaTime = doGetMediaTime() / 1000;
+
+        if (atLastFrame) {
+            // wait until end of last frame
+            long waitTime = (displayTime - mediaTime) * 100000 / rateControl.getRate();
+
+            if (waitTime > 0)
+                return System.currentTimeMillis() + waitTime;
+
+            endOfMedia();
+            return -1;
+        }
+
+        long waitTime = (displayTime - EARLY_THRESHOLD - mediaTime)
+            * 100000 / rateControl.getRate();
+
+        if (waitTime > MIN_WAIT &&
+            getOwner().getStopTime() != StopTimeControl.RESET) {
+            // keep checking the stop time while waiting
+            waitTime = MIN_WAIT;
+        }
+
+        return System.currentTimeMillis() + (waitTime > 0 ? waitTime : 0);
+    }
+
+    /**
+     * Ends the playback when the last frame has been shown.
+     */
+    private void endOfMedia() {
+        synchronized (playLock) {
+            if (!playing)
+                return;
+
+            playing = false;
         }
 
-        if (!stopped && !framePosControl.isActive()) {
-            // the run loop may have terminated prematurely, possibly
+        if (!framePosControl.isActive()) {
+            // the playback may have ended prematurely, possibly
             // due to an I/O error...
             // In this case, the duration needs to be updated.
             if (frameCount < frameTimes.size()) {
@@ -479,7 +516,7 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
             }
 
             // send an end-of-media if the player was not stopped
-            // and the run loop terminates because the end of media
+            // and the playback ends because the end of media
             // was reached.
             synchronized( mediaTimeLock ) {
                 mediaTimeOffset = getMicrosecondsFromStart();
@@ -488,48 +525,48 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
                           new Long(mediaTimeOffset * rateControl.getRate() / 100000));
             }
         }
-
-        synchronized (playLock) {
-            playThread = null;
-            playLock.notifyAll();
-        }
     }
 
-
     /**
      * Stops the GIF player when the stop time has been reached.
      */
     private void stopTimeReached() {
+        synchronized (playLock) {
+            if (!playing)
+                return;
+
+            playing = false;
+            stopped = true;
+        }
+
         // stop the player
         synchronized( mediaTimeLock ) {
             mediaTimeOffset = getMicrosecondsFromStart();
             startTime = 0;
         }
-        stopped = true;
         // send STOPPED_AT_TIME event
         getOwner().satev();
     }
 
     /**
-     * Ensures that playThread dies
+     * Ensures that the frame clock no longer calls the player.
      */
-    private void playThreadFinished() {
+    private void stopPlaying() {
         synchronized (playLock) {
-            // stop the playThread if it was created and started
-            if (playThread != null) {
-                done = true;
-                
-                // wake up the play thread if it was stopped
-                playLock.notifyAll();
-                
-                // wait for the play thread to terminate gracefully
-                try {
-                    // set maximum wait limit in case anything goes wrong.
-                    playLock.wait(5000);
-                } catch (InterruptedException e) {
-                    // nothing to do.
-                }
-            }
+            playing = false;
+        }
+
+        // wait for a frame being shown to be done with
+        FrameClock.getClock().cancel(this);
+    }
+
+    /**
+     * Drops the decoded frames kept by the player.
+     */
+    private void releaseFrameCache() {
+        if (frameCache != null) {
+            frameCache.release();
+            frameCache = null;
         }
     }
     
@@ -601,95 +638,69 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
     }
 
     /**
-     * Decodes and renders a GIF Frame.
+     * Decodes and renders the next GIF Frame once it is due.
      */
     private void processFrame() {
         // the media time in milliseconds
         long mediaTime = doGetMediaTime() / 1000;
 
-        // frame interval in milliseconds
-        long frameInterval = getFrameInterval(frameCount) / 1000;
-        //System.out.println("Frame: " + frameCount + ", length: " + frameInterval + ", at: " + mediaTime + ", displayTime: " + displayTime);
+        //System.out.println("Frame: " + frameCount + ", at: " + mediaTime + ", displayTime: " + displayTime);
 
-        if (mediaTime + EARLY_THRESHOLD > displayTime) {
+        if (!atLastFrame && mediaTime + EARLY_THRESHOLD > displayTime) {
             // get the next frame
-            if (!getFrame()) {
-                // wait until end of last frame
-                synchronized (playLock) {
-                    try {
-                        long waitTime = (displayTime - mediaTime) * 100000 / rateControl.getRate();
-
-                        if (waitTime > 0)
-                            playLock.wait(waitTime);
-                                    
-                    } catch (InterruptedException e) {
-                        // nothing to do
-                    }               
-                }
-                done = true;
+            if (!nextFrame()) {
+                atLastFrame = true;
                 return;
             }
-            decodeFrame();
-
-            // frame interval in milliseconds
-            frameInterval = getFrameInterval(frameCount) / 1000;
 
             // move display time to end of frame
-            displayTime += frameInterval;
+            displayTime += getFrameInterval(frameCount) / 1000;
+
+            // render last read frame
+            renderFrame();
+        }
+    }
+
+    /**
+     * Moves to the next frame.  The frame is replayed from the frame
+     * cache when all the frames of the animation are kept there,
+     * otherwise it is read from the stream, decoded and added to the
+     * cache.
+     *
+     * @return  true if there was a next frame, 
+     *          otherwise false.
+     */
+    private boolean nextFrame() {
+        if (frameCache != null && frameCache.isComplete()) {
+            if (frameCount >= frameCache.size())
+                return false;
+
+            frameCache.apply(frameCount, referenceFrame);
+            frameCount++;
+            return true;
         }
 
-        // render last read frame
-        renderFrame();
+        if (!getFrame()) {
+            if (frameCache != null && frameCache.size() == frameCount)
+                frameCache.setComplete();
 
-        // report that stop time has been reached if
-        // the mediaTime is greater or equal to stop time.      
-        if ( getOwner().getStopTime() != StopTimeControl.RESET &&
-            doGetMediaTime() >= getOwner().getStopTime() ) {
-            stopTimeReached();
+            return false;
         }
-       
-        if (!stopped) {
-            // threshold levels in milliseconds
-            // It makes playback falter if frame intervals differ
-            //EARLY_THRESHOLD = 250;
-            //if (frameInterval > 0 && frameInterval < EARLY_THRESHOLD)
-            //    EARLY_THRESHOLD = frameInterval / 2;
-                        
-            mediaTime = doGetMediaTime() / 1000;
-
-            if (mediaTime + EARLY_THRESHOLD <= displayTime) {
-                // wait for a bit
-                synchronized (playLock) {
-                    try {
-                        if (!done) {
-                            mediaTime = doGetMediaTime() / 1000;
-
-                            long waitTime = (displayTime - EARLY_THRESHOLD - mediaTime)
-                                * 100000 / rateControl.getRate();
-                                
-                            while (!stopped && waitTime > 0) {
-                                if (waitTime > MIN_WAIT) {
-                                    playLock.wait(MIN_WAIT);
-                                    mediaTime = doGetMediaTime() / 1000;
-                                    waitTime = (displayTime - EARLY_THRESHOLD - 
-                                           mediaTime) * 100000 / rateControl.getRate();
-                                } else {
-                                    playLock.wait(waitTime);
-                                    waitTime = 0;
-                                }
-                                    
-                                if (getOwner().getStopTime() != StopTimeControl.RESET &&
-                                    doGetMediaTime() >= getOwner().getStopTime()) {
-                                    stopTimeReached();
-                                }
-                            }
-                        }
-                    } catch (InterruptedException e) {
-                        // nothing to do
-                    }           
-                }
-            }
+
+        decodeFrame();
+
+        // frames are added in order, starting from the first one
+        if (frameCache != null && frameCache.size() == frameCount - 1 &&
+            !frameCache.add(referenceFrame,
+                            imageDecoder.getDirtyX(),
+                            imageDecoder.getDirtyY(),
+                            imageDecoder.getDirtyWidth(),
+                            imageDecoder.getDirtyHeight())) {
+            // the animation does not fit, decode it every time
+            releaseFrameCache();
         }
+
+        return true;
     }
     
     /*
@@ -697,6 +708,11 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
      * to be able to read it again
      */
     private void seekFirstFrame() throws IOException {
+        if (frameCache != null && frameCache.isComplete()) {
+            // the frames are replayed from the cache
+            return;
+        }
+
         if (seekType == SourceStream.RANDOM_ACCESSIBLE) {
             // seek to the beginning of the first frame
             getOwner().stream.seek(firstFramePos);
@@ -1501,8 +1517,17 @@ final class GIFPlayer extends LowLevelPlayer implements Runnable {
                         * 1000 * ((double)oldRate / rate - 1) 
                         + mediaTimeOffset * (double)oldRate / rate);
                 }
-                return rate;
             }
+
+            // the next frame is due at another time now
+            synchronized (playLock) {
+                if (playing) {
+                    FrameClock.getClock().schedule(GIFPlayer.this,
+                                                   System.currentTimeMillis());
+                }
+            }
+
+            return rate;
         }
 
         /**
@@ -0,0 +1,141 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.mmedia;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * Checks that the GIF frame cache replays the frames it was given and
+ * that the byte budget shared by the caches is given back when a cache
+ * is released or collected.
+ */
+public class TestGIFFrameCache extends TestCase {
+
+    /** width and height of the frames, a full frame takes half the budget */
+    static final int SIZE = 256;
+
+    /**
+     * Returns a full frame filled with the given pixel.
+     */
+    static int[] frame(int pixel) {
+        int[] frame = new int[SIZE * SIZE];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = pixel;
+        }
+        return frame;
+    }
+
+    /**
+     * Fills a cache with full frames until the budget is used up.
+     *
+     * @return the number of frames added
+     */
+    static int fill(GIFFrameCache cache) {
+        int[] frame = frame(0);
+        int count = 0;
+        while (cache.add(frame, 0, 0, SIZE, SIZE)) {
+            count++;
+        }
+        return count;
+    }
+
+    void testReplay() {
+        declare("frames replayed");
+        GIFFrameCache cache = new GIFFrameCache(SIZE);
+
+        int[] frame = frame(1);
+        assertTrue("first frame not added",
+                   cache.add(frame, 0, 0, SIZE, SIZE));
+
+        // the second frame changes a small rectangle
+        for (int y = 10; y < 20; y++) {
+            for (int x = 30; x < 35; x++) {
+                frame[x + y * SIZE] = 2;
+            }
+        }
+        assertTrue("second frame not added",
+                   cache.add(frame, 30, 10, 5, 10));
+
+        // the third frame changes nothing
+        assertTrue("third frame not added", cache.add(frame, 0, 0, 0, 0));
+        cache.setComplete();
+
+        assertEquals("wrong number of frames", 3, cache.size());
+        assertTrue("not complete", cache.isComplete());
+
+        int[] replayed = frame(0);
+        for (int i = 0; i < cache.size(); i++) {
+            cache.apply(i, replayed);
+        }
+        for (int i = 0; i < frame.length; i++) {
+            if (frame[i] != replayed[i]) {
+                fail("wrong pixel at " + i);
+                break;
+            }
+        }
+
+        cache.release();
+        assertEquals("frames kept after release", 0, cache.size());
+        assertTrue("complete after release", !cache.isComplete());
+    }
+
+    void testRelease() {
+        declare("budget given back on release");
+        GIFFrameCache first = new GIFFrameCache(SIZE);
+        int count = fill(first);
+        assertEquals("wrong number of frames in the budget",
+                     GIFFrameCache.MAX_BYTES / (4 * SIZE * SIZE), count);
+
+        GIFFrameCache second = new GIFFrameCache(SIZE);
+        assertEquals("frame added over the budget", 0, fill(second));
+
+        first.release();
+        assertEquals("budget not given back", count, fill(second));
+        second.release();
+    }
+
+    void testCollected() {
+        declare("budget given back when collected");
+        GIFFrameCache first = new GIFFrameCache(SIZE);
+        int count = fill(first);
+        first = null;
+
+        // the dropped cache is never released
+        System.gc();
+
+        GIFFrameCache second = new GIFFrameCache(SIZE);
+        assertEquals("budget not given back", count, fill(second));
+        second.release();
+    }
+
+    /**
+     * Runs all the tests.
+     */
+    public void runTests() throws Throwable {
+        testReplay();
+        testRelease();
+        testCollected();
+    }
+}
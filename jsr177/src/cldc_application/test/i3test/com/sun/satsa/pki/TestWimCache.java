@@ -0,0 +1,164 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.satsa.pki;
+
+import com.sun.midp.i3test.TestCase;
+
+import com.sun.cardreader.CardDeviceException;
+import com.sun.cardreader.SlotFactory;
+import com.sun.cdc.io.j2me.apdu.APDUManager;
+import com.sun.cdc.io.j2me.apdu.Handle;
+import com.sun.satsa.util.CardFileCache;
+import com.sun.satsa.util.Connection;
+import com.sun.satsa.util.Constants;
+
+/**
+ * This test case tests APDU scripts and the cache of WIM files
+ * against the card emulator.
+ */
+public class TestWimCache extends TestCase {
+
+    /** APDU that selects the PKCS#15 application. */
+    static final byte[] selectAPDU =
+            {0, (byte) 0xa4, 4, Constants.P2, 12, (byte) 0xA0, 0, 0, 0, 0x63,
+             0x50, 0x4B, 0x43, 0x53, 0x2D, 0x31, 0x35, 0x7f};
+
+    /** EF(TokenInfo) identifier. */
+    static final short TokenInfoPath = 0x5032;
+
+    /** Size of the READ BINARY command data used by the test. */
+    static final int CHUNK = 16;
+
+    /**
+     * Checks if the card emulator is present.
+     * @return true if the emulator is present
+     * @throws CardDeviceException if the card device cannot be configured
+     */
+    private boolean isCardPresent() throws CardDeviceException {
+        try {
+            SlotFactory.init();
+        } catch (CardDeviceException e) {
+            if (e.getMessage().equals("stub")) {
+                return false;
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Tests that a file read with a script is the same as the file read
+     * with one APDU at a time, and that reading does not change the
+     * change counter of the slot.
+     */
+    private void testScript()
+            throws java.io.IOException, CardDeviceException {
+        if (!isCardPresent()) {
+            assertTrue(true);
+            return;
+        }
+
+        APDUManager.initACL(0);
+        Handle h = APDUManager.selectApplication(selectAPDU, 0);
+        Connection apdu = new Connection(h);
+        try {
+            WimFileSystem files = new WimFileSystem(apdu);
+            files.select(TokenInfoPath);
+            int size = files.getCurrrentFileSize();
+            assertTrue("Empty TokenInfo", size > 0);
+
+            int count = apdu.getChangeCount();
+            byte[] data = files.readData(0, size, 0);
+
+            for (int offset = 0; offset < size; offset += CHUNK) {
+                int len = size - offset > CHUNK ? CHUNK : size - offset;
+                byte[] result = apdu.resetCommand().
+                                sendCommand(0xb0, offset, len, true);
+                for (int i = 0; i < len; i++) {
+                    if (result[i] != data[offset + i]) {
+                        fail("Data differ at " + (offset + i));
+                        return;
+                    }
+                }
+            }
+            assertEquals("Change counter", count, apdu.getChangeCount());
+        } finally {
+            apdu.done();
+        }
+    }
+
+    /**
+     * Tests that the WIM application opened again is read from the cache,
+     * that is no file it reads is missing from the cache.
+     */
+    private void testOpen()
+            throws java.io.IOException, CardDeviceException {
+        if (!isCardPresent()) {
+            assertTrue(true);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        WIMApplication first = WIMApplication.getInstance(0, null, true);
+        long firstTime = System.currentTimeMillis() - start;
+        assertNotNull("First open", first);
+        CardFileCache cache = first.getCache();
+        first.done();
+
+        assertNotNull("No cache", cache);
+        int misses = cache.getMissCount();
+
+        start = System.currentTimeMillis();
+        WIMApplication second = WIMApplication.getInstance(0, null, true);
+        long secondTime = System.currentTimeMillis() - start;
+        assertNotNull("Second open", second);
+        assertSame("Other cache", cache, second.getCache());
+        second.done();
+
+        assertEquals("Files read from the card", misses,
+                     cache.getMissCount());
+
+        info("First open " + firstTime + " ms, second open " +
+             secondTime + " ms");
+    }
+
+    /**
+     * Run tests.
+     */
+    public void runTests() {
+        try {
+            declare("testScript");
+            testScript();
+
+            declare("testOpen");
+            testOpen();
+        }
+        catch (Throwable t) {
+            fail("" + t);
+        }
+    }
+}
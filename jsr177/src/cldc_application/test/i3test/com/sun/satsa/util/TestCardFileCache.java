@@ -0,0 +1,138 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.satsa.util;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * This test case tests invalidation of the card file cache.
+ */
+public class TestCardFileCache extends TestCase {
+
+    /** Path of a file. */
+    static short[] pathOne = {0x3f00, 0x5015, 0x4401};
+    /** Path of another file. */
+    static short[] pathTwo = {0x3f00, 0x5015, 0x4402};
+
+    /**
+     * Tests that files are kept while the change counter does not change.
+     */
+    private void testGet() {
+        CardFileCache cache = CardFileCache.getInstance("0/testGet");
+        byte[] data = {1, 2, 3};
+
+        assertNull("Empty cache", cache.get(pathOne, 1));
+
+        cache.put(pathOne, 1, data);
+        byte[] result = cache.get(pathOne, 1);
+        assertTrue("Cached data", equal(data, result));
+        assertNull("Other file", cache.get(pathTwo, 1));
+
+        result[0] = 0;
+        data[1] = 0;
+        assertTrue("Cached copy", equal(new byte[] {1, 2, 3},
+                                        cache.get(pathOne, 1)));
+
+        assertSame("Same instance", cache,
+                   CardFileCache.getInstance("0/testGet"));
+    }
+
+    /**
+     * Tests that files are dropped when the change counter changes.
+     */
+    private void testInvalidate() {
+        CardFileCache cache = CardFileCache.getInstance("0/testInvalidate");
+
+        cache.put(pathOne, 1, new byte[] {1});
+        cache.put(pathTwo, 1, new byte[] {2});
+        assertNotNull("Cached file", cache.get(pathTwo, 1));
+
+        assertNull("Changed card", cache.get(pathOne, 2));
+        assertNull("Dropped file", cache.get(pathTwo, 2));
+
+        // a file read before the change must not be put into the cache
+        cache.put(pathOne, 3, new byte[] {3});
+        cache.put(pathTwo, 2, new byte[] {4});
+        assertNull("Stale file", cache.get(pathTwo, 3));
+        assertTrue("Current file", equal(new byte[] {3},
+                                         cache.get(pathOne, 3)));
+    }
+
+    /**
+     * Tests that the cache does not grow beyond its limit.
+     */
+    private void testLimit() {
+        CardFileCache cache = CardFileCache.getInstance("0/testLimit");
+
+        cache.put(pathOne, 1, new byte[CardFileCache.MAX_SIZE - 1]);
+        cache.put(pathTwo, 1, new byte[2]);
+        assertNotNull("First file", cache.get(pathOne, 1));
+        assertNull("File over limit", cache.get(pathTwo, 1));
+
+        cache.put(pathOne, 1, new byte[1]);
+        cache.put(pathTwo, 1, new byte[2]);
+        assertNotNull("Replaced file", cache.get(pathOne, 1));
+        assertNotNull("File within limit", cache.get(pathTwo, 1));
+    }
+
+    /**
+     * Run tests.
+     */
+    public void runTests() {
+        try {
+            declare("testGet");
+            testGet();
+
+            declare("testInvalidate");
+            testInvalidate();
+
+            declare("testLimit");
+            testLimit();
+        }
+        catch (Throwable t) {
+            fail("" + t);
+        }
+    }
+
+    /**
+     * Compare two byte arrays.
+     * @param one the first array
+     * @param two the second array
+     * @return true if arrays are equal, false otherwise
+     */
+    private boolean equal(byte[] one, byte[] two) {
+        if (one == null || two == null || one.length != two.length) {
+            return false;
+        }
+        for (int i = 0; i < one.length; i++) {
+            if (one[i] != two[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.satsa.util;
+
+import java.util.Hashtable;
+
+/**
+ * Keeps the contents of the files read from a card application, so that
+ * the application need not read them from the card every time it is
+ * opened. The contents are dropped as soon as the change counter of the
+ * card slot changes, that is when the card is removed or reset or an
+ * APDU that might modify the card has been sent to it.
+ */
+public class CardFileCache {
+
+    /** Maximum number of card applications cached at a time. */
+    static final int MAX_APPLICATIONS = 4;
+
+    /** Maximum number of bytes cached for one card application. */
+    static final int MAX_SIZE = 16384;
+
+    /** Caches by slot number and application serial number. */
+    private static Hashtable caches = new Hashtable();
+
+    /** File contents by file path. */
+    private Hashtable files = new Hashtable();
+
+    /** Change counter of the slot the cached contents are valid for. */
+    private int changeCount;
+
+    /** Number of bytes cached. */
+    private int size;
+
+    /** Number of times a file was not found in the cache. */
+    private int misses;
+
+    /**
+     * Returns the cache of a card application.
+     * @param apdu connection to the card application
+     * @param serialNumber serial number of the application
+     * @return the cache
+     */
+    public static CardFileCache getInstance(Connection apdu,
+                                            String serialNumber) {
+        return getInstance(apdu.getSlot() + "/" + serialNumber);
+    }
+
+    /**
+     * Returns the cache for a key.
+     * @param key slot number and application serial number
+     * @return the cache
+     */
+    static CardFileCache getInstance(String key) {
+
+        synchronized (caches) {
+            CardFileCache cache = (CardFileCache) caches.get(key);
+            if (cache == null) {
+                if (caches.size() >= MAX_APPLICATIONS) {
+                    caches.clear();
+                }
+                cache = new CardFileCache();
+                caches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the contents of a file.
+     * @param path file path
+     * @param count current change counter of the slot
+     * @return a copy of the file contents or null if they are not
+     * in the cache
+     */
+    public synchronized byte[] get(short[] path, int count) {
+
+        if (count != changeCount) {
+            clear(count);
+            misses++;
+            return null;
+        }
+
+        byte[] data = (byte[]) files.get(getKey(path));
+        if (data == null) {
+            misses++;
+            return null;
+        }
+
+        byte[] result = new byte[data.length];
+        System.arraycopy(data, 0, result, 0, data.length);
+        return result;
+    }
+
+    /**
+     * Puts the contents of a file into the cache.
+     * @param path file path
+     * @param count change counter of the slot taken before the file
+     * was read
+     * @param data file contents
+     */
+    public synchronized void put(short[] path, int count, byte[] data) {
+
+        if (count != changeCount) {
+            if (count - changeCount < 0) {
+                return;     // the file was read before the last change
+            }
+            clear(count);
+        }
+
+        if (size + data.length > MAX_SIZE) {
+            return;
+        }
+
+        byte[] copy = new byte[data.length];
+        System.arraycopy(data, 0, copy, 0, data.length);
+
+        byte[] old = (byte[]) files.put(getKey(path), copy);
+        size += data.length;
+        if (old != null) {
+            size -= old.length;
+        }
+    }
+
+    /**
+     * Returns the number of times a file was not found in the cache.
+     * @return the number of misses
+     */
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Drops the cached contents if the change counter has moved on.
+     * @param count current change counter of the slot
+     */
+    private void clear(int count) {
+        if (count - changeCount > 0) {
+            files.clear();
+            size = 0;
+            changeCount = count;
+        }
+    }
+
+    /**
+     * Converts file path into hashtable key.
+     * @param path file path
+     * @return the key
+     */
+    private static String getKey(short[] path) {
+
+        StringBuffer sb = new StringBuffer(path.length * 5);
+        for (int i = 0; i < path.length; i++) {
+            sb.append(Integer.toHexString(path[i] & 0xffff));
+            sb.append('/');
+        }
+        return sb.toString();
+    }
+}
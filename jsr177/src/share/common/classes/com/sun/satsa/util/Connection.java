@@ -143,12 +143,7 @@ public class Connection {
     public byte[] sendCommand(int INS, int P1P2, int LE, boolean check)
             throws IOException {
 
-        command[0] = (byte) (CLAbyte | h.channel);
-        command[1] = (byte) INS;
-        command[2] = (byte) (P1P2 >> 8);
-        command[3] = (byte) P1P2;
-        command[4] = (byte) (offset - 5);
-        putByte(LE);
+        completeCommand(INS, P1P2, LE);
 
         byte[] tmp = APDUManager.exchangeAPDU(h, command);
 
@@ -161,6 +156,80 @@ public class Connection {
         return tmp;
     }
 
+    /**
+     * Makes a copy of the command for a script.
+     * @param INS INS byte for this command.
+     * @param P1P2 P1 and P2 values for this command
+     * @param LE response expected length
+     * @return command APDU
+     */
+    public byte[] makeCommand(int INS, int P1P2, int LE) {
+
+        completeCommand(INS, P1P2, LE);
+
+        byte[] tmp = new byte[offset];
+        System.arraycopy(command, 0, tmp, 0, offset);
+        return tmp;
+    }
+
+    /**
+     * Sends the commands of a script one after another without letting
+     * other connections to the card in between.
+     * @param script commands made by <code>makeCommand</code>
+     * @return response APDUs
+     * @throws IOException if IO error occurs or SW of any response is
+     * not 0x9000
+     */
+    public byte[][] sendScript(byte[][] script) throws IOException {
+
+        byte[][] tmp = APDUManager.exchangeAPDUs(h, script);
+
+        for (int i = 0; i < tmp.length; i++) {
+            byte[] response = tmp[i];
+            if (response.length < 2) {
+                throw new IOException("Invalid response length");
+            }
+            lastSW = ((response[response.length - 2] & 0xff) << 8) |
+                      (response[response.length - 1] & 0xff);
+            if (lastSW != 0x9000) {
+                throw new IOException("SW = " + Integer.toHexString(lastSW));
+            }
+        }
+        return tmp;
+    }
+
+    /**
+     * Places the header and LE into command buffer.
+     * @param INS INS byte for this command.
+     * @param P1P2 P1 and P2 values for this command
+     * @param LE response expected length
+     */
+    private void completeCommand(int INS, int P1P2, int LE) {
+        command[0] = (byte) (CLAbyte | h.channel);
+        command[1] = (byte) INS;
+        command[2] = (byte) (P1P2 >> 8);
+        command[3] = (byte) P1P2;
+        command[4] = (byte) (offset - 5);
+        putByte(LE);
+    }
+
+    /**
+     * Returns the change counter of the card slot. Data read from the
+     * card stays valid as long as the counter does not change.
+     * @return the change counter
+     */
+    public int getChangeCount() {
+        return APDUManager.getChangeCount(h);
+    }
+
+    /**
+     * Returns the number of the card slot.
+     * @return slot number
+     */
+    public int getSlot() {
+        return h.getSlot();
+    }
+
     /**
      * This method returns the ATR received from the card that this
      * Handle object is used to communicate with.
@@ -58,6 +58,8 @@ abstract public class FileSystemAbstract {
     protected int currentFileSize;
     /** True if currently selected file is EF. */
     protected boolean isEFSelected;
+    /** Cache of the file contents or null if files are not cached. */
+    private CardFileCache cache;
 
     /**
      * Constructs new FileSystem object.
@@ -67,6 +69,15 @@ abstract public class FileSystemAbstract {
         this.apdu = apdu;
     }
 
+    /**
+     * Sets the cache for the contents of the files read by this
+     * object.
+     * @param cache the cache or null if files should not be cached
+     */
+    public void setCache(CardFileCache cache) {
+        this.cache = cache;
+    }
+
     /**
      * Sets the root directory for this file system.
      * @param root root directory path
@@ -221,6 +232,30 @@ abstract public class FileSystemAbstract {
         return data;
     }
 
+    /**
+     * Reads the EF. The file contents are taken from the cache if they
+     * are there, otherwise the file is selected and read.
+     * @param path file path
+     * @return array that contains EF body.
+     * @throws IOException if IO error occurs
+     */
+    public byte[] readFile(short[] path) throws IOException {
+
+        if (cache == null) {
+            select(path);
+            return readFile();
+        }
+
+        int count = apdu.getChangeCount();
+        byte[] data = cache.get(path, count);
+        if (data == null) {
+            select(path);
+            data = readFile();
+            cache.put(path, count, data);
+        }
+        return data;
+    }
+
 
     /**
      * Reads part of selected file.
@@ -243,6 +278,17 @@ abstract public class FileSystemAbstract {
      * @throws TLVException if parsing error occurs
      */
     public TLV loadObject(Location l) throws IOException, TLVException {
+
+        if (cache != null) {
+            byte[] data = cache.get(l.path, apdu.getChangeCount());
+            if (data != null && l.offset >= 0 && l.length >= 0 &&
+                    l.offset + l.length <= data.length) {
+                byte[] tmp = new byte[l.length];
+                System.arraycopy(data, l.offset, tmp, 0, l.length);
+                return new TLV(tmp, 0);
+            }
+        }
+
         select(l.path);
         byte[] tmp = readData(0, l.length, l.offset);
         return new TLV(tmp, 0);
@@ -137,6 +137,9 @@ class WIMApplication {
     /** File system object. */
     private WimFileSystem files;
 
+    /** Cache of the files of this WIM application. */
+    private CardFileCache cache;
+
     /** Identifier of WIM_GENERIC_RSA SE */
     private int WIM_GENERIC_RSA_ID;
 
@@ -227,6 +230,8 @@ class WIMApplication {
             if (! readTokenInfo(securityElementID)) {
                 return false;
             }
+            cache = CardFileCache.getInstance(apdu, serialNumber);
+            files.setCache(cache);
 
             readODF();
             loadPINs();
@@ -240,6 +245,24 @@ class WIMApplication {
         return false;
     }
 
+    /**
+     * Stops reading files from the cache before the card is modified.
+     * The change counter only sees the APDUs of this isolate, so files
+     * changed through another isolate may be out of date in the cache,
+     * and data written back must be read from the card.
+     */
+    private void readForUpdate() {
+        files.setCache(null);
+    }
+
+    /**
+     * Returns the cache of the files of this WIM application.
+     * @return the cache or null if the application is not initialised
+     */
+    CardFileCache getCache() {
+        return cache;
+    }
+
     /**
      * Safely closes the connection.
      */
@@ -443,8 +466,7 @@ class WIMApplication {
      * @throws IOException if I/O error occurs
      */
     private void parseDF(short[] path) throws TLVException, IOException {
-        files.select(path);
-        doParseDF(files.readFile(), path,
+        doParseDF(files.readFile(path), path,
                       loaderObjects, loaderLocations, loaderFreeBlocks);
     }
 
@@ -1259,6 +1281,8 @@ class WIMApplication {
      */
     public int addCredential(String label, TLV top, Vector keyIDs, Token token) {
 
+        readForUpdate();
+
         // load existing certificates
         try {
             loadPrivateKeys();
@@ -1461,10 +1485,8 @@ class WIMApplication {
             TLVException {
 
         // find the free space where certificates can be stored
-        files.select(UnusedSpacePath);
-
         Vector freeSpace = new Vector();
-        doParseDF(files.readFile(), UnusedSpacePath,
+        doParseDF(files.readFile(UnusedSpacePath), UnusedSpacePath,
                 freeSpace, null, null);
 
         Location[] blocks = new Location[freeSpace.size()];
@@ -1618,6 +1640,8 @@ class WIMApplication {
      */
     public int removeCredential(String label, TLV isn, Token token) {
 
+        readForUpdate();
+
         // load existing certificates (excluding trusted - can't delete
         // them)
         try {
@@ -1705,12 +1729,10 @@ class WIMApplication {
             TLVException {
 
         // Load and parse UnusedSpace.
-        files.select(UnusedSpacePath);
-
         Vector v_free = new Vector();     // records in UnusedSpace
         Vector v_location = new Vector(); // their offsets
         Vector v_hole = new Vector();     // empty space in the file
-        doParseDF(files.readFile(), UnusedSpacePath,
+        doParseDF(files.readFile(UnusedSpacePath), UnusedSpacePath,
                      v_free, v_location, v_hole);
 
         TLV[] free = new TLV[v_free.size()];
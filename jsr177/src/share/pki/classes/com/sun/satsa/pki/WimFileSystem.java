@@ -99,15 +99,30 @@ public class WimFileSystem extends FileSystemAbstract {
     public byte[] readData(int offset, int length, int fileOffset)
             throws IOException {
         byte[] data = new byte[length + offset];
-        while (length != 0) {
+        if (length == 0) {
+            return data;
+        }
+
+        // all the READ BINARY commands are sent as one script
+        byte[][] script = new byte[(length + CARD_BUFFER - 1) /
+                                   CARD_BUFFER][];
+        for (int i = 0; i < script.length; i++) {
             int len = length > CARD_BUFFER ? CARD_BUFFER : length;
-            byte[] result = apdu.resetCommand().
-                           sendCommand(INS_READ, fileOffset, len, true);
-           System.arraycopy(result, 0, data, offset, len);
-            offset += len;
+            script[i] = apdu.resetCommand().
+                             makeCommand(INS_READ, fileOffset, len);
             fileOffset += len;
             length -= len;
         }
+
+        byte[][] result = apdu.sendScript(script);
+        for (int i = 0; i < result.length; i++) {
+            int len = data.length - offset;
+            if (len > CARD_BUFFER) {
+                len = CARD_BUFFER;
+            }
+            System.arraycopy(result[i], 0, data, offset, len);
+            offset += len;
+        }
         return data;
     }
 
@@ -61,6 +61,15 @@ public class APDUManager {
 
     /** Objects used to synchronize access to CADs. */
     private static Object[] sync;
+
+    /**
+     * Number of the APDUs exchanged with each slot that might have
+     * changed the card contents, plus the number of card sessions.
+     */
+    private static int[] changes;
+
+    /** Card session the change counter of each slot was last read in. */
+    private static int[] changeSessions;
     
     /** Saved handle of open SAT connection. */
     private static Handle satHandle = null;
@@ -335,8 +344,11 @@ if (false) {
         int slots = SlotFactory.getCardSlotCount();
 
         sync = new Object[slots];
+        changes = new int[slots];
+        changeSessions = new int[slots];
         for (int i = 0; i < slots; i++) {
             sync[i] = new Object();
+            changeSessions[i] = -1;
         }
 
         cads = new Cad[slots];
@@ -378,6 +390,7 @@ if (false) {
 
             try {
 
+                countChange(h.slot, apduData);
                 byte[] response = h.cad.exchangeApdu(h, apduData);
 
                 if (!h.opened) {
@@ -392,6 +405,111 @@ if (false) {
             }
         }
     }
+
+    /**
+     * Exchanges a script of APDUs with the card. The APDUs are sent in
+     * order while the slot is held, so that no APDU of another
+     * connection comes in between, and the script stops at the first
+     * response with a status word other than 0x9000.
+     * @param h connection handle
+     * @param apdus APDUs data in byte array form
+     * @return response APDUs data in byte array form, the entries
+     * after the first failed APDU are <code>null</code>
+     * @exception IOException if there are any IO problems
+     */
+    public static byte[][] exchangeAPDUs(Handle h, byte[][] apdus)
+            throws IOException {
+
+        synchronized (sync[h.slot]) {
+
+            if (cads[h.slot] == null) {
+                cads[h.slot] = new Cad(h.slot);
+            }
+
+            if (h.getCardSessionId() == -1) {
+                throw new IOException("Card removed");
+            }
+            if (h.cardSessionId != h.getCardSessionId()) {
+                throw new InterruptedIOException();
+            }
+            if (!h.opened) {
+                throw new InterruptedIOException("Connection closed");
+            }
+
+            try {
+
+                for (int i = 0; i < apdus.length; i++) {
+                    countChange(h.slot, apdus[i]);
+                }
+                byte[][] responses = h.cad.exchangeApdus(h, apdus);
+
+                if (!h.opened) {
+                    throw new InterruptedIOException("Connection closed");
+                }
+                return responses;
+            } catch (InterruptedIOException ie) {
+                throw ie;
+            } catch (IOException e) {
+                freeResources(h.slot);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns the change counter of the slot. The counter is changed
+     * by every APDU sent to the slot that might modify the card
+     * contents, and when another card session starts, so data read
+     * from the card stays valid as long as the counter does not
+     * change.
+     * @param h connection handle
+     * @return the change counter
+     */
+    public static int getChangeCount(Handle h) {
+
+        synchronized (sync[h.slot]) {
+            int session = h.getCardSessionId();
+            if (session != changeSessions[h.slot]) {
+                changeSessions[h.slot] = session;
+                changes[h.slot]++;
+            }
+            return changes[h.slot];
+        }
+    }
+
+    /**
+     * Counts the APDU if it might modify the card contents. Only the
+     * interindustry commands that read data or check access are
+     * known not to.
+     * @param slot slot number
+     * @param apdu APDU data in byte array form
+     */
+    private static void countChange(int slot, byte[] apdu) {
+
+        if (apdu.length < 4) {
+            changes[slot]++;
+            return;
+        }
+        switch (apdu[1] & 0xFF) {
+        case 0x20:      // VERIFY
+        case 0x22:      // MANAGE SECURITY ENVIRONMENT
+        case 0x2A:      // PERFORM SECURITY OPERATION
+        case 0x70:      // MANAGE CHANNEL
+        case 0x84:      // GET CHALLENGE
+        case 0x88:      // INTERNAL AUTHENTICATE
+        case 0xA4:      // SELECT
+        case 0xB0:      // READ BINARY
+        case 0xB1:
+        case 0xB2:      // READ RECORD
+        case 0xB3:
+        case 0xC0:      // GET RESPONSE
+        case 0xCA:      // GET DATA
+        case 0xCB:
+            break;
+        default:
+            changes[slot]++;
+        }
+    }
     
     /**
      * Closes the connection.
@@ -119,11 +119,67 @@ class Cad {
      * communicating with the CAD.
      */
     byte[] exchangeApdu(Handle h, byte[] commandAPDU) throws IOException {
+        cardSlot.lockSlot();
+        byte[] result = transfer(h, commandAPDU);
+        cardSlot.unlockSlot();
+        return result;
+    }
+
+    /**
+     * Exchange a script of Apdus with a CAD. The slot is locked once
+     * for the whole script, and the script stops at the first response
+     * with a status word other than 0x9000.
+     * @param h Handle of the connection.
+     * @param commandAPDUs APDUs data in byte array form.
+     * @return response APDUs data in byte array form, <code>null</code>
+     * for the APDUs not sent.
+     * @exception InterruptedIOException if connection was closed in the
+     * other thread.
+     * @exception IOException if a communication error happens while
+     * communicating with the CAD.
+     */
+    byte[][] exchangeApdus(Handle h, byte[][] commandAPDUs)
+            throws IOException {
+        byte[][] results = new byte[commandAPDUs.length][];
+
+        cardSlot.lockSlot();
+        for (int i = 0; i < commandAPDUs.length; i++) {
+            byte[] result = transfer(h, commandAPDUs[i]);
+            results[i] = result;
+            if (result.length < 2 ||
+                    result[result.length - 2] != (byte) 0x90 ||
+                    result[result.length - 1] != 0) {
+                break;
+            }
+        }
+        cardSlot.unlockSlot();
+        return results;
+    }
+
+    /**
+     * Sends an Apdu to the card and receives the response, getting the
+     * rest of the response with GET RESPONSE commands when the card
+     * asks for it. The slot must be locked; it is unlocked if an
+     * exception is thrown.
+     * @param h Handle of the connection.
+     * @param commandAPDU APDU data in byte array form.
+     * @return response APDU data in byte array form.
+     * @exception InterruptedIOException if connection was closed in the
+     * other thread.
+     * @exception IOException if a communication error happens while
+     * communicating with the CAD.
+     */
+    private byte[] transfer(Handle h, byte[] commandAPDU) throws IOException {
         byte[] result;
         int result_length = 0;
         
         int Lc, Le;
         
+        if (commandAPDU.length < 4) {
+            cardSlot.unlockSlot();
+            throw new IllegalArgumentException("Malformed APDU");
+        }
+
         Lc = 0;
         Le = commandAPDU.length == 4 ? -1 : commandAPDU[4] & 0xFF; 
 
@@ -132,6 +188,7 @@ class Cad {
             Lc = Le;
 
             if (5 + Lc > commandAPDU.length) {
+                cardSlot.unlockSlot();
                 throw new IllegalArgumentException("Malformed APDU");
             }
 
@@ -150,7 +207,6 @@ class Cad {
         int channel = cla != 0 && (cla < 0x80 || cla > 0xA0) ?
                       0 : commandAPDU[0] & 3;
 
-        cardSlot.lockSlot();
         if (Lc == 0 && commandAPDU.length > 5) { // (case 4 & Lc==0) ==> case 2
             System.arraycopy(commandAPDU, 0, case2APDU, 0, 4);
             case2APDU[4] = commandAPDU[5];
@@ -227,7 +283,6 @@ class Cad {
                 Le = 256;
             }
         }
-        cardSlot.unlockSlot();
         result = new byte[result_length];
         System.arraycopy(output_buffer.data(), 0, result, 0, result_length);
         return result;
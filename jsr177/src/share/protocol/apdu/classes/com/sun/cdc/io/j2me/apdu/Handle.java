@@ -74,6 +74,14 @@ public class Handle {
         this.handleInstance = instanceNo++;
     }
 
+    /**
+     * Returns the number of the slot.
+     * @return slot number
+     */
+    public int getSlot() {
+        return slot;
+    }
+
     /**
      * Returns ATR of the selected application.
      * @return byte[] ATR.
@@ -394,6 +394,7 @@ public class APDUManager {
         Slot slot = h.cardSlot;
         try {
             synchronized (slot) {
+                countChange(slot, apduData);
                 byte[] respBuffer = slot.respBuffer;
                 int respLen = exchangeAPDU0(h, null, apduData, respBuffer);
                 retData = new byte[respLen];
@@ -409,6 +410,101 @@ public class APDUManager {
         }
     }
     
+    /**
+     * Exchanges a script of APDUs with the card. The APDUs are sent in
+     * order while the slot is held, so that no APDU of another
+     * connection comes in between, and the script stops at the first
+     * response with a status word other than 0x9000.
+     * @param h connection handle
+     * @param apdus APDUs data in byte array form
+     * @return response APDUs data in byte array form, the entries
+     * after the first failed APDU are <code>null</code>
+     * @exception IOException if there are any IO problems
+     */
+    public static byte[][] exchangeAPDUs(Handle h, byte[][] apdus)
+            throws IOException {
+        byte[][] retData = new byte[apdus.length][];
+        
+        Slot slot = h.cardSlot;
+        try {
+            synchronized (slot) {
+                byte[] respBuffer = slot.respBuffer;
+                for (int i = 0; i < apdus.length; i++) {
+                    countChange(slot, apdus[i]);
+                    int respLen = exchangeAPDU0(h, null, apdus[i],
+                                                respBuffer);
+                    retData[i] = new byte[respLen];
+                    System.arraycopy(respBuffer, 0, retData[i], 0, respLen);
+                    if (respLen < 2 ||
+                            respBuffer[respLen - 2] != (byte) 0x90 ||
+                            respBuffer[respLen - 1] != 0) {
+                        break;
+                    }
+                }
+            }
+            return retData;
+        } catch (IOException e) {
+            if (!slot.powered) {
+                // power up the slot after removal/insertion
+                isAlive(slot);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the change counter of the slot. The counter is changed
+     * by every APDU sent to the slot that might modify the card
+     * contents, and when another card session starts, so data read
+     * from the card stays valid as long as the counter does not
+     * change.
+     * @param h connection handle
+     * @return the change counter
+     */
+    public static int getChangeCount(Handle h) {
+        Slot slot = h.cardSlot;
+        synchronized (slot) {
+            if (slot.cardSessionId != slot.changeSessionId) {
+                slot.changeSessionId = slot.cardSessionId;
+                slot.changeCount++;
+            }
+            return slot.changeCount;
+        }
+    }
+
+    /**
+     * Counts the APDU if it might modify the card contents. Only the
+     * interindustry commands that read data or check access are
+     * known not to.
+     * @param slot the slot object
+     * @param apdu APDU data in byte array form
+     */
+    private static void countChange(Slot slot, byte[] apdu) {
+        if (apdu.length < 4) {
+            slot.changeCount++;
+            return;
+        }
+        switch (apdu[1] & 0xFF) {
+        case 0x20:      // VERIFY
+        case 0x22:      // MANAGE SECURITY ENVIRONMENT
+        case 0x2A:      // PERFORM SECURITY OPERATION
+        case 0x70:      // MANAGE CHANNEL
+        case 0x84:      // GET CHALLENGE
+        case 0x88:      // INTERNAL AUTHENTICATE
+        case 0xA4:      // SELECT
+        case 0xB0:      // READ BINARY
+        case 0xB1:
+        case 0xB2:      // READ RECORD
+        case 0xB3:
+        case 0xC0:      // GET RESPONSE
+        case 0xCA:      // GET DATA
+        case 0xCB:
+            break;
+        default:
+            slot.changeCount++;
+        }
+    }
+
     /**
      * This internal method takes in the command APDU in the form of 
      * a byte array and calls the native exchangeAPDU0 method 
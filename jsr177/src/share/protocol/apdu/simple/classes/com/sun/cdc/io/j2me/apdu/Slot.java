@@ -91,6 +91,15 @@ public class Slot {
      */
     int cardSessionId;
 
+    /**
+     * Number of the APDUs exchanged with the slot that might have
+     * changed the card contents, plus the number of card sessions.
+     */
+    int changeCount;
+
+    /** Card session the change counter was last read in. */
+    int changeSessionId;
+
     /**
      * Creates a new slot with specified parameters.
      * @param slot slot number
@@ -99,6 +108,7 @@ public class Slot {
 
         this.slot = slot;
         this.cardSessionId = 1;
+        this.changeSessionId = -1;
         this.locked = false;
         this.powered = false;
         this.SIMPresent = false;
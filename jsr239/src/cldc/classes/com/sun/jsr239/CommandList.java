@@ -0,0 +1,298 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.jsr239;
+
+import java.nio.Buffer;
+import java.util.Vector;
+
+/**
+ * Commands recorded by <code>GL10Impl.beginCommandList</code> and
+ * <code>endCommandList</code> so that they can be executed again by
+ * <code>callCommandList</code> without encoding them again.
+ *
+ * <p> The commands are kept as they were queued, in segments no longer
+ * than the command queue, together with the buffers their pointers
+ * refer to.  The bounds of the commands were checked with the client
+ * state of the context when they were recorded, so a list keeps the
+ * parts of the client state it used and can only be called while they
+ * are the same.  Calling a list leaves the client state as it was when
+ * the recording ended.
+ */
+public final class CommandList {
+
+    // Parts of the client state a list may depend on.
+
+    static final int POINTER          = 0;
+    static final int ENABLED          = POINTER + 7;
+    static final int ARRAY_BUFFER     = ENABLED + 7;
+    static final int ELEMENT_BUFFER   = ARRAY_BUFFER + 1;
+    static final int PACK_ALIGNMENT   = ELEMENT_BUFFER + 1;
+    static final int UNPACK_ALIGNMENT = PACK_ALIGNMENT + 1;
+    static final int FIELDS           = UNPACK_ALIGNMENT + 1;
+
+    // Use of a part of the client state.
+
+    static final byte NOT_USED  = 0;
+    static final byte INHERITED = 1;
+    static final byte SET       = 2;
+
+    /**
+     * Client state of a <code>GL10Impl</code> that is used to check
+     * the bounds of the commands.
+     */
+    static final class ClientState {
+        Buffer[] pointerBuffer = new Buffer[7];
+        boolean[] pointerEnabled = new boolean[7];
+        int[] pointerSize = new int[7];
+        int[] pointerType = new int[7];
+        int[] pointerStride = new int[7];
+        int[] pointerOffset = new int[7];
+        int[] pointerRemaining = new int[7];
+        int arrayBuffer;
+        int elementBuffer;
+        int packAlignment;
+        int unpackAlignment;
+
+        ClientState(GL10Impl gl) {
+            System.arraycopy(gl.pointerBuffer, 0, pointerBuffer, 0, 7);
+            System.arraycopy(gl.pointerEnabled, 0, pointerEnabled, 0, 7);
+            System.arraycopy(gl.pointerSize, 0, pointerSize, 0, 7);
+            System.arraycopy(gl.pointerType, 0, pointerType, 0, 7);
+            System.arraycopy(gl.pointerStride, 0, pointerStride, 0, 7);
+            System.arraycopy(gl.pointerOffset, 0, pointerOffset, 0, 7);
+            System.arraycopy(gl.pointerRemaining, 0,
+                             pointerRemaining, 0, 7);
+            arrayBuffer = gl.VBOArrayBufferBound;
+            elementBuffer = gl.VBOElementArrayBufferBound;
+            packAlignment = gl.pixelStorePackAlignment;
+            unpackAlignment = gl.pixelStoreUnpackAlignment;
+        }
+
+        /**
+         * Tells if a part of the client state is the same in the
+         * context.
+         */
+        boolean same(GL10Impl gl, int field) {
+            if (field < ENABLED) {
+                int i = field - POINTER;
+                return pointerBuffer[i] == gl.pointerBuffer[i] &&
+                    pointerSize[i] == gl.pointerSize[i] &&
+                    pointerType[i] == gl.pointerType[i] &&
+                    pointerStride[i] == gl.pointerStride[i] &&
+                    pointerOffset[i] == gl.pointerOffset[i] &&
+                    pointerRemaining[i] == gl.pointerRemaining[i];
+            } else if (field < ARRAY_BUFFER) {
+                int i = field - ENABLED;
+                return pointerEnabled[i] == gl.pointerEnabled[i];
+            }
+
+            switch (field) {
+            case ARRAY_BUFFER:
+                return arrayBuffer == gl.VBOArrayBufferBound;
+            case ELEMENT_BUFFER:
+                return elementBuffer == gl.VBOElementArrayBufferBound;
+            case PACK_ALIGNMENT:
+                return packAlignment == gl.pixelStorePackAlignment;
+            default:
+                return unpackAlignment == gl.pixelStoreUnpackAlignment;
+            }
+        }
+
+        /**
+         * Sets the client state of the context.
+         */
+        void restore(GL10Impl gl) {
+            for (int i = 0; i < 7; i++) {
+                BufferManager.releaseBuffer(gl.pointerBuffer[i]);
+                BufferManager.useBuffer(pointerBuffer[i]);
+            }
+
+            System.arraycopy(pointerBuffer, 0, gl.pointerBuffer, 0, 7);
+            System.arraycopy(pointerEnabled, 0, gl.pointerEnabled, 0, 7);
+            System.arraycopy(pointerSize, 0, gl.pointerSize, 0, 7);
+            System.arraycopy(pointerType, 0, gl.pointerType, 0, 7);
+            System.arraycopy(pointerStride, 0, gl.pointerStride, 0, 7);
+            System.arraycopy(pointerOffset, 0, gl.pointerOffset, 0, 7);
+            System.arraycopy(pointerRemaining, 0,
+                             gl.pointerRemaining, 0, 7);
+            gl.VBOArrayBufferBound = arrayBuffer;
+            gl.VBOElementArrayBufferBound = elementBuffer;
+            gl.pixelStorePackAlignment = packAlignment;
+            gl.pixelStoreUnpackAlignment = unpackAlignment;
+        }
+    }
+
+    /** Context the list was recorded on. */
+    GL10Impl gl;
+
+    /** Segments of commands, as int[]. */
+    Vector segments = new Vector();
+
+    /** Segment being recorded. */
+    int[] segment = new int[GLConfiguration.COMMAND_QUEUE_SIZE];
+
+    /** Length of the segment being recorded. */
+    int length;
+
+    /** Buffers the commands have pointers to. */
+    Vector buffers = new Vector();
+
+    /** Client state when the recording started. */
+    ClientState start;
+
+    /** Client state when the recording ended. */
+    ClientState end;
+
+    /** Use of each part of the client state, NOT_USED, INHERITED or SET. */
+    byte[] use = new byte[FIELDS];
+
+    /** Buffer object generation when the recording started. */
+    int bufferGeneration;
+
+    /** True if bounds were checked against buffer object data. */
+    boolean usesBuffers;
+
+    /** True if the list changes buffer objects. */
+    boolean changesBuffers;
+
+    /** True if the list made the shadow GL state unknown. */
+    boolean invalidatesState;
+
+    /** Changes of the shadow GL state, see GLState.endRecording. */
+    int[] stateChanges;
+
+    /**
+     * Starts a list on a context.
+     */
+    CommandList(GL10Impl gl) {
+        this.gl = gl;
+        start = new ClientState(gl);
+        bufferGeneration = gl.bufferGeneration;
+    }
+
+    /**
+     * Appends commands that have been executed.  Only whole commands
+     * are appended.
+     */
+    void append(int[] commands, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (length + count >= segment.length) {
+            closeSegment();
+        }
+        System.arraycopy(commands, 0, segment, length, count);
+        length += count;
+    }
+
+    /**
+     * Keeps a buffer a command has a pointer to.
+     */
+    void keep(Buffer buffer) {
+        buffers.addElement(buffer);
+    }
+
+    /**
+     * Records the first use of a part of the client state.
+     */
+    void used(int field) {
+        if (use[field] == NOT_USED) {
+            use[field] = start.same(gl, field) ? INHERITED : SET;
+        }
+    }
+
+    private void closeSegment() {
+        if (length > 0) {
+            int[] s = new int[length];
+            System.arraycopy(segment, 0, s, 0, length);
+            segments.addElement(s);
+            length = 0;
+        }
+    }
+
+    /**
+     * Ends the recording.
+     *
+     * @param state shadow GL state of the context
+     */
+    void end(GLState state) {
+        closeSegment();
+        segment = null;
+
+        // The parts the list has not used are only compared again if
+        // they are the same at the end, as the list may have set them
+        // and set them back.
+        for (int i = 0; i < FIELDS; i++) {
+            if (use[i] == NOT_USED && start.same(gl, i)) {
+                use[i] = INHERITED;
+            }
+        }
+
+        end = new ClientState(gl);
+        changesBuffers = bufferGeneration != gl.bufferGeneration;
+        invalidatesState = state.invalidated;
+        stateChanges = state.endRecording();
+    }
+
+    /**
+     * Tells if the client state the list inherited is the same in the
+     * context.
+     */
+    boolean matches() {
+        for (int i = 0; i < FIELDS; i++) {
+            if (use[i] == INHERITED && !start.same(gl, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells if the list cannot be called because of changes to the
+     * buffer objects.
+     */
+    boolean buffersChanged() {
+        return changesBuffers ||
+            (usesBuffers && bufferGeneration != gl.bufferGeneration);
+    }
+
+    /**
+     * Returns the number of segments of commands.
+     */
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of ints the commands take.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            size += ((int[])segments.elementAt(i)).length;
+        }
+        return size;
+    }
+}
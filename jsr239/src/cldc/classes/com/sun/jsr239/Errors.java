@@ -167,4 +167,24 @@ public final class Errors {
 
     public static final String NOT_ENOUGH_ROOM =
         "Not enough room for pixel data";
+
+    // Command lists
+
+    public static final String COMMAND_LIST_NULL =
+        "list == null";
+
+    public static final String COMMAND_LIST_RECORDING =
+        "A command list is already being recorded";
+
+    public static final String COMMAND_LIST_NOT_RECORDING =
+        "No command list is being recorded";
+
+    public static final String COMMAND_LIST_OTHER_CONTEXT =
+        "Command list was recorded on another context";
+
+    public static final String COMMAND_LIST_CLIENT_STATE =
+        "Client state used by the command list has changed";
+
+    public static final String COMMAND_LIST_BUFFERS =
+        "Buffer objects used by the command list have changed";
 }
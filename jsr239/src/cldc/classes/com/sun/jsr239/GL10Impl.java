@@ -572,6 +572,24 @@ public class GL10Impl implements GL10, GL10Ext {
 
     int commandsLeft;
 
+    // Client-side copy of the GL state that is set most often
+    GLState state = new GLState();
+
+    // Command list being recorded, or null
+    CommandList recording = null;
+
+    // Incremented whenever the buffer object tables change, so that
+    // command lists checked against them are not called afterwards
+    int bufferGeneration = 0;
+
+    // Values of the implementation constants that have been read.
+    // Entries have the form (Integer -> int[])
+    Hashtable constants = new Hashtable();
+
+    // Strings returned by glGetString for the names that cannot change.
+    // Entries have the form (Integer -> String)
+    Hashtable strings = new Hashtable();
+
     void throwIAE(String message) {
         throw new IllegalArgumentException(message);
     }
@@ -582,6 +600,9 @@ public class GL10Impl implements GL10, GL10Ext {
         }
         grabContext();
         _execute(queue, index);
+        if (recording != null) {
+            recording.append(queue, index);
+        }
         index = 0;
 
         // Ensure GL does not starve other threads
@@ -680,6 +701,9 @@ public class GL10Impl implements GL10, GL10Ext {
     }
 
     void q(Buffer buf) {
+        if (recording != null) {
+            recording.keep(buf);
+        }
         q(pointer(buf));
 
         if (debugQueue) {
@@ -893,6 +917,13 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glActiveTexture(int texture) {
         checkThread();
+        int unit = texture - GL_TEXTURE0;
+        if (unit >= 0 && unit < getConstant(GL_MAX_TEXTURE_UNITS)) {
+            if (!state.set(GLState.ACTIVE_TEXTURE, texture)) {
+                return;
+            }
+        }
+
         q(CMD_ACTIVE_TEXTURE, 1);
         q(texture);
     }
@@ -913,6 +944,11 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glBindTexture(int target, int texture) {
         checkThread();
+        if (target == GL_TEXTURE_2D &&
+            !state.setUnit(GLState.TEXTURE_BINDING_2D, texture)) {
+            return;
+        }
+
         q(CMD_BIND_TEXTURE, 2);
         q(target);
         q(texture);
@@ -920,6 +956,15 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glBlendFunc(int sfactor, int dfactor) {
         checkThread();
+        if (isBlendFactor(sfactor, true) && isBlendFactor(dfactor, false)) {
+            // Both slots are set even if the first is unchanged
+            boolean changed = state.set(GLState.BLEND_SRC, sfactor);
+            changed |= state.set(GLState.BLEND_DST, dfactor);
+            if (!changed) {
+                return;
+            }
+        }
+
         q(CMD_BLEND_FUNC, 2);
         q(sfactor);
         q(dfactor);
@@ -975,6 +1020,13 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glClientActiveTexture(int texture) {
         checkThread();
+        int unit = texture - GL_TEXTURE0;
+        if (unit >= 0 && unit < getConstant(GL_MAX_TEXTURE_UNITS)) {
+            if (!state.set(GLState.CLIENT_ACTIVE_TEXTURE, texture)) {
+                return;
+            }
+        }
+
         q(CMD_CLIENT_ACTIVE_TEXTURE, 1);
         q(texture);
     }
@@ -1048,6 +1100,7 @@ public class GL10Impl implements GL10, GL10Ext {
     public synchronized void glColorPointer(int size, int type, int stride,
                                             Buffer pointer) {
         checkThread();
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glColorPointer:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -1185,11 +1238,19 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glCullFace(int mode) {
         checkThread();
-        q(CMD_CULL_FACE, 1);
-        q(mode);
 
         // Workaround for Gerbera bug, CR 6401385
         cullFaceMode = mode;
+
+        if (!setState(GLState.CULL_FACE_MODE, mode,
+                      mode == GL_FRONT ||
+                      mode == GL_BACK ||
+                      mode == GL_FRONT_AND_BACK)) {
+            return;
+        }
+
+        q(CMD_CULL_FACE, 1);
+        q(mode);
     }
 
     public synchronized void glDeleteTextures(int n,
@@ -1210,6 +1271,9 @@ public class GL10Impl implements GL10, GL10Ext {
             return;
         }
 
+        // Units the deleted textures are bound to revert to 0
+        state.forget(GLState.TEXTURE_BINDING_2D, GLState.TEXTURE_UNITS);
+
         // Queue pointer
         q(CMD_DELETE_TEXTURESB, 2);
         q(n);
@@ -1219,6 +1283,15 @@ public class GL10Impl implements GL10, GL10Ext {
     }
 
     void IglDeleteTextures(int n, int[] textures, int offset) {
+        // Units the deleted textures are bound to revert to 0
+        for (int i = 0; i < n; i++) {
+            if (textures[i + offset] != 0) {
+                state.replace(GLState.TEXTURE_BINDING_2D,
+                              GLState.TEXTURE_UNITS,
+                              textures[i + offset], GLState.UNKNOWN);
+            }
+        }
+
         q(CMD_DELETE_TEXTURES, n + 1);
         q(n);
         for (int i = 0; i < n; i++) {
@@ -1228,12 +1301,21 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glDepthFunc(int func) {
         checkThread();
+        if (!setState(GLState.DEPTH_FUNC, func,
+                      func >= GL_NEVER && func <= GL_ALWAYS)) {
+            return;
+        }
+
         q(CMD_DEPTH_FUNC, 1);
         q(func);
     }
 
     public synchronized void glDepthMask(boolean flag) {
         checkThread();
+        if (!state.set(GLState.DEPTH_MASK, flag ? 1 : 0)) {
+            return;
+        }
+
         q(CMD_DEPTH_MASK, 1);
         q(flag ? 1 : 0);
     }
@@ -1254,6 +1336,10 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glDisable(int cap) {
         checkThread();
+        if (!state.setEnabled(cap, false)) {
+            return;
+        }
+
         q(CMD_DISABLE, 1);
         q(cap);
     }
@@ -1291,7 +1377,9 @@ public class GL10Impl implements GL10, GL10Ext {
     
     void checkBounds(int last) {
         for (int ptr = VERTEX_POINTER; ptr <= WEIGHT_POINTER; ptr++) {
+            clientStateUsed(CommandList.ENABLED + ptr);
             if (pointerEnabled[ptr]) {
+                clientStateUsed(CommandList.POINTER + ptr);
                 final int remaining = (pointerBuffer[ptr] != null)
                         ? pointerRemaining[ptr]
                         : getBufferSize(GL11.GL_ARRAY_BUFFER);
@@ -1336,9 +1424,12 @@ public class GL10Impl implements GL10, GL10Ext {
             
         for (int ptr = VERTEX_POINTER; ptr <= WEIGHT_POINTER; ptr++) {
 //             System.out.println("ptr = " + ptr);
+            clientStateUsed(CommandList.ENABLED + ptr);
             if (pointerEnabled[ptr]) {
                 int size, type, stride, offset, remaining;
 
+                clientStateUsed(CommandList.POINTER + ptr);
+
                 if (pointerBuffer[ptr] != null) {
                     remaining = pointerRemaining[ptr];
                 } else {
@@ -1379,6 +1470,7 @@ public class GL10Impl implements GL10, GL10Ext {
     public synchronized void glDrawElements(int mode, int count, int type,
                                             Buffer indices) {
         checkThread();
+        clientStateUsed(CommandList.ELEMENT_BUFFER);
         if (VBOElementArrayBufferBound != 0) {
             throw new IllegalStateException("glDrawElements:" +
                                         Errors.VBO_ELEMENT_ARRAY_BUFFER_BOUND);
@@ -1387,8 +1479,9 @@ public class GL10Impl implements GL10, GL10Ext {
             throwIAE(Errors.GL_INDICES_NULL);
         }
 
+        // A command list keeps its own copy of the checked indices
         boolean isReadOnly = false;
-        if (!isDirect(indices)) {
+        if (!isDirect(indices) || recording != null) {
             indices = createDirectCopy(indices);
             isReadOnly = true;
         }
@@ -1453,6 +1546,10 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glEnable(int cap) {
         checkThread();
+        if (!state.setEnabled(cap, true)) {
+            return;
+        }
+
         q(CMD_ENABLE, 1);
         q(cap);
     }
@@ -1589,6 +1686,11 @@ public class GL10Impl implements GL10, GL10Ext {
   
     public synchronized void glFrontFace(int mode) {
         checkThread();
+        if (!setState(GLState.FRONT_FACE, mode,
+                      mode == GL_CW || mode == GL_CCW)) {
+            return;
+        }
+
         q(CMD_FRONT_FACE, 1);
         q(mode);
     }
@@ -1689,8 +1791,15 @@ public class GL10Impl implements GL10, GL10Ext {
         int length = GLConfiguration.glGetNumParams(pname);
         checkLength(params, length, offset);
 
+        int[] known = getKnownIntegers(pname);
+        if (known != null) {
+            System.arraycopy(known, 0, params, offset, length);
+            return;
+        }
+
         qflush();
         IglGetIntegerv(pname, params, offset, length);
+        learnInteger(pname, params[offset]);
 
         // Workaround for Gerbera bug, CR 6401385
         if (pname == GL_CULL_FACE) {
@@ -1703,12 +1812,26 @@ public class GL10Impl implements GL10, GL10Ext {
         int length = GLConfiguration.glGetNumParams(pname);
         checkLength(params, length);
 
+        int[] known = getKnownIntegers(pname);
+        if (known != null) {
+            if (!params.isDirect()) {
+                System.arraycopy(known, 0,
+                                 params.array(), offset(params), length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    params.put(params.position() + i, known[i]);
+                }
+            }
+            return;
+        }
+
         qflush();
         if (!params.isDirect()) {
             int[] array = params.array();
             int offset = offset(params);
 
             IglGetIntegerv(pname, array, offset, length);
+            learnInteger(pname, array[offset]);
 
             // Workaround for Gerbera bug, CR 6401385
             if (pname == GL_CULL_FACE) {
@@ -1716,6 +1839,7 @@ public class GL10Impl implements GL10, GL10Ext {
             }
         } else {
             IglGetIntegerv(pname, null, pointer(params), length);
+            learnInteger(pname, params.get(params.position()));
 
             // Workaround for Gerbera bug, CR 6401385
             if (pname == GL_CULL_FACE) {
@@ -1729,21 +1853,157 @@ public class GL10Impl implements GL10, GL10Ext {
         _glGetIntegerv(pname, params, offset, length);
     }
 
+    // Implementation constants that glGetIntegerv reads only once.
+    // The *_BITS values are not included as they change with the
+    // bound framebuffer.
+    static final int[] constantNames = {
+        GL_ALIASED_LINE_WIDTH_RANGE,
+        GL_ALIASED_POINT_SIZE_RANGE,
+        GL_COMPRESSED_TEXTURE_FORMATS,
+        GL_MAX_ELEMENTS_INDICES,
+        GL_MAX_ELEMENTS_VERTICES,
+        GL_MAX_LIGHTS,
+        GL_MAX_MODELVIEW_STACK_DEPTH,
+        GL_MAX_PROJECTION_STACK_DEPTH,
+        GL_MAX_TEXTURE_SIZE,
+        GL_MAX_TEXTURE_STACK_DEPTH,
+        GL_MAX_TEXTURE_UNITS,
+        GL_MAX_VIEWPORT_DIMS,
+        GL_NUM_COMPRESSED_TEXTURE_FORMATS,
+        GL_SMOOTH_LINE_WIDTH_RANGE,
+        GL_SMOOTH_POINT_SIZE_RANGE,
+        GL_SUBPIXEL_BITS
+    };
+
+    // Returns the values of an implementation constant, reading them
+    // from the GL the first time
+    int[] getConstants(int pname) {
+        Integer key = new Integer(pname);
+        int[] values = (int[])constants.get(key);
+        if (values == null) {
+            values = new int[GLConfiguration.glGetNumParams(pname)];
+
+            qflush();
+            IglGetIntegerv(pname, values, 0, values.length);
+            constants.put(key, values);
+        }
+        return values;
+    }
+
+    int getConstant(int pname) {
+        return getConstants(pname)[0];
+    }
+
+    // Returns the values glGetIntegerv would return that are known
+    // without flushing the queue, or null
+    int[] getKnownIntegers(int pname) {
+        for (int i = 0; i < constantNames.length; i++) {
+            if (constantNames[i] == pname) {
+                return getConstants(pname);
+            }
+        }
+
+        // The state parameters are only defined by OpenGL ES 1.1
+        if (!GLConfiguration.supportsGL11) {
+            return null;
+        }
+
+        int value;
+        if (pname == GL11.GL_TEXTURE_BINDING_2D) {
+            value = state.getUnit(GLState.TEXTURE_BINDING_2D);
+        } else {
+            int slot = GLState.pnameSlot(pname);
+            if (slot == -1) {
+                return null;
+            }
+            value = state.get(slot);
+        }
+
+        if (value == GLState.UNKNOWN) {
+            return null;
+        }
+        return new int[] { value };
+    }
+
+    // Records a state value glGetIntegerv has read from the GL
+    void learnInteger(int pname, int value) {
+        if (!GLConfiguration.supportsGL11) {
+            return;
+        }
+
+        if (pname == GL11.GL_TEXTURE_BINDING_2D) {
+            state.learnUnit(GLState.TEXTURE_BINDING_2D, value);
+        } else {
+            int slot = GLState.pnameSlot(pname);
+            if (slot != -1) {
+                state.learn(slot, value);
+            }
+        }
+    }
+
+    // Records a change of the state if the value is valid, otherwise
+    // the GL may or may not change the state.  Returns true if the
+    // command must be queued.
+    boolean setState(int slot, int value, boolean valid) {
+        if (valid) {
+            return state.set(slot, value);
+        }
+        state.forget(slot);
+        return true;
+    }
+
+    boolean isBlendFactor(int factor, boolean source) {
+        switch (factor) {
+        case GL_ZERO:
+        case GL_ONE:
+        case GL_SRC_ALPHA:
+        case GL_ONE_MINUS_SRC_ALPHA:
+        case GL_DST_ALPHA:
+        case GL_ONE_MINUS_DST_ALPHA:
+            return true;
+        case GL_DST_COLOR:
+        case GL_ONE_MINUS_DST_COLOR:
+        case GL_SRC_ALPHA_SATURATE:
+            return source;
+        case GL_SRC_COLOR:
+        case GL_ONE_MINUS_SRC_COLOR:
+            return !source;
+        default:
+            return false;
+        }
+    }
+
     public synchronized int glGetError() {
         checkThread();
         qflush();
         
         grabContext();
         int error = _glGetError();
+
+        // The state is undefined after running out of memory
+        if (error == GL_OUT_OF_MEMORY) {
+            state.invalidate();
+        }
         return error;
     }
 
     public synchronized String glGetString(int name) {
         checkThread();
+        Integer key = new Integer(name);
+        String s = (String)strings.get(key);
+        if (s != null) {
+            return s;
+        }
+
         qflush();
 
         grabContext();
-        String s = _glGetString(name);
+        s = _glGetString(name);
+
+        if (s != null && (name == GL_VENDOR || name == GL_RENDERER ||
+                          name == GL_VERSION || name == GL_EXTENSIONS)) {
+            strings.put(key, s);
+        }
         return s;
     }
 
@@ -1758,10 +2018,16 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized boolean glIsEnabled(int cap) {
         checkThread();
+        int known = state.getEnabled(cap);
+        if (known != GLState.UNKNOWN) {
+            return known == 1;
+        }
+
         qflush();
 
         grabContext();
         boolean retval = GL_TRUE == _glIsEnabled(cap);
+        state.learnEnabled(cap, retval);
         return retval;
     }
 
@@ -2150,6 +2416,13 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glMatrixMode(int mode) {
         checkThread();
+        if (!setState(GLState.MATRIX_MODE, mode,
+                      mode == GL_MODELVIEW ||
+                      mode == GL_PROJECTION ||
+                      mode == GL_TEXTURE)) {
+            return;
+        }
+
         q(CMD_MATRIX_MODE, 1);
         q(mode);
     }
@@ -2255,6 +2528,7 @@ public class GL10Impl implements GL10, GL10Ext {
     public synchronized void glNormalPointer(int type, int stride,
                                              Buffer pointer) {
         checkThread();
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glNormalPointer:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -2566,6 +2840,11 @@ public class GL10Impl implements GL10, GL10Ext {
 
     public synchronized void glShadeModel(int mode) {
         checkThread();
+        if (!setState(GLState.SHADE_MODEL, mode,
+                      mode == GL_FLAT || mode == GL_SMOOTH)) {
+            return;
+        }
+
         q(CMD_SHADE_MODEL, 1);
         q(mode);
     }
@@ -2595,6 +2874,7 @@ public class GL10Impl implements GL10, GL10Ext {
     public synchronized void glTexCoordPointer(int size, int type, int stride,
                                                Buffer pointer) {
         checkThread();
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glTexCoordPointer:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -2787,6 +3067,7 @@ public class GL10Impl implements GL10, GL10Ext {
         }
 
         int remaining = pixels.remaining()*bufferTypeSize(pixels);
+        clientStateUsed(CommandList.UNPACK_ALIGNMENT);
         int needed = rasterBytes(width, height, format, type,
                                  pixelStoreUnpackAlignment);
         if (needed > remaining) {
@@ -2974,6 +3255,7 @@ public class GL10Impl implements GL10, GL10Ext {
         }
 
         int remaining = pixels.remaining()*bufferTypeSize(pixels);
+        clientStateUsed(CommandList.UNPACK_ALIGNMENT);
         int needed = rasterBytes(width, height, format, type,
                                  pixelStoreUnpackAlignment);
         if (needed > remaining) {
@@ -3029,6 +3311,7 @@ public class GL10Impl implements GL10, GL10Ext {
     public synchronized void glVertexPointer(int size, int type, int stride,
                                              Buffer pointer) {
         checkThread();
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glVertexPointer:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -3133,6 +3416,7 @@ public class GL10Impl implements GL10, GL10Ext {
             VBOBuffersTable.put(key, new Object());
             VBOBufferSizeTable.put(key, new Integer(0));
             VBOBufferIndicesTable.put(key, new byte[0]);
+            ++bufferGeneration;
         }
     }
 
@@ -3146,6 +3430,7 @@ public class GL10Impl implements GL10, GL10Ext {
             VBOBuffersTable.remove(key);
             VBOBufferSizeTable.remove(key);
             VBOBufferIndicesTable.remove(key);
+            ++bufferGeneration;
         }
     }
 
@@ -3156,9 +3441,15 @@ public class GL10Impl implements GL10, GL10Ext {
     }
 
     private Integer key(int target) {
+        if (recording != null) {
+            recording.usesBuffers = true;
+        }
+
         if (target == GL11.GL_ARRAY_BUFFER) {
+            clientStateUsed(CommandList.ARRAY_BUFFER);
             return new Integer(VBOArrayBufferBound);
         } else if (target == GL11.GL_ELEMENT_ARRAY_BUFFER) {
+            clientStateUsed(CommandList.ELEMENT_BUFFER);
             return new Integer(VBOElementArrayBufferBound);
         } else {
             throw new IllegalArgumentException("target = " + target);
@@ -3182,6 +3473,7 @@ public class GL10Impl implements GL10, GL10Ext {
             }            
         }
         VBOBufferSizeTable.put(key, new Integer(size));
+        ++bufferGeneration;
     }
 
     int getBufferSize(int target) {
@@ -3229,10 +3521,147 @@ public class GL10Impl implements GL10, GL10Ext {
         BufferManager.getBytes(data, offset, array, offset, size);
         // (Re-)store the index data
         VBOBufferIndicesTable.put(key, array);
+        ++bufferGeneration;
     }
 
 // End VBO Support
 
+    // Command lists
+
+    // Tells the command list being recorded that a part of the client
+    // state is used to check the bounds of a command
+    void clientStateUsed(int field) {
+        if (recording != null) {
+            recording.used(field);
+        }
+    }
+
+    /**
+     * Starts recording the GL commands that follow into a command
+     * list.  The commands are executed as they are recorded.
+     *
+     * <p> Commands that set the state to a value it already has are
+     * not dropped while a list is recorded, as the list may be called
+     * with any state.
+     *
+     * <p> Command lists are not part of the JSR 239 API and, as
+     * <code>com.sun.jsr239</code> is hidden, are only available to
+     * system code.
+     *
+     * @exception IllegalStateException if a command list is already
+     * being recorded.
+     */
+    public synchronized void beginCommandList() {
+        checkThread();
+        if (recording != null) {
+            throw new IllegalStateException(Errors.COMMAND_LIST_RECORDING);
+        }
+
+        qflush();
+        recording = new CommandList(this);
+        state.beginRecording();
+    }
+
+    /**
+     * Ends the recording started by <code>beginCommandList</code>.
+     *
+     * @return the command list
+     *
+     * @exception IllegalStateException if no command list is being
+     * recorded.
+     */
+    public synchronized CommandList endCommandList() {
+        checkThread();
+        if (recording == null) {
+            throw new IllegalStateException(
+                                       Errors.COMMAND_LIST_NOT_RECORDING);
+        }
+
+        qflush();
+        CommandList list = recording;
+        recording = null;
+        list.end(state);
+        return list;
+    }
+
+    /**
+     * Executes the commands of a command list again.  The client state
+     * is left as it was when the list was recorded.
+     *
+     * @param list the command list
+     *
+     * @exception IllegalArgumentException if <code>list</code> is
+     * <code>null</code> or was recorded on another context.
+     * @exception IllegalStateException if the list is being recorded,
+     * if client state the list used to check the bounds of its
+     * commands has changed, or if buffer objects the list used have
+     * changed or the list changed them.
+     */
+    public synchronized void callCommandList(CommandList list) {
+        checkThread();
+        if (list == null) {
+            throwIAE(Errors.COMMAND_LIST_NULL);
+        }
+        if (list.gl != this) {
+            throwIAE(Errors.COMMAND_LIST_OTHER_CONTEXT);
+        }
+        if (list.end == null) {
+            throw new IllegalStateException(Errors.COMMAND_LIST_RECORDING);
+        }
+        if (!list.matches()) {
+            throw new IllegalStateException(Errors.COMMAND_LIST_CLIENT_STATE);
+        }
+        if (list.buffersChanged()) {
+            throw new IllegalStateException(Errors.COMMAND_LIST_BUFFERS);
+        }
+
+        qflush();
+
+        if (recording != null) {
+            // The list becomes part of the one being recorded
+            for (int i = 0; i < CommandList.FIELDS; i++) {
+                if (list.use[i] == CommandList.INHERITED) {
+                    recording.used(i);
+                }
+            }
+            if (list.usesBuffers) {
+                recording.usesBuffers = true;
+            }
+            for (int i = 0; i < list.buffers.size(); i++) {
+                recording.keep((Buffer)list.buffers.elementAt(i));
+            }
+        }
+
+        grabContext();
+        for (int i = 0; i < list.segments.size(); i++) {
+            int[] segment = (int[])list.segments.elementAt(i);
+            _execute(segment, segment.length);
+            if (recording != null) {
+                recording.append(segment, segment.length);
+            }
+        }
+
+        list.end.restore(this);
+        state.apply(list.invalidatesState, list.stateChanges);
+
+        int mode = state.get(GLState.CULL_FACE_MODE);
+        if (mode != GLState.UNKNOWN) {
+            cullFaceMode = mode;
+        }
+
+        // Ensure GL does not starve other threads
+        Thread.yield();
+    }
+
+    /**
+     * Marks the client-side copy of the GL state as not known, for a
+     * native context that may have been used before this object was
+     * created.
+     */
+    public synchronized void invalidateState() {
+        state.invalidate();
+    }
+
     public synchronized void dispose() {
         glFinish();
         this.context = null;
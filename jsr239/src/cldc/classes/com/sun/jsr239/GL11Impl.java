@@ -389,6 +389,7 @@ public class GL11Impl extends GL10Impl
     public synchronized void glPointSizePointerOES(int type, int stride,
                                                    Buffer pointer) {
         checkThread();
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glPointSizePointerOES:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -1313,6 +1314,7 @@ public class GL11Impl extends GL10Impl
             throw new UnsupportedOperationException(
                                          Errors.GL_MATRIX_PALETTE_UNSUPPORTED);
         }
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glMatrixIndexPointerOES:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -1393,6 +1395,7 @@ public class GL11Impl extends GL10Impl
             throw new UnsupportedOperationException(
                                          Errors.GL_MATRIX_PALETTE_UNSUPPORTED);
         }
+        clientStateUsed(CommandList.ARRAY_BUFFER);
         if (VBOArrayBufferBound != 0) {
             throw new IllegalStateException("glWeightPointerOES:" +
                                             Errors.VBO_ARRAY_BUFFER_BOUND);
@@ -1756,6 +1759,9 @@ public class GL11Impl extends GL10Impl
                                     Errors.GL_BLEND_FUNC_SEPARATE_UNSUPPORTED);
         }
 
+        state.forget(GLState.BLEND_SRC);
+        state.forget(GLState.BLEND_DST);
+
         q(CMD_BLEND_FUNC_SEPARATE, 4);
         q(srcRGB);
         q(dstRGB);
@@ -0,0 +1,395 @@
+/*
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.jsr239;
+
+import javax.microedition.khronos.opengles.*;
+
+/**
+ * Client-side copy of the GL state that is changed most often with
+ * values the application has already set.  A GL command that would set
+ * a value the state already has is not queued, and the values known
+ * here are returned by <code>glGet*</code> and <code>glIsEnabled</code>
+ * without flushing the command queue.
+ *
+ * <p> The state starts with the GL defaults, as a context is fresh
+ * when it is created by <code>eglCreateContext</code>.  The state of a
+ * native context that was wrapped again is invalidated, since it may
+ * have been used already.  Only the values that are
+ * valid for a command are recorded, since the GL leaves its state
+ * unchanged on an error.  A value that cannot be followed is marked
+ * <code>UNKNOWN</code> until it is set or queried again.
+ *
+ * <p> While a command list is being recorded no command is dropped, as
+ * the list may be called with any state, and the slots set by the list
+ * are remembered so that they can be applied after the list is called.
+ */
+final class GLState {
+
+    /** Value of a slot that is not known. */
+    static final int UNKNOWN = 0x80000000;
+
+    /** Number of texture units the state is kept for. */
+    static final int TEXTURE_UNITS = 8;
+
+    // Slots of the state.
+
+    static final int ACTIVE_TEXTURE        = 0;
+    static final int CLIENT_ACTIVE_TEXTURE = 1;
+    static final int MATRIX_MODE           = 2;
+    static final int DEPTH_FUNC            = 3;
+    static final int DEPTH_MASK            = 4;
+    static final int SHADE_MODEL           = 5;
+    static final int FRONT_FACE            = 6;
+    static final int BLEND_SRC             = 7;
+    static final int BLEND_DST             = 8;
+    static final int CULL_FACE_MODE        = 9;
+
+    // GL_TEXTURE_2D enable and binding, one slot per texture unit.
+
+    static final int TEXTURE_2D            = 10;
+    static final int TEXTURE_BINDING_2D    = TEXTURE_2D + TEXTURE_UNITS;
+
+    // Enables of the capabilities in caps, in that order.
+
+    static final int CAPS                  = TEXTURE_BINDING_2D +
+                                             TEXTURE_UNITS;
+
+    /** Capabilities other than GL_TEXTURE_2D that OpenGL ES 1.0 has. */
+    static final int[] caps = {
+        GL10.GL_ALPHA_TEST,
+        GL10.GL_BLEND,
+        GL10.GL_COLOR_LOGIC_OP,
+        GL10.GL_COLOR_MATERIAL,
+        GL10.GL_CULL_FACE,
+        GL10.GL_DEPTH_TEST,
+        GL10.GL_DITHER,
+        GL10.GL_FOG,
+        GL10.GL_LIGHTING,
+        GL10.GL_LIGHT0,
+        GL10.GL_LIGHT1,
+        GL10.GL_LIGHT2,
+        GL10.GL_LIGHT3,
+        GL10.GL_LIGHT4,
+        GL10.GL_LIGHT5,
+        GL10.GL_LIGHT6,
+        GL10.GL_LIGHT7,
+        GL10.GL_LINE_SMOOTH,
+        GL10.GL_MULTISAMPLE,
+        GL10.GL_NORMALIZE,
+        GL10.GL_POINT_SMOOTH,
+        GL10.GL_POLYGON_OFFSET_FILL,
+        GL10.GL_RESCALE_NORMAL,
+        GL10.GL_SAMPLE_ALPHA_TO_COVERAGE,
+        GL10.GL_SAMPLE_ALPHA_TO_ONE,
+        GL10.GL_SAMPLE_COVERAGE,
+        GL10.GL_SCISSOR_TEST,
+        GL10.GL_STENCIL_TEST
+    };
+
+    /** Number of slots. */
+    static final int SIZE = CAPS + caps.length;
+
+    /** Values of the slots. */
+    int[] values = new int[SIZE];
+
+    /** True while a command list is being recorded. */
+    boolean recording;
+
+    /** Slots set since the recording started. */
+    boolean[] touched;
+
+    /** True if the state was invalidated since the recording started. */
+    boolean invalidated;
+
+    GLState() {
+        values[ACTIVE_TEXTURE] = GL10.GL_TEXTURE0;
+        values[CLIENT_ACTIVE_TEXTURE] = GL10.GL_TEXTURE0;
+        values[MATRIX_MODE] = GL10.GL_MODELVIEW;
+        values[DEPTH_FUNC] = GL10.GL_LESS;
+        values[DEPTH_MASK] = 1;
+        values[SHADE_MODEL] = GL10.GL_SMOOTH;
+        values[FRONT_FACE] = GL10.GL_CCW;
+        values[BLEND_SRC] = GL10.GL_ONE;
+        values[BLEND_DST] = GL10.GL_ZERO;
+        values[CULL_FACE_MODE] = GL10.GL_BACK;
+
+        // All the other slots are 0: disabled, or texture 0 bound
+        values[capSlot(GL10.GL_DITHER)] = 1;
+        values[capSlot(GL10.GL_MULTISAMPLE)] = 1;
+    }
+
+    /**
+     * Returns the slot of a capability other than GL_TEXTURE_2D, or -1
+     * if the capability is not kept.
+     */
+    static int capSlot(int cap) {
+        for (int i = 0; i < caps.length; i++) {
+            if (caps[i] == cap) {
+                return CAPS + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot <code>glGetIntegerv</code> reads for a
+     * parameter, or -1 if the parameter is not kept.  The slots kept
+     * per texture unit are not returned.
+     */
+    static int pnameSlot(int pname) {
+        switch (pname) {
+        case GL11.GL_ACTIVE_TEXTURE:
+            return ACTIVE_TEXTURE;
+        case GL11.GL_CLIENT_ACTIVE_TEXTURE:
+            return CLIENT_ACTIVE_TEXTURE;
+        case GL11.GL_MATRIX_MODE:
+            return MATRIX_MODE;
+        case GL11.GL_DEPTH_FUNC:
+            return DEPTH_FUNC;
+        case GL11.GL_DEPTH_WRITEMASK:
+            return DEPTH_MASK;
+        case GL11.GL_SHADE_MODEL:
+            return SHADE_MODEL;
+        case GL11.GL_FRONT_FACE:
+            return FRONT_FACE;
+        case GL11.GL_BLEND_SRC:
+            return BLEND_SRC;
+        case GL11.GL_BLEND_DST:
+            return BLEND_DST;
+        case GL11.GL_CULL_FACE_MODE:
+            return CULL_FACE_MODE;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the texture unit that is active, -1 if it is not known,
+     * or <code>TEXTURE_UNITS</code> if the state is not kept for it.
+     */
+    int textureUnit() {
+        int active = values[ACTIVE_TEXTURE];
+        if (active == UNKNOWN) {
+            return -1;
+        }
+        int unit = active - GL10.GL_TEXTURE0;
+        return (unit >= 0 && unit < TEXTURE_UNITS) ? unit : TEXTURE_UNITS;
+    }
+
+    int get(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Returns the value of a slot kept per texture unit for the
+     * active unit.
+     */
+    int getUnit(int slot) {
+        int unit = textureUnit();
+        if (unit == -1 || unit == TEXTURE_UNITS) {
+            return UNKNOWN;
+        }
+        return values[slot + unit];
+    }
+
+    /**
+     * Returns 1 if a capability is enabled, 0 if it is disabled, or
+     * <code>UNKNOWN</code>.
+     */
+    int getEnabled(int cap) {
+        if (cap == GL10.GL_TEXTURE_2D) {
+            return getUnit(TEXTURE_2D);
+        }
+        int slot = capSlot(cap);
+        return (slot == -1) ? UNKNOWN : values[slot];
+    }
+
+    /**
+     * Sets a slot as the result of a command.
+     *
+     * @return true if the command must be queued, false if the slot
+     * already had the value
+     */
+    boolean set(int slot, int value) {
+        if (recording) {
+            touched[slot] = true;
+        } else if (value != UNKNOWN && values[slot] == value) {
+            return false;
+        }
+        values[slot] = value;
+        return true;
+    }
+
+    /**
+     * Sets a slot kept per texture unit for the active unit.
+     *
+     * @return true if the command must be queued
+     */
+    boolean setUnit(int slot, int value) {
+        int unit = textureUnit();
+        if (unit == -1) {
+            forget(slot, TEXTURE_UNITS);
+            return true;
+        } else if (unit == TEXTURE_UNITS) {
+            return true;
+        }
+        return set(slot + unit, value);
+    }
+
+    /**
+     * Sets the enable of a capability.
+     *
+     * @return true if the command must be queued
+     */
+    boolean setEnabled(int cap, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (cap == GL10.GL_TEXTURE_2D) {
+            return setUnit(TEXTURE_2D, value);
+        }
+        int slot = capSlot(cap);
+        return (slot == -1) || set(slot, value);
+    }
+
+    /**
+     * Records the value of a slot that was read from the GL.
+     */
+    void learn(int slot, int value) {
+        values[slot] = value;
+    }
+
+    /**
+     * Records the value of a slot kept per texture unit that was read
+     * from the GL.
+     */
+    void learnUnit(int slot, int value) {
+        int unit = textureUnit();
+        if (unit != -1 && unit != TEXTURE_UNITS) {
+            values[slot + unit] = value;
+        }
+    }
+
+    /**
+     * Records the enable of a capability that was read from the GL.
+     */
+    void learnEnabled(int cap, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (cap == GL10.GL_TEXTURE_2D) {
+            learnUnit(TEXTURE_2D, value);
+        } else {
+            int slot = capSlot(cap);
+            if (slot != -1) {
+                values[slot] = value;
+            }
+        }
+    }
+
+    /**
+     * Marks a slot as not known after a command whose effect on it
+     * cannot be followed.
+     */
+    void forget(int slot) {
+        set(slot, UNKNOWN);
+    }
+
+    /**
+     * Marks a range of slots as not known.
+     */
+    void forget(int slot, int count) {
+        for (int i = 0; i < count; i++) {
+            forget(slot + i);
+        }
+    }
+
+    /**
+     * Changes the slots of a range that have one value to another,
+     * e.g. the texture bindings when the texture is deleted.
+     */
+    void replace(int slot, int count, int oldValue, int newValue) {
+        for (int i = slot; i < slot + count; i++) {
+            if (values[i] == oldValue) {
+                set(i, newValue);
+            }
+        }
+    }
+
+    /**
+     * Marks all the slots as not known.
+     */
+    void invalidate() {
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = UNKNOWN;
+        }
+        if (recording) {
+            invalidated = true;
+            touched = new boolean[SIZE];
+        }
+    }
+
+    void beginRecording() {
+        recording = true;
+        invalidated = false;
+        touched = new boolean[SIZE];
+    }
+
+    /**
+     * Ends the recording.
+     *
+     * @return the changes made by the recorded commands, as pairs of
+     * slot and value
+     */
+    int[] endRecording() {
+        int count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (touched[i]) {
+                count++;
+            }
+        }
+
+        int[] changes = new int[2 * count];
+        count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if (touched[i]) {
+                changes[count++] = i;
+                changes[count++] = values[i];
+            }
+        }
+
+        recording = false;
+        touched = null;
+        return changes;
+    }
+
+    /**
+     * Applies the changes made by a command list that has been called.
+     */
+    void apply(boolean invalidates, int[] changes) {
+        if (invalidates) {
+            invalidate();
+        }
+        for (int i = 0; i < changes.length; i += 2) {
+            set(changes[i], changes[i + 1]);
+        }
+    }
+}
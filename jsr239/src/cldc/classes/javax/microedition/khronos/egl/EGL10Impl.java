@@ -678,7 +678,7 @@ class EGL10Impl implements EGL10 {
 			      attrib_list);
 
     if (contextID != 0) { // EGL_NO_CONTEXT
-	    EGLContextImpl context = EGLContextImpl.getInstance(contextID);
+	    EGLContextImpl context = new EGLContextImpl(contextID);
 
 	    return context;
 	} else {
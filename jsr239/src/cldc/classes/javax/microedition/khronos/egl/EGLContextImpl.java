@@ -46,6 +46,10 @@ final class EGLContextImpl extends EGLContext implements ContextAccess {
     private EGLSurface readSurface = null;
     private boolean destroyed = false;
 
+    // True if the native context may have been used before this object
+    // was created, so its GL state is not the default
+    private boolean reused = false;
+
     public EGLContextImpl(int nativeId) {
         synchronized (byId) {
             this.nativeId = nativeId;
@@ -107,10 +111,10 @@ final class EGLContextImpl extends EGLContext implements ContextAccess {
             EGLContextImpl context = ref != null ?
                     (EGLContextImpl)ref.get() : null;
             if (context == null) {
-                return new EGLContextImpl(nativeId);
-            } else {
-                return context;
+                context = new EGLContextImpl(nativeId);
+                context.reused = true;
             }
+            return context;
         }
     }
 
@@ -122,6 +126,9 @@ final class EGLContextImpl extends EGLContext implements ContextAccess {
                 } else {
                     gl = new GL11Impl(this);
                 }
+                if (reused) {
+                    ((GL10Impl)gl).invalidateState();
+                }
 	    }
 	    return gl;
 	}
@@ -0,0 +1,352 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.jsr239;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.egl.*;
+import javax.microedition.khronos.opengles.*;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * This test case tests the shadow GL state and command lists, and
+ * compares the frame time of a scene rendered with and without a
+ * command list.
+ */
+public class TestGLState extends TestCase {
+
+    /** Number of objects in the scene. */
+    static final int OBJECTS = 64;
+
+    /** Number of frames timed. */
+    static final int FRAMES = 50;
+
+    /**
+     * Tests that commands setting the current value are dropped.
+     */
+    private void testRedundant() {
+        GLState state = new GLState();
+
+        assertFalse("Default depth func",
+                    state.set(GLState.DEPTH_FUNC, GL10.GL_LESS));
+        assertTrue("New depth func",
+                   state.set(GLState.DEPTH_FUNC, GL10.GL_EQUAL));
+        assertFalse("Same depth func",
+                    state.set(GLState.DEPTH_FUNC, GL10.GL_EQUAL));
+
+        assertFalse("Dither enabled by default",
+                    state.setEnabled(GL10.GL_DITHER, true));
+        assertTrue("Enable blend", state.setEnabled(GL10.GL_BLEND, true));
+        assertEquals("Blend enabled", 1,
+                     state.getEnabled(GL10.GL_BLEND));
+        assertTrue("Capability not kept",
+                   state.setEnabled(GL10.GL_VERTEX_ARRAY, true));
+        assertTrue("Capability not kept is unknown",
+                   state.getEnabled(GL10.GL_VERTEX_ARRAY) ==
+                   GLState.UNKNOWN);
+    }
+
+    /**
+     * Tests the state kept per texture unit.
+     */
+    private void testTextureUnits() {
+        GLState state = new GLState();
+
+        assertTrue("Bind on unit 0",
+                   state.setUnit(GLState.TEXTURE_BINDING_2D, 5));
+        assertTrue("Select unit 1",
+                   state.set(GLState.ACTIVE_TEXTURE, GL10.GL_TEXTURE1));
+        assertEquals("Unit 1 binding", 0,
+                     state.getUnit(GLState.TEXTURE_BINDING_2D));
+        assertTrue("Bind on unit 1",
+                   state.setUnit(GLState.TEXTURE_BINDING_2D, 5));
+        assertFalse("Same binding on unit 1",
+                    state.setUnit(GLState.TEXTURE_BINDING_2D, 5));
+
+        state.forget(GLState.ACTIVE_TEXTURE);
+        assertTrue("Unknown unit binding",
+                   state.getUnit(GLState.TEXTURE_BINDING_2D) ==
+                   GLState.UNKNOWN);
+        assertTrue("Bind on unknown unit",
+                   state.setUnit(GLState.TEXTURE_BINDING_2D, 5));
+
+        state.set(GLState.ACTIVE_TEXTURE, GL10.GL_TEXTURE0);
+        assertTrue("Unit 0 forgotten",
+                   state.getUnit(GLState.TEXTURE_BINDING_2D) ==
+                   GLState.UNKNOWN);
+    }
+
+    /**
+     * Tests the changes recorded for a command list.
+     */
+    private void testRecording() {
+        GLState state = new GLState();
+
+        state.beginRecording();
+        assertTrue("Not dropped while recording",
+                   state.set(GLState.BLEND_SRC, GL10.GL_ONE));
+        assertTrue("Enable fog", state.setEnabled(GL10.GL_FOG, true));
+        int[] changes = state.endRecording();
+
+        assertEquals("Two changes", 4, changes.length);
+        assertFalse("Not invalidated", state.invalidated);
+
+        GLState other = new GLState();
+        other.set(GLState.BLEND_SRC, GL10.GL_SRC_ALPHA);
+        other.apply(false, changes);
+        assertEquals("Blend source applied", GL10.GL_ONE,
+                     other.get(GLState.BLEND_SRC));
+        assertEquals("Fog applied", 1, other.getEnabled(GL10.GL_FOG));
+
+        state.beginRecording();
+        state.set(GLState.SHADE_MODEL, GL10.GL_FLAT);
+        state.invalidate();
+        state.set(GLState.DEPTH_MASK, 0);
+        changes = state.endRecording();
+
+        assertTrue("Invalidated", state.invalidated);
+        assertEquals("Change after invalidation", 2, changes.length);
+
+        other.apply(true, changes);
+        assertTrue("Blend source unknown",
+                   other.get(GLState.BLEND_SRC) == GLState.UNKNOWN);
+        assertEquals("Depth mask applied", 0,
+                     other.get(GLState.DEPTH_MASK));
+        assertTrue("Unknown value is set",
+                   other.set(GLState.BLEND_SRC, GLState.UNKNOWN));
+    }
+
+    /**
+     * Tests that recorded commands are split into segments the command
+     * queue can take, without splitting the flushes.
+     */
+    private void testSegments() {
+        GL10Impl gl = new GL10Impl(null);
+        GLState state = new GLState();
+        CommandList list = new CommandList(gl);
+        state.beginRecording();
+        int[] commands = new int[1000];
+
+        for (int i = 0; i < 10; i++) {
+            list.append(commands, commands.length);
+        }
+        list.append(commands, 0);
+        list.end(state);
+
+        assertEquals("Size", 10000, list.size());
+        assertEquals("Segments", 3, list.getSegmentCount());
+        for (int i = 0; i < list.getSegmentCount(); i++) {
+            int length = ((int[])list.segments.elementAt(i)).length;
+            assertTrue("Segment fits the queue",
+                       length < GLConfiguration.COMMAND_QUEUE_SIZE);
+            assertEquals("Whole flushes", 0, length % 1000);
+        }
+    }
+
+    /**
+     * Renders the scene.
+     */
+    private void drawScene(GL10Impl gl, FloatBuffer quad, int[] textures) {
+        gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+        gl.glVertexPointer(2, GL10.GL_FLOAT, 0, quad);
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+
+        for (int i = 0; i < OBJECTS; i++) {
+            // State is set per object, most of it redundant
+            gl.glEnable(GL10.GL_DEPTH_TEST);
+            gl.glEnable(GL10.GL_CULL_FACE);
+            gl.glEnable(GL10.GL_TEXTURE_2D);
+            gl.glDepthFunc(GL10.GL_LEQUAL);
+            gl.glShadeModel(GL10.GL_FLAT);
+            gl.glBindTexture(GL10.GL_TEXTURE_2D, textures[(i / 16) % 2]);
+
+            gl.glMatrixMode(GL10.GL_MODELVIEW);
+            gl.glPushMatrix();
+            gl.glTranslatef((i % 8) * 0.25f - 1f, (i / 8) * 0.25f - 1f, 0f);
+            gl.glColor4f(1f, i / (float)OBJECTS, 0f, 1f);
+            gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+            gl.glPopMatrix();
+        }
+    }
+
+    /**
+     * Tests the shadow state and command lists on a pbuffer context
+     * and reports the frame time of the scene.
+     */
+    private void testFrameTime() {
+        EGL10 egl = (EGL10)EGLContext.getEGL();
+        EGLDisplay display = egl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        if (!egl.eglInitialize(display, null)) {
+            info("EGL cannot be initialized, skipped");
+            return;
+        }
+
+        EGLSurface surface = EGL10.EGL_NO_SURFACE;
+        EGLContext context = EGL10.EGL_NO_CONTEXT;
+        try {
+            int[] attribs = {
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                EGL10.EGL_DEPTH_SIZE, 16,
+                EGL10.EGL_NONE
+            };
+            EGLConfig[] configs = new EGLConfig[1];
+            int[] numConfigs = new int[1];
+            if (!egl.eglChooseConfig(display, attribs, configs, 1,
+                                     numConfigs) || numConfigs[0] == 0) {
+                info("No pbuffer config, skipped");
+                return;
+            }
+
+            surface = egl.eglCreatePbufferSurface(display, configs[0],
+                new int[] {
+                    EGL10.EGL_WIDTH, 64,
+                    EGL10.EGL_HEIGHT, 64,
+                    EGL10.EGL_NONE
+                });
+            context = egl.eglCreateContext(display, configs[0],
+                                           EGL10.EGL_NO_CONTEXT, null);
+            if (surface == EGL10.EGL_NO_SURFACE ||
+                context == EGL10.EGL_NO_CONTEXT ||
+                !egl.eglMakeCurrent(display, surface, surface, context)) {
+                info("No pbuffer context, skipped");
+                return;
+            }
+
+            runScene((GL10Impl)context.getGL());
+        } finally {
+            egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE,
+                               EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+            if (context != EGL10.EGL_NO_CONTEXT) {
+                egl.eglDestroyContext(display, context);
+            }
+            if (surface != EGL10.EGL_NO_SURFACE) {
+                egl.eglDestroySurface(display, surface);
+            }
+            egl.eglTerminate(display);
+        }
+    }
+
+    /**
+     * Renders the scene on a current context.
+     */
+    private void runScene(GL10Impl gl) {
+        FloatBuffer quad =
+            ByteBuffer.allocateDirect(8 * 4).asFloatBuffer();
+        quad.put(new float[] {0f, 0f, 0.2f, 0f, 0f, 0.2f, 0.2f, 0.2f});
+        quad.position(0);
+
+        int[] textures = new int[2];
+        gl.glGenTextures(2, textures, 0);
+
+        // Redundant state and cached queries do not reach the queue
+        gl.glEnable(GL10.GL_BLEND);
+        int index = gl.index;
+        gl.glEnable(GL10.GL_BLEND);
+        assertEquals("Redundant enable dropped", index, gl.index);
+        assertTrue("Blend enabled", gl.glIsEnabled(GL10.GL_BLEND));
+        assertEquals("Query not flushed", index, gl.index);
+        gl.glDisable(GL10.GL_BLEND);
+
+        // Immediate rendering
+        drawScene(gl, quad, textures);
+        gl.glFinish();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < FRAMES; i++) {
+            drawScene(gl, quad, textures);
+            gl.glFinish();
+        }
+        long immediate = System.currentTimeMillis() - start;
+
+        // Rendering with a command list
+        gl.beginCommandList();
+        drawScene(gl, quad, textures);
+        CommandList list = gl.endCommandList();
+        gl.glFinish();
+
+        start = System.currentTimeMillis();
+        for (int i = 0; i < FRAMES; i++) {
+            gl.callCommandList(list);
+            gl.glFinish();
+        }
+        long replayed = System.currentTimeMillis() - start;
+
+        assertEquals("No GL error", GL10.GL_NO_ERROR, gl.glGetError());
+        assertTrue("State after the list",
+                   gl.glIsEnabled(GL10.GL_DEPTH_TEST));
+        assertTrue("Vertex array after the list",
+                   gl.pointerBuffer[gl.VERTEX_POINTER] == quad);
+
+        info("Scene of " + OBJECTS + " objects, " + FRAMES + " frames: " +
+             immediate + " ms immediate, " + replayed +
+             " ms from a command list of " + list.size() + " ints");
+
+        // A list drawing with inherited arrays needs the same arrays
+        gl.beginCommandList();
+        gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+        CommandList draw = gl.endCommandList();
+        gl.callCommandList(draw);
+
+        FloatBuffer small = ByteBuffer.allocateDirect(2 * 4).asFloatBuffer();
+        gl.glVertexPointer(2, GL10.GL_FLOAT, 0, small);
+        try {
+            gl.callCommandList(draw);
+            fail("List called with other arrays");
+        } catch (IllegalStateException e) {
+            assertSame("Other arrays refused",
+                       Errors.COMMAND_LIST_CLIENT_STATE, e.getMessage());
+        }
+
+        gl.glDeleteTextures(2, textures, 0);
+    }
+
+    /**
+     * Runs all tests.
+     */
+    public void runTests() {
+        try {
+            declare("testRedundant");
+            testRedundant();
+
+            declare("testTextureUnits");
+            testTextureUnits();
+
+            declare("testRecording");
+            testRecording();
+
+            declare("testSegments");
+            testSegments();
+
+            declare("testFrameTime");
+            testFrameTime();
+        }
+        catch (Throwable t) {
+            fail("" + t);
+        }
+    }
+}
@@ -50,6 +50,11 @@ import com.sun.jump.os.JUMPOSInterface;
  *       is typically used to tag or classify the message</li>
  * </ul>
  * <p>
+ * Incoming messages are usually backed by a pooled
+ * {@link com.sun.jump.message.JUMPMessageBuffer}. A message delivered to
+ * a <code>JUMPMessageHandler</code> is released once the handlers
+ * return; a handler that keeps the message must {@link #retain()} it.
+ * <p>
  *
  * Instances of <Code>JUMPMessage</code> are manufactured from factories 
  * conforming to {@link com.sun.jump.message.JUMPMessagingService} 
@@ -60,6 +65,7 @@ public abstract class JUMPMessage {
     protected int messageMarkOffset;
     protected int messageUserDataOffset;
     protected byte[] messageDataBytes;
+    protected JUMPMessageBuffer messageBuffer;
     protected int MESSAGE_DATA_OFFSET =
 	JUMPOSInterface.getInstance().getQueueInterface().getDataOffset();
     
@@ -78,6 +84,18 @@ public abstract class JUMPMessage {
 	this.messageDataOffset = MESSAGE_DATA_OFFSET;
 	readHeader();
     }
+
+    /**
+     * Creates a new instance of JUMPMessage when deserializing an
+     * incoming message received into a pooled buffer. The message
+     * takes over the caller's reference to <code>buffer</code>.
+     */
+    protected JUMPMessage(JUMPMessageBuffer buffer) {
+	this.messageBuffer = buffer;
+	this.messageDataBytes = buffer.getData();
+	this.messageDataOffset = MESSAGE_DATA_OFFSET;
+	readHeader();
+    }
     
     protected JUMPMessage() {
     }
@@ -167,6 +185,31 @@ public abstract class JUMPMessage {
 	messageDataOffset = messageMarkOffset;
     }
 
+    /**
+     * Keeps the message data valid past the point where its current
+     * owner releases it (for example, past the return of
+     * <code>JUMPMessageHandler.handleMessage()</code>). Each call must be
+     * balanced by a call to {@link #release()}.
+     */
+    public JUMPMessage retain() {
+	if (messageBuffer != null) {
+	    messageBuffer.retain();
+	}
+	return this;
+    }
+
+    /**
+     * Gives up a reference to the message data. Once the last
+     * reference is released the payload may be reused for another
+     * message and must not be read again. Messages that are not backed
+     * by a pooled buffer ignore this.
+     */
+    public void release() {
+	if (messageBuffer != null) {
+	    messageBuffer.release();
+	}
+    }
+
     protected abstract void readMessageSender(int id);
     protected abstract JUMPMessageResponseSender getMessageSender();
 }
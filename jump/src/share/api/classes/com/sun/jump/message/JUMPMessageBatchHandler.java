@@ -0,0 +1,45 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+package com.sun.jump.message;
+
+/**
+ * <code>JUMPMessageBatchHandler</code> is a {@link JUMPMessageHandler}
+ * that can take several messages of its type in one call. Dispatchers
+ * that queue incoming messages deliver whatever has accumulated to
+ * {@link #handleMessages(JUMPMessage[], int)}; dispatchers that do not
+ * still call {@link JUMPMessageHandler#handleMessage(JUMPMessage)}.
+ */
+public interface JUMPMessageBatchHandler extends JUMPMessageHandler {
+    /**
+     * Handles the first <code>count</code> messages of
+     * <code>messages</code>, which are in the order they were received.
+     * The same rules as for <code>handleMessage()</code> apply; in
+     * particular the array and the messages are only valid for the
+     * duration of the call unless the messages are retained.
+     */
+    public void handleMessages(JUMPMessage[] messages, int count);
+}
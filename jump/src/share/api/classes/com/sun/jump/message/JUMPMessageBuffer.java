@@ -0,0 +1,205 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+package com.sun.jump.message;
+
+import java.security.AccessController;
+import sun.security.action.GetIntegerAction;
+
+/**
+ * <code>JUMPMessageBuffer</code> is a reference counted byte array that
+ * holds the serialized form of a message. Buffers come from a small
+ * set of per-size pools, so that steady message traffic reuses the same
+ * arrays instead of allocating (and collecting) a new array per message.
+ * <p>
+ * A buffer is handed out with a reference count of one. Every party that
+ * keeps the buffer beyond the call it received it in calls
+ * {@link #retain()}, and every party that is done with it calls
+ * {@link #release()}. When the count drops to zero the array goes back
+ * to its pool and must not be touched again. A buffer that is never
+ * released is simply garbage collected; releasing is an optimization,
+ * not an obligation.
+ * <p>
+ * Capacities are rounded up to a power of two between
+ * {@link #MIN_POOLED_SIZE} and {@link #MAX_POOLED_SIZE}; larger buffers
+ * are allocated exactly and are never pooled. The number of free buffers
+ * kept per size is given by the <code>jump.messagebuffer.poolsize</code>
+ * property (default 16, 0 disables pooling).
+ */
+public final class JUMPMessageBuffer {
+    public static final int MIN_POOLED_SIZE = 512;
+    public static final int MAX_POOLED_SIZE = 64 * 1024;
+
+    // log2(MIN_POOLED_SIZE)
+    private static final int MIN_SHIFT = 9;
+
+    private static final int POOL_LIMIT;
+    static {
+	Integer limit = (Integer) AccessController.doPrivileged(
+	    new GetIntegerAction("jump.messagebuffer.poolsize", 16));
+	POOL_LIMIT = Math.max(0, limit.intValue());
+    }
+
+    // pools[i] holds free buffers of size MIN_POOLED_SIZE << i, as a
+    // stack of poolDepth[i] entries.  All guarded by the class lock.
+    private static final JUMPMessageBuffer[][] pools;
+    private static final int[] poolDepth;
+    static {
+	int classes = 1;
+	while ((MIN_POOLED_SIZE << (classes - 1)) < MAX_POOLED_SIZE) {
+	    classes++;
+	}
+	pools = new JUMPMessageBuffer[classes][POOL_LIMIT];
+	poolDepth = new int[classes];
+    }
+
+    private static long allocatedCount;
+    private static long reusedCount;
+
+    private final byte[] data;
+    private final int sizeClass;	// -1 if never pooled
+    private int refCount;
+
+    private JUMPMessageBuffer(int size, int sizeClass) {
+	this.data = new byte[size];
+	this.sizeClass = sizeClass;
+    }
+
+    /**
+     * Returns a buffer of at least <code>minCapacity</code> bytes with a
+     * reference count of one. The contents of the buffer are undefined.
+     */
+    public static JUMPMessageBuffer allocate(int minCapacity) {
+	if (minCapacity < 0) {
+	    throw new IllegalArgumentException("negative capacity");
+	}
+	JUMPMessageBuffer buffer;
+	if (minCapacity > MAX_POOLED_SIZE) {
+	    buffer = new JUMPMessageBuffer(minCapacity, -1);
+	    synchronized (JUMPMessageBuffer.class) {
+		allocatedCount++;
+	    }
+	} else {
+	    int sizeClass = sizeClassFor(minCapacity);
+	    synchronized (JUMPMessageBuffer.class) {
+		int depth = poolDepth[sizeClass];
+		if (depth > 0) {
+		    buffer = pools[sizeClass][--depth];
+		    pools[sizeClass][depth] = null;
+		    poolDepth[sizeClass] = depth;
+		    reusedCount++;
+		} else {
+		    buffer = null;
+		    allocatedCount++;
+		}
+	    }
+	    if (buffer == null) {
+		buffer = new JUMPMessageBuffer(MIN_POOLED_SIZE << sizeClass,
+					       sizeClass);
+	    }
+	}
+	buffer.refCount = 1;
+	return buffer;
+    }
+
+    private static int sizeClassFor(int capacity) {
+	int sizeClass = 0;
+	while ((MIN_POOLED_SIZE << sizeClass) < capacity) {
+	    sizeClass++;
+	}
+	return sizeClass;
+    }
+
+    /**
+     * Returns the backing array. Only valid while the caller holds a
+     * reference.
+     */
+    public byte[] getData() {
+	return data;
+    }
+
+    /**
+     * Returns the size of the backing array.
+     */
+    public int capacity() {
+	return data.length;
+    }
+
+    /**
+     * Adds a reference to this buffer.
+     *
+     * @throws IllegalStateException if the buffer was already released.
+     */
+    public synchronized JUMPMessageBuffer retain() {
+	if (refCount <= 0) {
+	    throw new IllegalStateException("buffer already released");
+	}
+	refCount++;
+	return this;
+    }
+
+    /**
+     * Drops a reference to this buffer, returning it to its pool when
+     * the last reference is dropped.
+     *
+     * @throws IllegalStateException if the buffer was already released.
+     */
+    public void release() {
+	synchronized (this) {
+	    if (refCount <= 0) {
+		throw new IllegalStateException("buffer already released");
+	    }
+	    if (--refCount > 0) {
+		return;
+	    }
+	}
+	if (sizeClass < 0) {
+	    return;
+	}
+	synchronized (JUMPMessageBuffer.class) {
+	    int depth = poolDepth[sizeClass];
+	    if (depth < POOL_LIMIT) {
+		pools[sizeClass][depth] = this;
+		poolDepth[sizeClass] = depth + 1;
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of backing arrays allocated so far. With
+     * {@link #getReusedCount()} this tells how well the pools are doing.
+     */
+    public static synchronized long getAllocatedCount() {
+	return allocatedCount;
+    }
+
+    /**
+     * Returns the number of allocations satisfied from a pool so far.
+     */
+    public static synchronized long getReusedCount() {
+	return reusedCount;
+    }
+}
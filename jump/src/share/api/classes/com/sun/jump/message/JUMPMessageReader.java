@@ -88,21 +88,44 @@ public class JUMPMessageReader {
 	return b;
     }
 
-    private char[] fromBytes(byte[] ascii) 
-    {
-	int n = ascii.length;
-        char[] value = new char[n-1]; // Leave out the null termination
-
-	for (int i = 0; i < n-1; i++) {
-	    value[i] = (char) (ascii[i] & 0xff);
-	}
-	return value;
-    }
-    
     public String getUTF() {
 	// FIXME: GEt string in Java-modified utf-8
 	// Re-use implementation in DataInputStream.readUTF().
-	return new String(fromBytes(getByteArray()));
+	// Decoded straight out of the message, the strings are ASCII and
+	// null terminated (see JUMPOutgoingMessage.addUTF()).
+	int len = getInt();
+	if (len == -1) {
+	    return null;
+	}
+	int n = len - 1; // Leave out the null termination
+	char[] value = new char[n];
+	for (int i = 0; i < n; i++) {
+	    value[i] = (char) (messageDataBytes[messageDataOffset + i] & 0xff);
+	}
+	messageDataOffset += len;
+	return new String(value);
+    }
+
+    /**
+     * Compares the next string in the message with <code>s</code>
+     * without creating a <code>String</code>, and moves past it.
+     */
+    public boolean matchUTF(String s) {
+	int len = getInt();
+	if (len == -1) {
+	    return s == null;
+	}
+	int start = messageDataOffset;
+	messageDataOffset += len;
+	if (s == null || s.length() != len - 1) {
+	    return false;
+	}
+	for (int i = 0; i < len - 1; i++) {
+	    if ((char) (messageDataBytes[start + i] & 0xff) != s.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
     }
 
     public byte[] getByteArray() {
@@ -116,6 +139,53 @@ public class JUMPMessageReader {
 	return b;
     }
 
+    /**
+     * Copies the next byte array in the message into <code>dst</code>
+     * at <code>dstOffset</code>, which must have room for it.
+     *
+     * @return the length of the array, or -1 if it was null.
+     */
+    public int getByteArray(byte[] dst, int dstOffset) {
+	int len = getInt();
+	if (len == -1) {
+	    return -1;
+	}
+	System.arraycopy(messageDataBytes, messageDataOffset, dst, dstOffset,
+			 len);
+	messageDataOffset += len;
+	return len;
+    }
+
+    /**
+     * Moves past the next byte array (or string) in the message. The
+     * bytes are still there to be read in place, at
+     * <code>getOffset() - length</code> of {@link #getData()}.
+     *
+     * @return the length of the array, or -1 if it was null.
+     */
+    public int skipByteArray() {
+	int len = getInt();
+	if (len != -1) {
+	    messageDataOffset += len;
+	}
+	return len;
+    }
+
+    /**
+     * Returns the message bytes this reader works on. They remain valid
+     * only as long as the message is not released.
+     */
+    public byte[] getData() {
+	return messageDataBytes;
+    }
+
+    /**
+     * Returns the offset in {@link #getData()} of the next field.
+     */
+    public int getOffset() {
+	return messageDataOffset;
+    }
+
     public String[] getUTFArray() {
 	int len = getInt();
 	if (len == -1) {
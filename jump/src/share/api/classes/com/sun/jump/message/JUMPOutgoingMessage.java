@@ -51,7 +51,9 @@ public abstract class JUMPOutgoingMessage extends JUMPMessage {
         this.type = type;
 	this.returnType = returnType;
         this.responseId = responseId;
-	this.messageDataBytes = new byte[MESSAGE_DATA_INITIAL_SIZE];
+	this.messageBuffer =
+	    JUMPMessageBuffer.allocate(MESSAGE_DATA_INITIAL_SIZE);
+	this.messageDataBytes = messageBuffer.getData();
 	this.messageDataOffset = MESSAGE_DATA_OFFSET;
 	composeHeader();
 	messageMarkOffset = messageDataOffset;
@@ -91,9 +93,13 @@ public abstract class JUMPOutgoingMessage extends JUMPMessage {
 		newCapacity = requiredCapacity;
 	    }
 
-	    byte[] newData = new byte[newCapacity];
+	    JUMPMessageBuffer newBuffer =
+		JUMPMessageBuffer.allocate(newCapacity);
+	    byte[] newData = newBuffer.getData();
 	    System.arraycopy(messageDataBytes, 0,
 			     newData, 0, messageDataOffset);
+	    messageBuffer.release();
+	    messageBuffer = newBuffer;
 	    messageDataBytes = newData;
 	}
     }
@@ -178,10 +184,22 @@ public abstract class JUMPOutgoingMessage extends JUMPMessage {
 	}
     }
 
+    /**
+     * Returns the backing array of the message. Only the first
+     * {@link #getLength()} bytes are meaningful.
+     */
     public byte[] serialize() {
 	return messageDataBytes;
     }
 
+    /**
+     * Returns the number of bytes of {@link #serialize()} used so far,
+     * header included.
+     */
+    public int getLength() {
+	return messageDataOffset;
+    }
+
     protected abstract int serializeMessagable(JUMPMessagable messagable);
 
     // This should not be happening for an outgoing message constructed
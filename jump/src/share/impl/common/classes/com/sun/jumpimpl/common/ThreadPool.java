@@ -0,0 +1,457 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ *
+ */
+
+package com.sun.jumpimpl.common;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.LinkedList;
+
+import sun.security.action.GetIntegerAction;
+
+/**
+ * A ThreadPool runs Runnables in the background on a bounded set of
+ * worker threads.
+ * <p>
+ * Work is queued in one FIFO per thread priority, and an idle worker
+ * always takes the oldest task of the highest priority.  The worker
+ * runs the task at that priority.  Up to <code>coreThreads</code>
+ * workers are kept around while idle.  When work is queued and no
+ * worker is idle, more workers are started, up to 
+ * <code>maxThreads</code>.  Workers above the core size exit after
+ * being idle for <code>keepAlive</code> milliseconds.  If all 
+ * <code>maxThreads</code> workers are busy and <code>queueLimit</code>
+ * tasks are already waiting, the rejection policy decides what 
+ * happens to the new task.
+ * <p>
+ * getSharedPool() returns a VM-wide pool for short tasks, such as 
+ * IXC method invocations.  It is configured with the 
+ * <code>jump.threadpool.core</code>, <code>jump.threadpool.max</code>,
+ * <code>jump.threadpool.keepalive</code> and 
+ * <code>jump.threadpool.queue</code> system properties.
+ * Code that keeps a thread for a long time, such as a loop blocking
+ * on a message queue, should create a ThreadPool of its own, so that
+ * it cannot starve the shared one.
+ */
+
+public class ThreadPool {
+
+    /** Rejected tasks make execute() throw an IllegalStateException. */
+    public static final int REJECT_ABORT = 0;
+
+    /** Rejected tasks are run by the thread calling execute(). */
+    public static final int REJECT_CALLER_RUNS = 1;
+
+    /** Rejected tasks are silently dropped. */
+    public static final int REJECT_DISCARD = 2;
+
+    private static ThreadPool sharedPool = null;
+
+    private final String name;
+    private final int coreThreads;
+    private final int maxThreads;
+    private final long keepAlive;
+    private final int queueLimit;    // 0 for no limit
+    private final int rejectionPolicy;
+
+    // Everything below is guarded by this.
+
+    // Queued tasks, one linked list per thread priority.
+    private final Task[] heads = new Task[Thread.MAX_PRIORITY + 1];
+    private final Task[] tails = new Task[Thread.MAX_PRIORITY + 1];
+    private int queued = 0;
+
+    private int poolSize = 0;
+    private int idle = 0;
+    private int num = 1;	   // For unique names, which helps debugging
+    private boolean shutdown = false;
+
+    // Metrics.
+    private int largestPoolSize = 0;
+    private int maxQueued = 0;
+    private long completed = 0;
+    private long rejected = 0;
+    private long started = 0;	   // Number of tasks taken off the queue
+    private long totalWait = 0;
+    private long maxWait = 0;
+
+    private static class Task {
+	final Runnable work;
+	final int priority;
+	final long queuedAt;
+	Task next = null;
+
+	Task(Runnable work, int priority) {
+	    this.work = work;
+	    this.priority = priority;
+	    this.queuedAt = System.currentTimeMillis();
+	}
+    }
+
+    /**
+     * Creates a new ThreadPool.
+     *
+     * @param name		Prefix for the worker thread names
+     * @param coreThreads	Number of workers kept while idle
+     * @param maxThreads	Maximum number of workers
+     * @param keepAlive		Milliseconds before an idle worker above 
+     *				the core size exits
+     * @param queueLimit	Maximum number of queued tasks, 0 for no limit
+     * @param rejectionPolicy	One of the REJECT_ constants
+     **/
+    public ThreadPool(String name, int coreThreads, int maxThreads,
+		      long keepAlive, int queueLimit, int rejectionPolicy) {
+	if (coreThreads < 0 || maxThreads <= 0 || maxThreads < coreThreads
+		|| keepAlive < 0 || queueLimit < 0
+		|| rejectionPolicy < REJECT_ABORT 
+		|| rejectionPolicy > REJECT_DISCARD) {
+	    throw new IllegalArgumentException();
+	}
+	this.name = name;
+	this.coreThreads = coreThreads;
+	this.maxThreads = maxThreads;
+	this.keepAlive = keepAlive;
+	this.queueLimit = queueLimit;
+	this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Returns the VM-wide pool for short background tasks.
+     **/
+    public static synchronized ThreadPool getSharedPool() {
+	if (sharedPool == null) {
+	    sharedPool = new ThreadPool("JUMPThreadPool",
+		getIntProperty("jump.threadpool.core", 1),
+		getIntProperty("jump.threadpool.max", 16),
+		getIntProperty("jump.threadpool.keepalive", 10000),
+		getIntProperty("jump.threadpool.queue", 0),
+		REJECT_CALLER_RUNS);
+	}
+	return sharedPool;
+    }
+
+    private static int getIntProperty(String key, int defaultValue) {
+	Integer value = (Integer) AccessController.doPrivileged(
+	    new GetIntegerAction(key, defaultValue));
+	return value.intValue();
+    }
+
+    /**
+     * Run r in the background, returning immediatedly.
+     *
+     * @param priority	Thread priority for this task
+     * @param r		Task to run
+     * @throws IllegalStateException if the task is rejected under
+     *         REJECT_ABORT.
+     **/
+    public void execute(int priority, Runnable r) {
+	if (r == null) {
+	    throw new NullPointerException();
+	}
+	if (priority < Thread.MIN_PRIORITY) {
+	    priority = Thread.MIN_PRIORITY;
+	} else if (priority > Thread.MAX_PRIORITY) {
+	    priority = Thread.MAX_PRIORITY;
+	}
+	synchronized (this) {
+	    if (!shutdown) {
+		if (idle > queued) {
+		    enqueue(new Task(r, priority));
+		    notify();
+		    return;
+		}
+		if (poolSize < maxThreads) {
+		    enqueue(new Task(r, priority));
+		    startWorker();
+		    return;
+		}
+		if (queueLimit == 0 || queued < queueLimit) {
+		    enqueue(new Task(r, priority));
+		    return;
+		}
+	    }
+	    rejected++;
+	}
+	switch (rejectionPolicy) {
+	    case REJECT_CALLER_RUNS:
+		if (!isShutdown()) {
+		    r.run();
+		}
+		break;
+	    case REJECT_DISCARD:
+		break;
+	    default:
+		throw new IllegalStateException(name + ": task rejected");
+	}
+    }
+
+    /**
+     * Stops accepting new tasks.  Tasks that are already queued still
+     * run, after which the workers exit.
+     **/
+    public synchronized void shutdown() {
+	shutdown = true;
+	notifyAll();
+    }
+
+    public synchronized boolean isShutdown() {
+	return shutdown;
+    }
+
+    // Externally synchronized on this.
+    private void enqueue(Task t) {
+	if (tails[t.priority] == null) {
+	    heads[t.priority] = t;
+	} else {
+	    tails[t.priority].next = t;
+	}
+	tails[t.priority] = t;
+	queued++;
+	if (queued > maxQueued) {
+	    maxQueued = queued;
+	}
+    }
+
+    // Externally synchronized on this.
+    private Task dequeue() {
+	if (queued == 0) {
+	    return null;
+	}
+	for (int p = Thread.MAX_PRIORITY; p >= Thread.MIN_PRIORITY; p--) {
+	    Task t = heads[p];
+	    if (t != null) {
+		heads[p] = t.next;
+		if (heads[p] == null) {
+		    tails[p] = null;
+		}
+		t.next = null;
+		queued--;
+
+		long wait = System.currentTimeMillis() - t.queuedAt;
+		started++;
+		totalWait += wait;
+		if (wait > maxWait) {
+		    maxWait = wait;
+		}
+		return t;
+	    }
+	}
+	return null;
+    }
+
+    // Externally synchronized on this.
+    private void startWorker() {
+	poolSize++;
+	if (poolSize > largestPoolSize) {
+	    largestPoolSize = poolSize;
+	}
+	final String threadName = name + "-" + (num++);
+	// Don't let the worker inherit the access control context of 
+	// whoever happens to call execute() first.
+	AccessController.doPrivileged(new PrivilegedAction() {
+	    public Object run() {
+		Thread thread = new Thread(new Worker(), threadName);
+		thread.setDaemon(true);
+		thread.start();
+		return null;
+	    }
+	});
+    }
+
+    private class Worker implements Runnable {
+	public void run() {
+	    Thread self = Thread.currentThread();
+	    int idlePriority = self.getPriority();
+	    for (;;) {
+		Task t = takeTask();
+		if (t == null) {
+		    return;
+		}
+		self.setPriority(t.priority);
+		try {
+		    t.work.run();
+		} catch (Throwable e) {
+		    e.printStackTrace();
+		} finally {
+		    self.setPriority(idlePriority);
+		    synchronized (ThreadPool.this) {
+			completed++;
+		    }
+		}
+	    }
+	}
+    }
+
+    // Waits for the next task, or returns null when this worker 
+    // should exit.
+    private synchronized Task takeTask() {
+	long idleSince = System.currentTimeMillis();
+	for (;;) {
+	    Task t = dequeue();
+	    if (t != null) {
+		return t;
+	    }
+	    if (shutdown) {
+		poolSize--;
+		return null;
+	    }
+	    long timeout = 0L;
+	    if (poolSize > coreThreads) {
+		timeout = idleSince + keepAlive - System.currentTimeMillis();
+		if (timeout <= 0L) {
+		    poolSize--;
+		    return null;
+		}
+	    }
+	    idle++;
+	    try {
+		wait(timeout);
+	    } catch (InterruptedException e) {
+		// ignore.
+	    } finally {
+		idle--;
+	    }
+	}
+    }
+
+    //
+    // Metrics
+    //
+
+    /** Returns the current number of worker threads. */
+    public synchronized int getPoolSize() {
+	return poolSize;
+    }
+
+    /** Returns the largest number of worker threads there has been. */
+    public synchronized int getLargestPoolSize() {
+	return largestPoolSize;
+    }
+
+    /** Returns the number of workers currently running a task. */
+    public synchronized int getActiveCount() {
+	return poolSize - idle;
+    }
+
+    /** Returns the number of tasks waiting for a worker. */
+    public synchronized int getQueueDepth() {
+	return queued;
+    }
+
+    /** Returns the largest number of tasks that have been waiting. */
+    public synchronized int getMaxQueueDepth() {
+	return maxQueued;
+    }
+
+    /** Returns the number of tasks run to completion. */
+    public synchronized long getCompletedTaskCount() {
+	return completed;
+    }
+
+    /** Returns the number of tasks rejected by execute(). */
+    public synchronized long getRejectedTaskCount() {
+	return rejected;
+    }
+
+    /** 
+     * Returns the average time, in milliseconds, tasks have spent in
+     * the queue before a worker took them.
+     */
+    public synchronized long getAverageWaitTime() {
+	return (started == 0) ? 0 : (totalWait / started);
+    }
+
+    /** Returns the longest time, in milliseconds, a task has waited. */
+    public synchronized long getMaxWaitTime() {
+	return maxWait;
+    }
+
+    public synchronized String toString() {
+	return name + "[pool=" + poolSize + "/" + maxThreads 
+	    + ", active=" + (poolSize - idle)
+	    + ", queued=" + queued + " (max " + maxQueued + ")"
+	    + ", completed=" + completed + ", rejected=" + rejected 
+	    + ", wait=" + getAverageWaitTime() + "ms avg, " 
+	    + maxWait + "ms max]";
+    }
+
+    /**
+     * Runs tasks one at a time, in the order they were submitted, 
+     * on a ThreadPool.  At most one pool thread is used at a time,
+     * and only while there are tasks to run.
+     */
+    public static class SerialQueue {
+	private final ThreadPool pool;
+	private final int priority;
+	private final LinkedList tasks = new LinkedList(); // Guarded by tasks
+	private boolean scheduled = false;		    // Guarded by tasks
+
+	private final Runnable drain = new Runnable() {
+	    public void run() {
+		for (;;) {
+		    Runnable r;
+		    synchronized (tasks) {
+			if (tasks.isEmpty()) {
+			    scheduled = false;
+			    return;
+			}
+			r = (Runnable) tasks.removeFirst();
+		    }
+		    try {
+			r.run();
+		    } catch (Throwable e) {
+			e.printStackTrace();
+		    }
+		}
+	    }
+	};
+
+	public SerialQueue(ThreadPool pool, int priority) {
+	    this.pool = pool;
+	    this.priority = priority;
+	}
+
+	public void execute(Runnable r) {
+	    synchronized (tasks) {
+		tasks.addLast(r);
+		if (scheduled) {
+		    return;
+		}
+		scheduled = true;
+	    }
+	    try {
+		pool.execute(priority, drain);
+	    } catch (RuntimeException e) {
+		synchronized (tasks) {
+		    tasks.remove(r);
+		    scheduled = false;
+		}
+		throw e;
+	    }
+	}
+    }
+}
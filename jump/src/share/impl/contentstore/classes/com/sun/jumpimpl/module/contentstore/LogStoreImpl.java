@@ -0,0 +1,682 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+package com.sun.jumpimpl.module.contentstore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import com.sun.jump.module.contentstore.*;
+
+/**
+ * A <code>JUMPStore</code> that keeps the whole tree in one append-only
+ * log file, <code>store.log</code> under the store root, instead of one
+ * file per node.
+ * <p>
+ * Every change appends a record; the log is read once at load time to
+ * build an in-memory index from URI to the position of the node's data,
+ * and from each list node to its children. Lookups and listings are
+ * answered from the index, and decoded nodes are kept in an LRU cache
+ * of <code>contentstore.cache.size</code> entries (default 256), so the
+ * file is only read on a cache miss. Records superseded by later
+ * updates or deletes are dropped by rewriting the log at load and
+ * unload time once they make up more than half of it.
+ * <p>
+ * A record is
+ * <pre>
+ *    int    length of op, uri and data
+ *    byte   op: OP_LIST, OP_DATA or OP_DELETE
+ *    UTF    uri
+ *    data   (OP_DATA only) format, then the value, see encode()
+ *    int    CRC32 of op, uri and data
+ * </pre>
+ * A torn record at the end of the log (from a crash mid-write) fails
+ * the length or CRC check, and is cut off at load time.
+ */
+public class LogStoreImpl extends JUMPStore {
+
+   static final String LOG_NAME = "store.log";
+
+   static final byte OP_LIST   = 1;
+   static final byte OP_DATA   = 2;
+   static final byte OP_DELETE = 3;
+
+   // Tags for FORMAT_SERIALIZABLE values.
+   static final byte VALUE_PROPERTIES = 'P';
+   static final byte VALUE_OBJECT     = 'O';
+
+   static final String ROOT = ".";
+
+   boolean verbose = false;
+
+   private File logFile;
+   private RandomAccessFile log;
+
+   // uri -> Entry for every live node, including ROOT.
+   private final HashMap index = new HashMap();
+
+   // Bytes of the log taken by the records of live nodes.
+   private long liveBytes;
+
+   // uri -> decoded JUMPNode, or the raw data bytes for values the
+   // caller could modify (byte arrays and serializable objects), which
+   // are decoded afresh for every getNode().
+   private LinkedHashMap cache;
+
+   private static class Entry {
+      final boolean isList;
+      final long offset;       // of the record in the log
+      final int recordLength;  // whole record, framing included
+      final int dataOffset;    // of the data within the record
+      final ArrayList children;  // child uris, for lists
+
+      Entry(boolean isList, long offset, int recordLength, int dataOffset) {
+         this.isList = isList;
+         this.offset = offset;
+         this.recordLength = recordLength;
+         this.dataOffset = dataOffset;
+         this.children = isList ? new ArrayList() : null;
+      }
+   }
+
+   public synchronized void load(Map map) {
+
+       Object basedir;
+       if ((basedir = System.getProperty("contentstore.root")) != null) { 
+          setStoreRoot((String)basedir);
+       } else if (map != null && (basedir = map.get("contentstore.root")) != null) {
+          setStoreRoot((String)basedir);
+       } else { 
+          setStoreRoot(".");
+       }
+
+       int cacheSize = 256;
+       Object size = System.getProperty("contentstore.cache.size");
+       if (size == null && map != null) {
+          size = map.get("contentstore.cache.size");
+       }
+       if (size != null) {
+          cacheSize = Integer.parseInt((String)size);
+       }
+       final int maxEntries = cacheSize;
+       cache = new LinkedHashMap(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry eldest) {
+             return size() > maxEntries;
+          }
+       };
+
+       try {
+          open();
+          if (isWasteful()) {
+             compact();
+          }
+       } catch (IOException e) {
+          throw new JUMPStoreRuntimeException(
+             "Cannot open content store log " + logFile + ": " + e);
+       }
+   }
+
+   public synchronized void unload() {
+      if (log == null) {
+         return;
+      }
+      try {
+         if (isWasteful()) {
+            compact();
+         }
+         log.close();
+      } catch (IOException e) {
+         if (verbose)
+            System.err.println(e);
+      }
+      log = null;
+      index.clear();
+      cache.clear();
+   }
+
+   protected void setStoreRoot(String root) {
+      File file = new File(root);
+      if (file.exists()) {
+          logFile = new File(file.getAbsolutePath(), LOG_NAME);
+          return;
+      } 
+      // What to do about error checking?
+      throw new RuntimeException("Cannot set persistent store, "+
+                                 "repositoryDir="+root+" does not exist");
+   }
+
+   public synchronized void createNode(String uri) throws IOException {
+      checkUri(uri);
+      if (index.containsKey(uri)) {
+         Entry entry = (Entry) index.get(uri);
+         if (entry.isList) {
+            return;  // Like mkdirs(), as FileStoreImpl does.
+         }
+         throw new JUMPStoreRuntimeException(uri + " is a data node");
+      }
+      String parent = getParentUri(uri);
+      Entry parentEntry = (Entry) index.get(parent);
+      if (parentEntry == null) {
+         createNode(parent);
+      } else if (!parentEntry.isList) {
+         throw new JUMPStoreRuntimeException(parent + " is a data node");
+      }
+      append(OP_LIST, uri, null);
+   }
+
+   public synchronized void createDataNode(String uri, JUMPData jumpData)
+      throws IOException {
+      checkUri(uri);
+      String parent = getParentUri(uri);
+      Entry parentEntry = (Entry) index.get(parent);
+      if (parentEntry == null || !parentEntry.isList) {
+         throw new IOException("No list node " + parent + " for " + uri);
+      }
+      Entry entry = (Entry) index.get(uri);
+      if (entry != null && entry.isList) {
+         throw new JUMPStoreRuntimeException(uri + " is a list node");
+      }
+      append(OP_DATA, uri, jumpData);
+   }
+
+   protected synchronized void updateDataNode(String uri, JUMPData data) 
+      throws IOException {
+      createDataNode(uri, data);
+   }
+
+   public synchronized JUMPNode getNode(String uri) throws IOException {
+      Object cached = cache.get(uri);
+      if (cached instanceof JUMPNode) {
+         return (JUMPNode) cached;
+      }
+
+      Entry entry = (Entry) index.get(uri);
+      if (entry == null) {
+         return null;
+      }
+
+      JUMPNode node;
+      if (entry.isList) {
+         node = new JUMPNodeListImpl(uri);
+         cache.put(uri, node);
+      } else {
+         byte[] raw = (byte[]) cached;
+         if (raw == null) {
+            raw = readData(entry);
+         }
+         JUMPData data = decode(raw);
+         node = new JUMPNodeDataImpl(uri, data);
+         if (isMutable(data)) {
+            cache.put(uri, raw);
+         } else {
+            cache.put(uri, node);
+         }
+      }
+      return node;
+   }
+
+   public synchronized void deleteNode(String uri) throws IOException {
+      if (ROOT.equals(uri)) {
+         throw new IllegalArgumentException("Cannot delete the root");
+      }
+      if (!index.containsKey(uri)) {
+         return;  // FileStoreImpl quietly ignores this too.
+      }
+      append(OP_DELETE, uri, null);
+   }
+
+   /*
+    * Appends a record for op and applies it to the index.
+    */
+   private void append(byte op, String uri, JUMPData data)
+      throws IOException {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(64);
+      DataOutputStream out = new DataOutputStream(bout);
+      out.writeInt(0);  // Length, filled in below.
+      out.writeByte(op);
+      out.writeUTF(uri);
+      int dataOffset = out.size();
+      if (op == OP_DATA) {
+         encode(data, out);
+      }
+      out.writeInt(0);  // CRC, filled in below.
+      byte[] record = bout.toByteArray();
+
+      int bodyLength = record.length - 8;
+      putInt(record, 0, bodyLength);
+      CRC32 crc = new CRC32();
+      crc.update(record, 4, bodyLength);
+      putInt(record, record.length - 4, (int) crc.getValue());
+
+      long offset = log.length();
+      log.seek(offset);
+      log.write(record);
+
+      apply(op, uri, offset, record.length, dataOffset);
+   }
+
+   private static void putInt(byte[] b, int off, int v) {
+      b[off]     = (byte) (v >>> 24);
+      b[off + 1] = (byte) (v >>> 16);
+      b[off + 2] = (byte) (v >>> 8);
+      b[off + 3] = (byte) v;
+   }
+
+   /*
+    * Applies a record to the index, both when appending and when
+    * replaying the log at load time.
+    */
+   private void apply(byte op, String uri, long offset, int recordLength,
+                      int dataOffset) {
+      // Delete records, and the records they or later updates
+      // supersede, don't count as live: compact() leaves them out.
+      cache.remove(uri);
+      if (op == OP_DELETE) {
+         remove(uri);
+         return;
+      }
+      Entry old = (Entry) index.get(uri);
+      if (old != null) {
+         if (old.isList || op == OP_LIST) {
+            return;  // Only data can be replaced, see createNode().
+         }
+         liveBytes -= old.recordLength;
+      } else {
+         Entry parent = (Entry) index.get(getParentUri(uri));
+         if (parent != null && parent.isList) {
+            parent.children.add(uri);
+         }
+      }
+      index.put(uri, new Entry(op == OP_LIST, offset, recordLength,
+                               dataOffset));
+      liveBytes += recordLength;
+   }
+
+   // Removes uri and everything under it from the index.
+   private void remove(String uri) {
+      Entry entry = (Entry) index.remove(uri);
+      if (entry == null) {
+         return;
+      }
+      cache.remove(uri);
+      liveBytes -= entry.recordLength;
+      if (entry.isList) {
+         Object[] children = entry.children.toArray();
+         for (int i = 0; i < children.length; i++) {
+            remove((String) children[i]);
+         }
+      }
+      Entry parent = (Entry) index.get(getParentUri(uri));
+      if (parent != null && parent.isList) {
+         parent.children.remove(uri);
+      }
+   }
+
+   private byte[] readData(Entry entry) throws IOException {
+      int length = entry.recordLength - entry.dataOffset - 4;
+      byte[] raw = new byte[length];
+      log.seek(entry.offset + entry.dataOffset);
+      log.readFully(raw);
+      return raw;
+   }
+
+   /*
+    * Opens the log and replays it into the index.
+    */
+   private void open() throws IOException {
+      index.clear();
+      cache.clear();
+      liveBytes = 0;
+      index.put(ROOT, new Entry(true, 0, 0, 0));
+
+      log = new RandomAccessFile(logFile, "rw");
+      long length = log.length();
+      long offset = 0;
+      byte[] record = new byte[256];
+      CRC32 crc = new CRC32();
+
+      while (offset + 8 <= length) {
+         log.seek(offset);
+         int bodyLength = log.readInt();
+         if (bodyLength < 3 || offset + 8 + bodyLength > length) {
+            break;
+         }
+         if (record.length < bodyLength) {
+            record = new byte[bodyLength];
+         }
+         log.readFully(record, 0, bodyLength);
+         int sum = log.readInt();
+         crc.reset();
+         crc.update(record, 0, bodyLength);
+         if (sum != (int) crc.getValue()) {
+            break;
+         }
+         DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(record, 0, bodyLength));
+         byte op = in.readByte();
+         String uri = in.readUTF();
+         int dataOffset = 4 + bodyLength - in.available();
+         apply(op, uri, offset, bodyLength + 8, dataOffset);
+         offset += bodyLength + 8;
+      }
+
+      if (offset < length) {
+         if (verbose)
+            System.err.println(logFile + ": dropping " + (length - offset) +
+                               " bytes of incomplete records");
+         log.setLength(offset);
+      }
+   }
+
+   private boolean isWasteful() throws IOException {
+      long waste = log.length() - liveBytes;
+      return waste > 64 * 1024 && waste > liveBytes;
+   }
+
+   /*
+    * Rewrites the log with just the live records, parents before their
+    * children, and reopens it.
+    */
+   private void compact() throws IOException {
+      File tmpFile = new File(logFile.getPath() + ".tmp");
+      RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw");
+      try {
+         tmp.setLength(0);
+         copyTree(ROOT, tmp);
+      } finally {
+         tmp.close();
+      }
+      log.close();
+      log = null;
+      if (!tmpFile.renameTo(logFile)) {
+         // Keep the uncompacted log, which is still valid.
+         tmpFile.delete();
+      }
+      open();
+   }
+
+   private void copyTree(String uri, RandomAccessFile out) throws IOException {
+      Entry entry = (Entry) index.get(uri);
+      if (entry.recordLength > 0) {
+         byte[] record = new byte[entry.recordLength];
+         log.seek(entry.offset);
+         log.readFully(record);
+         out.write(record);
+      }
+      if (entry.isList) {
+         for (int i = 0; i < entry.children.size(); i++) {
+            copyTree((String) entry.children.get(i), out);
+         }
+      }
+   }
+
+   /*
+    * Data encoding: the format as an int, then
+    *    FORMAT_STRING        UTF-8 length as an int, then the bytes
+    *    FORMAT_INT           int
+    *    FORMAT_FLOAT         float
+    *    FORMAT_BOOLEAN       byte
+    *    FORMAT_BYTES         length as an int (-1 for null), then the bytes
+    *    FORMAT_SERIALIZABLE  VALUE_PROPERTIES, the number of keys, then each
+    *                         key and value encoded like FORMAT_STRING; or
+    *                         VALUE_OBJECT and the serialized object
+    *    FORMAT_UNKNOWN       nothing
+    * Strings, byte arrays and objects may be null, which is encoded as
+    * a length of -1 (FORMAT_SERIALIZABLE: VALUE_OBJECT and a null object).
+    */
+   static void encode(JUMPData data, DataOutputStream out) throws IOException {
+      int format = data.getFormat();
+      Object value = data.getValue();
+      out.writeInt(format);
+      switch (format) {
+         case JUMPData.FORMAT_STRING:
+            writeString((String) value, out);
+            break;
+         case JUMPData.FORMAT_INT:
+            out.writeInt(data.getIntValue());
+            break;
+         case JUMPData.FORMAT_FLOAT:
+            out.writeFloat(data.getFloatValue());
+            break;
+         case JUMPData.FORMAT_BOOLEAN:
+            out.writeBoolean(data.getBooleanValue());
+            break;
+         case JUMPData.FORMAT_BYTES:
+            byte[] bytes = (byte[]) value;
+            if (bytes == null) {
+               out.writeInt(-1);
+            } else {
+               out.writeInt(bytes.length);
+               out.write(bytes);
+            }
+            break;
+         case JUMPData.FORMAT_SERIALIZABLE:
+            if (value instanceof Properties) {
+               Properties prop = (Properties) value;
+               ArrayList keys = new ArrayList();
+               for (Enumeration e = prop.propertyNames(); e.hasMoreElements(); ) {
+                  keys.add(e.nextElement());
+               }
+               out.writeByte(VALUE_PROPERTIES);
+               out.writeInt(keys.size());
+               for (int i = 0; i < keys.size(); i++) {
+                  String key = (String) keys.get(i);
+                  writeString(key, out);
+                  writeString(prop.getProperty(key), out);
+               }
+            } else {
+               out.writeByte(VALUE_OBJECT);
+               ObjectOutputStream oout = new ObjectOutputStream(out);
+               oout.writeObject(value);
+               oout.flush();
+            }
+            break;
+         case JUMPData.FORMAT_UNKNOWN:
+            break;
+         default:
+            throw new IOException("Unknown JUMPData format " + format);
+      }
+   }
+
+   static JUMPData decode(byte[] raw) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+      int format = in.readInt();
+      Object value;
+      switch (format) {
+         case JUMPData.FORMAT_STRING:
+            value = readString(in);
+            break;
+         case JUMPData.FORMAT_INT:
+            value = new Integer(in.readInt());
+            break;
+         case JUMPData.FORMAT_FLOAT:
+            value = new Float(in.readFloat());
+            break;
+         case JUMPData.FORMAT_BOOLEAN:
+            value = in.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+            break;
+         case JUMPData.FORMAT_BYTES:
+            int length = in.readInt();
+            if (length < 0) {
+               value = null;
+            } else {
+               byte[] bytes = new byte[length];
+               in.readFully(bytes);
+               value = bytes;
+            }
+            break;
+         case JUMPData.FORMAT_SERIALIZABLE:
+            if (in.readByte() == VALUE_PROPERTIES) {
+               Properties prop = new Properties();
+               int count = in.readInt();
+               for (int i = 0; i < count; i++) {
+                  String key = readString(in);
+                  prop.setProperty(key, readString(in));
+               }
+               value = prop;
+            } else {
+               try {
+                  value = new ObjectInputStream(in).readObject();
+               } catch (ClassNotFoundException e) {
+                  throw new IOException("Cannot decode JUMPData: " + e);
+               }
+            }
+            break;
+         case JUMPData.FORMAT_UNKNOWN:
+            value = null;
+            break;
+         default:
+            throw new IOException("Unknown JUMPData format " + format);
+      }
+      return new JUMPData(value, format);
+   }
+
+   private static void writeString(String s, DataOutputStream out)
+      throws IOException {
+      if (s == null) {
+         out.writeInt(-1);
+         return;
+      }
+      byte[] utf = s.getBytes("UTF-8");
+      out.writeInt(utf.length);
+      out.write(utf);
+   }
+
+   private static String readString(DataInputStream in) throws IOException {
+      int length = in.readInt();
+      if (length < 0) {
+         return null;
+      }
+      byte[] utf = new byte[length];
+      in.readFully(utf);
+      return new String(utf, "UTF-8");
+   }
+
+   // Values a caller could change in place, which must not be shared
+   // through the cache.
+   private static boolean isMutable(JUMPData data) {
+      int format = data.getFormat();
+      return (format == JUMPData.FORMAT_BYTES && data.getValue() != null)
+         || (format == JUMPData.FORMAT_SERIALIZABLE
+             && !(data.getValue() instanceof String));
+   }
+
+   private void checkUri(String uri) {
+      if (!uri.startsWith(ROOT + "/") || uri.endsWith("/"))
+         throw new IllegalArgumentException("Malformed uri, " + uri);
+   }
+
+   private static String getParentUri(String uri) {
+      int slash = uri.lastIndexOf('/');
+      return slash <= 0 ? ROOT : uri.substring(0, slash);
+   }
+
+   private static String getNodeName(String uri) {
+      return uri.substring(uri.lastIndexOf('/') + 1);
+   }
+
+   class JUMPNodeDataImpl implements JUMPNode.Data {
+       JUMPData data;
+       String uri;
+
+       JUMPNodeDataImpl(String uri, JUMPData data) {
+          this.uri = uri;
+          this.data = data;
+       }
+
+       public boolean containsData() { return true; }
+       public String getName() { return getNodeName(uri); }
+       public String getURI() { return uri; }
+       public JUMPData getData() { return data; } 
+       public String toString() { 
+          return "JUMPNode.Data (" + uri + "," + data + ")"; 
+       }
+       public boolean equals(Object obj) {
+          if (!(obj instanceof JUMPNode.Data)) return false;
+          JUMPNode.Data other = (JUMPNode.Data) obj; 
+          return (uri.equals(other.getURI()) 
+                  && data.equals(other.getData()));
+       }
+    }
+
+    class JUMPNodeListImpl implements JUMPNode.List {
+       String uri;
+       JUMPNodeListImpl(String uri) {
+          this.uri = uri;
+       }
+       public boolean containsData() { return false; }
+       public String getName() { return getNodeName(uri); }
+       public String getURI() { return uri; }
+       public Iterator getChildren() { 
+          // A snapshot of the children as they are now, straight from
+          // the index.
+          ArrayList children = new ArrayList();
+          synchronized (LogStoreImpl.this) {
+             Entry entry = (Entry) index.get(uri);
+             if (entry != null) {
+                for (int i = 0; i < entry.children.size(); i++) {
+                   try {
+                      JUMPNode node =
+                         getNode((String) entry.children.get(i));
+                      if (node != null)
+                         children.add(node);
+                   } catch (IOException e) {
+                      if (verbose)
+                         System.err.println(e);
+                   }
+                }
+             }
+          }
+          return children.iterator();
+       }
+       public String toString() { 
+          return "JUMPNode.List (" + uri +")"; 
+       }
+       public boolean equals(Object obj) {
+          if (!(obj instanceof JUMPNode.List)) return false;
+          JUMPNode.List other = (JUMPNode.List) obj; 
+          return (uri.equals(other.getURI()));
+       }
+    }
+}
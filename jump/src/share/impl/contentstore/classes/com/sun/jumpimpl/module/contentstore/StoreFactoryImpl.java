@@ -67,7 +67,17 @@ public class StoreFactoryImpl extends JUMPStoreFactory {
 
         synchronized(this) {
            if (filestore == null) {
-              filestore = new FileStoreImpl();   
+              // contentstore.backend=log selects the single log file
+              // store, otherwise each node gets a file of its own.
+              Object backend = System.getProperty("contentstore.backend");
+              if (backend == null && initdata != null) {
+                 backend = initdata.get("contentstore.backend");
+              }
+              if ("log".equals(backend)) {
+                 filestore = new LogStoreImpl();
+              } else {
+                 filestore = new FileStoreImpl();   
+              }
               filestore.load(initdata);
            }
         }
@@ -38,6 +38,10 @@ import java.util.Vector;
  */
 
 public class BaseDownloadDescriptor extends JUMPDownloadDescriptor {
+
+    protected String checksumAlgorithm = null;
+
+    protected String checksum = null;
     
     /** Creates a new instance of BaseDownloadDescriptor */
     public BaseDownloadDescriptor(String schema, String source) {
@@ -111,6 +115,23 @@ public class BaseDownloadDescriptor extends JUMPDownloadDescriptor {
     public void setSource(String source) {
         this.source = source;
     }
+
+    /**
+     * Sets the digest the downloaded object must have, as a
+     * <code>MessageDigest</code> algorithm name and a hex string.
+     */
+    public void setChecksum(String algorithm, String checksum) {
+        this.checksumAlgorithm = algorithm;
+        this.checksum = checksum;
+    }
+
+    public String getChecksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
     
     /**
      * Check a provided URL or URI for valid syntax.
@@ -25,15 +25,25 @@
 package com.sun.jumpimpl.module.download;
 
 import com.sun.jump.module.download.*;
+import com.sun.jumpimpl.common.ThreadPool;
  
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.IOException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.AccessController;
+import java.security.MessageDigest;
 import java.util.Vector;
 
+import sun.security.action.GetIntegerAction;
+
 class DownloaderImpl implements JUMPDownloader {
 
     JUMPDownloadDescriptor descriptor;
@@ -54,10 +64,24 @@ class DownloaderImpl implements JUMPDownloader {
 
     JUMPDownloadProgressNotifier report = new JUMPDownloadProgressNotifier();
 
+    // A dropped connection is resumed with an HTTP Range request from
+    // the last byte the destination took, up to maxRetries times per
+    // connection.  With connections > 1, objects of at least
+    // 2 * minSegmentSize bytes are fetched as that many ranges at once.
+    int maxRetries = getIntProperty("jump.download.retries", 3);
+    int connections = getIntProperty("jump.download.connections", 1);
+    int minSegmentSize = getIntProperty("jump.download.segment", 64 * 1024);
+
     public DownloaderImpl( JUMPDownloadDescriptor descriptor ) {
         this.descriptor = descriptor;
     }
 
+    private static int getIntProperty(String key, int defaultValue) {
+        Integer value = (Integer) AccessController.doPrivileged(
+            new GetIntegerAction(key, defaultValue));
+        return value.intValue();
+    }
+
     public void setProgressListener(JUMPDownloadProgressListener listener) {
         report.setListener(listener);
     }
@@ -120,6 +144,7 @@ class DownloaderImpl implements JUMPDownloader {
 
         int gran = 0;
         int pct = 0;
+        Segment[] segments = null;
 
         try
         {
@@ -129,17 +154,46 @@ class DownloaderImpl implements JUMPDownloader {
             }
 
             URL objectUrl = new URL( encode(url) );
+            boolean isHttp = objectUrl.getProtocol().equals("http");
     
             if ( report != null )
             {
                 report.updatePercent(0);
             }
+
+            MessageDigest digest = null;
+            String checksum = null;
+            if ( descriptor instanceof BaseDownloadDescriptor )
+            {
+                BaseDownloadDescriptor d = (BaseDownloadDescriptor)descriptor;
+                checksum = d.getChecksum();
+                if ( checksum != null )
+                {
+                    digest = MessageDigest.getInstance(
+                                 d.getChecksumAlgorithm() );
+                }
+            }
+
+            // Split the object into ranges fetched over parallel
+            // connections if it is big enough.  The first range is
+            // streamed straight to the destination; the others are
+            // buffered and handed over in order once it is done.
+            int nSegments = 1;
+            if ( isHttp && size > 0 && connections > 1 )
+            {
+                nSegments = Math.min( connections,
+                                      size / Math.max(1, minSegmentSize) );
+                nSegments = Math.max( nSegments, 1 );
+            }
+            int firstEnd = ( nSegments > 1 ) ? size / nSegments : size;
             
-            URLConnection conn = objectUrl.openConnection();
+            URLConnection conn = openConnection( objectUrl, 0,
+                                     ( nSegments > 1 ) ? firstEnd : -1 );
             
-            if (objectUrl.getProtocol().equals("http") &&
-                ( ( HttpURLConnection )conn ).getResponseCode() !=
-                         HttpURLConnection.HTTP_OK )
+            int code = isHttp ? ( ( HttpURLConnection )conn ).getResponseCode()
+                              : HttpURLConnection.HTTP_OK;
+            if ( code != HttpURLConnection.HTTP_OK &&
+                 code != HttpURLConnection.HTTP_PARTIAL )
             {
                 if ( nfUri != null )
                 {
@@ -148,13 +202,22 @@ class DownloaderImpl implements JUMPDownloader {
                 }
                 
                 throw new JUMPDownloadException( "Http response is not OK: "+
-                             ( (HttpURLConnection )conn ).getResponseCode() );
+                             code );
+            }
+
+            if ( nSegments > 1 && code != HttpURLConnection.HTTP_PARTIAL )
+            {
+                // The server ignores ranges; take it all from here.
+                nSegments = 1;
+                firstEnd = size;
             }
     
             String mimeType = conn.getContentType();
     
             if (DownloadModuleFactoryImpl.verbose) {
                 System.err.println( "debug : download : mimetype is "+mimeType );
+                System.err.println( "debug : download : " + nSegments +
+                                    " connection(s)" );
             }
     
 /**
@@ -179,8 +242,23 @@ class DownloaderImpl implements JUMPDownloader {
 **                throw ee;
 **            }
 **/
+
+            if ( nSegments > 1 )
+            {
+                segments = new Segment[ nSegments - 1 ];
+                for ( int i = 1; i < nSegments; i++ )
+                {
+                    int from = size / nSegments * i;
+                    int to = ( i == nSegments - 1 ) ? size
+                                                     : size / nSegments * (i + 1);
+                    segments[i - 1] = new Segment( objectUrl, from, to );
+                    ThreadPool.getSharedPool().execute( Thread.NORM_PRIORITY,
+                                                        segments[i - 1] );
+                }
+            }
     
-            InputStream in = conn.getInputStream();
+            InputStream in = new DigestingInputStream( conn.getInputStream(),
+                                                       digest );
             store.start( objectUrl, mimeType );
     
             int bufferSize = store.getMaxChunkSize();
@@ -189,37 +267,91 @@ class DownloaderImpl implements JUMPDownloader {
                 bufferSize = 8192;
             }
     
-            byte [] data = new byte[ bufferSize ];
             int len = 0;
+            int retries = 0;
     
             while ( true )
             {
-                int wantread = size - len;
+                int wantread = firstEnd - len;
                 if ( size <=0 )
                 {
                     wantread = bufferSize;
                 }
+                else if ( wantread <= 0 )
+                {
+                    break;
+                }
     
                 if ( wantread > bufferSize )
                 {
                     wantread = bufferSize;
                 }
             
-                int chunk = store.receive( in, wantread );
+                int chunk;
+                IOException failure = null;
+                try
+                {
+                    chunk = store.receive( in, wantread );
+                }
+                catch ( IOException e )
+                {
+                    chunk = -1;
+                    failure = e;
+                }
+
+                if ( chunk <= 0 && !isCancelled && isHttp &&
+                     ( failure != null || ( size > 0 && len < firstEnd ) ) )
+                {
+                    // Lost the connection: pick up where the
+                    // destination left off.
+                    if ( retries++ >= maxRetries )
+                    {
+                        if ( failure != null )
+                        {
+                            throw failure;
+                        }
+                        break;
+                    }
+                    close( in );
+                    if (DownloadModuleFactoryImpl.verbose) {
+                        System.err.println( "debug : download : resuming at " +
+                                            len + ": " + failure );
+                    }
+                    in = new DigestingInputStream(
+                             openRange( objectUrl, len,
+                                        ( nSegments > 1 ) ? firstEnd : -1 ),
+                             digest );
+                    continue;
+                }
+                if ( failure != null )
+                {
+                    throw failure;
+                }
                 if ( chunk <= 0)
                 {
                     break;
                 }
                 len += chunk;
-    
-                // Report percentage complete, if appropriate.
-                if ( report != null && size != 0 )
+                pct = reportProgress( len, size, pct, gran );
+            }
+
+            if ( segments != null )
+            {
+                close( in );
+                for ( int i = 0; i < segments.length; i++ )
                 {
-                    int current_pct = len * 100 / size;
-                    if ( current_pct - pct > gran ) 
+                    in = new DigestingInputStream( new ByteArrayInputStream(
+                             segments[i].await() ), digest );
+                    while ( len < size )
                     {
-                        pct = current_pct;
-                        report.updatePercent( pct );
+                        int chunk = store.receive( in,
+                                        Math.min( bufferSize, size - len ) );
+                        if ( chunk <= 0 )
+                        {
+                            break;
+                        }
+                        len += chunk;
+                        pct = reportProgress( len, size, pct, gran );
                     }
                 }
             }
@@ -239,7 +371,7 @@ class DownloaderImpl implements JUMPDownloader {
                                         len + " bytes");
             }
     
-            if ( ( size > 0 ) && ( in.read() != -1 ) )
+            if ( ( size > 0 ) && ( segments == null ) && ( in.read() != -1 ) )
             {
                 if ( nfUri != null )
                 {
@@ -253,20 +385,30 @@ class DownloaderImpl implements JUMPDownloader {
                 throw new JUMPDownloadException( "Read past "+len+" bytes");
             }
 
+            if ( digest != null &&
+                 !checksum.equalsIgnoreCase( toHex( digest.digest() ) ) )
+            {
+                if ( nfUri != null )
+                {
+                    sendNotify( nfUri, ST_ATTRIBUTEMISMATCH,
+                                "Checksum mismatch" );
+                }
+                if ( report != null )
+                {
+                    report.downloadDone();
+                }
+                throw new JUMPDownloadException( "Checksum mismatch" );
+            }
+
             in.close();
             store.finish();
             in = null;
             if ( report != null )
             {
                 report.updatePercent(100);
-                try
-                {
-                    Thread.sleep(300);
-                }
-                catch ( Exception e )
-                {
-                    // eat the exception
-                }
+                // Let the listener show 100% for a moment, without
+                // holding up the download thread.
+                report.pause(300);
                 report.downloadDone();
             }
     
@@ -278,6 +420,13 @@ class DownloaderImpl implements JUMPDownloader {
             System.out.println( "download exception: " +
                                 e.getMessage() );
             e.printStackTrace();
+            if ( segments != null )
+            {
+                for ( int i = 0; i < segments.length; i++ )
+                {
+                    segments[i].cancel();
+                }
+            }
             if ( store != null )
             {
                 store.abort();
@@ -303,6 +452,250 @@ class DownloaderImpl implements JUMPDownloader {
         return true;
     }
 
+    private int reportProgress( int len, int size, int pct, int gran )
+    {
+        // Report percentage complete, if appropriate.
+        if ( report != null && size != 0 )
+        {
+            int current_pct = len * 100 / size;
+            if ( current_pct - pct > gran ) 
+            {
+                pct = current_pct;
+                report.updatePercent( pct );
+            }
+        }
+        return pct;
+    }
+
+    /*
+     * Opens url asking for bytes from..to-1, or from the end if to is
+     * -1.  Only sends a Range header when there is a range to ask for.
+     */
+    private URLConnection openConnection( URL url, int from, int to )
+        throws IOException
+    {
+        URLConnection conn = url.openConnection();
+        if ( from > 0 || to >= 0 )
+        {
+            conn.setRequestProperty( "Range", "bytes=" + from + "-" +
+                                     ( ( to >= 0 ) ? String.valueOf(to - 1)
+                                                   : "" ) );
+        }
+        return conn;
+    }
+
+    /*
+     * Returns a stream of the object starting at byte from (and ending
+     * before to, unless to is -1).  If the server ignores the Range
+     * header and sends the whole object, the bytes before from are
+     * skipped.
+     */
+    private InputStream openRange( URL url, int from, int to )
+        throws IOException
+    {
+        HttpURLConnection conn =
+            (HttpURLConnection)openConnection( url, from, to );
+        int code = conn.getResponseCode();
+        InputStream in = conn.getInputStream();
+        if ( code == HttpURLConnection.HTTP_PARTIAL )
+        {
+            return in;
+        }
+        if ( code != HttpURLConnection.HTTP_OK )
+        {
+            close( in );
+            throw new IOException( "Http response is not OK: " + code );
+        }
+        for ( long skip = from; skip > 0; )
+        {
+            long n = in.skip( skip );
+            if ( n <= 0 )
+            {
+                if ( in.read() < 0 )
+                {
+                    close( in );
+                    throw new EOFException( "Object ends before " + from );
+                }
+                n = 1;
+            }
+            skip -= n;
+        }
+        return in;
+    }
+
+    private static void close( InputStream in )
+    {
+        try
+        {
+            in.close();
+        }
+        catch ( IOException e )
+        {
+            // Nothing we can do.
+        }
+    }
+
+    private static String toHex( byte[] b )
+    {
+        StringBuffer sb = new StringBuffer( b.length * 2 );
+        for ( int i = 0; i < b.length; i++ )
+        {
+            sb.append( Character.forDigit( ( b[i] >> 4 ) & 0xf, 16 ) );
+            sb.append( Character.forDigit( b[i] & 0xf, 16 ) );
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Feeds everything read through it to a MessageDigest, if any, so
+     * the checksum is computed as the destination consumes the data.
+     */
+    static class DigestingInputStream extends FilterInputStream
+    {
+        private final MessageDigest digest;
+
+        DigestingInputStream( InputStream in, MessageDigest digest )
+        {
+            super( in );
+            this.digest = digest;
+        }
+
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if ( b >= 0 && digest != null )
+            {
+                digest.update( (byte)b );
+            }
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len ) throws IOException
+        {
+            int n = in.read( b, off, len );
+            if ( n > 0 && digest != null )
+            {
+                digest.update( b, off, n );
+            }
+            return n;
+        }
+
+        public long skip( long n ) throws IOException
+        {
+            // Skipped bytes would be missing from the digest.
+            byte[] b = new byte[ (int)Math.min( n, 4096 ) ];
+            int read = read( b, 0, b.length );
+            return ( read < 0 ) ? 0 : read;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+    }
+
+    /*
+     * Fetches bytes from..to-1 of the object into memory on a pool
+     * thread, reconnecting from where it stopped if the connection
+     * drops.
+     */
+    class Segment implements Runnable
+    {
+        private final URL url;
+        private final int from;
+        private final byte[] data;
+        private int filled = 0;
+        private boolean done = false;
+        private boolean cancelled = false;
+        private IOException failure = null;
+
+        Segment( URL url, int from, int to )
+        {
+            this.url = url;
+            this.from = from;
+            this.data = new byte[ to - from ];
+        }
+
+        public void run()
+        {
+            int retries = 0;
+            IOException lastFailure = null;
+            while ( filled < data.length && !isCancelled && !isSegmentCancelled() )
+            {
+                InputStream in = null;
+                try
+                {
+                    in = openRange( url, from + filled, from + data.length );
+                    while ( filled < data.length )
+                    {
+                        int n = in.read( data, filled, data.length - filled );
+                        if ( n <= 0 )
+                        {
+                            throw new EOFException( "Connection closed at " +
+                                                    ( from + filled ) );
+                        }
+                        filled += n;
+                    }
+                }
+                catch ( IOException e )
+                {
+                    lastFailure = e;
+                    if ( retries++ >= maxRetries )
+                    {
+                        break;
+                    }
+                }
+                finally
+                {
+                    if ( in != null )
+                    {
+                        close( in );
+                    }
+                }
+            }
+            synchronized ( this )
+            {
+                if ( filled < data.length )
+                {
+                    failure = ( lastFailure != null ) ? lastFailure
+                        : new IOException( "Download cancelled" );
+                }
+                done = true;
+                notifyAll();
+            }
+        }
+
+        synchronized void cancel()
+        {
+            cancelled = true;
+        }
+
+        private synchronized boolean isSegmentCancelled()
+        {
+            return cancelled;
+        }
+
+        synchronized byte[] await() throws IOException
+        {
+            while ( !done )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new InterruptedIOException();
+                }
+            }
+            if ( failure != null )
+            {
+                throw failure;
+            }
+            return data;
+        }
+    }
+
     public void cancel() {
         isCancelled = true;
         report.notifyCancelled();
@@ -325,10 +718,16 @@ class DownloaderImpl implements JUMPDownloader {
     }
 
 
+    /*
+     * Progress is reported to the listener from the shared ThreadPool,
+     * in order, so a slow listener never stalls the transfer.
+     */
     class JUMPDownloadProgressNotifier {
      
         JUMPDownloadProgressListener listener;
         int granularity = 10;
+        ThreadPool.SerialQueue events = new ThreadPool.SerialQueue(
+            ThreadPool.getSharedPool(), Thread.NORM_PRIORITY);
    
         public void setListener(JUMPDownloadProgressListener listener) {
            this.listener = listener;
@@ -344,20 +743,53 @@ class DownloaderImpl implements JUMPDownloader {
         }
   
         public void notifyCancelled() {
-           if (listener != null)
-              listener.downloadStarted();
+           final JUMPDownloadProgressListener l = listener;
+           if (l != null) {
+              events.execute(new Runnable() {
+                 public void run() {
+                    l.downloadStarted();
+                 }
+              });
+           }
         }
         
         public void downloadDone() {
-           if (listener != null)
-              listener.downloadCompleted();
+           final JUMPDownloadProgressListener l = listener;
+           if (l != null) {
+              events.execute(new Runnable() {
+                 public void run() {
+                    l.downloadCompleted();
+                 }
+              });
+           }
         }
-        public void updatePercent(int percent) {
+
+        public void updatePercent(final int percent) {
+           final JUMPDownloadProgressListener l = listener;
+           if (l != null) {
+              events.execute(new Runnable() {
+                 public void run() {
+                    if (percent == 0) {
+                       l.downloadStarted();
+                    } 
+                    l.dataDownloaded(percent);
+                 }
+              });
+           }
+        }
+
+        // Delays the events reported after this one.
+        public void pause(final long millis) {
            if (listener != null) {
-              if (percent == 0) {
-                  listener.downloadStarted();
-              } 
-              listener.dataDownloaded(percent);
+              events.execute(new Runnable() {
+                 public void run() {
+                    try {
+                       Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                       // eat the exception
+                    }
+                 }
+              });
            }
         }
     }
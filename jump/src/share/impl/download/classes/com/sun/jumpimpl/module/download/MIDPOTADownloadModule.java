@@ -165,6 +165,8 @@ implements JUMPDownloadModule {
                     d.setDescription(value);
                 } else if ("midlet-vendor".equals(name)) {
                     d.setVendor(value);
+                } else if ("midlet-jar-sha1".equals(name)) {
+                    d.setChecksum("SHA-1", value);
                 } else {
                     missed.put(name, value);
                 }
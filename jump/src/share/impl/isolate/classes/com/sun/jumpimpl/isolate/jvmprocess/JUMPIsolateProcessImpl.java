@@ -259,6 +259,7 @@ public class JUMPIsolateProcessImpl
             }
 
             in.getSender().sendResponseMessage(responseMessage);
+            responseMessage.release();
 
         } catch (Throwable e) {
             e.printStackTrace();
@@ -24,13 +24,8 @@
 
 package com.sun.jumpimpl.ixc;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
 import java.io.IOException;
+import java.io.ObjectInput;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -45,6 +40,8 @@ import java.security.PrivilegedActionException;
 import java.util.HashMap;
 import sun.security.action.GetIntegerAction;
 
+import com.sun.jumpimpl.common.ThreadPool;
+
 import javax.microedition.xlet.*;
 import javax.microedition.xlet.ixc.*;
 
@@ -56,7 +53,7 @@ import javax.microedition.xlet.ixc.*;
  * of the objects exported by this VM's xlet(s).
  */
    
-public class ConnectionReceiver implements Runnable {
+public class ConnectionReceiver implements Runnable, IxcChannel.Dispatcher {
 
    private static int execVMServicePort;
    private static boolean initialized = false;
@@ -150,29 +147,53 @@ public class ConnectionReceiver implements Runnable {
            });
 
         if (clientSocket != null) {
-           // Connected - execute the method invocation in this vm.
+           // Connected - the client VM keeps this connection open and
+           // sends all of its method invocations for this vm over it.
            if (debug) debugOut("Connected with " +  clientSocket);
-           Runnable executor = new RemoteMethodExecutor(clientSocket);
-           WorkerThreadPool.execute(Thread.NORM_PRIORITY, executor);
+           try {
+              IxcChannel.serve(clientSocket, this);
+           } catch (IOException e) {
+              e.printStackTrace();
+              try {
+                 clientSocket.close();
+              } catch (IOException ioe) {}
+           }
         }
       }
     }
 
-    // Handles each incoming connection request.
-    class RemoteMethodExecutor implements Runnable {
-       Socket clientSocket;
+    // Called by the IxcChannel reader thread for each incoming request.
+    public void dispatch(IxcChannel channel, int requestID, 
+                         IxcChannel.Frame request) {
+       RemoteMethodExecutor executor =
+          new RemoteMethodExecutor(channel, requestID, request);
+       try {
+          ThreadPool.getSharedPool().execute(Thread.NORM_PRIORITY, executor);
+       } catch (RuntimeException e) {
+          // No worker to run the request: fail it, not the channel.
+          executor.replyFailure(e);
+       }
+    }
 
-       public RemoteMethodExecutor(Socket s) {
-          clientSocket = s;
+    // Handles each incoming method invocation request.
+    class RemoteMethodExecutor implements Runnable {
+       IxcChannel channel;
+       int requestID;
+       IxcChannel.Frame request;
+
+       public RemoteMethodExecutor(IxcChannel channel, int requestID, 
+                                   IxcChannel.Frame request) {
+          this.channel = channel;
+          this.requestID = requestID;
+          this.request = request;
        }
   
        // Executed by the worker thread. 
        public void run() {
 
-          InputStream in = null;
-          OutputStream out = null;
-
           boolean isExecutiveIxcRegistry = false;
+          boolean replied = false;
+          IxcChannel.MessageBuffer reply = null;
 
           try {
 
@@ -182,14 +203,12 @@ public class ConnectionReceiver implements Runnable {
               * 2.The method ID (long).
               * 3.Parameters marshalled out (if needed)
               */
-             in = clientSocket.getInputStream();
-
-             DataInputStream din = new DataInputStream(in);
-             long objectID = din.readLong();
-             long methodID = din.readLong();
+             long objectID = request.readLong();
+             long methodID = request.readLong();
 
              Object    remoteObject = null;
-             Method    method = null;
+             RemoteObjectType type = null;
+             int       methodIndex = -1;
              Object    returnValue = null;
              boolean   hasExceptionThrown = false; 
 
@@ -213,10 +232,11 @@ public class ConnectionReceiver implements Runnable {
                    new StubException("Cannot find corresponding ExportedObject:" + objectID);
              } 
 
-             // Next, find the method 
+             // Next, find the method in the type's dispatch table
              if (remoteObject != null) {
-                method = exportedObject.findExportedMethod(methodID);
-                if (method == null) {
+                type = exportedObject.type;
+                methodIndex = type.indexOf(methodID);
+                if (methodIndex < 0) {
                    /* problem here */
                    hasExceptionThrown = true; 
                    returnValue = 
@@ -224,34 +244,45 @@ public class ConnectionReceiver implements Runnable {
                 } 
              }
  
-             if (debug) debugOut("Found corresponding method " + method);
+             if (debug && methodIndex >= 0) debugOut("Found corresponding method " + type.methods[methodIndex]);
 
              // If both object and method are found, read params and invoke
-             if (method != null) {
+             if (methodIndex >= 0) {
 
-                Class[]  paramTypes = method.getParameterTypes();
-                Object[] paramObjects = new Object[paramTypes.length];
+                Class[]  paramTypes = type.parameterTypes[methodIndex];
            
                 try {
+                   IxcInputStream oin = null;
                    if (paramTypes.length > 0) {
-           
-                      IxcInputStream oin = new IxcInputStream(in, 
+                      oin = request.openInput(
                                exportedObject.context, isExecutiveIxcRegistry);
-
-                      for (int i = 0; i < paramObjects.length; i++) {
-                         paramObjects[i] = oin.readObject();
-                         if (debug) debugOut("Read param " + i + " : " + paramObjects[i]);
-                      }
                    }
 
                    // Need to find out the client's AccessControlContext,
                    // so that the method invocation can happen in the proper
                    // security context.
                    AccessControlContext acc = AccessController.getContext();
-                   returnValue = invokeMethod(method, 
-                                              remoteObject, 
-                                              paramObjects, 
-                                              acc); 
+
+                   Skeleton skeleton = type.getSkeleton();
+                   if (skeleton != null) {
+                      // The skeleton reads the params itself.
+                      returnValue = invokeSkeleton(skeleton,
+                                                   methodIndex,
+                                                   remoteObject,
+                                                   oin,
+                                                   acc);
+                   } else {
+                      Object[] paramObjects = new Object[paramTypes.length];
+                      for (int i = 0; i < paramObjects.length; i++) {
+                         paramObjects[i] = TypeInfo.readValue(oin, paramTypes[i]);
+                         if (debug) debugOut("Read param " + i + " : " + paramObjects[i]);
+                      }
+
+                      returnValue = invokeMethod(type.methods[methodIndex], 
+                                                 remoteObject, 
+                                                 paramObjects, 
+                                                 acc); 
+                   }
 
                 } catch (StubException se) { // Error in importing parameters
                    hasExceptionThrown = true;
@@ -279,43 +310,88 @@ public class ConnectionReceiver implements Runnable {
              if (debug) debugOut("hasExceptionThrown = " + hasExceptionThrown);
              if (debug && hasExceptionThrown) debugOut("Exception: " + returnValue);
 
-             out = clientSocket.getOutputStream();
-
              /**
               * Invocation results are sent out in this order.
               * 1.Whether the method invocation ended abnormally (bool).
               * 2.Return value (In normal ending, object or NullObject
-              *   for null return, else the corresponding Throwable)
+              *   for null return, a primitive as raw data, or nothing
+              *   for void.  Else the corresponding Throwable)
               */
              
-             IxcOutputStream oout = new IxcOutputStream(out, 
-                                exportedObject.context, isExecutiveIxcRegistry);
+             reply = IxcChannel.MessageBuffer.acquire();
+             IxcOutputStream oout = reply.objectOutput( 
+                (exportedObject != null ? exportedObject.context : null),
+                isExecutiveIxcRegistry);
 
              oout.writeBoolean(hasExceptionThrown); 
-             oout.writeObject(returnValue);
+             if (hasExceptionThrown) {
+                oout.writeObject(returnValue);
+             } else {
+                TypeInfo.writeValue(oout, type.returnTypes[methodIndex], 
+                                    returnValue);
+             }
            
-             if (debug) debugOut("Done with this RMI, closing the output");
-             Thread.sleep(200);
+             if (debug) debugOut("Done with this RMI, sending the reply");
+
+             // A reply the caller would refuse fails this request only.
+             if (!IxcChannel.fits(reply)) {
+                throw new StubException("Reply too large: " + reply.size());
+             }
 
-             oout.flush();
-             in.close();
-             oout.close();
+             replied = true;
+             channel.reply(requestID, reply);
 
           } catch (Exception e) {
              System.out.println("Caught exception while processing method invocation"); 
              e.printStackTrace();
+             if (!replied) {
+                replyFailure(e);
+             }
+          } finally {
+             if (reply != null) {
+                reply.release();
+             }
           }
-  
+       }
+
+       // The caller is waiting on a shared connection, so it must get 
+       // a reply even if the request could not be processed at all.
+       private void replyFailure(Exception e) {
+          IxcChannel.MessageBuffer failure = IxcChannel.MessageBuffer.acquire();
           try {
-             clientSocket.shutdownInput();
-             clientSocket.shutdownOutput();
-             clientSocket.close();
-          } catch (Exception e) {
-             //e.printStackTrace();
+             IxcOutputStream oout = failure.objectOutput(null, true);
+             oout.writeBoolean(true); 
+             oout.writeObject(new StubException("Error in processing method invocation: " + e));
+             channel.reply(requestID, failure);
+          } catch (IOException ioe) {
+             // The connection is gone, and the caller with it.
+          } finally {
+             failure.release();
           }
        }
     }
 
+    private Object invokeSkeleton(final Skeleton skeleton,
+                                  final int methodIndex,
+                                  final Object remoteObject, 
+                                  final ObjectInput in, 
+                                  final AccessControlContext xletACC) 
+          throws Exception {
+  
+       try {
+          return AccessController.doPrivileged(
+             new PrivilegedExceptionAction() {
+                public Object run() throws Exception {
+                   return skeleton.dispatch(methodIndex, remoteObject, in);
+                }
+             }
+          , xletACC);
+       } catch (PrivilegedActionException e) {
+          // Thrown by the remote method, or in reading its params.
+          throw e.getException();
+       }
+    }
+
     private Object invokeMethod(final Method method, 
                                 final Object remoteObject, 
                                 final Object[] paramObjects, 
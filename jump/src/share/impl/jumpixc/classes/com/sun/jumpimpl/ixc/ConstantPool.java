@@ -149,6 +149,20 @@ class ConstantPool {
                 + "> not found in constant pool");
     }
 
+    int lookupIfMethod(String className, String name, String type) {
+        for (int i = 0; i < ifMethods.size(); i++) {
+            String[] el = (String[]) ifMethods.get(i);
+            if (className.equals(el[0]) && name.equals(el[1]) 
+		    && type.equals(el[2])) 
+	    {
+                return 1 + classes.size() + fields.size() + methods.size() + i;
+            }
+        }
+        throw new RuntimeException("Interface method <" + className + ". " +
+                name + " : " + type
+                + "> not found in constant pool");
+    }
+
     int lookupField(String className, String name, String type) {
         for (int i = 0; i < fields.size(); i++) {
             String[] el = (String[]) fields.get(i);
@@ -47,7 +47,7 @@ import javax.microedition.xlet.ixc.*;
 public class ImportedObject {
 
    static HashMap importedObjects = new HashMap();  // <XletContext, HashMap of RemoteRef, ImportedObj>
-   static HashMap typeByName = new HashMap(); // <Array of interface Names, stub>
+   static HashMap typeByName = new HashMap(); // <Array of interface Names, RemoteObjectType>
 
    private StubObject  stub;
 
@@ -63,19 +63,18 @@ public class ImportedObject {
           throws StubException {
   
       List interfaceNames = Arrays.asList(ref.interfaceNames);
-      Class stubClass;
+      RemoteObjectType roType;
 
       synchronized(typeByName) {
     
-         stubClass = (Class)typeByName.get(interfaceNames);
+         roType = (RemoteObjectType)typeByName.get(interfaceNames);
 
-         if (stubClass == null) {
+         if (roType == null) {
             ClassLoader xletLoader = context.getClassLoader(); 
   
             if (xletLoader == null)
                 throw new StubException("XletContext.getClassLoader() returns null");
   
-            RemoteObjectType roType;
             try {
                roType = new RemoteObjectType(ref.interfaceNames, xletLoader);
             } catch (RemoteException re) {
@@ -88,16 +87,16 @@ public class ImportedObject {
             checkForTheMethodsMatch(ref.methodIDs, roType.methodsByID.keySet()); 
             StubClassGenerator generator = 
                new StubClassGenerator(xletLoader);
-            stubClass = generator.generate(roType);
+            roType.stubClass = generator.generate(roType);
 
-            typeByName.put(interfaceNames, stubClass);
+            typeByName.put(interfaceNames, roType);
          }
       }
 
       // Stub class to be instanciated.
-      final Class stubClassF = stubClass;
+      final Class stubClassF = roType.stubClass;
 
-      //System.out.println("@@ Got remote class " + stubClass);
+      //System.out.println("@@ Got remote class " + stubClassF);
       final Class[] types = { Object.class, Object.class };
       final Object[] args = { ref, context };
 
@@ -124,6 +123,7 @@ public class ImportedObject {
       } 
 
       stub = (StubObject) returnValue;
+      stub.type = roType;
       //System.out.println("@@ Created object " + stub);
    }
 
@@ -0,0 +1,436 @@
+/*
+ * @(#)IxcChannel.java	1.1 06/08/10
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ *
+ */
+
+package com.sun.jumpimpl.ixc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import javax.microedition.xlet.XletContext;
+
+/*
+ * A persistent connection between this VM and the ConnectionReceiver
+ * of another VM, shared by all of the remote method invocations
+ * between the two.
+ *
+ * Every message travels as a frame: the request ID (int), the payload
+ * length (int) and the payload. The client side tags each request with
+ * a fresh request ID and the server side tags the reply with the same
+ * ID, so any number of calls can be outstanding on one connection and
+ * replies may come back in any order.
+ *
+ * A reader thread per connection only collects frames. Deserialization
+ * happens in the thread that owns the message (the calling thread for
+ * a reply, a worker thread for a request), since resolving a Remote
+ * object may itself need a remote call.
+ *
+ * Payloads are serialized through pooled MessageBuffers, each keeping
+ * its IxcOutputStream across messages. The stream is reset at the
+ * start of every message so that each frame can be read on its own.
+ */
+class IxcChannel implements Runnable {
+
+   /* Client side channels, <Integer port, IxcChannel> */
+   private static HashMap channels = new HashMap();
+
+   /* Stream header prepended to each payload on the reading side */
+   private static final byte[] STREAM_HEADER = {
+      (byte)(ObjectStreamConstants.STREAM_MAGIC >> 8),
+      (byte)ObjectStreamConstants.STREAM_MAGIC,
+      (byte)(ObjectStreamConstants.STREAM_VERSION >> 8),
+      (byte)ObjectStreamConstants.STREAM_VERSION
+   };
+
+   /* Largest payload accepted, so a corrupt length cannot exhaust memory */
+   private static final int MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+   private static boolean debug = false; // Enable/disable debug output
+
+   /*
+    * Receives the requests arriving on a server side channel.
+    */
+   interface Dispatcher {
+      void dispatch(IxcChannel channel, int requestID, Frame request);
+   }
+
+   private final Socket socket;
+   private final DataInputStream in;
+   private final DataOutputStream out;
+   private final Dispatcher dispatcher; // null on the client side
+   private final Integer port;          // null on the server side
+
+   /* Outstanding calls, <Integer requestID, Call> */
+   private final HashMap pending = new HashMap();
+   private int nextRequestID = 0;
+   private IOException failure = null;
+
+   private IxcChannel(Socket socket, Integer port, Dispatcher dispatcher)
+      throws IOException {
+      this.socket = socket;
+      this.port = port;
+      this.dispatcher = dispatcher;
+      socket.setTcpNoDelay(true);
+      in = new DataInputStream(
+         new BufferedInputStream(socket.getInputStream()));
+      out = new DataOutputStream(
+         new BufferedOutputStream(socket.getOutputStream()));
+
+      Thread t = new Thread(this, "IxcChannel-" +
+                            (port != null ? "client-" + port : "server"));
+      t.setDaemon(true);
+      t.start();
+   }
+
+   /*
+    * Returns the channel to the ConnectionReceiver listening on the
+    * given port, connecting to it first if necessary.
+    */
+   static IxcChannel getChannel(final int port) throws IOException {
+      final Integer key = new Integer(port);
+      synchronized (channels) {
+         IxcChannel c = (IxcChannel) channels.get(key);
+         if (c != null) {
+            return c;
+         }
+         try {
+            c = (IxcChannel) AccessController.doPrivileged(
+               new PrivilegedExceptionAction() {
+                  public Object run() throws IOException {
+                     Socket s = new Socket("localhost", port);
+                     return new IxcChannel(s, key, null);
+                  }
+               });
+         } catch (PrivilegedActionException pae) {
+            throw (IOException) pae.getException();
+         }
+         if (debug) debugOut("Connected to port " + port);
+         channels.put(key, c);
+         return c;
+      }
+   }
+
+   /*
+    * Starts serving requests from a connection accepted by the
+    * ConnectionReceiver.
+    */
+   static IxcChannel serve(Socket socket, Dispatcher dispatcher)
+      throws IOException {
+      return new IxcChannel(socket, null, dispatcher);
+   }
+
+   /*
+    * Sends a request and waits for its reply.
+    */
+   Frame call(MessageBuffer request) throws IOException {
+      // A request the peer would refuse fails alone, without the channel
+      checkSize(request);
+
+      Call call = new Call();
+      int requestID;
+      synchronized (pending) {
+         if (failure != null) {
+            throw failure;
+         }
+         requestID = nextRequestID++;
+         pending.put(new Integer(requestID), call);
+      }
+      try {
+         send(requestID, request);
+      } catch (IOException e) {
+         close(e);
+         throw e;
+      }
+      synchronized (call) {
+         while (call.reply == null && call.failure == null) {
+            try {
+               call.wait();
+            } catch (InterruptedException e) {
+               // ignore.
+            }
+         }
+      }
+      if (call.failure != null) {
+         throw call.failure;
+      }
+      return call.reply;
+   }
+
+   /*
+    * Sends the reply to a request received on this (server side) channel.
+    */
+   void reply(int requestID, MessageBuffer reply) throws IOException {
+      try {
+         send(requestID, reply);
+      } catch (IOException e) {
+         close(e);
+         throw e;
+      }
+   }
+
+   private void send(int requestID, MessageBuffer message)
+      throws IOException {
+      message.finish();
+      checkSize(message);
+      synchronized (out) {
+         out.writeInt(requestID);
+         out.writeInt(message.size());
+         message.writeTo(out);
+         out.flush();
+      }
+   }
+
+   /*
+    * Tells whether a message is small enough for the peer to accept.
+    * The message is finished, so nothing can be added to it afterwards.
+    */
+   static boolean fits(MessageBuffer message) throws IOException {
+      message.finish();
+      return message.size() <= MAX_FRAME_SIZE;
+   }
+
+   /*
+    * Rejects a message larger than the peer accepts.
+    */
+   private static void checkSize(MessageBuffer message) throws IOException {
+      if (!fits(message)) {
+         throw new IOException("IXC message too large: " + message.size());
+      }
+   }
+
+   /*
+    * The reader thread: collects frames until the connection fails.
+    */
+   public void run() {
+      try {
+         for (;;) {
+            int requestID = in.readInt();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+               throw new IOException("Bad IXC frame length: " + length);
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            Frame frame = new Frame(data);
+
+            if (dispatcher != null) {
+               try {
+                  dispatcher.dispatch(this, requestID, frame);
+               } catch (RuntimeException e) {
+                  // The caller of the request would wait for ever
+                  close(new IOException("IXC dispatch failed: " + e));
+                  return;
+               }
+               continue;
+            }
+            Call call;
+            synchronized (pending) {
+               call = (Call) pending.remove(new Integer(requestID));
+            }
+            if (call == null) {
+               if (debug) debugOut("Reply for unknown request " + requestID);
+               continue;
+            }
+            synchronized (call) {
+               call.reply = frame;
+               call.notifyAll();
+            }
+         }
+      } catch (EOFException e) {
+         close(new EOFException("IXC connection closed"));
+      } catch (IOException e) {
+         close(e);
+      }
+   }
+
+   /*
+    * Shuts the channel down, failing all outstanding calls. The next
+    * call to the same port opens a new channel.
+    */
+   private void close(IOException cause) {
+      if (debug) debugOut("Closing channel: " + cause);
+      if (port != null) {
+         synchronized (channels) {
+            if (channels.get(port) == this) {
+               channels.remove(port);
+            }
+         }
+      }
+      LinkedList calls = new LinkedList();
+      synchronized (pending) {
+         if (failure == null) {
+            failure = cause;
+         }
+         calls.addAll(pending.values());
+         pending.clear();
+      }
+      for (Iterator i = calls.iterator(); i.hasNext(); ) {
+         Call call = (Call) i.next();
+         synchronized (call) {
+            call.failure = cause;
+            call.notifyAll();
+         }
+      }
+      try {
+         socket.close();
+      } catch (IOException e) {}
+   }
+
+   private static void debugOut(String s) {
+      System.out.println("IxcChannel: " + s);
+   }
+
+   /*
+    * An outstanding call on a client side channel.
+    */
+   private static class Call {
+      Frame reply;
+      IOException failure;
+   }
+
+   /*
+    * A received message.
+    */
+   static class Frame {
+      private final byte[] data;
+      private int pos = 0;
+
+      Frame(byte[] data) {
+         this.data = data;
+      }
+
+      /* Reads a long written with MessageBuffer.writeLong() */
+      long readLong() throws IOException {
+         if (pos + 8 > data.length) {
+            throw new EOFException();
+         }
+         long v = 0;
+         for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (data[pos++] & 0xff);
+         }
+         return v;
+      }
+
+      /* Opens the serialized part of the message, after any longs */
+      IxcInputStream openInput(XletContext context, boolean isExecutiveVM)
+         throws IOException {
+         return new IxcInputStream(new SequenceInputStream(
+            new ByteArrayInputStream(STREAM_HEADER),
+            new ByteArrayInputStream(data, pos, data.length - pos)),
+            context, isExecutiveVM);
+      }
+   }
+
+   /*
+    * A message being composed: longs first, using writeLong(), then
+    * objects, using the stream returned by objectOutput().
+    */
+   static class MessageBuffer extends ByteArrayOutputStream {
+
+      /* Buffers kept for reuse, and the largest buffer worth keeping */
+      private static final int MAX_POOLED = 4;
+      private static final int MAX_POOLED_SIZE = 16 * 1024;
+      private static LinkedList pool = new LinkedList();
+
+      private IxcOutputStream oout;
+      private boolean started;
+      private boolean finished;
+
+      private MessageBuffer() {
+         super(512);
+      }
+
+      static MessageBuffer acquire() {
+         synchronized (pool) {
+            if (!pool.isEmpty()) {
+               return (MessageBuffer) pool.removeFirst();
+            }
+         }
+         return new MessageBuffer();
+      }
+
+      /*
+       * Returns this buffer to the pool. Buffers whose message could
+       * not be completed are dropped, as their stream may be unusable.
+       */
+      void release() {
+         if (!finished || buf.length > MAX_POOLED_SIZE) {
+            return;
+         }
+         reset();
+         started = false;
+         finished = false;
+         synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+               pool.addFirst(this);
+            }
+         }
+      }
+
+      void writeLong(long v) {
+         for (int shift = 56; shift >= 0; shift -= 8) {
+            write((int)(v >>> shift));
+         }
+      }
+
+      IxcOutputStream objectOutput(XletContext context, boolean isExecutiveVM)
+         throws IOException {
+         if (oout == null) {
+            int mark = count;
+            oout = new IxcOutputStream(this, context, isExecutiveVM);
+            oout.flush();
+            count = mark; // drop the stream header, see STREAM_HEADER
+         } else {
+            oout.setContext(context, isExecutiveVM);
+         }
+         oout.reset();
+         started = true;
+         return oout;
+      }
+
+      void finish() throws IOException {
+         if (started) {
+            oout.flush();
+         }
+         finished = true;
+      }
+   }
+}
@@ -42,6 +42,9 @@ public class IxcOutputStream extends ObjectOutputStream {
 
    private XletContext context;
 
+   /* Whether replaceObject() is enabled */
+   private boolean replacing = false;
+
    static private NullObject nullObject = new NullObject();
 
    IxcOutputStream(OutputStream out, XletContext context, boolean isExecutiveVM)
@@ -63,6 +66,25 @@ public class IxcOutputStream extends ObjectOutputStream {
                return null;
             }
          });
+         replacing = true;
+      }
+   }
+
+   /*
+    * Retargets this stream at another xlet's context. Used for streams
+    * that are kept across messages (see IxcChannel.MessageBuffer).
+    */
+   void setContext(XletContext context, boolean isExecutiveVM) {
+      this.context = context;
+      final boolean replace = !isExecutiveVM;
+      if (replace != replacing) {
+         AccessController.doPrivileged(new PrivilegedAction() {
+            public Object run() {
+               enableReplaceObject(replace);
+               return null;
+            }
+         });
+         replacing = replace;
       }
    }
 
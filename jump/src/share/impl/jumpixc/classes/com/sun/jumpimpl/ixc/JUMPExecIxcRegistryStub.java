@@ -41,6 +41,7 @@ public final class JUMPExecIxcRegistryStub extends StubObject
                                   implements JUMPExecIxcRegistryRemote {
 
     static RemoteRef thisRef;
+    static RemoteObjectType thisType;
     static HashMap methodIDsByName = new HashMap();
 
     static private boolean isInitialized = false;
@@ -56,6 +57,7 @@ public final class JUMPExecIxcRegistryStub extends StubObject
                               Utils.getMtaskServerID(),
                               type.getRemoteInterfaceNames(),
                               type.getMethodIDsAslongs());
+              thisType = type;
 
 
               Iterator iterator = type.methodsByID.keySet().iterator();
@@ -78,6 +80,7 @@ public final class JUMPExecIxcRegistryStub extends StubObject
     public JUMPExecIxcRegistryStub(XletContext context) {
         // Arguments are of RemoteRef and XletContext, for it's ClassLoader.
         super(initialize(), context);
+        type = thisType;
     }
 
     public long getMethodID(String s) {
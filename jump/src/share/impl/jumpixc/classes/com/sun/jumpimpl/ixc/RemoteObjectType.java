@@ -49,7 +49,27 @@ class RemoteObjectType {
    String[] classNames; // Names of the Classes in the above Class[] array.
    HashMap methodsByID; // All remote methods, by <MethodID, Method>
 
+   // The method dispatch table.  Remote methods are ordered by their
+   // method ID, so a method ID maps to an index into these arrays 
+   // (and to a case in the generated Skeleton) by a binary search.
+   long[] methodIDs;
+   Method[] methods;
+   Class[][] parameterTypes;
+   Class[] returnTypes;
+
+   // For an exported type, the loader of the remote object's class,
+   // which the Skeleton is defined in.
+   private ClassLoader loader; 
+   private Skeleton skeleton;
+   private boolean skeletonGenerated = false;
+
+   Class stubClass; // For an imported type, the generated stub class
+
+   private static boolean debug = false;
+
    public RemoteObjectType(Class remoteObjectClass) throws RemoteException { 
+      this.loader = remoteObjectClass.getClassLoader();
+
       // List is an ArrayList of interface classes
       this.remoteInterfaces = getRemoteInterfacesFor(remoteObjectClass);
 
@@ -84,6 +104,61 @@ class RemoteObjectType {
          Method m = methods[i];
          this.methodsByID.put(new Long(Utils.computeMethodHash(m)), m);
       }
+
+      this.methodIDs = getMethodIDsAslongs();
+      Arrays.sort(this.methodIDs);
+      this.methods = new Method[methodIDs.length];
+      this.parameterTypes = new Class[methodIDs.length][];
+      this.returnTypes = new Class[methodIDs.length];
+      for (int i = 0; i < methodIDs.length; i++) {
+         Method m = (Method) methodsByID.get(new Long(methodIDs[i]));
+         this.methods[i] = m;
+         this.parameterTypes[i] = m.getParameterTypes();
+         this.returnTypes[i] = m.getReturnType();
+      }
+   }
+
+   /*
+    * Returns the index of the method in the dispatch table,
+    * or -1 if this type has no such method.
+    */
+   int indexOf(long methodID) {
+      int low = 0;
+      int high = methodIDs.length - 1;
+      while (low <= high) {
+         int mid = (low + high) >>> 1;
+         long id = methodIDs[mid];
+         if (id < methodID) {
+            low = mid + 1;
+         } else if (id > methodID) {
+            high = mid - 1;
+         } else {
+            return mid;
+         }
+      }
+      return -1;
+   }
+
+   /*
+    * Returns the generated Skeleton for this exported type, or null
+    * if one could not be generated, in which case the caller has to 
+    * fall back to reflection.
+    */
+   synchronized Skeleton getSkeleton() {
+      if (!skeletonGenerated) {
+         skeletonGenerated = true;
+         try {
+            ClassLoader l = loader;
+            if (l == null) {
+               l = ClassLoader.getSystemClassLoader();
+            }
+            skeleton = new StubClassGenerator(l).generateSkeleton(this);
+         } catch (StubException e) {
+            if (debug) System.out.println("Skeleton not generated for " 
+                         + Arrays.asList(classNames) + ": " + e);
+         }
+      }
+      return skeleton;
    }
   
    public String[] getRemoteInterfaceNames() {
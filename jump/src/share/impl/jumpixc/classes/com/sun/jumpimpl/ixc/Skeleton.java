@@ -0,0 +1,92 @@
+/*
+ * %W% %E%
+ *
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ *
+ */
+
+package com.sun.jumpimpl.ixc;
+
+import java.io.ObjectInput;
+
+/* 
+ * The superclass of a generated skeleton.
+ * StubClassGenerator generates one skeleton class per exported
+ * RemoteObjectType.  dispatch(int, Object, ObjectInput) switches on 
+ * the method's index in the type's dispatch table, reads the parameters
+ * straight off the stream and calls the remote method on the target, 
+ * so no reflection or boxing of primitive arguments is involved.
+ */
+
+public abstract class Skeleton {
+
+    protected Skeleton() {
+    }
+
+    /**
+     * Invokes remote method number <code>methodIndex</code> of
+     * the RemoteObjectType on <code>target</code>, reading its
+     * parameters from <code>in</code>.  Exceptions thrown by the
+     * remote method are passed through as is.
+     *
+     * @return the return value, boxed if primitive, or null for void.
+     */
+    public abstract Object dispatch(int methodIndex, Object target, 
+                                    ObjectInput in) throws Exception;
+
+    //
+    // Boxing of primitive return values, called from the generated code.
+    //
+
+    protected static Object box(boolean value) {
+       return value ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    protected static Object box(byte value) {
+       return new Byte(value);
+    }
+
+    protected static Object box(char value) {
+       return new Character(value);
+    }
+
+    protected static Object box(short value) {
+       return new Short(value);
+    }
+
+    protected static Object box(int value) {
+       return new Integer(value);
+    }
+
+    protected static Object box(long value) {
+       return new Long(value);
+    }
+
+    protected static Object box(float value) {
+       return new Float(value);
+    }
+
+    protected static Object box(double value) {
+       return new Double(value);
+    }
+}
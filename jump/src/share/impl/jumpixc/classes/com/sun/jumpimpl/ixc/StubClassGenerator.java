@@ -30,6 +30,7 @@ package com.sun.jumpimpl.ixc;
 import javax.microedition.xlet.ixc.StubException;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.AccessibleObject;
 import java.security.AccessController;
 import java.io.ByteArrayOutputStream;
@@ -82,6 +83,30 @@ import java.util.Iterator;
  *  }
  *
  * </pre>
+ * <p>
+ * For an exported remote object, generateSkeleton() generates the
+ * server side counterpart, a Skeleton that dispatches on the index
+ * of the method in RemoteObjectType's dispatch table.  For UserIF it
+ * is equivalent to:
+ * <pre>
+ *
+ *  public final class SkeletonClass_skel7 
+ *              extends com.sun.jumpimpl.ixc.Skeleton {
+ *
+ *      public Object dispatch(int methodIndex, Object target,
+ *                             java.io.ObjectInput in) throws Exception {
+ *          switch (methodIndex) {
+ *          case 0:
+ *              ((UserIF) target).frob((Something) in.readObject());
+ *              return null;
+ *          case 1:
+ *              return box(((UserIF) target).glorp(in.readFloat()));
+ *          }
+ *          throw new IllegalArgumentException();
+ *      }
+ *  }
+ *
+ * </pre>
  **/
 
  // @@ Add the synthetic attribute
@@ -104,6 +129,8 @@ public class StubClassGenerator {
 	// spec change), then this being static will prevent
 	// a collision.
 
+    private static int nextSkeletonNumber = 1;
+
     public StubClassGenerator(ClassLoader xletClassLoader) {
 	this.xletClassLoader = xletClassLoader;
     }
@@ -118,8 +145,11 @@ public class StubClassGenerator {
 	} catch (IOException ex) {
 	    throw new StubException("error generating stub", ex);
 	}
-	final byte[] classBytes = tmp;
+	return defineClass(stubName, tmp);
+    }
 
+    private Class defineClass(final String stubName, final byte[] classBytes)
+	    throws StubException {
 	java.lang.reflect.Method tmp2 = null;
 	try {
 	    tmp2 = ClassLoader.class.getDeclaredMethod("defineClass",
@@ -180,6 +210,40 @@ public class StubClassGenerator {
     }
 
 
+    /**
+     * Generates and instantiates the Skeleton for an exported type.
+     **/
+    Skeleton generateSkeleton(RemoteObjectType type) throws StubException {
+	String skeletonName;
+	synchronized (StubClassGenerator.class) {
+	    skeletonName = "SkeletonClass_skel" + (nextSkeletonNumber++);
+	}
+	byte[] classBytes = null;
+	try {
+	    classBytes = generateSkeletonBytes(skeletonName, type);
+	} catch (IOException ex) {
+	    throw new StubException("error generating skeleton", ex);
+	}
+	final Class skeletonClass = defineClass(skeletonName, classBytes);
+
+	Object result = AccessController.doPrivileged(new PrivilegedAction() {
+	    public Object run() {
+		try {
+		    return skeletonClass.newInstance();
+		} catch (Throwable t) {
+		    return t;
+		}
+	    }
+	});
+	if (result instanceof Skeleton) {
+	    return (Skeleton) result;
+	} else if (result instanceof Exception) {
+            throw new StubException("getSkeleton() failed", (Exception) result);
+	} else {
+            throw new StubException("getSkeleton() failed:  " + result);
+	}
+    }
+
     private String descriptorFor(Method m) {
         String descriptor = "(";
         Class[] params = m.getParameterTypes();
@@ -560,4 +624,215 @@ public class StubClassGenerator {
 **/
         return bos.toByteArray();
     }
+
+    //
+    // The skeleton has a single dispatch method, a tableswitch on the
+    // method index with one case per remote method of the type.  Each
+    // case reads the parameters off the ObjectInput with the matching
+    // readXxx() method, invokes the interface method on the target and
+    // returns the (boxed) result.
+    //
+    private byte[] generateSkeletonBytes(String skeletonName, 
+                                         RemoteObjectType type) 
+	    throws IOException, StubException
+    {
+        Method[] remoteMethods = type.methods;
+        if (remoteMethods.length == 0) {
+            throw new StubException("no remote methods to dispatch");
+        }
+
+        ConstantPool cp = new ConstantPool();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        cp.addString("Code");		// For the code attribute
+        String skeleton = "com/sun/jumpimpl/ixc/Skeleton";
+        String objectInput = "java/io/ObjectInput";
+        String illegalArgument = "java/lang/IllegalArgumentException";
+        String dispatchDescriptor = 
+		"(ILjava/lang/Object;Ljava/io/ObjectInput;)Ljava/lang/Object;";
+        cp.addClass(skeletonName);
+        cp.addClass(skeleton);
+        cp.addClass(objectInput);
+        cp.addClass(illegalArgument);
+        cp.addString("<init>");
+        cp.addString("dispatch");
+        cp.addString(dispatchDescriptor);
+        cp.addMethodReference(skeleton, "<init>", "()V");
+        cp.addMethodReference(illegalArgument, "<init>", "()V");
+
+        HashSet refsDone = new HashSet();
+        int maxStack = 2;
+        for (int i = 0; i < remoteMethods.length; i++) {
+            Method m = remoteMethods[i];
+            Class declaring = m.getDeclaringClass();
+            checkAccessible(declaring);
+            String declNm = declaring.getName().replace('.', '/');
+            cp.addClass(declNm);
+            cp.addIfMethodReference(declNm, m.getName(), descriptorFor(m));
+
+            Class[] params = type.parameterTypes[i];
+            int slots = 0;
+            for (int j = 0; j < params.length; j++) {
+                String read = TypeInfo.readMethodFor(params[j]);
+                String readDesc = "()" + (params[j].isPrimitive() 
+                    ? TypeInfo.descriptorFor(params[j]) 
+                    : "Ljava/lang/Object;");
+                if (refsDone.add(read)) {
+                    cp.addIfMethodReference(objectInput, read, readDesc);
+                }
+                if (!params[j].isPrimitive() 
+                        && !Object.class.equals(params[j])) {
+                    checkAccessible(params[j]);
+                    cp.addClass(params[j].getName().replace('.', '/'));
+                }
+                slots += TypeInfo.localSlotsFor(params[j]);
+            }
+            maxStack = Math.max(maxStack, slots + 2);
+
+            Class rt = type.returnTypes[i];
+            if (rt.isPrimitive() && !Void.TYPE.equals(rt)) {
+                String boxDesc = "(" + TypeInfo.descriptorFor(rt) 
+                    + ")Ljava/lang/Object;";
+                if (refsDone.add(boxDesc)) {
+                    cp.addMethodReference(skeleton, "box", boxDesc);
+                }
+            }
+        }
+
+        dos.writeInt(0xcafebabe);
+        dos.writeShort(0x3a);	// Minor version, JDK 1.1.3
+        dos.writeShort(0x2d);	// Major version, JDK 1.1.3
+        cp.write(dos);		// Constant pool
+        dos.writeShort(0x31);	// ACC_SUPER | ACC_PUBLIC | ACC_FINAL
+        dos.writeShort(cp.lookupClass(skeletonName));	// this_class
+        dos.writeShort(cp.lookupClass(skeleton));		// super_class
+        dos.writeShort(0);	// Interfaces
+        dos.writeShort(0);	// Fields
+        dos.writeShort(2);	// Methods: constructor and dispatch
+
+	// First, the constructor:
+        {
+            dos.writeShort(0x1);		// PUBLIC
+            dos.writeShort(cp.lookupString("<init>"));
+            dos.writeShort(cp.lookupString("()V"));
+            dos.writeShort(1);	// 1 attribute, the Code attribute
+            dos.writeShort(cp.lookupString("Code"));
+            int codeLen = 5;
+            dos.writeInt(12 + codeLen);	// attribute_length
+            dos.writeShort(1);		// max_stack
+            dos.writeShort(1);		// max_locals
+            dos.writeInt(codeLen);
+            dos.write(0x2a);	// aload_0
+            dos.write(0xb7);	// invokespecial, super()
+            dos.writeShort(cp.lookupMethod(skeleton, "<init>", "()V"));
+            dos.write(0xb1);	// return
+            dos.writeShort(0);		// exception_table_length
+            dos.writeShort(0);		// attribute_count
+        }
+
+        // The cases of the switch, generated first so that their
+        // offsets are known when the tableswitch is written.
+        ByteArrayOutputStream casesBos = new ByteArrayOutputStream();
+        DataOutputStream cases = new DataOutputStream(casesBos);
+        int[] caseStart = new int[remoteMethods.length];
+        for (int i = 0; i < remoteMethods.length; i++) {
+            Method m = remoteMethods[i];
+            String declNm = m.getDeclaringClass().getName().replace('.', '/');
+            Class[] params = type.parameterTypes[i];
+            caseStart[i] = cases.size();
+
+            cases.write(0x2c);	// aload_2, the target
+            cases.write(0xc0);	// checkcast
+            cases.writeShort(cp.lookupClass(declNm));
+            int slots = 1;
+            for (int j = 0; j < params.length; j++) {
+                cases.write(0x2d);	// aload_3, the ObjectInput
+                String read = TypeInfo.readMethodFor(params[j]);
+                String readDesc = "()" + (params[j].isPrimitive() 
+                    ? TypeInfo.descriptorFor(params[j]) 
+                    : "Ljava/lang/Object;");
+                cases.write(0xb9);	// invokeinterface
+                cases.writeShort(cp.lookupIfMethod(objectInput, read, 
+                                                   readDesc));
+                cases.write(1);
+                cases.write(0);
+                if (!params[j].isPrimitive() 
+                        && !Object.class.equals(params[j])) {
+                    cases.write(0xc0);	// checkcast
+                    cases.writeShort(cp.lookupClass(
+                        params[j].getName().replace('.', '/')));
+                }
+                slots += TypeInfo.localSlotsFor(params[j]);
+            }
+            cases.write(0xb9);	// invokeinterface, the remote method
+            cases.writeShort(cp.lookupIfMethod(declNm, m.getName(), 
+                                               descriptorFor(m)));
+            cases.write(slots);
+            cases.write(0);
+
+            Class rt = type.returnTypes[i];
+            if (Void.TYPE.equals(rt)) {
+                cases.write(0x01);	// aconst_null
+            } else if (rt.isPrimitive()) {
+                cases.write(0xb8);	// invokestatic, Skeleton.box()
+                cases.writeShort(cp.lookupMethod(skeleton, "box", 
+                    "(" + TypeInfo.descriptorFor(rt) + ")Ljava/lang/Object;"));
+            }
+            cases.write(0xb0);	// areturn
+        }
+        int defaultStart = cases.size();
+        cases.write(0xbb);	// new
+        cases.writeShort(cp.lookupClass(illegalArgument));
+        cases.write(0x59);	// dup
+        cases.write(0xb7);	// invokespecial
+        cases.writeShort(cp.lookupMethod(illegalArgument, "<init>", "()V"));
+        cases.write(0xbf);	// athrow
+        cases.close();
+
+        // iload_1 and tableswitch at pc 1, padded so that the default
+        // offset starts at pc 4; offsets are relative to the tableswitch.
+        int switchLen = 3 + 12 + (4 * remoteMethods.length);
+        int codeLen = 1 + switchLen + casesBos.size();
+        {
+            dos.writeShort(0x1 | 0x10);		// PUBLIC | FINAL
+            dos.writeShort(cp.lookupString("dispatch"));
+            dos.writeShort(cp.lookupString(dispatchDescriptor));
+            dos.writeShort(1);	// 1 attribute, the Code attribute
+            dos.writeShort(cp.lookupString("Code"));
+            dos.writeInt(12 + codeLen);	// attribute_length
+            dos.writeShort(maxStack);
+            dos.writeShort(4);		// max_locals: this, index, target, in
+            dos.writeInt(codeLen);
+            dos.write(0x1b);	// iload_1
+            dos.write(0xaa);	// tableswitch
+            dos.write(0);	// padding
+            dos.write(0);
+            dos.writeInt(switchLen + defaultStart);
+            dos.writeInt(0);
+            dos.writeInt(remoteMethods.length - 1);
+            for (int i = 0; i < remoteMethods.length; i++) {
+                dos.writeInt(switchLen + caseStart[i]);
+            }
+            casesBos.writeTo(dos);
+            dos.writeShort(0);		// exception_table_length
+            dos.writeShort(0);		// attribute_count
+        }
+        // Attributes (of ClassFile):
+        dos.writeShort(0);
+        dos.close();
+        return bos.toByteArray();
+    }
+
+    //
+    // The skeleton is defined in the unnamed package, so it can only
+    // name public types.
+    //
+    private void checkAccessible(Class c) throws StubException {
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        if (!c.isPrimitive() && !Modifier.isPublic(c.getModifiers())) {
+            throw new StubException("not a public type: " + c.getName());
+        }
+    }
 }
@@ -27,21 +27,12 @@
 package com.sun.jumpimpl.ixc;
 
 import java.io.IOException;
-import java.io.DataOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.EOFException;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.UnknownHostException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.security.PrivilegedAction;
-import java.security.AccessController;
 
 import javax.microedition.xlet.XletContext;
+import javax.microedition.xlet.ixc.StubException;
 
 /* 
  * The superclass of an generated stub.
@@ -64,6 +55,13 @@ public class StubObject {
      */
     final RemoteRef remoteRef;
 
+    /**
+     * The remote type of this stub, for the declared parameter and 
+     * return types of the remote methods.  Set by whoever creates 
+     * the stub, before it is handed out.
+     */
+    RemoteObjectType type;
+
     /* Set to true for debugging info */
     private static boolean debug = false;
 
@@ -74,6 +72,7 @@ public class StubObject {
   
     //    
     // Execute a remote method.  
+    // The call goes over the shared IxcChannel to the exporting VM.
     //
     protected final Object
     com_sun_xlet_execute(long methodHash, Object[] args) 
@@ -82,67 +81,51 @@ public class StubObject {
        Object returnValue = null;
        Exception exceptionValue = null;
 
-       InputStream in = null;
-       OutputStream out = null;
-       Socket clientSocket = null;
+       IxcChannel.MessageBuffer request = IxcChannel.MessageBuffer.acquire();
 
        try {
-  
-         Object obj = AccessController.doPrivileged(
-            new PrivilegedAction() {
-               public Object run() { 
-                  try {
-                     Socket s= new Socket("localhost", remoteRef.getPortID());
-                     s.setReuseAddress(true);
-                     return s;
-                  } catch (UnknownHostException uhe) {
-                     return uhe; 
-                  } catch (IOException ioe) { 
-                     return ioe;
-                  }
-               }
-            });
-
-         if (obj instanceof Exception) 
-            throw (Exception) obj;
-
-         clientSocket = (Socket)obj;
-
-         // connnected, start communicating!
-
-         out = clientSocket.getOutputStream();
-         in  = clientSocket.getInputStream();
+         IxcChannel channel = IxcChannel.getChannel(remoteRef.getPortID());
+
+         int index = type.indexOf(methodHash);
+         if (index < 0) {
+            throw new StubException("Unknown remote method: " + methodHash);
+         }
+         Class[] paramTypes = type.parameterTypes[index];
 
          if (debug) debugOut("Client writing out: " + remoteRef.getObjectID() + "," + methodHash);
 
-         DataOutputStream dout = new DataOutputStream(out);
-         dout.writeLong(remoteRef.getObjectID());
-         dout.writeLong(methodHash);
+         /**
+          * Invocation request goes out in this order.
+          * 1.The object ID (long).
+          * 2.The method ID (long).
+          * 3.Parameters marshalled out (if needed), primitives as raw data
+          */
+         request.writeLong(remoteRef.getObjectID());
+         request.writeLong(methodHash);
 
-         IxcOutputStream oout = new IxcOutputStream(out, context, false);
+         IxcOutputStream oout = request.objectOutput(context, false);
 
          for (int i = 0; i < args.length; i++) {
-            oout.writeObject(args[i]);
+            TypeInfo.writeValue(oout, paramTypes[i], args[i]);
          }
          if (debug) debugOut("Stub done sending data, waiting for reply");
 
-         IxcInputStream oin = new IxcInputStream(in, context, false);
+         IxcChannel.Frame reply = channel.call(request);
+         IxcInputStream oin = reply.openInput(context, false);
 
          boolean didExceptionHappen = oin.readBoolean();
          if (!didExceptionHappen) {
-            returnValue = oin.readObject();
+            returnValue = TypeInfo.readValue(oin, type.returnTypes[index]);
          } else {
             exceptionValue = (Exception) oin.readObject();
          }
 
-         if (debug) debugOut("Done with reading result, closing, returning " + returnValue);
+         if (debug) debugOut("Done with reading result, returning " + returnValue);
 
          if (debug && exceptionValue != null)
             exceptionValue.printStackTrace();
 
          oin.close();
-         oout.flush();
-         oout.close();
       } catch (RemoteException re) { 
          throw re;
       } catch (EOFException eofe) { 
@@ -154,14 +137,10 @@ public class StubObject {
       } catch (Exception e) { 
          if (debug) debugOut("General Exception in stub_execute(): " + e);
          throw new RemoteException("Error in remote method invocation", e);
+      } finally {
+         request.release();
       }
 
-      try {
-         clientSocket.shutdownInput();
-         clientSocket.shutdownOutput();
-         clientSocket.close();
-      } catch (IOException e) {}
-
       if (exceptionValue != null) {
          throw exceptionValue;
       }
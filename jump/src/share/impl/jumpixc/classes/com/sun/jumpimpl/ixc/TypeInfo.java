@@ -26,6 +26,9 @@
 
 package com.sun.jumpimpl.ixc;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 
 /**
@@ -98,4 +101,74 @@ class TypeInfo {
             return 1;
         }
     }
+
+    /**
+     * Writes out a remote method parameter or return value of the
+     * given declared type.  Primitive values go out as raw data, not
+     * as serialized wrapper objects, so that the receiving side can 
+     * read them without the wrapper's class descriptor.  Nothing is
+     * written for void.
+     **/
+    static void writeValue(ObjectOutput out, Class type, Object value) 
+        throws IOException 
+    {
+        if (!type.isPrimitive()) {
+            out.writeObject(value);
+            return;
+        }
+        switch (get(type).typeDescriptor.charAt(0)) {
+            case 'Z': out.writeBoolean(((Boolean) value).booleanValue()); break;
+            case 'B': out.writeByte(((Byte) value).byteValue()); break;
+            case 'C': out.writeChar(((Character) value).charValue()); break;
+            case 'S': out.writeShort(((Short) value).shortValue()); break;
+            case 'I': out.writeInt(((Integer) value).intValue()); break;
+            case 'J': out.writeLong(((Long) value).longValue()); break;
+            case 'F': out.writeFloat(((Float) value).floatValue()); break;
+            case 'D': out.writeDouble(((Double) value).doubleValue()); break;
+            default: break; // void
+        }
+    }
+
+    /**
+     * Reads back a value written by writeValue(), boxing primitives.
+     **/
+    static Object readValue(ObjectInput in, Class type) 
+        throws IOException, ClassNotFoundException 
+    {
+        if (!type.isPrimitive()) {
+            return in.readObject();
+        }
+        switch (get(type).typeDescriptor.charAt(0)) {
+            case 'Z': return in.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+            case 'B': return new Byte(in.readByte());
+            case 'C': return new Character(in.readChar());
+            case 'S': return new Short(in.readShort());
+            case 'I': return new Integer(in.readInt());
+            case 'J': return new Long(in.readLong());
+            case 'F': return new Float(in.readFloat());
+            case 'D': return new Double(in.readDouble());
+            default: return null; // void
+        }
+    }
+
+    /**
+     * The ObjectInput method used by a generated skeleton to read
+     * a parameter of this type directly off the stream.
+     **/
+    static String readMethodFor(Class type) {
+        if (!type.isPrimitive()) {
+            return "readObject";
+        }
+        switch (get(type).typeDescriptor.charAt(0)) {
+            case 'Z': return "readBoolean";
+            case 'B': return "readByte";
+            case 'C': return "readChar";
+            case 'S': return "readShort";
+            case 'I': return "readInt";
+            case 'J': return "readLong";
+            case 'F': return "readFloat";
+            case 'D': return "readDouble";
+            default: return null;
+        }
+    }
 }
@@ -48,7 +48,15 @@ public class JUMPMessageQueueInterfaceImpl extends JUMPMessageQueueInterface {
     public native int getDataOffset();
 
     /**
-     * Send an asynchronous message to process pid
+     * Get the size of the OS message buffer, which is the largest
+     * message that can be sent and the smallest array that
+     * receiveMessageInto() and sendMessageSync() can receive into.
+     */
+    public native int getMessageBufferSize();
+
+    /**
+     * Send an asynchronous message to process pid. Only the first
+     * length bytes of message are sent.
      *
      * @throws JUMPTargetNonexistentException
      * @throws JUMPWouldBlockException
@@ -56,6 +64,7 @@ public class JUMPMessageQueueInterfaceImpl extends JUMPMessageQueueInterface {
      */
     public native void sendMessageAsync(int pid,
 					byte[] message,
+					int length,
 					boolean isResponse)
 	throws IOException;
     
@@ -68,22 +77,25 @@ public class JUMPMessageQueueInterfaceImpl extends JUMPMessageQueueInterface {
      * @throws IOException
      */
     public native void sendMessageResponse(byte[] message,
+					   int length,
 					   boolean isResponse)
 	throws IOException;
     
     /**
-     * Send a synchronous message and get byte[] back from which
-     * we can construct a JUMPMessage.
+     * Send a synchronous message and receive the response into reply,
+     * from which we can construct a JUMPMessage.
      *
      * @throws JUMPTimedOutException
      * @throws JUMPTargetNonexistentException
      * @throws JUMPWouldBlockException
      * @throws IOException
      */
-    public native byte[] sendMessageSync(int pid,
-					 byte[] message,
-					 boolean isResponse,
-					 long timeout)
+    public native void sendMessageSync(int pid,
+				       byte[] message,
+				       int length,
+				       boolean isResponse,
+				       long timeout,
+				       byte[] reply)
 	throws JUMPTimedOutException, IOException;
 
     /**
@@ -95,6 +107,19 @@ public class JUMPMessageQueueInterfaceImpl extends JUMPMessageQueueInterface {
 					long timeout) 
 	throws JUMPTimedOutException, IOException;
 
+    /**
+     * Like receiveMessage(), but receives into the caller's buffer,
+     * which must be at least getMessageBufferSize() bytes long.
+     *
+     * @throws JUMPTimedOutException
+     * @throws JUMPUnblockedException
+     * @throws IOException
+     */
+    public native void receiveMessageInto(String messageType,
+					  long timeout,
+					  byte[] buffer) 
+	throws JUMPTimedOutException, IOException;
+
     /*
      * Get return type for caller thread
      */
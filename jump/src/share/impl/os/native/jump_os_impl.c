@@ -141,6 +141,12 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_getDataOffset(JNIEnv *env
     return jumpMessageQueueDataOffset();
 }
 
+JNIEXPORT jint JNICALL
+Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_getMessageBufferSize(JNIEnv *env, jobject thisObj)
+{
+    return JUMP_MESSAGE_BUFFER_SIZE;
+}
+
 JNIEXPORT jstring JNICALL
 Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_getReturnType(JNIEnv *env, jobject thisObj)
 {
@@ -160,20 +166,25 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_getReturnType(JNIEnv *env
     return ret;
 }
 
-/* On success, returns a new JUMPOutgoingMessage.  On failure, returns
-   NULL and throws an OutOfMemoryError or IOException. */
+/* On success, returns a new JUMPOutgoingMessage made from the first
+   length bytes of messageBytes.  On failure, returns NULL and throws
+   an OutOfMemoryError or IOException. */
 static JUMPOutgoingMessage
 new_outgoing_message_from_byte_array(
     JNIEnv *env, 
     jbyteArray messageBytes,
+    jint length,
     jboolean isResponse)
 {
     jbyte *buffer = NULL;
-    jsize length;
     JUMPOutgoingMessage m;
     JUMPMessageStatusCode code;
 
-    length = (*env)->GetArrayLength(env, messageBytes);
+    if (length < 0 || length > (*env)->GetArrayLength(env, messageBytes)) {
+	JNU_ThrowByName(env, "java/lang/ArrayIndexOutOfBoundsException",
+			"Bad message length.");
+	goto error;
+    }
     if (length > JUMP_MESSAGE_BUFFER_SIZE) {
 	JNU_ThrowByName(env, "java/io/IOException",
 			"Maximum message size exceeded.");
@@ -236,16 +247,41 @@ new_byte_array_from_message(
     return retVal;
 }
 
-JNIEXPORT jbyteArray JNICALL
+/* Copies message into the caller's array, which the Java side
+   recycles from message to message.  On success, returns JNI_TRUE.
+   On failure, returns JNI_FALSE and throws an Exception. */
+static jboolean
+fill_byte_array_from_message(
+    JNIEnv *env,
+    JUMPMessage message,
+    jbyteArray buffer)
+{
+    if ((*env)->GetArrayLength(env, buffer) < JUMP_MESSAGE_BUFFER_SIZE) {
+	JNU_ThrowByName(env, "java/io/IOException",
+			"Receive buffer too small.");
+	return JNI_FALSE;
+    }
+
+    (*env)->SetByteArrayRegion(env, buffer, 0, JUMP_MESSAGE_BUFFER_SIZE,
+			       jumpMessageGetData(message));
+    if ((*env)->ExceptionOccurred(env)) {
+	return JNI_FALSE;
+    }
+
+    return JNI_TRUE;
+}
+
+JNIEXPORT void JNICALL
 Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageSync(
     JNIEnv *env, 
     jobject thisObj, 
     jint pid, 
     jbyteArray messageBytes,
+    jint length,
     jboolean isResponse,
-    jlong timeout)
+    jlong timeout,
+    jbyteArray reply)
 {
-    jbyteArray retVal = NULL;
     JUMPOutgoingMessage m = NULL;
     JUMPAddress target;
     JUMPMessage r = NULL;
@@ -253,7 +289,8 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageSync(
 
     ensureInitialized();
 
-    m = new_outgoing_message_from_byte_array(env, messageBytes, isResponse);
+    m = new_outgoing_message_from_byte_array(env, messageBytes, length,
+					     isResponse);
     if (m == NULL) {
 	/* Exception already thrown. */
 	goto out;
@@ -294,11 +331,8 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageSync(
 	goto out;
     }
 
-    retVal = new_byte_array_from_message(env, r);
-    if (retVal == NULL) {
-	/* Exception already thrown. */
-	goto out;
-    }
+    /* On failure the exception is already thrown. */
+    fill_byte_array_from_message(env, r, reply);
 
   out:
     if (r != NULL) {
@@ -307,30 +341,27 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageSync(
     if (m != NULL) {
 	jumpMessageFreeOutgoing(m);
     }
-    
-    return retVal;
 }
 
-JNIEXPORT jbyteArray JNICALL
-Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_receiveMessage(
+/* On success, returns the next message of messageType.  On failure,
+   returns NULL and throws an Exception. */
+static JUMPMessage
+wait_for_message(
     JNIEnv *env, 
-    jobject thisObj, 
     jstring messageType, 
     jlong timeout)
 {
     const char* type = NULL;
     JUMPMessage r = NULL;
     JUMPMessageStatusCode code;
-    jbyteArray retVal = NULL;
-
-    ensureInitialized();
 
     type = (*env)->GetStringUTFChars(env, messageType, NULL);
     if (type == NULL) {
-	goto out;
+	return NULL;
     }
 
     r = jumpMessageWaitFor((JUMPPlatformCString)type, (int32)timeout, &code);
+    (*env)->ReleaseStringUTFChars(env, messageType, type);
     if (r == NULL) {
 	switch (code) {
 	  case JUMP_OUT_OF_MEMORY:
@@ -352,28 +383,65 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_receiveMessage(
 	    throw_IOException(env, code);
 	    break;
 	}
-	goto out;
     }
 
-    retVal = new_byte_array_from_message(env, r);
-    if (retVal == NULL) {
+    return r;
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_receiveMessage(
+    JNIEnv *env, 
+    jobject thisObj, 
+    jstring messageType, 
+    jlong timeout)
+{
+    JUMPMessage r;
+    jbyteArray retVal;
+
+    ensureInitialized();
+
+    r = wait_for_message(env, messageType, timeout);
+    if (r == NULL) {
 	/* Exception already thrown. */
-	goto out;
+	return NULL;
     }
 
-  out:
-    if (r != NULL) {
-	jumpMessageFree(r);
-    }
+    /* On failure the exception is already thrown. */
+    retVal = new_byte_array_from_message(env, r);
+    jumpMessageFree(r);
     return retVal;
 }
 
+JNIEXPORT void JNICALL
+Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_receiveMessageInto(
+    JNIEnv *env, 
+    jobject thisObj, 
+    jstring messageType, 
+    jlong timeout,
+    jbyteArray buffer)
+{
+    JUMPMessage r;
+
+    ensureInitialized();
+
+    r = wait_for_message(env, messageType, timeout);
+    if (r == NULL) {
+	/* Exception already thrown. */
+	return;
+    }
+
+    /* On failure the exception is already thrown. */
+    fill_byte_array_from_message(env, r, buffer);
+    jumpMessageFree(r);
+}
+
 JNIEXPORT void JNICALL
 Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageAsync(
     JNIEnv *env, 
     jobject thisObj, 
     jint pid, 
     jbyteArray messageBytes,
+    jint length,
     jboolean isResponse)
 {
     JUMPOutgoingMessage m = NULL;
@@ -382,7 +450,8 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageAsync(
 
     ensureInitialized();
 
-    m = new_outgoing_message_from_byte_array(env, messageBytes, isResponse);
+    m = new_outgoing_message_from_byte_array(env, messageBytes, length,
+					     isResponse);
     if (m == NULL) {
 	/* Exception already thrown. */
 	goto out;
@@ -426,6 +495,7 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageResponse(
     JNIEnv *env, 
     jobject thisObj, 
     jbyteArray messageBytes,
+    jint length,
     jboolean isResponse)
 {
     JUMPOutgoingMessage m = NULL;
@@ -433,7 +503,8 @@ Java_com_sun_jumpimpl_os_JUMPMessageQueueInterfaceImpl_sendMessageResponse(
 
     ensureInitialized();
 
-    m = new_outgoing_message_from_byte_array(env, messageBytes, isResponse);
+    m = new_outgoing_message_from_byte_array(env, messageBytes, length,
+					     isResponse);
     if (m == NULL) {
 	/* Exception already thrown. */
 	goto out;
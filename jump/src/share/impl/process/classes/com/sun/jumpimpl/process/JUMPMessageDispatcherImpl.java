@@ -27,6 +27,8 @@
 package com.sun.jumpimpl.process;
 
 import com.sun.jump.message.JUMPMessage;
+import com.sun.jump.message.JUMPMessageBatchHandler;
+import com.sun.jump.message.JUMPMessageBuffer;
 import com.sun.jump.message.JUMPMessageHandler;
 import com.sun.jump.message.JUMPMessageDispatcher;
 import com.sun.jump.message.JUMPMessageDispatcherTypeException;
@@ -34,14 +36,18 @@ import com.sun.jump.message.JUMPTimedOutException;
 import com.sun.jump.message.JUMPUnblockedException;
 
 import com.sun.jump.os.JUMPOSInterface;
+import com.sun.jumpimpl.common.ThreadPool;
 import com.sun.jumpimpl.os.JUMPMessageQueueInterfaceImpl;
 
 import java.io.IOException;
+import java.security.AccessController;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 
+import sun.security.action.GetIntegerAction;
+
 /**
  * A generic JUMPMessageDispatcher implementation.
  */
@@ -60,12 +66,24 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
     // that no message that has a registered handler will be dropped
     // since there will always be a Listener running for that
     // messageType.  Both JUMPMessageDispatcherImpl and Listener
-    // synchronize on lock while accessing listeners.  Additionally,
-    // Listener synchronizes on lock when accessing Listener.handlers.
-    // It could synchronize on itself, but in most cases we already
-    // need to synchronize on lock, so using lock for everything is
-    // simpler.  We never block while holding lock and there shouldn't
-    // be much if any contention for it.
+    // synchronize on the messageType's Stripe lock while accessing
+    // listeners.  Additionally, Listener synchronizes on the same lock
+    // when accessing Listener.handlers.  It could synchronize on
+    // itself, but in most cases we already need to synchronize on the
+    // lock, so using it for everything is simpler.  We never block
+    // while holding a lock, and since each messageType only ever uses
+    // its own Stripe, unrelated messageTypes don't contend.
+
+    // By default a Listener calls the handlers itself, one message at
+    // a time, before receiving the next message.  With
+    // jump.dispatcher.mailbox set, each Listener instead puts messages
+    // in a Mailbox of that size and goes straight back to receiving,
+    // and the Mailbox is drained on listenerPool, in batches for
+    // JUMPMessageBatchHandlers.  When a Mailbox is full, the Listener
+    // waits up to jump.dispatcher.mailbox.timeout ms for room before
+    // dropping the message.  While it waits it isn't receiving, so
+    // the low-level queue fills up and senders start to see
+    // JUMPWouldBlockException, which is the backpressure we want.
 
     // A JUMPMessageDispatcherImpl has one DirectRegistration for each
     // messageType with at least one outstanding registration.  We
@@ -80,29 +98,68 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 	jumpMessageQueueInterfaceImpl = (JUMPMessageQueueInterfaceImpl)
 	JUMPOSInterface.getInstance().getQueueInterface();
 
+    // Messages are received into pooled buffers of this size, which
+    // are released once the handlers for a message have returned.
+    private static final int messageBufferSize =
+	jumpMessageQueueInterfaceImpl.getMessageBufferSize();
+
+    private static final int STRIPES =
+	Math.max(1, getIntProperty("jump.dispatcher.stripes", 8));
+    private static final int MAILBOX_SIZE =
+	getIntProperty("jump.dispatcher.mailbox", 0);
+    private static final int MAILBOX_TIMEOUT =
+	getIntProperty("jump.dispatcher.mailbox.timeout", 5000);
+    private static final int BATCH_SIZE =
+	Math.max(1, getIntProperty("jump.dispatcher.batch", 16));
+
     private static JUMPMessageDispatcherImpl INSTANCE = null;
 
-    // directRegistrations maps String messageType to DirectRegistration.
-    // Guarded by lock.
-    // Invariant: If there is a mapping from messageType to a
-    // DirectRegistration, then at least one registration is still
-    // outstanding for the messageType, otherwise no registrations
-    // are outstanding.
+    // Listener threads block in receiveMessage() for as long as the
+    // Listener lives, so they get a pool of their own rather than
+    // ThreadPool.getSharedPool().  The number of Listeners is bounded
+    // by the number of messageTypes; the pool just saves creating a
+    // thread each time a Listener comes back for a messageType.
+    // Mailbox drain tasks run here too, since handlers may block.
+
+    private static final ThreadPool listenerPool =
+	new ThreadPool("JUMPMessageDispatcher-Listener",
+		       0, Integer.MAX_VALUE, 10000, 0,
+		       ThreadPool.REJECT_ABORT);
+
+    // The registries are split by messageType hash into Stripes.
+
+    private static class Stripe
+    {
+	// directRegistrations maps String messageType to
+	// DirectRegistration.  Guarded by lock.
+	// Invariant: If there is a mapping from messageType to a
+	// DirectRegistration, then at least one registration is still
+	// outstanding for the messageType, otherwise no registrations
+	// are outstanding.
+
+	final Map directRegistrations = new HashMap();
 
-    private final Map directRegistrations = new HashMap();
+	// listeners maps String messageType to Listener.
+	// Guarded by lock.
+	// Invariant: If there is a mapping from messageType to a
+	// Listener, then the Listener is active, otherwise there is no
+	// Listener.
 
-    // listeners maps String messageType to Listener.
-    // Guarded by lock.
-    // Invariant: If there is a mapping from messageType to a Listener,
-    // then the Listener is active, otherwise there is no Listener.
+	final Map listeners = new HashMap();
 
-    private final Map listeners = new HashMap();
+	// statistics maps String messageType to Statistics.  Entries
+	// are never removed.  Guarded by lock.
 
-    // lock guards both directRegistrations and listeners.  We need
-    // one lock so we can tell whether a messageType is registered one
-    // way or the other without races.
+	final Map statistics = new HashMap();
 
-    private final Object lock = new Object();
+	// lock guards directRegistrations, listeners and statistics.
+	// We need one lock per messageType so we can tell whether a
+	// messageType is registered one way or the other without races.
+
+	final Object lock = new Object();
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
 
     public static synchronized JUMPMessageDispatcherImpl getInstance() 
     {
@@ -117,42 +174,85 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
      */
     private JUMPMessageDispatcherImpl ()
     {
+	for (int i = 0; i < stripes.length; i++) {
+	    stripes[i] = new Stripe();
+	}
+    }
+
+    private static int getIntProperty(String key, int defaultValue) {
+	Integer value = (Integer) AccessController.doPrivileged(
+	    new GetIntegerAction(key, defaultValue));
+	return value.intValue();
+    }
+
+    private Stripe stripeFor (String messageType)
+    {
+	return stripes[(messageType.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    // Externally synchronized on stripe.lock.
+    private Statistics getStatistics (Stripe stripe, String messageType)
+    {
+	Statistics statistics =
+	    (Statistics) stripe.statistics.get(messageType);
+	if (statistics == null) {
+	    statistics = new Statistics(messageType);
+	    stripe.statistics.put(messageType, statistics);
+	}
+	return statistics;
+    }
+
+    /**
+     * Returns a snapshot of the dispatch statistics for messageType,
+     * or null if nothing has been registered for it yet.
+     */
+    public Statistics getStatistics (String messageType)
+    {
+	Stripe stripe = stripeFor(messageType);
+	Statistics statistics;
+	synchronized (stripe.lock) {
+	    statistics = (Statistics) stripe.statistics.get(messageType);
+	}
+	return statistics == null ? null : statistics.snapshot();
     }
 
     public Object registerDirect(String messageType)
 	throws JUMPMessageDispatcherTypeException, IOException
     {
+	Stripe stripe = stripeFor(messageType);
 	DirectRegistration directRegistration;
-	synchronized (lock) {
-	    if (listeners.containsKey(messageType)) {
+	synchronized (stripe.lock) {
+	    if (stripe.listeners.containsKey(messageType)) {
 		throw new JUMPMessageDispatcherTypeException(
 		    "Type " + messageType +
 		    " already registered with handlers");
 	    }
 
-	    directRegistration = getDirectRegistration(messageType);
+	    directRegistration = getDirectRegistration(stripe, messageType);
 	    directRegistration.incrementUseCount();
 	}
 
 	return new DirectRegistrationToken(directRegistration);
     }
 
-    // Externally synchronized on lock.
-    private DirectRegistration getDirectRegistration (String messageType)
+    // Externally synchronized on stripe.lock.
+    private DirectRegistration getDirectRegistration (Stripe stripe,
+						      String messageType)
 	throws IOException
     {
 	DirectRegistration directRegistration =
-	    (DirectRegistration) directRegistrations.get(messageType);
+	    (DirectRegistration) stripe.directRegistrations.get(messageType);
 
 	if (directRegistration == null) {
-	    directRegistration = new DirectRegistration(messageType);
+	    directRegistration = new DirectRegistration(stripe, messageType);
 
 	    // Be careful to maintain our invariant (and free
 	    // resources) even on OutOfMemoryError, etc.
 
 	    boolean success = false;
 	    try {
-		directRegistrations.put(messageType, directRegistration);
+		stripe.directRegistrations.put(messageType,
+					       directRegistration);
 		success = true;
 	    }
 	    finally {
@@ -169,10 +269,11 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
     public JUMPMessage waitForMessage(String messageType, long timeout)
         throws JUMPMessageDispatcherTypeException, JUMPTimedOutException, IOException
     {
+	Stripe stripe = stripeFor(messageType);
 	DirectRegistration directRegistration;
-	synchronized (lock) {
-	    directRegistration =
-		(DirectRegistration) directRegistrations.get(messageType);
+	synchronized (stripe.lock) {
+	    directRegistration = (DirectRegistration)
+		stripe.directRegistrations.get(messageType);
 	    if (directRegistration == null) {
 		throw new JUMPMessageDispatcherTypeException(
 		    "Type " + messageType +
@@ -184,6 +285,10 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 	try {
 	    return doWaitForMessage(messageType, timeout);
 	}
+	catch (JUMPTimedOutException e) {
+	    directRegistration.statistics.timedOut();
+	    throw e;
+	}
 	finally {
 	    directRegistration.decrementUseCountMaybeClose();
 	}
@@ -197,9 +302,18 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
     private JUMPMessage doWaitForMessage(String messageType, long timeout)
         throws JUMPTimedOutException, IOException 
     {
-	byte[] raw = jumpMessageQueueInterfaceImpl.receiveMessage(
-	    messageType, timeout);
-	return new MessageImpl.Message(raw);
+	JUMPMessageBuffer buffer = JUMPMessageBuffer.allocate(messageBufferSize);
+	boolean success = false;
+	try {
+	    jumpMessageQueueInterfaceImpl.receiveMessageInto(
+		messageType, timeout, buffer.getData());
+	    success = true;
+	} finally {
+	    if (!success) {
+		buffer.release();
+	    }
+	}
+	return new MessageImpl.Message(buffer);
     }
 
     /**
@@ -220,17 +334,18 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
             throw new NullPointerException("handler can't be null");
         }
 
+	Stripe stripe = stripeFor(messageType);
 	Listener listener;
-	synchronized (lock) {
-	    if (directRegistrations.containsKey(messageType)) {
+	synchronized (stripe.lock) {
+	    if (stripe.directRegistrations.containsKey(messageType)) {
 		throw new JUMPMessageDispatcherTypeException(
 		    "Type " + messageType +
 		    " already registered for direct listening");
 	    }
 
-	    listener = getListener(messageType);
+	    listener = getListener(stripe, messageType);
 
-	    // Add the handler while synchronized on lock so that a
+	    // Add the handler while synchronized on the lock so that a
 	    // new Listener won't exit before the handler is added.
 	    // If this fails its ok, the Listener will exit soon if no
 	    // other handlers are registered for it.
@@ -241,20 +356,20 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 	return new HandlerRegistrationToken(listener, handler);
     }
 
-    // Externally synchronized on lock.
-    private Listener getListener (String messageType)
+    // Externally synchronized on stripe.lock.
+    private Listener getListener (Stripe stripe, String messageType)
 	throws IOException
     {
-	Listener listener = (Listener) listeners.get(messageType);
+	Listener listener = (Listener) stripe.listeners.get(messageType);
 	if (listener == null) {
-	    listener = new Listener(messageType);
+	    listener = new Listener(stripe, messageType);
 
 	    // Be careful to maintain our invariant (and free
 	    // resources) even on OutOfMemoryError, etc.
 
 	    boolean success = false;
 	    try {
-		listeners.put(messageType, listener);
+		stripe.listeners.put(messageType, listener);
 		listener.start();
 		success = true;
 	    }
@@ -264,7 +379,7 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 		    listener.close();
 		    // Remove listener from the Map.  This is ok even
 		    // if it was never added.
-		    listeners.remove(messageType);
+		    stripe.listeners.remove(messageType);
 		}
 	    }
 	}
@@ -341,7 +456,9 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 
     private class DirectRegistration
     {
+	private final Stripe stripe;
 	private final String messageType;
+	final Statistics statistics;
 
 	// useCount is incremented for every direct registration of
 	// messageType and when a message receive begins, and
@@ -354,15 +471,18 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 
 	private int useCount = 0;
 
-	public DirectRegistration (String messageType)
+	// Externally synchronized on stripe.lock.
+	public DirectRegistration (Stripe stripe, String messageType)
 	    throws IOException
 	{
+	    this.stripe = stripe;
 	    this.messageType = messageType;
+	    this.statistics = getStatistics(stripe, messageType);
 	    // Make sure we've got a receive queue for the messageType.
 	    jumpMessageQueueInterfaceImpl.reserve(messageType);
 	}
 
-	// Externally synchronized on lock.
+	// Externally synchronized on stripe.lock.
 	public void incrementUseCount ()
 	{
 	    useCount++;
@@ -370,11 +490,11 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 
 	public void decrementUseCountMaybeClose ()
 	{
-	    synchronized (lock) {
+	    synchronized (stripe.lock) {
 		useCount--;
 		if (useCount == 0) {
 		    close();
-		    directRegistrations.remove(messageType);
+		    stripe.directRegistrations.remove(messageType);
 		}
 	    }
 	}
@@ -416,20 +536,29 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
      */
     private class Listener
     {
-	// Guarded by this.
+	// Guarded by stripe.lock.
 	private final List handlers = new ArrayList();
 
+	private final Stripe stripe;
 	private final String messageType;
+	private final Statistics statistics;
 
-	public Listener (String messageType)
+	// Null when delivering inline.
+	private final Mailbox mailbox;
+
+	// Externally synchronized on stripe.lock.
+	public Listener (Stripe stripe, String messageType)
 	    throws IOException
 	{
+	    this.stripe = stripe;
 	    this.messageType = messageType;
+	    this.statistics = getStatistics(stripe, messageType);
+	    this.mailbox = MAILBOX_SIZE > 0 ? new Mailbox() : null;
 	    // Make sure we've got a receive queue for the messageType.
 	    jumpMessageQueueInterfaceImpl.reserve(messageType);
 	}
 
-	// Externally synchronized on lock.
+	// Externally synchronized on stripe.lock.
 	public void addHandler (JUMPMessageHandler handler)
 	{
 	    handlers.add(handler);
@@ -438,7 +567,7 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 	public void removeHandler (JUMPMessageHandler handler)
 	    throws IOException
 	{
-	    synchronized (lock) {
+	    synchronized (stripe.lock) {
 		handlers.remove(handler);
 		if (handlers.isEmpty()) {
 		    // Wake up the listening thread so it can exit if
@@ -450,20 +579,22 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 
 	public void start ()
 	{
-	    Thread thread = new Thread(
+	    listenerPool.execute(Thread.currentThread().getPriority(),
 		new Runnable() {
 		    public void run() {
+			Thread thread = Thread.currentThread();
+			String poolName = thread.getName();
+			thread.setName(
+			    Listener.this.getClass().getName() + ": " + messageType);
 			try {
 			    listen();
 			}
 			finally {
 			    close();
+			    thread.setName(poolName);
 			}
 		    }
 		});
-	    thread.setName(this.getClass().getName() + ": " + messageType);
-	    thread.setDaemon(true);
-	    thread.start();
 	}
 
 	public void close ()
@@ -479,25 +610,45 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 	    while (true) {
 		try {
 		    JUMPMessage msg = doWaitForMessage(messageType, 0L);
-		    dispatchMessage(msg);
+		    if (mailbox != null) {
+			mailbox.put(msg);
+		    } else {
+			long received = System.currentTimeMillis();
+			try {
+			    dispatchMessage(msg);
+			} finally {
+			    // Handlers that keep msg have retained it.
+			    msg.release();
+			}
+			statistics.delivered(1, received);
+		    }
 		} catch (JUMPUnblockedException e) {
 		    // This is normal.  It's time to check for exit.
 		} catch (JUMPTimedOutException e) {
 		    // This shouldn't happen.  Handle like IOException.
+		    statistics.timedOut();
 		} catch (IOException e) {
 		    // Unexpected exception.
 		    e.printStackTrace();
 		}
-		synchronized (lock) {
+		synchronized (stripe.lock) {
 		    if (handlers.isEmpty()) {
 			// Remove ourselves from the map and exit.
-			listeners.remove(messageType);
+			stripe.listeners.remove(messageType);
 			break;
 		    }
 		}
 	    }
 	}
 
+	private JUMPMessageHandler[] getHandlers ()
+	{
+	    synchronized (stripe.lock) {
+		return (JUMPMessageHandler[])
+		    handlers.toArray(new JUMPMessageHandler[handlers.size()]);
+	    }
+	}
+
 	// NOTE: Handlers should not be called while holding our
 	// monitor since it can lead to inadvertent deadlocks.
 	// However, not synchronizing on "this" here can result in
@@ -506,16 +657,10 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 
 	private void dispatchMessage(JUMPMessage msg)
 	{
-	    JUMPMessageHandler[] handlersSnapshot;
-
-	    // Get a snapsot with the lock held.
+	    // Get a snapsot with the lock held, and call handlers with
+	    // the lock released.
 
-	    synchronized (lock) {
-		handlersSnapshot = (JUMPMessageHandler[])
-		    handlers.toArray(new JUMPMessageHandler[handlers.size()]);
-	    }
-
-	    // Call handlers with the lock released.
+	    JUMPMessageHandler[] handlersSnapshot = getHandlers();
 
 	    for (int i = 0; i < handlersSnapshot.length; i++) {
 		JUMPMessageHandler handler = handlersSnapshot[i];
@@ -526,5 +671,253 @@ public class JUMPMessageDispatcherImpl implements JUMPMessageDispatcher
 		}
 	    }
 	}
+
+	// Like dispatchMessage(), for the first count messages of
+	// batch.  JUMPMessageBatchHandlers get them all in one call,
+	// other handlers get them one by one.
+
+	private void dispatchMessages(JUMPMessage[] batch, int count)
+	{
+	    JUMPMessageHandler[] handlersSnapshot = getHandlers();
+
+	    for (int i = 0; i < handlersSnapshot.length; i++) {
+		JUMPMessageHandler handler = handlersSnapshot[i];
+		if (handler instanceof JUMPMessageBatchHandler) {
+		    try {
+			((JUMPMessageBatchHandler)handler).handleMessages(
+			    batch, count);
+		    } catch (RuntimeException e) {
+			e.printStackTrace();
+		    }
+		} else {
+		    for (int j = 0; j < count; j++) {
+			try {
+			    handler.handleMessage(batch[j]);
+			} catch (RuntimeException e) {
+			    e.printStackTrace();
+			}
+		    }
+		}
+	    }
+	}
+
+	/*
+	 * A bounded FIFO between the Listener thread and the handlers.
+	 * At most one drain task is queued or running on listenerPool
+	 * at a time, which keeps the messages of a messageType in
+	 * order.
+	 */
+	private class Mailbox implements Runnable
+	{
+	    // Guarded by this.
+	    private final JUMPMessage[] messages =
+		new JUMPMessage[MAILBOX_SIZE];
+	    private final long[] arrivals = new long[MAILBOX_SIZE];
+	    private int head = 0;
+	    private int count = 0;
+	    private boolean draining = false;
+
+	    // Only used by the drain task.
+	    private final JUMPMessage[] batch = new JUMPMessage[
+		Math.min(BATCH_SIZE, MAILBOX_SIZE)];
+	    private final long[] batchArrivals = new long[batch.length];
+
+	    /**
+	     * Queues msg for the handlers, waiting for room if
+	     * necessary.  The message is dropped if there is still no
+	     * room after MAILBOX_TIMEOUT ms.
+	     */
+	    public void put (JUMPMessage msg)
+	    {
+		long now = System.currentTimeMillis();
+		boolean startDrain;
+		synchronized (this) {
+		    long deadline = now + MAILBOX_TIMEOUT;
+		    long remaining = MAILBOX_TIMEOUT;
+		    while (count == messages.length && remaining > 0) {
+			try {
+			    wait(remaining);
+			} catch (InterruptedException e) {
+			    break;
+			}
+			remaining = deadline - System.currentTimeMillis();
+		    }
+		    if (count == messages.length) {
+			statistics.dropped();
+			msg.release();
+			return;
+		    }
+		    int tail = (head + count) % messages.length;
+		    messages[tail] = msg;
+		    arrivals[tail] = now;
+		    count++;
+		    statistics.queued(count);
+		    startDrain = !draining;
+		    draining = true;
+		}
+		if (startDrain) {
+		    boolean started = false;
+		    try {
+			listenerPool.execute(Thread.currentThread().getPriority(),
+					     this);
+			started = true;
+		    } finally {
+			if (!started) {
+			    // No drain task was started, so let the next
+			    // put() try again.
+			    synchronized (this) {
+				draining = false;
+			    }
+			}
+		    }
+		}
+	    }
+
+	    public void run ()
+	    {
+		boolean drained = false;
+		try {
+		    drain();
+		    drained = true;
+		} finally {
+		    if (!drained) {
+			// Let the next put() start a new drain task.
+			synchronized (this) {
+			    draining = false;
+			}
+		    }
+		}
+	    }
+
+	    private void drain ()
+	    {
+		while (true) {
+		    int n;
+		    synchronized (this) {
+			if (count == 0) {
+			    draining = false;
+			    return;
+			}
+			n = Math.min(count, batch.length);
+			for (int i = 0; i < n; i++) {
+			    batch[i] = messages[head];
+			    batchArrivals[i] = arrivals[head];
+			    messages[head] = null;
+			    head = (head + 1) % messages.length;
+			}
+			count -= n;
+			statistics.queued(count);
+			// Wake up the Listener if it's waiting for room.
+			notifyAll();
+		    }
+		    try {
+			dispatchMessages(batch, n);
+		    } finally {
+			for (int i = 0; i < n; i++) {
+			    // Handlers that keep a message have retained it.
+			    batch[i].release();
+			    batch[i] = null;
+			    statistics.delivered(1, batchArrivals[i]);
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Dispatch counters for one messageType, kept for the life of the
+     * dispatcher.  Latency is measured from the time a message is
+     * received until all of its handlers have returned.
+     */
+    public static class Statistics
+    {
+	private final String messageType;
+	private int queueDepth;
+	private int maxQueueDepth;
+	private long delivered;
+	private long totalLatency;
+	private long maxLatency;
+	private long dropped;
+	private long timedOut;
+
+	Statistics (String messageType)
+	{
+	    this.messageType = messageType;
+	}
+
+	synchronized void queued (int depth)
+	{
+	    queueDepth = depth;
+	    if (depth > maxQueueDepth) {
+		maxQueueDepth = depth;
+	    }
+	}
+
+	synchronized void delivered (int n, long received)
+	{
+	    long latency = System.currentTimeMillis() - received;
+	    delivered += n;
+	    totalLatency += latency * n;
+	    if (latency > maxLatency) {
+		maxLatency = latency;
+	    }
+	}
+
+	synchronized void dropped ()
+	{
+	    dropped++;
+	}
+
+	synchronized void timedOut ()
+	{
+	    timedOut++;
+	}
+
+	synchronized Statistics snapshot ()
+	{
+	    Statistics copy = new Statistics(messageType);
+	    copy.queueDepth = queueDepth;
+	    copy.maxQueueDepth = maxQueueDepth;
+	    copy.delivered = delivered;
+	    copy.totalLatency = totalLatency;
+	    copy.maxLatency = maxLatency;
+	    copy.dropped = dropped;
+	    copy.timedOut = timedOut;
+	    return copy;
+	}
+
+	public String getMessageType () { return messageType; }
+
+	/** Messages waiting in the mailbox, always 0 when inline. */
+	public synchronized int getQueueDepth () { return queueDepth; }
+	public synchronized int getMaxQueueDepth () { return maxQueueDepth; }
+
+	/** Messages whose handlers have all returned. */
+	public synchronized long getDeliveredCount () { return delivered; }
+
+	/** Average dispatch latency in ms. */
+	public synchronized long getAverageLatency ()
+	{
+	    return delivered == 0 ? 0 : totalLatency / delivered;
+	}
+
+	/** Maximum dispatch latency in ms. */
+	public synchronized long getMaxLatency () { return maxLatency; }
+
+	/** Messages dropped because the mailbox stayed full. */
+	public synchronized long getDroppedCount () { return dropped; }
+
+	/** Receives that timed out, mostly from waitForMessage(). */
+	public synchronized long getTimedOutCount () { return timedOut; }
+
+	public synchronized String toString ()
+	{
+	    return messageType + ": depth " + queueDepth +
+		" (max " + maxQueueDepth + "), delivered " + delivered +
+		", latency avg " + getAverageLatency() + "ms max " +
+		maxLatency + "ms, dropped " + dropped +
+		", timed out " + timedOut;
+	}
     }
 }
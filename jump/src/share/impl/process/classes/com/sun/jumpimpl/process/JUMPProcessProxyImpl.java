@@ -27,6 +27,7 @@ import com.sun.jump.common.JUMPProcessProxy;
 import com.sun.jump.message.JUMPMessagingService;
 import com.sun.jump.message.JUMPMessageSender;
 import com.sun.jump.message.JUMPMessage;
+import com.sun.jump.message.JUMPMessageBuffer;
 import com.sun.jump.message.JUMPMessageDispatcher;
 import com.sun.jump.message.JUMPMessagable;
 import com.sun.jump.message.JUMPOutgoingMessage;
@@ -46,6 +47,8 @@ public class JUMPProcessProxyImpl implements JUMPProcessProxy, JUMPMessagingServ
 
     private static final JUMPMessageQueueInterfaceImpl queue =
         (JUMPMessageQueueInterfaceImpl)JUMPOSInterface.getInstance().getQueueInterface();
+    private static final int messageBufferSize =
+        queue.getMessageBufferSize();
     private static final HashMap proxyMap = new HashMap();
     
     /** 
@@ -116,6 +119,7 @@ public class JUMPProcessProxyImpl implements JUMPProcessProxy, JUMPMessagingServ
     public void
     sendResponseMessage(JUMPOutgoingMessage message) throws IOException {
         queue.sendMessageResponse(message.serialize(),
+				  message.getLength(),
 				  message.isResponseMessage());
     }
 
@@ -129,17 +133,30 @@ public class JUMPProcessProxyImpl implements JUMPProcessProxy, JUMPMessagingServ
     sendMessage(JUMPOutgoingMessage message) throws IOException {
         queue.sendMessageAsync(this.processId, 
 			       message.serialize(),
+			       message.getLength(),
 			       message.isResponseMessage());
     }
 
     public JUMPMessage
     sendMessage(JUMPOutgoingMessage message, long timeout)
         throws JUMPTimedOutException, IOException {
-	byte[] raw = queue.sendMessageSync(this.processId, 
-					   message.serialize(),
-					   message.isResponseMessage(),
-					   timeout);
-	return new MessageImpl.Message(raw);
+	JUMPMessageBuffer reply =
+	    JUMPMessageBuffer.allocate(messageBufferSize);
+	boolean success = false;
+	try {
+	    queue.sendMessageSync(this.processId, 
+				  message.serialize(),
+				  message.getLength(),
+				  message.isResponseMessage(),
+				  timeout,
+				  reply.getData());
+	    success = true;
+	} finally {
+	    if (!success) {
+		reply.release();
+	    }
+	}
+	return new MessageImpl.Message(reply);
     }
 
 
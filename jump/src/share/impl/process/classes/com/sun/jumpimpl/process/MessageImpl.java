@@ -25,6 +25,7 @@ package com.sun.jumpimpl.process;
 
 import com.sun.jump.message.JUMPMessageSender;
 import com.sun.jump.message.JUMPMessage;
+import com.sun.jump.message.JUMPMessageBuffer;
 import com.sun.jump.message.JUMPMessageResponseSender;
 import com.sun.jump.message.JUMPMessagable;
 import com.sun.jump.message.JUMPOutgoingMessage;
@@ -40,6 +41,10 @@ public class MessageImpl {
 	public Message(byte[] rawBytes) {
 	    super(rawBytes);
 	}
+
+	public Message(JUMPMessageBuffer buffer) {
+	    super(buffer);
+	}
 	
 	protected void readMessageSender(int id) {
 	    this.senderPid = id;
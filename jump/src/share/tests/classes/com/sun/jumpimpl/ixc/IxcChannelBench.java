@@ -0,0 +1,228 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+package com.sun.jumpimpl.ixc;
+
+import java.awt.Container;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import javax.microedition.xlet.XletContext;
+
+import com.sun.jumpimpl.common.ThreadPool;
+
+/**
+ * Measures the round trip time of IXC calls over an IxcChannel, against
+ * the previous scheme of one connection per call, for a small and a
+ * large argument. Both ends run in this VM; the server side echoes the
+ * argument back, so only the transport and marshalling are measured.
+ *
+ * Usage: com.sun.jumpimpl.ixc.IxcChannelBench [threads [calls-per-thread]]
+ */
+public class IxcChannelBench {
+
+   static final XletContext context = new XletContext() {
+      public void notifyDestroyed() {}
+      public void notifyPaused() {}
+      public Object getXletProperty(String key) { return null; }
+      public void resumeRequest() {}
+      public Container getContainer() { return null; }
+      public ClassLoader getClassLoader() {
+         return IxcChannelBench.class.getClassLoader();
+      }
+   };
+
+   public static void main(String[] args) throws Exception {
+      int nThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+      int nCalls = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+
+      Object small = new Integer(42);
+      Object large = new byte[32 * 1024];
+
+      int channelPort = startChannelServer();
+      int socketPort = startSocketServer();
+
+      run("channel, small", channelPort, true, small, nThreads, nCalls);
+      run("channel, large", channelPort, true, large, nThreads, nCalls);
+      run("socket per call, small", socketPort, false, small, nThreads, nCalls);
+      run("socket per call, large", socketPort, false, large, nThreads, nCalls);
+   }
+
+   static void run(String name, final int port, final boolean channel,
+                   final Object arg, int nThreads, final int nCalls)
+      throws Exception {
+      final int[] failures = new int[1];
+      Thread[] clients = new Thread[nThreads];
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < nThreads; i++) {
+         clients[i] = new Thread() {
+            public void run() {
+               for (int j = 0; j < nCalls; j++) {
+                  try {
+                     if (channel) {
+                        channelCall(port, arg);
+                     } else {
+                        socketCall(port, arg);
+                     }
+                  } catch (Exception e) {
+                     synchronized (failures) {
+                        failures[0]++;
+                     }
+                  }
+               }
+            }
+         };
+         clients[i].start();
+      }
+      for (int i = 0; i < nThreads; i++) {
+         clients[i].join();
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      int total = nThreads * nCalls;
+      System.out.println(name + ": calls=" + total
+                         + " failures=" + failures[0]
+                         + " elapsed=" + elapsed + "ms, "
+                         + ((elapsed > 0) ? (total * 1000L / elapsed) : total)
+                         + " calls/s, "
+                         + ((total > 0) ? (elapsed * 1000L / total) : 0)
+                         + " us/call");
+   }
+
+   static Object channelCall(int port, Object arg) throws Exception {
+      IxcChannel.MessageBuffer request = IxcChannel.MessageBuffer.acquire();
+      try {
+         request.writeLong(1000L);
+         request.writeLong(1L);
+         request.objectOutput(context, false).writeObject(arg);
+         IxcChannel.Frame reply =
+            IxcChannel.getChannel(port).call(request);
+         ObjectInputStream in = reply.openInput(context, false);
+         in.readBoolean();
+         return in.readObject();
+      } finally {
+         request.release();
+      }
+   }
+
+   static Object socketCall(int port, Object arg) throws Exception {
+      Socket s = new Socket("localhost", port);
+      try {
+         DataOutputStream dout = new DataOutputStream(s.getOutputStream());
+         dout.writeLong(1000L);
+         dout.writeLong(1L);
+         ObjectOutputStream out = new IxcOutputStream(dout, context, false);
+         out.writeObject(arg);
+         out.flush();
+         ObjectInputStream in =
+            new IxcInputStream(s.getInputStream(), context, false);
+         in.readBoolean();
+         return in.readObject();
+      } finally {
+         s.close();
+      }
+   }
+
+   static int startChannelServer() throws IOException {
+      final ServerSocket serv = new ServerSocket(0);
+      final IxcChannel.Dispatcher echo = new IxcChannel.Dispatcher() {
+         public void dispatch(final IxcChannel channel, final int requestID,
+                              final IxcChannel.Frame request) {
+            ThreadPool.getSharedPool().execute(Thread.NORM_PRIORITY, new Runnable() {
+               public void run() {
+                  IxcChannel.MessageBuffer reply =
+                     IxcChannel.MessageBuffer.acquire();
+                  try {
+                     request.readLong();
+                     request.readLong();
+                     Object arg = request.openInput(context, false).readObject();
+                     ObjectOutputStream out = reply.objectOutput(context, false);
+                     out.writeBoolean(false);
+                     out.writeObject(arg);
+                     channel.reply(requestID, reply);
+                  } catch (Exception e) {
+                     e.printStackTrace();
+                  } finally {
+                     reply.release();
+                  }
+               }
+            });
+         }
+      };
+      Thread acceptor = new Thread() {
+         public void run() {
+            try {
+               for (;;) {
+                  IxcChannel.serve(serv.accept(), echo);
+               }
+            } catch (IOException e) {
+            }
+         }
+      };
+      acceptor.setDaemon(true);
+      acceptor.start();
+      return serv.getLocalPort();
+   }
+
+   static int startSocketServer() throws IOException {
+      final ServerSocket serv = new ServerSocket(0);
+      Thread acceptor = new Thread() {
+         public void run() {
+            try {
+               for (;;) {
+                  final Socket s = serv.accept();
+                  ThreadPool.getSharedPool().execute(Thread.NORM_PRIORITY, new Runnable() {
+                     public void run() {
+                        try {
+                           DataInputStream din = 
+                              new DataInputStream(s.getInputStream());
+                           din.readLong();
+                           din.readLong();
+                           Object arg = new IxcInputStream(din, context, 
+                                                           false).readObject();
+                           ObjectOutputStream out = new IxcOutputStream(
+                              s.getOutputStream(), context, false);
+                           out.writeBoolean(false);
+                           out.writeObject(arg);
+                           out.flush();
+                           s.close();
+                        } catch (Exception e) {
+                           e.printStackTrace();
+                        }
+                     }
+                  });
+               }
+            } catch (IOException e) {
+            }
+         }
+      };
+      acceptor.setDaemon(true);
+      acceptor.start();
+      return serv.getLocalPort();
+   }
+}
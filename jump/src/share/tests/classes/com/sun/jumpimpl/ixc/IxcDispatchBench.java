@@ -0,0 +1,148 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+package com.sun.jumpimpl.ixc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Measures the server side cost of an IXC call, from the marshalled
+ * parameters to the return value: boxed parameters dispatched through
+ * java.lang.reflect.Method, against raw primitive parameters dispatched
+ * through the generated Skeleton. Streams are in memory, so transport
+ * is not measured.
+ *
+ * Usage: com.sun.jumpimpl.ixc.IxcDispatchBench [calls]
+ */
+public class IxcDispatchBench {
+
+   public interface Calc extends Remote {
+      int add(int a, int b) throws RemoteException;
+      double scale(double d, float f, long l) throws RemoteException;
+      String concat(String s, int n) throws RemoteException;
+   }
+
+   public static class CalcImpl implements Calc {
+      public int add(int a, int b) {
+         return a + b;
+      }
+      public double scale(double d, float f, long l) {
+         return d * f + l;
+      }
+      public String concat(String s, int n) {
+         return s;
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      int nCalls = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+      RemoteObjectType type = new RemoteObjectType(CalcImpl.class);
+      if (type.getSkeleton() == null) {
+         throw new RuntimeException("no skeleton generated");
+      }
+      Object target = new CalcImpl();
+
+      Object[][] calls = new Object[][] {
+         { "add", new Object[] { new Integer(1), new Integer(2) } },
+         { "scale", new Object[] { new Double(1.5), new Float(2.0f),
+                                   new Long(3L) } },
+         { "concat", new Object[] { "ixc", new Integer(7) } },
+      };
+
+      for (int pass = 0; pass < 2; pass++) {
+         for (int i = 0; i < calls.length; i++) {
+            String name = (String) calls[i][0];
+            Object[] params = (Object[]) calls[i][1];
+            int index = indexOf(type, name);
+            run(name + ", reflection", type, index, target, params, false,
+                nCalls);
+            run(name + ", skeleton", type, index, target, params, true,
+                nCalls);
+         }
+      }
+   }
+
+   static int indexOf(RemoteObjectType type, String name) {
+      for (int i = 0; i < type.methods.length; i++) {
+         if (type.methods[i].getName().equals(name)) {
+            return i;
+         }
+      }
+      throw new IllegalArgumentException(name);
+   }
+
+   static void run(String name, RemoteObjectType type, int index, 
+                   Object target, Object[] params, boolean skeleton, 
+                   int nCalls) throws Exception {
+      Class[] paramTypes = type.parameterTypes[index];
+      Object expected = type.methods[index].invoke(target, params);
+
+      // Marshal the parameters the way each scheme sends them.
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bos);
+      for (int i = 0; i < params.length; i++) {
+         if (skeleton) {
+            TypeInfo.writeValue(out, paramTypes[i], params[i]);
+         } else {
+            out.writeObject(params[i]);
+         }
+      }
+      out.close();
+      byte[] request = bos.toByteArray();
+
+      Skeleton dispatcher = type.getSkeleton();
+      Method method = type.methods[index];
+      long start = System.currentTimeMillis();
+      for (int j = 0; j < nCalls; j++) {
+         ObjectInputStream in = 
+            new ObjectInputStream(new ByteArrayInputStream(request));
+         Object result;
+         if (skeleton) {
+            result = dispatcher.dispatch(index, target, in);
+         } else {
+            Object[] args = new Object[paramTypes.length];
+            for (int i = 0; i < args.length; i++) {
+               args[i] = in.readObject();
+            }
+            result = method.invoke(target, args);
+         }
+         if (!expected.equals(result)) {
+            throw new RuntimeException(name + ": got " + result);
+         }
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      System.out.println(name + ": calls=" + nCalls
+                         + " request=" + request.length + " bytes"
+                         + " elapsed=" + elapsed + "ms, "
+                         + ((elapsed > 0) ? (nCalls * 1000L / elapsed) : nCalls)
+                         + " calls/s");
+   }
+}
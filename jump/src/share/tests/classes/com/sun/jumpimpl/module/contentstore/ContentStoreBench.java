@@ -0,0 +1,159 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+
+package com.sun.jumpimpl.module.contentstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import com.sun.jump.module.contentstore.*;
+
+/**
+ * Compares FileStoreImpl and LogStoreImpl on what the application list
+ * screens do: look up data nodes of installed applications, and list
+ * the applications with all their data. Each store gets a fresh
+ * directory under the given one, populated with the same applications.
+ *
+ * Usage: com.sun.jumpimpl.module.contentstore.ContentStoreBench
+ *            [dir [apps [lookups]]]
+ */
+public class ContentStoreBench {
+
+   static final String[] fields = {
+      "title", "icon", "size", "descriptor", "version", "vendor"
+   };
+
+   public static void main(String[] args) throws IOException {
+      String dir = args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir");
+      int apps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+      int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+      run("FileStoreImpl", new FileStoreImpl(), new File(dir, "bench-file"),
+          apps, lookups);
+      run("LogStoreImpl", new LogStoreImpl(), new File(dir, "bench-log"),
+          apps, lookups);
+   }
+
+   static void run(String name, JUMPStore store, File root,
+                   int apps, int lookups) throws IOException {
+      delete(root);
+      root.mkdirs();
+      Map config = new HashMap();
+      config.put("contentstore.root", root.getPath());
+      store.load(config);
+
+      long start = System.currentTimeMillis();
+      create(store, "./Apps");
+      for (int i = 0; i < apps; i++) {
+         String app = "./Apps/App" + i;
+         create(store, app);
+         for (int j = 0; j < fields.length; j++) {
+            createData(store, app + "/" + fields[j],
+                       new JUMPData(fields[j] + " of App" + i));
+         }
+      }
+      long populate = System.currentTimeMillis() - start;
+
+      Random random = new Random(42);
+      start = System.currentTimeMillis();
+      for (int i = 0; i < lookups; i++) {
+         String uri = "./Apps/App" + random.nextInt(apps) + "/" +
+            fields[random.nextInt(fields.length)];
+         if (getNode(store, uri) == null) {
+            throw new Error("Lost " + uri);
+         }
+      }
+      long lookup = Math.max(1, System.currentTimeMillis() - start);
+
+      int listings = 20;
+      int nodes = 0;
+      start = System.currentTimeMillis();
+      for (int i = 0; i < listings; i++) {
+         nodes += count(getNode(store, "./Apps"));
+      }
+      long list = Math.max(1, System.currentTimeMillis() - start);
+
+      System.out.println(name + ": populated " + apps + " apps in " +
+                         populate + " ms");
+      System.out.println("   " + lookups + " lookups in " + lookup + " ms (" +
+                         (lookups * 1000L / lookup) + "/s)");
+      System.out.println("   " + listings + " listings of " +
+                         (nodes / listings) + " nodes in " + list + " ms (" +
+                         (nodes * 1000L / list) + " nodes/s)");
+
+      store.unload();
+      delete(root);
+   }
+
+   // The store methods are protected in JUMPStore; reach them through
+   // the implementations, which are in this package.
+
+   static void create(JUMPStore store, String uri) throws IOException {
+      if (store instanceof LogStoreImpl) {
+         ((LogStoreImpl) store).createNode(uri);
+      } else {
+         ((FileStoreImpl) store).createNode(uri);
+      }
+   }
+
+   static void createData(JUMPStore store, String uri, JUMPData data)
+      throws IOException {
+      if (store instanceof LogStoreImpl) {
+         ((LogStoreImpl) store).createDataNode(uri, data);
+      } else {
+         ((FileStoreImpl) store).createDataNode(uri, data);
+      }
+   }
+
+   static JUMPNode getNode(JUMPStore store, String uri) throws IOException {
+      if (store instanceof LogStoreImpl) {
+         return ((LogStoreImpl) store).getNode(uri);
+      } else {
+         return ((FileStoreImpl) store).getNode(uri);
+      }
+   }
+
+   static int count(JUMPNode node) {
+      int n = 1;
+      if (node instanceof JUMPNode.List) {
+         for (Iterator i = ((JUMPNode.List) node).getChildren(); i.hasNext(); ) {
+            n += count((JUMPNode) i.next());
+         }
+      }
+      return n;
+   }
+
+   static void delete(File file) {
+      File[] files = file.listFiles();
+      for (int i = 0; files != null && i < files.length; i++) {
+         delete(files[i]);
+      }
+      file.delete();
+   }
+}
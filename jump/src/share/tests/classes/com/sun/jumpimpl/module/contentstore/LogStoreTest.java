@@ -0,0 +1,207 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+
+package com.sun.jumpimpl.module.contentstore;
+
+import junit.framework.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+ 
+import com.sun.jump.module.contentstore.*;
+
+public class LogStoreTest extends TestCase {
+
+   File root;
+   Map config;
+
+   public LogStoreTest(String testName) { 
+      super(testName);
+   }
+
+   protected void setUp() throws IOException {
+      root = File.createTempFile("logstore", "");
+      root.delete();
+      root.mkdir();
+      config = new HashMap();
+      config.put("contentstore.root", root.getPath());
+      config.put("contentstore.cache.size", "4");
+   }
+
+   protected void tearDown() {
+      File[] files = root.listFiles();
+      for (int i = 0; files != null && i < files.length; i++) {
+         files[i].delete();
+      }
+      root.delete();
+   }
+
+   LogStoreImpl open() {
+      LogStoreImpl store = new LogStoreImpl();
+      store.load(config);
+      return store;
+   }
+
+   static JUMPData properties() {
+      Properties prop = new Properties();
+      prop.setProperty("name", "Amark");
+      prop.setProperty("vendor", "Sun");
+      return new JUMPData(prop);
+   }
+
+   static String[] dataUris = {
+      "./Apps/Amark/title",
+      "./Apps/Amark/size",
+      "./Apps/Amark/icon",
+      "./Apps/Amark/descriptor",
+      "./Apps/Amark/data/Subdata.properties",
+      "./Apps/Amark/installed",
+   };
+
+   static JUMPData[] datas = {
+      new JUMPData("Amark \u00e9"),
+      new JUMPData(1.0f),
+      new JUMPData(12345),
+      new JUMPData("Amark.jad"),
+      properties(),
+      new JUMPData(true),
+   };
+
+   void populate(LogStoreImpl store) throws IOException {
+      store.createNode("./Apps/Amark/data");
+      for (int i = 0; i < dataUris.length; i++) {
+         store.createDataNode(dataUris[i], datas[i]);
+      }
+   }
+
+   void check(LogStoreImpl store) throws IOException {
+      for (int i = 0; i < dataUris.length; i++) {
+         JUMPNode.Data node = (JUMPNode.Data) store.getNode(dataUris[i]);
+         assertEquals(dataUris[i], datas[i], node.getData());
+      }
+   }
+
+   public void testCreateAndGet() throws IOException {
+      LogStoreImpl store = open();
+      populate(store);
+      check(store);
+      // Twice, to go through the cache.
+      check(store);
+      assertNull(store.getNode("./Apps/Nothing"));
+      assertTrue(store.getNode("./Apps") instanceof JUMPNode.List);
+      store.unload();
+   }
+
+   public void testBytesAreNotShared() throws IOException {
+      LogStoreImpl store = open();
+      store.createNode("./Apps");
+      store.createDataNode("./Apps/bytes", new JUMPData(new byte[] { 1, 2 }));
+      JUMPNode.Data node = (JUMPNode.Data) store.getNode("./Apps/bytes");
+      node.getData().getBytesValue()[0] = 9;
+      node = (JUMPNode.Data) store.getNode("./Apps/bytes");
+      assertEquals(1, node.getData().getBytesValue()[0]);
+      store.unload();
+   }
+
+   public void testListing() throws IOException {
+      LogStoreImpl store = open();
+      populate(store);
+      HashSet names = new HashSet();
+      JUMPNode.List list = (JUMPNode.List) store.getNode("./Apps/Amark");
+      for (Iterator i = list.getChildren(); i.hasNext(); ) {
+         names.add(((JUMPNode) i.next()).getName());
+      }
+      assertEquals(dataUris.length, names.size());
+      assertTrue(names.contains("data"));
+      assertTrue(names.contains("title"));
+      assertFalse(names.contains("Subdata.properties"));
+      store.unload();
+   }
+
+   public void testReload() throws IOException {
+      LogStoreImpl store = open();
+      populate(store);
+      store.updateDataNode(dataUris[0], datas[1]);
+      store.deleteNode("./Apps/Amark/data");
+      store.unload();
+
+      store = open();
+      assertEquals(datas[1],
+         ((JUMPNode.Data) store.getNode(dataUris[0])).getData());
+      assertNull(store.getNode("./Apps/Amark/data"));
+      assertNull(store.getNode(dataUris[4]));
+      assertEquals(datas[2],
+         ((JUMPNode.Data) store.getNode(dataUris[2])).getData());
+      store.unload();
+   }
+
+   public void testTornRecord() throws IOException {
+      LogStoreImpl store = open();
+      populate(store);
+      store.unload();
+
+      File log = new File(root, LogStoreImpl.LOG_NAME);
+      RandomAccessFile raf = new RandomAccessFile(log, "rw");
+      long length = raf.length();
+      raf.setLength(length - 3);
+      raf.close();
+
+      // The last record is lost, the rest survives.
+      store = open();
+      assertNull(store.getNode(dataUris[dataUris.length - 1]));
+      assertEquals(datas[0],
+         ((JUMPNode.Data) store.getNode(dataUris[0])).getData());
+      store.createDataNode(dataUris[dataUris.length - 1],
+                           datas[dataUris.length - 1]);
+      store.unload();
+
+      store = open();
+      check(store);
+      store.unload();
+   }
+
+   public void testCompaction() throws IOException {
+      LogStoreImpl store = open();
+      store.createNode("./Apps");
+      for (int i = 0; i < 5000; i++) {
+         store.updateDataNode("./Apps/counter", new JUMPData(i));
+      }
+      store.unload();
+
+      File log = new File(root, LogStoreImpl.LOG_NAME);
+      assertTrue(log.length() < 1024);
+
+      store = open();
+      assertEquals(new JUMPData(4999),
+         ((JUMPNode.Data) store.getNode("./Apps/counter")).getData());
+      store.unload();
+   }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+
+
+package com.sun.jumpimpl.module.download;
+
+import junit.framework.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import com.sun.jump.module.download.*;
+
+/*
+ * Runs downloads against a small local HTTP server that can drop
+ * connections part way through a response and can ignore Range
+ * requests.
+ */
+public class DownloadResumeTest extends TestCase {
+
+   static final int SIZE = 200 * 1024;
+
+   byte[] content;
+   Server server;
+
+   public DownloadResumeTest(String testName) { 
+      super(testName);
+   }
+
+   protected void setUp() throws IOException {
+      content = new byte[SIZE];
+      for (int i = 0; i < content.length; i++) {
+         content[i] = (byte)(i * 31 + (i >> 8));
+      }
+      server = new Server(content);
+   }
+
+   protected void tearDown() {
+      server.close();
+   }
+
+   public void testResumeSingleConnection() throws Exception {
+      server.dropAfter = 50000;
+      server.drops = 2;
+      DownloaderImpl d = downloader(null);
+      d.connections = 1;
+      assertDownloaded(d);
+      assertTrue(server.rangeRequests >= 2);
+   }
+
+   public void testParallelSegments() throws Exception {
+      DownloaderImpl d = downloader(null);
+      d.connections = 4;
+      d.minSegmentSize = 16 * 1024;
+      assertDownloaded(d);
+      assertEquals(4, server.requests);
+   }
+
+   public void testParallelSegmentsWithDrops() throws Exception {
+      server.dropAfter = 10000;
+      server.drops = 3;
+      DownloaderImpl d = downloader(sha1(content));
+      d.connections = 3;
+      d.minSegmentSize = 16 * 1024;
+      assertDownloaded(d);
+   }
+
+   public void testServerWithoutRanges() throws Exception {
+      server.ignoreRange = true;
+      server.dropAfter = 70000;
+      server.drops = 1;
+      DownloaderImpl d = downloader(sha1(content));
+      d.connections = 4;
+      d.minSegmentSize = 16 * 1024;
+      assertDownloaded(d);
+   }
+
+   public void testChecksumMismatch() throws Exception {
+      byte[] wrong = (byte[])content.clone();
+      wrong[0]++;
+      DownloaderImpl d = downloader(sha1(wrong));
+      DownloadDestinationImpl dest =
+         new DownloadDestinationImpl(d.descriptor);
+      try {
+         d.startDownload(server.url(), null, SIZE, dest);
+         fail("checksum mismatch not detected");
+      } catch (JUMPDownloadException e) {
+         // expected
+      }
+   }
+
+   public void testTooManyDrops() throws Exception {
+      server.dropAfter = 1000;
+      server.drops = 100;
+      DownloaderImpl d = downloader(null);
+      d.maxRetries = 2;
+      DownloadDestinationImpl dest =
+         new DownloadDestinationImpl(d.descriptor);
+      try {
+         d.startDownload(server.url(), null, SIZE, dest);
+         fail("download should have given up");
+      } catch (JUMPDownloadException e) {
+         // expected
+      }
+   }
+
+   DownloaderImpl downloader(String checksum) {
+      MIDPDownloadDescriptor desc =
+         new MIDPDownloadDescriptor("midp", server.url());
+      desc.setObjectURI(server.url());
+      desc.setSize(SIZE);
+      if (checksum != null) {
+         desc.setChecksum("SHA-1", checksum);
+      }
+      return new DownloaderImpl(desc);
+   }
+
+   void assertDownloaded(DownloaderImpl d) throws Exception {
+      DownloadDestinationImpl dest =
+         new DownloadDestinationImpl(d.descriptor);
+      assertTrue(d.startDownload(server.url(), null, SIZE, dest));
+      assertTrue(Arrays.equals(content, dest.getBuffer()));
+   }
+
+   static String sha1(byte[] data) throws Exception {
+      byte[] b = MessageDigest.getInstance("SHA-1").digest(data);
+      StringBuffer sb = new StringBuffer();
+      for (int i = 0; i < b.length; i++) {
+         sb.append(Integer.toHexString((b[i] & 0xff) | 0x100).substring(1));
+      }
+      return sb.toString().toUpperCase();
+   }
+
+   /*
+    * Serves one object on every path.  The first "drops" responses
+    * are cut off after "dropAfter" bytes of body.
+    */
+   static class Server implements Runnable {
+      final byte[] content;
+      final ServerSocket socket;
+      volatile boolean ignoreRange = false;
+      volatile int dropAfter = 0;
+      volatile int drops = 0;
+      int requests = 0;
+      int rangeRequests = 0;
+
+      Server(byte[] content) throws IOException {
+         this.content = content;
+         socket = new ServerSocket(0);
+         Thread t = new Thread(this, "DownloadResumeTest server");
+         t.setDaemon(true);
+         t.start();
+      }
+
+      String url() {
+         return "http://127.0.0.1:" + socket.getLocalPort() + "/app.jar";
+      }
+
+      void close() {
+         try {
+            socket.close();
+         } catch (IOException e) {
+         }
+      }
+
+      public void run() {
+         while (!socket.isClosed()) {
+            final Socket s;
+            try {
+               s = socket.accept();
+            } catch (IOException e) {
+               return;
+            }
+            new Thread() {
+               public void run() {
+                  try {
+                     serve(s);
+                  } catch (IOException e) {
+                  } finally {
+                     try {
+                        s.close();
+                     } catch (IOException e) {
+                     }
+                  }
+               }
+            }.start();
+         }
+      }
+
+      void serve(Socket s) throws IOException {
+         BufferedReader r = new BufferedReader(
+            new InputStreamReader(s.getInputStream(), "ISO-8859-1"));
+         String line = r.readLine();
+         int from = 0;
+         int to = content.length;
+         boolean ranged = false;
+         while ((line = r.readLine()) != null && line.length() > 0) {
+            String l = line.toLowerCase();
+            if (l.startsWith("range: bytes=") && !ignoreRange) {
+               String spec = l.substring(13).trim();
+               int dash = spec.indexOf('-');
+               from = Integer.parseInt(spec.substring(0, dash));
+               if (dash < spec.length() - 1) {
+                  to = Integer.parseInt(spec.substring(dash + 1)) + 1;
+               }
+               ranged = true;
+            }
+         }
+         boolean drop;
+         synchronized (this) {
+            requests++;
+            if (ranged) {
+               rangeRequests++;
+            }
+            drop = drops > 0;
+            if (drop) {
+               drops--;
+            }
+         }
+         StringBuffer h = new StringBuffer();
+         if (ranged) {
+            h.append("HTTP/1.0 206 Partial Content\r\n");
+            h.append("Content-Range: bytes " + from + "-" + (to - 1) +
+                     "/" + content.length + "\r\n");
+         } else {
+            h.append("HTTP/1.0 200 OK\r\n");
+         }
+         h.append("Content-Type: application/java-archive\r\n");
+         h.append("Content-Length: " + (to - from) + "\r\n");
+         h.append("Connection: close\r\n\r\n");
+         OutputStream out = s.getOutputStream();
+         out.write(h.toString().getBytes("ISO-8859-1"));
+         int end = to;
+         if (drop && dropAfter < to - from) {
+            end = from + dropAfter;
+         }
+         out.write(content, from, end - from);
+         out.flush();
+      }
+   }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright  1990-2006 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt). 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions. 
+ */
+
+
+package com.sun.jumpimpl.process;
+
+import java.io.IOException;
+
+import com.sun.jump.message.JUMPMessage;
+import com.sun.jump.message.JUMPMessageBuffer;
+import com.sun.jump.message.JUMPMessageHandler;
+import com.sun.jump.message.JUMPMessageReader;
+import com.sun.jump.message.JUMPOutgoingMessage;
+import com.sun.jump.os.JUMPOSInterface;
+
+/**
+ * Bounces messages between two processes over the JUMP message queues
+ * and reports round trips per second, message buffers allocated per
+ * message and the approximate heap allocated per round trip.
+ * <p>
+ * Run the responder in an isolate, and the pinger in the executive
+ * giving it the isolate's process id:
+ * <pre>
+ *   (isolate)   com.sun.jumpimpl.process.MessagePingPongBench -responder [seconds]
+ *   (executive) com.sun.jumpimpl.process.MessagePingPongBench pid [count [size]]
+ * </pre>
+ * Without a pid both ends run in this process and the messages loop
+ * back through the local queue. Run with
+ * <code>-Djump.messagebuffer.poolsize=0</code> to compare against
+ * unpooled buffers.
+ */
+public class MessagePingPongBench {
+
+    static final String TYPE = "mvm/bench/ping";
+
+    static class Responder implements JUMPMessageHandler {
+	public void handleMessage(JUMPMessage message) {
+	    // Read the request in place: the payload is not copied out.
+	    JUMPMessageReader reader = new JUMPMessageReader(message);
+	    int seq = reader.getInt();
+	    reader.skipByteArray();
+
+	    JUMPOutgoingMessage reply = ((JUMPProcessProxyImpl)
+		message.getSender()).newOutgoingMessage(message);
+	    reply.addInt(seq);
+	    try {
+		message.getSender().sendResponseMessage(reply);
+	    } catch (IOException e) {
+		e.printStackTrace();
+	    }
+	    reply.release();
+	}
+    }
+
+    public static void main(String[] args) throws Exception {
+	JUMPOSInterface os = JUMPOSInterface.getInstance();
+	JUMPMessageDispatcherImpl dispatcher =
+	    JUMPMessageDispatcherImpl.getInstance();
+
+	if (args.length > 0 && args[0].equals("-responder")) {
+	    long seconds = args.length > 1 ? Long.parseLong(args[1]) : 60;
+	    JUMPProcessProxyImpl.createProcessProxyImpl(
+		os.getExecutiveProcessID());
+	    Object token = dispatcher.registerHandler(TYPE, new Responder());
+	    Thread.sleep(seconds * 1000);
+	    dispatcher.cancelRegistration(token);
+	    return;
+	}
+
+	int pid = args.length > 0 ? Integer.parseInt(args[0]) : -1;
+	int count = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+	int size = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+	Object token = null;
+	if (pid == -1) {
+	    pid = os.getProcessID();
+	    token = dispatcher.registerHandler(TYPE, new Responder());
+	}
+	JUMPProcessProxyImpl target =
+	    JUMPProcessProxyImpl.createProcessProxyImpl(pid);
+	byte[] payload = new byte[size];
+
+	System.out.println("pid " + pid + ", " + size + " byte payload");
+	run(target, payload, count / 10);	// warm up
+	run(target, payload, count);
+
+	if (token != null) {
+	    dispatcher.cancelRegistration(token);
+	}
+    }
+
+    static void run(JUMPProcessProxyImpl target, byte[] payload, int count)
+	throws Exception {
+	Runtime rt = Runtime.getRuntime();
+	System.gc();
+	long heapBefore = rt.totalMemory() - rt.freeMemory();
+	long allocatedBefore = JUMPMessageBuffer.getAllocatedCount();
+	long reusedBefore = JUMPMessageBuffer.getReusedCount();
+	long start = System.currentTimeMillis();
+
+	for (int i = 0; i < count; i++) {
+	    JUMPOutgoingMessage request = target.newOutgoingMessage(TYPE);
+	    request.addInt(i);
+	    request.addByteArray(payload);
+	    JUMPMessage reply = target.sendMessage(request, 10000L);
+	    request.release();
+	    int seq = new JUMPMessageReader(reply).getInt();
+	    reply.release();
+	    if (seq != i) {
+		throw new Error("Got reply " + seq + " for request " + i);
+	    }
+	}
+
+	long elapsed = Math.max(1, System.currentTimeMillis() - start);
+	long heap = rt.totalMemory() - rt.freeMemory() - heapBefore;
+	long allocated = JUMPMessageBuffer.getAllocatedCount() - allocatedBefore;
+	long reused = JUMPMessageBuffer.getReusedCount() - reusedBefore;
+	// Buffers seen by this process only; the responder's are not
+	// counted.  The heap figure is meaningless if a GC ran meanwhile.
+	System.out.println(count + " round trips in " + elapsed + " ms: " +
+	    (count * 1000L / elapsed) + " round trips/s, " +
+	    (count * 2000L / elapsed) + " messages/s");
+	System.out.println("  buffers allocated " + allocated +
+	    ", reused " + reused +
+	    ", allocated per message " + ((float) allocated / (2 * count)));
+	System.out.println("  heap per round trip ~" +
+	    (heap > 0 ? String.valueOf(heap / count) + " bytes" : "n/a"));
+    }
+}
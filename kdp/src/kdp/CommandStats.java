@@ -0,0 +1,177 @@
+/*
+ * Copyright  1990-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package kdp;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * Collects the latency of JDWP commands per command set and prints it
+ * when the proxy exits.  Commands from the debugger are counted as
+ * either handled by the proxy or forwarded to the VM; the queries the
+ * proxy itself sends to the VM are counted separately, as are the
+ * queries answered from the proxy's caches.  Enabled with -stats.
+ */
+class CommandStats implements VMConstants {
+
+    static final int HANDLED = 0;
+    static final int FORWARDED = 1;
+    static final int QUERIED = 2;
+    static final int CACHED = 3;
+
+    static final String kindNames[] = {
+        "handled", "forwarded", "vm query", "cached"
+    };
+
+    private static boolean enabled = false;
+
+    private static long count[][] = new long[4][256];
+    private static long total[][] = new long[4][256];
+    private static long max[][] = new long[4][256];
+
+    // id of a forwarded debugger command -> long[] {cmdSet, start time}
+    private static Map pending = new HashMap();
+
+    static void enable() {
+        if (enabled) {
+            return;
+        }
+        enabled = true;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                print(System.out);
+            }
+        });
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static synchronized void record(int kind, byte cmdSet, long time) {
+        if (!enabled) {
+            return;
+        }
+        int set = cmdSet & 0xFF;
+        count[kind][set]++;
+        total[kind][set] += time;
+        if (time > max[kind][set]) {
+            max[kind][set] = time;
+        }
+    }
+
+    /*
+     * A command from the debugger has been handled by the proxy.
+     */
+    static void handled(Packet p, long start) {
+        record(HANDLED, p.cmdSet, System.currentTimeMillis() - start);
+    }
+
+    /*
+     * A command from the debugger has been passed on to the VM, its
+     * time is recorded once the reply comes back.
+     */
+    static synchronized void forwarded(Packet p, long start) {
+        if (!enabled) {
+            return;
+        }
+        pending.put(new Integer(p.id), new long[] { p.cmdSet, start });
+    }
+
+    /*
+     * A reply from the VM is passed on to the debugger.
+     */
+    static synchronized void replied(Packet p) {
+        if (!enabled) {
+            return;
+        }
+        long sent[] = (long[])pending.remove(new Integer(p.id));
+        if (sent != null) {
+            record(FORWARDED, (byte)sent[0],
+                   System.currentTimeMillis() - sent[1]);
+        }
+    }
+
+    /*
+     * The VM has replied to a query the proxy sent itself.
+     */
+    static void queried(Packet p) {
+        record(QUERIED, p.cmdSet, System.currentTimeMillis() - p.sentTime);
+    }
+
+    /*
+     * A query to the VM was answered from a cache instead.
+     */
+    static void cached(byte cmdSet) {
+        record(CACHED, cmdSet, 0);
+    }
+
+    static String cmdSetName(int set) {
+        if (set < VMcmds.length) {
+            return VMcmds[set][0];
+        } else if (set >= 64 && set - 64 < DBGcmds.length) {
+            return DBGcmds[set - 64][0];
+        } else if (set == (KVM_CMDSET & 0xFF)) {
+            return "KVM";
+        }
+        return "";
+    }
+
+    static synchronized void print(PrintStream out) {
+        out.println("JDWP command latency (ms):");
+        out.println("  " + pad("command set", 28, false) +
+                    pad("kind", 10, false) + pad("count", 8, true) +
+                    pad("avg", 9, true) + pad("max", 9, true));
+        for (int set = 0; set < 256; set++) {
+            for (int kind = 0; kind < kindNames.length; kind++) {
+                long n = count[kind][set];
+                if (n == 0) {
+                    continue;
+                }
+                StringBuffer s = new StringBuffer("  ");
+                s.append(pad(cmdSetName(set) + "(" + set + ")", 28, false));
+                s.append(pad(kindNames[kind], 10, false));
+                s.append(pad(String.valueOf(n), 8, true));
+                s.append(pad(String.valueOf(total[kind][set] / n), 9, true));
+                s.append(pad(String.valueOf(max[kind][set]), 9, true));
+                out.println(s);
+            }
+        }
+    }
+
+    private static String pad(String s, int width, boolean left) {
+        StringBuffer b = new StringBuffer();
+        if (!left) {
+            b.append(s);
+        }
+        for (int i = s.length(); i < width; i++) {
+            b.append(' ');
+        }
+        if (left) {
+            b.append(s);
+        }
+        return b.toString();
+    }
+}
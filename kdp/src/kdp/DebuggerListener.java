@@ -44,6 +44,11 @@ class DebuggerListener extends ProxyListener implements VMConstants {
     Thread myThread;
     static boolean options_ready = false;
     int remotePort = 0;
+    // 0 or 1, the frame ID of the top frame; -1 until the VM is asked
+    static int frame_id_base = -1;
+    // line and variable tables the VM returned, keyed by the query;
+    // they don't change while the class is loaded
+    Map vmTables = new HashMap();
 
     public DebuggerListener(ServerSocket so, Options opt) {
         super();
@@ -74,6 +79,7 @@ class DebuggerListener extends ProxyListener implements VMConstants {
         String id = String.valueOf(p.id);
         synchronized(waitingQueue) {
             if ((p.flags & Packet.Reply) == 0 && p.id < 0) {
+                p.sentTime = System.currentTimeMillis();
                 waitingQueue.put(id, p);
             }
         }
@@ -171,7 +177,11 @@ class DebuggerListener extends ProxyListener implements VMConstants {
 
                 Log.LOG(3, "DebuggerListener: start: " + remotePort + ": ");
                 Log.LOGN(3, p);
- 
+
+                long start = System.currentTimeMillis();
+                if (!keepsFrames(p.cmdSet, p.cmd)) {
+                    invalidateFrameCache();
+                }
                 in = new PacketStream(this, p);
                 switch (p.cmdSet) {
                 case VIRTUALMACHINE_CMDSET:
@@ -203,7 +213,10 @@ class DebuggerListener extends ProxyListener implements VMConstants {
                 if (!handled) {
                     Log.LOG(6, "DebuggerListener:" + remotePort + ": ");
                     Log.LOGN(6, p);
+                    CommandStats.forwarded(p, start);
                     KVMListener.send(p);
+                } else {
+                    CommandStats.handled(p, start);
                 }
             }
         } catch (ArrayIndexOutOfBoundsException e) {
@@ -805,6 +818,13 @@ class DebuggerListener extends ProxyListener implements VMConstants {
             ps.send();
             handled = true;
             break;
+
+        case FRAMES_CMD:
+        case FRAMECOUNT_CMD:
+            Log.LOGN(3, "Threadreference: frames");
+            replyFromFrameCache(in);
+            handled = true;
+            break;
         }
         return handled;
     }
@@ -880,6 +900,12 @@ class DebuggerListener extends ProxyListener implements VMConstants {
 
         switch(in.cmd()) {
 
+        case STACKFRAME_GETVALUES_CMD:
+            Log.LOGN(3, "Stackframe: getvalues");
+            replyFromFrameCache(in);
+            handled = true;
+            break;
+
         case STACKFRAME_THISOBJECT_CMD:
             Log.LOGN(3, "Stackframe: thisobject");
             int tID = in.readInt();         // get thread id;
@@ -892,24 +918,28 @@ class DebuggerListener extends ProxyListener implements VMConstants {
 
             // First we need to find out if the VM sends us 0 or 1 based
             // Frame ID's.  Unfortunately, this isn't covered by a minor
-            // version number.
-            PacketStream ps2 = new PacketStream(KVMListener,
-                               THREADREFERENCE_CMDSET, FRAMES_CMD);
-            ps2.writeInt(tID);
-            ps2.writeInt(0);
-            ps2.writeInt(1);      // just want one frame
-            ps2.send();
-            try {
-                ps2.waitForReply();
-                ps2.readInt();   // framecount   
-                int id = ps2.readInt();
-                if (id == 0) {
-                    // VM sent 0 back as ID, must be older KVM
-                    frame_index_adjust = 0;
+            // version number.  It doesn't change, so ask only once.
+            PacketStream ps2;
+            if (frame_id_base == -1) {
+                ps2 = new PacketStream(KVMListener,
+                                       THREADREFERENCE_CMDSET, FRAMES_CMD);
+                ps2.writeInt(tID);
+                ps2.writeInt(0);
+                ps2.writeInt(1);      // just want one frame
+                try {
+                    ps2 = queryFrames(ps2);
+                    ps2.readInt();   // framecount   
+                    // VM sends 0 back as ID if it is an older KVM
+                    frame_id_base = (ps2.readInt() == 0) ? 0 : 1;
+                } catch (ProxyConnectionException e) {
+                    // What to do?  Nothing, just use frame index as it it
+                    // set already
+                } catch (PacketStreamException e) {
+                    // likewise, the VM returned an error
                 }
-            } catch (ProxyConnectionException e) {
-                // What to do?  Nothing, just use frame index as it it
-                // set already
+            }
+            if (frame_id_base != -1) {
+                frame_index_adjust = frame_id_base;
             }
 
             ps2 = new PacketStream(KVMListener,
@@ -918,7 +948,6 @@ class DebuggerListener extends ProxyListener implements VMConstants {
             ps2.writeInt(tID);
             ps2.writeInt(fID - frame_index_adjust);
             ps2.writeInt(1);      // just want one frame
-            ps2.send();
             try {
                 ClassFile cf = null;
                 MethodInfo mi;
@@ -926,7 +955,7 @@ class DebuggerListener extends ProxyListener implements VMConstants {
                 int fID2;
                 int cid;
 
-                ps2.waitForReply();
+                ps2 = queryFrames(ps2);
 
                 ps2.readInt();           // get number of frames, should be 1
                 fID2 = ps2.readInt();    // get frame ID
@@ -976,9 +1005,8 @@ class DebuggerListener extends ProxyListener implements VMConstants {
             ps2.writeInt(1);         // just want the 'this' object
             ps2.writeInt(0);         // it's at slot 0
             ps2.writeByte((byte)'L');    // it's an object type
-            ps2.send();
             try {
-                ps2.waitForReply();
+                ps2 = queryFrames(ps2);
             } catch (ProxyConnectionException e) {
                 ps.writeByte((byte)'L');
                 ps.writeInt(0);
@@ -1000,6 +1028,119 @@ class DebuggerListener extends ProxyListener implements VMConstants {
         return handled;
     }
 
+    /*
+     * Returns false if the command may let the VM run or change the
+     * frames of a thread, so that cached frame queries are stale.
+     */
+    private static boolean keepsFrames(byte cmdSet, byte cmd) {
+        switch (cmdSet) {
+        case REFERENCE_TYPE_CMDSET:
+        case METHOD_CMDSET:
+        case THREADGROUPREFERENCE_CMDSET:
+        case EVENT_REQUEST_CMDSET:
+        case CLASSOBJECTREFERENCE_CMDSET:
+            return true;
+        case THREADREFERENCE_CMDSET:
+            return cmd != THREAD_RESUME_CMD;
+        case STACKFRAME_CMDSET:
+            return cmd == STACKFRAME_GETVALUES_CMD ||
+                   cmd == STACKFRAME_THISOBJECT_CMD;
+        case VIRTUALMACHINE_CMDSET:
+            switch (cmd) {
+            case SENDVERSION_CMD:
+            case CLASSESBYSIG_CMD:
+            case ALL_CLASSES_CMD:
+            case ALL_THREADS_CMD:
+            case TOPLEVELTHREADGROUP_CMD:
+            case IDSIZES_CMD:
+            case CAPABILITIES_CMD:
+            case CLASSPATHS_CMD:
+                return true;
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /*
+     * Sends a query about the frames of a thread to the VM and returns
+     * the reply, or the same reply as before if the VM hasn't run since.
+     * Debuggers ask for the same frames and values over and over while
+     * a thread is suspended.  Throws PacketStreamException if the VM
+     * returned an error.
+     */
+    private PacketStream queryFrames(PacketStream query)
+        throws ProxyConnectionException {
+        String k = queryKey(query);
+        Packet reply;
+        int generation;
+        synchronized(frameCache) {
+            reply = (Packet)frameCache.get(k);
+            generation = frameCacheGeneration;
+        }
+        if (reply != null) {
+            CommandStats.cached(query.pkt.cmdSet);
+            return new PacketStream(this, reply);
+        }
+        query.send();
+        query.waitForReply();
+        synchronized(frameCache) {
+            if (generation == frameCacheGeneration) {
+                frameCache.put(k, query.pkt);
+            }
+        }
+        return query;
+    }
+
+    /*
+     * Sends a query for the line or variable table of a method to the
+     * VM, unless it has been answered before.
+     */
+    private PacketStream queryTable(PacketStream query)
+        throws ProxyConnectionException {
+        String k = queryKey(query);
+        Packet reply = (Packet)vmTables.get(k);
+        if (reply != null) {
+            CommandStats.cached(query.pkt.cmdSet);
+            return new PacketStream(this, reply);
+        }
+        query.send();
+        query.waitForReply();
+        vmTables.put(k, query.pkt);
+        return query;
+    }
+
+    private static String queryKey(PacketStream query) {
+        byte[] args = query.getWrittenData();
+        StringBuffer key = new StringBuffer();
+        key.append(query.pkt.cmdSet).append('/').append(query.pkt.cmd);
+        for (int i = 0; i < args.length; i++) {
+            key.append('/').append(args[i]);
+        }
+        return key.toString();
+    }
+
+    /*
+     * Answers a frame query of the debugger through queryFrames.
+     */
+    private void replyFromFrameCache(PacketStream in)
+        throws ProxyConnectionException {
+        PacketStream query = new PacketStream(KVMListener,
+                                              in.pkt.cmdSet, in.pkt.cmd);
+        PacketStream reply;
+        query.writeByteArray(in.pkt.data);
+        try {
+            reply = queryFrames(query);
+        } catch (PacketStreamException e) {
+            sendErrorReply(this, in, query.pkt.errorCode);
+            return;
+        }
+        PacketStream ps = new PacketStream(this, in.id(),
+                                           Packet.Reply, Packet.ReplyNoError);
+        ps.writeByteArray(reply.pkt.data);
+        ps.send();
+    }
+
     public String toString() {
         return (new String("DebuggerListener: "));
     }
@@ -1090,9 +1231,8 @@ class DebuggerListener extends ProxyListener implements VMConstants {
 
             ps2.writeInt(cid);
             mid.writeMethodID(ps2);
-            ps2.send();
             try {
-                ps2.waitForReply();
+                ps2 = queryTable(ps2);
                 num_entries = ps2.readInt();     // get number of entries
                 Log.LOGN(3, "linenumber table: VM returned " + num_entries + " entries.");
                 if (num_entries > 0) {
@@ -1217,9 +1357,8 @@ class DebuggerListener extends ProxyListener implements VMConstants {
 
             ps2.writeInt(cid);
             mid.writeMethodID(ps2);
-            ps2.send();
             try {
-                ps2.waitForReply();
+                ps2 = queryTable(ps2);
                 num_entries = ps2.readInt();     // get number of entries
                 Log.LOGN(3, "variable: VM returned " + num_entries + " entries.");
                 if (num_entries > 0) {
@@ -68,6 +68,8 @@ public class KVMDebugProxy {
                     options.setUseMVM(true);
                 } else if ("-nb4".equals(args[i])) {
                     options.setNetbeans40compat(true);
+                } else if ("-stats".equals(args[i])) {
+                    options.setStats(true);
                 }
                 i++;
             }
@@ -82,7 +84,7 @@ public class KVMDebugProxy {
         System.out.println( "Java ME Debug Agent." );
         System.out.println();
         System.out.println( "Usage: KVMDebugProxy -l <localport> -r <remotehost> <remoteport> [-p]");
-        System.out.println("        [-v <level>] [-cp | - classpath <classpath" + File.pathSeparator + "classpath...>]" );
+        System.out.println("        [-v <level>] [-stats] [-cp | - classpath <classpath" + File.pathSeparator + "classpath...>]" );
         System.out.println("Where:");
         System.out.println("  -l <localport> specifies the local port number that the debug agent will");
         System.out.println("     listen on for a connection from a debugger.");
@@ -97,6 +99,7 @@ public class KVMDebugProxy {
         System.out.println("     'level' can be from 1-9.");
         System.out.println("  -m Enable support for Multitasking VM.");
         System.out.println("  -nb4 Enable use of Netbeans 4.x with older VMs (version < CLDC_VM 1.1.3)");
+        System.out.println("  -stats prints the latency of JDWP commands per command set on exit.");
         System.out.println("  -cp or -classpath specifies a list of paths separated by " + File.pathSeparator + " where the");
         System.out.println("     debug agent can find copies of the class files.  Only needed if -p is set.");
         System.out.println();
@@ -110,6 +113,9 @@ public class KVMDebugProxy {
         }
 
         Log.SET_LOG(options.getVerbosity());
+        if (options.getStats()) {
+            CommandStats.enable();
+        }
         try {
             serverSocket = new ServerSocket(options.getLocalPort());
             Log.LOGN(3, "KVMDebugProxy: opened server socket " + serverSocket);
@@ -66,6 +66,7 @@ class KVMListener extends ProxyListener implements VMConstants {
         }
         String id = String.valueOf(p.id);
         if ((p.flags & Packet.Reply) == 0 && p.id < 0) {
+            p.sentTime = System.currentTimeMillis();
             synchronized(waitingQueue) {
                 waitingQueue.put(id, p);
             }
@@ -233,6 +234,11 @@ class KVMListener extends ProxyListener implements VMConstants {
                 Log.LOG(3, "KVMListener: start:" + localPort + ": ");
                 Log.LOGN(3, p);
 
+                if ((p.flags & Packet.Reply) == 0) {
+                    // the VM has run, frames may have changed
+                    invalidateFrameCache();
+                }
+
                 if (proxyMode && (p.flags & Packet.Reply) == 0) {
                     switch (p.cmdSet) {
                     case EVENT_CMDSET:
@@ -292,6 +298,9 @@ class KVMListener extends ProxyListener implements VMConstants {
                 if ( !handled ) {
                     Log.LOG(6, "KVMListener:" + localPort + ": ");
                     Log.LOGN(6, p);
+                    if ((p.flags & Packet.Reply) != 0) {
+                        CommandStats.replied(p);
+                    }
                     debuggerListener.send(p);
                 }
             }
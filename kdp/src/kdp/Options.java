@@ -38,6 +38,7 @@ class Options {
     private static boolean proxyMode = false;
     private static boolean mvm = false;
     private static boolean nb40hack = false;
+    private static boolean stats = false;
 
     public static void setLocalPort( int port ) { localport = port; }
     public static int  getLocalPort() { return localport; }
@@ -63,5 +64,8 @@ class Options {
     public static void setNetbeans40compat(boolean on) { nb40hack = on; }
     public static boolean getNetbeans40compat() { return nb40hack;}
 
+    public static void setStats(boolean on) { stats = on; }
+    public static boolean getStats() { return stats; }
+
 
 } // Options
@@ -46,6 +46,7 @@ public class Packet extends Object implements VMConstants {
     short errorCode;
     byte[] data;
     volatile boolean replied = false;
+    long sentTime;                  /* when a query of the proxy was sent */
     int curReadIndex, curWriteIndex;
 
     Packet()
@@ -74,6 +74,13 @@ class PacketStream {
         }
     }
 
+    /*
+     * Returns the data written so far, without sending the packet.
+     */
+    byte[] getWrittenData() {
+        return dataStream.toByteArray();
+    }
+
     void waitForReply() throws PacketStreamException {
         if (!isCommitted) {
             throw new ProxyConnectionException("waitForReply without send");
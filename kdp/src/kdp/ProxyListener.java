@@ -57,6 +57,12 @@ abstract class ProxyListener extends Thread {
     Map waitingQueue = new HashMap(8, 0.75f);
     protected List packetQueue;
 
+    // Replies of the VM to queries about the frames of suspended
+    // threads, keyed by the query.  They stay valid until the VM
+    // may have run again, see invalidateFrameCache().
+    static Map frameCache = new HashMap();
+    static int frameCacheGeneration = 0;
+
     
     public ProxyListener() {
         packetQueue = Collections.synchronizedList(new LinkedList());
@@ -119,6 +125,7 @@ abstract class ProxyListener extends Thread {
         p2.errorCode = p.errorCode;
         p2.data = p.data;
         p2.replied = true;
+        CommandStats.queried(p2);
         synchronized(p2) {
             p2.notify();
         }
@@ -140,6 +147,21 @@ abstract class ProxyListener extends Thread {
         }
     }
 
+    /*
+     * Drops the cached frame queries.  Called for every event from the
+     * VM and for every command from the debugger that may let it run.
+     */
+    static void invalidateFrameCache() {
+        synchronized(frameCache) {
+            if (frameCache.size() > 0) {
+                Log.LOGN(4, "frame cache: dropping " + frameCache.size() +
+                         " replies");
+                frameCache.clear();
+            }
+            frameCacheGeneration++;
+        }
+    }
+
     public void verbose( int lvl ) {
         verbose = lvl;
     }
@@ -56,8 +56,10 @@ public interface VMConstants {
     final static byte METHOD_BYTECODES_CMD = 3;
 
     final static byte THREADREFERENCE_CMDSET = 11;
+    final static byte THREAD_RESUME_CMD = 3;
     final static byte THREADGROUP_CMD = 5;
     final static byte FRAMES_CMD = 6;
+    final static byte FRAMECOUNT_CMD = 7;
 
     final static byte THREADGROUPREFERENCE_CMDSET = 12;
     final static byte THREADGROUP_NAME_CMD = 1;
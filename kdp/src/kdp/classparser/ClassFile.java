@@ -145,6 +145,38 @@ public class ClassFile  {
         }
       }
 
+    /**
+     * Constructor.  Creates a class file object that shares the parsed
+     * contents of another one, for a class that the VM reports again
+     * under a different class ID.  The ID and status are not shared.
+     *
+     * @param parsed a class file object that has been read
+     */
+    ClassFile (ClassFile parsed)
+    {
+        this.baseName = parsed.baseName;
+        this.className = parsed.className;
+        this.classSignature = parsed.classSignature;
+        this.classFile = parsed.classFile;
+        this.magic = parsed.magic;
+        this.majorVersion = parsed.majorVersion;
+        this.minorVersion = parsed.minorVersion;
+        this.constantPoolCount = parsed.constantPoolCount;
+        this.constantPool = parsed.constantPool;
+        this.accessFlags = parsed.accessFlags;
+        this.thisClass = parsed.thisClass;
+        this.superClass = parsed.superClass;
+        this.interfacesCount = parsed.interfacesCount;
+        this.interfaces = parsed.interfaces;
+        this.fieldsCount = parsed.fieldsCount;
+        this.fieldInfo = parsed.fieldInfo;
+        this.methodsCount = parsed.methodsCount;
+        this.methodInfo = parsed.methodInfo;
+        this.attributesCount = parsed.attributesCount;
+        this.attributes = parsed.attributes;
+        this.typeTag = parsed.typeTag;
+    }
+
     public boolean equals(String newclassName) {
         return className.equals(newclassName);
     }
@@ -201,7 +233,8 @@ public class ClassFile  {
        try {
            //create the data input stream and start reading in the
            //class file
-           iStream = new DataInputStream (classFile.getInputStream());
+           iStream = new DataInputStream (
+               new BufferedInputStream (classFile.getInputStream()));
 
            magic = iStream.readInt ();
 
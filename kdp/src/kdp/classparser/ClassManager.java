@@ -33,6 +33,11 @@ public class ClassManager {
 
     SearchPath path;
     public Map classMap = new HashMap(128, 0.75f);
+    // class name -> ClassFile, so a class is parsed only once even if
+    // the VM reports it under several class IDs
+    Map classesByName = new HashMap(128, 0.75f);
+    // names of classes that are not on the search path
+    Set missingClasses = new HashSet();
 
     public ClassManager() {
         path = null;
@@ -62,23 +67,12 @@ public class ClassManager {
         return cf; 
     }
 
-    public ClassFile findClass(byte typeTag, String className) {
-
-        ClassFile cf=null;
-
-        Collection cVals = classMap.values();
-        Iterator cIter = cVals.iterator();
-        while (cIter.hasNext()) {
-            cf = (ClassFile)cIter.next();
-            if (cf.equals(className)) {
-                return cf;
-            }
-        }
-        return null;
+    public synchronized ClassFile findClass(byte typeTag, String className) {
+        return (ClassFile)classesByName.get(className);
     }
 
-    public ClassFile findClass(int cid, String className,
-                               byte typetag, int status ) {
+    public synchronized ClassFile findClass(int cid, String className,
+                                            byte typetag, int status ) {
         ClassFile cf=null;
 
         if ((cf = (ClassFile)classMap.get(new Integer(cid))) != null) {
@@ -89,25 +83,37 @@ public class ClassManager {
         if (typetag == VMConstants.TYPE_TAG_ARRAY) {
             Log.LOGN(4,  "findclass: Array class " + className );
             cf = new ClassFile(null, className, typetag);
-            classMap.put(new Integer(cid), cf);
-            cf.setClassID(cid);
-            cf.setClassStatus(status);
+            addClass(cid, cf, status);
+            return cf;
+        }
+        ClassFile parsed = (ClassFile)classesByName.get(className);
+        if (parsed != null) {
+            Log.LOGN(4,  "findclass: already parsed " + className );
+            cf = new ClassFile(parsed);
+            addClass(cid, cf, status);
             return cf;
         }
-        if ( path != null ) {
+        if ( path != null && !missingClasses.contains(className) ) {
             FileReference file;
 
             Log.LOGN(4,  "findclass: finding " + className );
             if ( ( file = path.resolve( className ) ) != null ) {
                 cf = loadClass(className, file, typetag);
                 if (cf != null) {
-                    classMap.put(new Integer(cid), cf);
-                    cf.setClassID(cid);
-                    cf.setClassStatus(status);
+                    addClass(cid, cf, status);
                     return cf;
                 }
-            } 
+            } else {
+                missingClasses.add(className);
+            }
         }
         return null;
     }
+
+    private void addClass(int cid, ClassFile cf, int status) {
+        classMap.put(new Integer(cid), cf);
+        classesByName.put(cf.getClassName(), cf);
+        cf.setClassID(cid);
+        cf.setClassStatus(status);
+    }
 } // ClassManager
@@ -84,6 +84,10 @@ public class MethodInfo
     private AttributeInfo        attributes[];
     /** reference to class file's constant pool */
     private ConstantPoolInfo[]   constantPool;
+    /** local variables of this method, built on first request */
+    private List                 localVariables;
+    /** true once localVariables has been built */
+    private boolean              localVariablesRead;
 
    /**
     * Constructor.
@@ -417,7 +421,19 @@ public class MethodInfo
         return s;
     }
      
+    /**
+     * Returns the LocalVariable objects of this method or null if it
+     * has no LocalVariableTable.  The list is built once and shared.
+     */
     public List getLocalVariables(){
+        if (!localVariablesRead) {
+            localVariables = readLocalVariables();
+            localVariablesRead = true;
+        }
+        return localVariables;
+    }
+
+    private List readLocalVariables(){
         AttributeInfo[] ai = null;
         int attribCount = 0;
         Attribute attribute = null;
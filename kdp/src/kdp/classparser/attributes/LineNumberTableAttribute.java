@@ -28,6 +28,7 @@ import kdp.classparser.attributes.*;
 import kdp.classparser.constantpoolclasses.*;
 
 import java.io.*;
+import java.util.*;
 
 /**
  * Encapsulates a LineNumberTable attribute of a Java class file.
@@ -56,6 +57,16 @@ public class LineNumberTableAttribute extends Attribute {
     /** each entry indicates that the line number in the original 
         source file changes at a given point in the code array. */
     private LineNumberTable    lineNumberTable[];
+    /** true if the entries are in ascending startPC order, as javac
+        emits them, so an offset can be looked up by binary search */
+    private boolean            sortedByPC;
+    /** for each entry, the index of the first other entry on the
+        same source line or -1 */
+    private int                otherLineIndex[];
+    /** maps a source line number to the index of its first entry */
+    private Map                firstIndexOfLine;
+    /** the table as returned by getLineNumbersAndIndicesAsArray */
+    private int                lineArray[][];
     
     /**
      * Constructor.  Reads the LineNumberTableAttribute attribute from
@@ -86,16 +97,52 @@ public class LineNumberTableAttribute extends Attribute {
             lineNumberTable[lcv].startPC = iStream.readUnsignedShort ();
             lineNumberTable[lcv].lineNumber = iStream.readUnsignedShort ();
         }
+        buildIndex ();
     }
 
-    public int[][] getLineNumbersAndIndicesAsArray () {
-        int      lineArray[][] = new int[lineNumberTableLength][2];
+    /**
+     * Builds the lookup tables used while stepping, so that finding
+     * the entry of an offset or a line does not scan the whole table.
+     */
+    private void buildIndex () {
+        otherLineIndex = new int[lineNumberTableLength];
+        firstIndexOfLine = new HashMap (lineNumberTableLength * 2 + 1);
+        sortedByPC = true;
 
         for (int lcv = 0; lcv < lineNumberTableLength; ++lcv) {
-            lineArray[lcv][0] = lineNumberTable[lcv].startPC;
-            lineArray[lcv][1] = lineNumberTable[lcv].lineNumber;
+            if (lcv > 0 && lineNumberTable[lcv].startPC <
+                           lineNumberTable[lcv - 1].startPC) {
+                sortedByPC = false;
+            }
+            Integer line = new Integer (lineNumberTable[lcv].lineNumber);
+            Integer first = (Integer)firstIndexOfLine.get (line);
+            if (first == null) {
+                firstIndexOfLine.put (line, new Integer (lcv));
+                otherLineIndex[lcv] = -1;
+            } else {
+                int firstIndex = first.intValue ();
+                otherLineIndex[lcv] = firstIndex;
+                if (otherLineIndex[firstIndex] == -1) {
+                    otherLineIndex[firstIndex] = lcv;
+                }
+            }
         }
+    }
 
+    /**
+     * Returns the table as an array of {startPC, lineNumber} pairs.
+     * The array is shared, callers must not modify it.
+     */
+    public int[][] getLineNumbersAndIndicesAsArray () {
+        if (lineArray == null) {
+            int      array[][] = new int[lineNumberTableLength][2];
+
+            for (int lcv = 0; lcv < lineNumberTableLength; ++lcv) {
+                array[lcv][0] = lineNumberTable[lcv].startPC;
+                array[lcv][1] = lineNumberTable[lcv].lineNumber;
+            }
+            lineArray = array;
+        }
         return lineArray;
     }
 
@@ -111,20 +158,11 @@ public class LineNumberTableAttribute extends Attribute {
      *                                   a code array index then return -1
      */
     public int getCodeIndexBySourceLineNumber (int lineNumber) {
-        boolean       found = false;
-        int           index = 0;
+        Integer       index;
 
-        //loop through line number table until we find an entry with the
-        //specified source file line number or run out of entries
-        while ((!found) && (index < lineNumberTableLength)) {
-            if (lineNumber == lineNumberTable[index].lineNumber)
-                found = true;
-            else
-                ++index;
-        }
-        //if an entry was found return the code array index associated with it
-        if (found) {
-            return (lineNumberTable[index].startPC);
+        index = (Integer)firstIndexOfLine.get (new Integer (lineNumber));
+        if (index != null) {
+            return (lineNumberTable[index.intValue ()].startPC);
         } else {
             return -1; //no entry found so return -1
         }
@@ -140,20 +178,7 @@ public class LineNumberTableAttribute extends Attribute {
      *                                   otherwise
      */
     public boolean containsLine (int lineNumber) {
-        boolean       found = false;
-        int           index = 0;
-
-        //loop through each entry in the line number table until
-        //the specified line number is found or there are no
-        //entries left
-        while ((!found) && (index < lineNumberTableLength)) {
-            if (lineNumber == lineNumberTable[index].lineNumber) {
-                found = true;
-            } else {
-                ++index;
-            }
-        }
-        return found;
+        return firstIndexOfLine.containsKey (new Integer (lineNumber));
     }
 
     /**
@@ -162,6 +187,20 @@ public class LineNumberTableAttribute extends Attribute {
      */
     private int getIndexThatContainsOpcode(long offset) {
 
+        if (sortedByPC) {
+            // find the last entry that starts at or before offset
+            int lo = 0, hi = lineNumberTableLength - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lineNumberTable[mid].startPC <= offset) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found;
+        }
         for (int i=0; i < lineNumberTableLength - 1; i++) {
             if (offset >= lineNumberTable[i].startPC && 
                 offset < lineNumberTable[i + 1].startPC) {
@@ -192,17 +231,10 @@ public class LineNumberTableAttribute extends Attribute {
     }
 
     private int getOtherLineIndex(int index) {
-        for (int i=0; i < lineNumberTableLength; i++) {
-            if (i == index) {
-                continue;
-            }
-            if (lineNumberTable[i].lineNumber == 
-                lineNumberTable[index].lineNumber) {
-                return i;
-            }
+        if (index < 0 || index >= lineNumberTableLength) {
+            return -1;
         }
-        return -1;
-
+        return otherLineIndex[index];
     }
 
     public int getCurrentLineCodeIndex(long offset) {
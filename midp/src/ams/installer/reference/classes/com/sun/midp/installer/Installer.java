@@ -2544,85 +2544,91 @@ public abstract class Installer {
             throws InvalidJadException {
         byte[] curLevels = settings.getPermissions();
 
-        if (state.isPreviousVersion) {
-            PushRegistryInternal.unregisterConnections(info.id);
-        }
+        /* Write the push registry once for all the connections. */
+        PushRegistryInternal.beginBatch();
+        try {
+            if (state.isPreviousVersion) {
+                PushRegistryInternal.unregisterConnections(info.id);
+            }
 
-        for (int i = 1; ; i++) {
-            String pushProp;
+            for (int i = 1; ; i++) {
+                String pushProp;
 
-            pushProp = state.getAppProperty("MIDlet-Push-" + i);
-            if (pushProp == null) {
-                break;
-            }
+                pushProp = state.getAppProperty("MIDlet-Push-" + i);
+                if (pushProp == null) {
+                    break;
+                }
 
-            /*
-             * Parse the comma separated values  -
-             *  " connection, midlet, role, filter"
-             */
-            int comma1 = pushProp.indexOf(',', 0);
-            int comma2 = pushProp.indexOf(',', comma1 + 1);
+                /*
+                 * Parse the comma separated values  -
+                 *  " connection, midlet, role, filter"
+                 */
+                int comma1 = pushProp.indexOf(',', 0);
+                int comma2 = pushProp.indexOf(',', comma1 + 1);
 
-            String conn = pushProp.substring(0, comma1).trim();
-            String midlet = pushProp.substring(comma1+1, comma2).trim();
-            String filter = pushProp.substring(comma2+1).trim();
+                String conn = pushProp.substring(0, comma1).trim();
+                String midlet = pushProp.substring(comma1+1, comma2).trim();
+                String filter = pushProp.substring(comma2+1).trim();
 
-            /* Register the new push connection string. */
-            try {
-                PushRegistryInternal.registerConnectionInternal(
-                    getAccessControlContext(),
-                    state, conn, midlet, filter, false);
-            } catch (Exception e) {
-                /* If already registered, abort the installation. */
-                PushRegistryInternal.unregisterConnections(info.id);
+                /* Register the new push connection string. */
+                try {
+                    PushRegistryInternal.registerConnectionInternal(
+                        getAccessControlContext(),
+                        state, conn, midlet, filter, false);
+                } catch (Exception e) {
+                    /* If already registered, abort the installation. */
+                    PushRegistryInternal.unregisterConnections(info.id);
+
+                    if (state.isPreviousVersion) {
+                        // put back the old ones, removed above
+                        redoPreviousPushConnections();
+                    }
 
-                if (state.isPreviousVersion) {
-                    // put back the old ones, removed above
-                    redoPreviousPushConnections();
-                }
+                    if (e instanceof SecurityException) {
+                        postInstallMsgBackToProvider(
+                            OtaNotifier.AUTHORIZATION_FAILURE_MSG);
 
-                if (e instanceof SecurityException) {
-                    postInstallMsgBackToProvider(
-                        OtaNotifier.AUTHORIZATION_FAILURE_MSG);
+                        // since our state object put the permission in message
+                        throw new InvalidJadException(
+                            InvalidJadException.AUTHORIZATION_FAILURE,
+                            e.getMessage());
+                    }
 
-                    // since our state object put the permission in message
-                    throw new InvalidJadException(
-                        InvalidJadException.AUTHORIZATION_FAILURE,
-                        e.getMessage());
-                }
+                    postInstallMsgBackToProvider(
+                        OtaNotifier.PUSH_REG_FAILURE_MSG);
 
-                postInstallMsgBackToProvider(
-                    OtaNotifier.PUSH_REG_FAILURE_MSG);
+                    if (e instanceof IllegalArgumentException) {
+                        throw new InvalidJadException(
+                            InvalidJadException.PUSH_FORMAT_FAILURE, pushProp);
+                    }
 
-                if (e instanceof IllegalArgumentException) {
-                    throw new InvalidJadException(
-                        InvalidJadException.PUSH_FORMAT_FAILURE, pushProp);
-                }
+                    if (e instanceof ConnectionNotFoundException) {
+                        throw new InvalidJadException(
+                            InvalidJadException.PUSH_PROTO_FAILURE, pushProp);
+                    }
 
-                if (e instanceof ConnectionNotFoundException) {
-                    throw new InvalidJadException(
-                        InvalidJadException.PUSH_PROTO_FAILURE, pushProp);
-                }
+                    if (e instanceof IOException) {
+                        throw new InvalidJadException(
+                            InvalidJadException.PUSH_DUP_FAILURE, pushProp);
+                    }
 
-                if (e instanceof IOException) {
-                    throw new InvalidJadException(
-                        InvalidJadException.PUSH_DUP_FAILURE, pushProp);
-                }
+                    if (e instanceof ClassNotFoundException) {
+                        throw new InvalidJadException(
+                            InvalidJadException.PUSH_CLASS_FAILURE, pushProp);
+                    }
 
-                if (e instanceof ClassNotFoundException) {
-                    throw new InvalidJadException(
-                        InvalidJadException.PUSH_CLASS_FAILURE, pushProp);
-                }
+                    // error in the implementation code
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException)e;
+                    }
 
-                // error in the implementation code
-                if (e instanceof RuntimeException) {
-                    throw (RuntimeException)e;
+                    /* handle not RuntimeException-derived exceptions */
+                    throw new RuntimeException("Exception in " +
+                            "registerPushConnections(): " + e.getMessage());
                 }
-
-                /* handle not RuntimeException-derived exceptions */
-                throw new RuntimeException("Exception in " +
-                        "registerPushConnections(): " + e.getMessage());
             }
+        } finally {
+            PushRegistryInternal.endBatch();
         }
 
         if (state.isPreviousVersion) {
@@ -28,6 +28,7 @@ package java.util;
 import java.util.Date;
 
 import com.sun.cldchi.jvm.JVM;
+import com.sun.midp.main.Configuration;
 
 /**
  * A facility for threads to schedule tasks for future execution in a
@@ -364,7 +365,7 @@ public class Timer {
             }
 
             queue.add(task);
-            if (queue.getMin() == task)
+            if (queue.isNext(task))
                 queue.notify();
         }
     }
@@ -472,6 +473,17 @@ class TimerThread extends Thread {
      * is inserted.
      */
     private static final long THREAD_TIMEOUT = 30*1000L;
+
+    /**
+     * The number of milliseconds the thread may oversleep so that tasks
+     * due close to each other are run on a single wakeup.  Wakeups are
+     * rounded up to a multiple of this value, so the threads of different
+     * timers tend to wake up together, too.  Zero disables coalescing.
+     */
+    private static final int SLACK =
+        Configuration.getNonNegativeIntProperty("com.sun.midp.timer.slack",
+                                                0);
+
     /**
      * initialize the timer thread with a task queue.
      * @param queue queue of tasks for this timer thread.
@@ -504,7 +516,6 @@ class TimerThread extends Thread {
         while (true) {
             try {
                 TimerTask task;
-                boolean taskFired;
                 synchronized (queue) {
                     // Wait for queue to become non-empty
                     // But no more than timeout value.
@@ -520,72 +531,131 @@ class TimerThread extends Thread {
                     // Handle a possible change of the user clock
                     queue.checkUserClockChange();
 
-                    // Queue nonempty; look at first evt and do the right thing
-                    long currentTime, executionTime;
-                    task = queue.getMin();
+                    // Queue nonempty; take a task that is due, if any
+                    long currentTime = Timer.monotonicTimeMillis();
+                    task = queue.poll(currentTime);
+                    if (task == null) { // No task has fired yet; wait
+                        long timeout =
+                            wakeupTime(queue.nextExecutionTime()) -
+                            currentTime;
+                        if (queue.hasUserClockTasks() &&
+                            timeout > Timer.USER_CLOCK_CHECK_PERIOD) {
+                            timeout = Timer.USER_CLOCK_CHECK_PERIOD;
+                        }
+                        queue.wait(timeout > 0 ? timeout : 1);
+                        continue;
+                    }
+
                     synchronized (task.lock) {
                         if (task.state == TimerTask.CANCELLED) {
-                            queue.removeMin();
                             continue;  // No action required, poll queue again
                         }
-                        currentTime = Timer.monotonicTimeMillis();
-                        executionTime = task.nextExecutionTime;
-
-                        if (taskFired = (executionTime <= currentTime)) {
-                            if (task.period == 0) { // Non-repeating, remove
-                                queue.removeMin();
-                                task.state = TimerTask.EXECUTED;
-                            } else { // Repeating task, reschedule
-                                queue.rescheduleMin(
-                                  task.period < 0 ? currentTime   - task.period
-                                                : executionTime + task.period);
-                            }
+
+                        if (task.period == 0) { // Non-repeating, done
+                            task.state = TimerTask.EXECUTED;
+                        } else { // Repeating task, reschedule
+                            /*
+                             * Only the first execution is scheduled against
+                             * the user clock.  Subsequent executions are
+                             * scheduled based on delays.
+                             */
+                            task.isUserClock = false;
+                            task.nextExecutionTime = task.period < 0 ?
+                                currentTime - task.period :
+                                task.nextExecutionTime + task.period;
+                            queue.add(task);
                         }
                     }
-                    if (!taskFired) { // Task hasn't yet fired; wait
-                        long timeout = executionTime - currentTime;
-                        if (queue.hasUserClockTasks() && 
-                            timeout > Timer.USER_CLOCK_CHECK_PERIOD) {
-                            timeout = Timer.USER_CLOCK_CHECK_PERIOD;
-                        }
-                        queue.wait(timeout);
-		    }
                 }
-                if (taskFired) { // Task fired; run it, holding no locks
-		    try {
-			task.run();
-		    } catch (Exception e) {
-			// Cancel tasks that cause exceptions
-			task.cancel();
-		    }
-		}
+
+                // Task fired; run it, holding no locks
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    // Cancel tasks that cause exceptions
+                    task.cancel();
+                }
             } catch (InterruptedException e) {
             }
         }
     }
+
+    /**
+     * Returns the time to wake up at to run a task, allowing for the
+     * slack.
+     *
+     * @param executionTime the execution time of the next task
+     * @return the time to wake up at
+     */
+    private static long wakeupTime(long executionTime) {
+        if (SLACK <= 1) {
+            return executionTime;
+        }
+
+        long rem = executionTime % SLACK;
+        return rem == 0 ? executionTime : executionTime - rem + SLACK;
+    }
 }
 
 /**
  * This class represents a timer task queue: a priority queue of TimerTasks,
  * ordered on nextExecutionTime.  Each Timer object has one of these, which it
- * shares with its TimerThread.  Internally this class uses a heap, which
- * offers log(n) performance for the add, removeMin and rescheduleMin
- * operations, and constant time performance for the getMin operation.
+ * shares with its TimerThread.
+ * <p>
+ * Internally this class uses a hierarchical timing wheel.  The wheel has
+ * a current time, up to which all the tasks due have been taken off it,
+ * and a number of levels.  Level 0 has a slot for each of the next 256
+ * milliseconds; each slot of a higher level spans all the slots of the
+ * level below, and there are 64 of them.  A task goes to the lowest level
+ * that reaches its execution time and stays there until the current time
+ * enters its slot, when the slot is emptied into the levels below.  The
+ * tasks of a slot form a list, linked by TimerTask.next, so adding a task
+ * takes constant time, and so does taking a due task off the wheel,
+ * although a task is moved down once for each level it starts above.
+ * <p>
+ * Tasks that are due are kept on a separate list in the order they fell
+ * due.
  */
 class TaskQueue {
+    /** Number of levels of the wheel. */
+    private static final int LEVELS = 5;
+
+    /** Number of bits of the time that select a slot of level 0. */
+    private static final int LEVEL0_BITS = 8;
+
+    /** Number of bits of the time that select a slot of higher levels. */
+    private static final int LEVEL_BITS = 6;
+
     /**
-     * Priority queue represented as a balanced binary heap: the two children
-     * of queue[n] are queue[2*n] and queue[2*n+1].  The priority queue is
-     * ordered on the nextExecutionTime field: The TimerTask with the lowest
-     * nextExecutionTime is in queue[1] (assuming the queue is nonempty).  For
-     * each node n in the heap, and each descendant of n, d,
-     * n.nextExecutionTime <= d.nextExecutionTime. 
+     * The slots of the wheel, by level.  A task in slot i of level k
+     * is due in the period that starts at a multiple of
+     * 1 << shift(k) and in which (time >> shift(k)) % slots[k].length == i.
      */
-    private TimerTask[] queue = new TimerTask[4];
+    private TimerTask[][] slots = new TimerTask[LEVELS][];
+
+    /**
+     * The tasks due beyond the reach of the wheel.  They are put back on
+     * the wheel each time a slot of the highest level comes.
+     */
+    private TimerTask overflow;
+
+    /** The number of tasks on each level of the wheel. */
+    private int[] levelSize = new int[LEVELS];
+
+    /** The time up to which the tasks due have been taken off the wheel. */
+    private long wheelTime;
+
+    /** First and last of the tasks that are due. */
+    private TimerTask dueHead, dueTail;
+
+    /** The earliest execution time of the queued tasks, if known. */
+    private long nextTime;
+
+    /** True if nextTime is up to date. */
+    private boolean nextTimeValid;
 
     /**
-     * The number of tasks in the priority queue.  (The tasks are stored in
-     * queue[1] up to queue[size]).
+     * The number of tasks in the queue, both on the wheel and due.
      */
     private int size = 0;
 
@@ -598,19 +668,34 @@ class TaskQueue {
     boolean newTasksMayBeScheduled = true;
 
     /**
-     * Adds a new task to the priority queue.
-     * @param task to add to the current queue
+     * Creates an empty queue whose wheel starts at the current time.
      */
-    void add(TimerTask task) {
-        // Grow backing store if necessary
-        if (++size == queue.length) {
-            TimerTask[] newQueue = new TimerTask[2*queue.length];
-            System.arraycopy(queue, 0, newQueue, 0, size);
-            queue = newQueue;
+    TaskQueue() {
+        slots[0] = new TimerTask[1 << LEVEL0_BITS];
+        for (int k = 1; k < LEVELS; k++) {
+            slots[k] = new TimerTask[1 << LEVEL_BITS];
         }
+        wheelTime = Timer.monotonicTimeMillis();
+    }
 
-        queue[size] = task;
-        fixUp(size);
+    /**
+     * Returns the number of low bits of the time that a slot of the given
+     * level spans.
+     *
+     * @param level level of the wheel
+     * @return the shift of the time for the level
+     */
+    private static int shift(int level) {
+        return level == 0 ? 0 : LEVEL0_BITS + (level - 1) * LEVEL_BITS;
+    }
+
+    /**
+     * Adds a new task to the queue.
+     * @param task to be inserted into queue
+     */
+    void add(TimerTask task) {
+        size++;
+        insert(task);
 
         if (task.isUserClock) {
             userClockTaskAdded();
@@ -618,114 +703,285 @@ class TaskQueue {
     }
 
     /**
-     * Return the "head task" of the priority queue.  (The head task is an
-     * task with the lowest nextExecutionTime.)
-     * @return the minimum head task of the queue.
+     * Puts a task into the slot for its execution time, or on the due
+     * list if the time has passed already.
+     *
+     * @param task the task to put
      */
-    TimerTask getMin() {
-        return queue[1];
+    private void insert(TimerTask task) {
+        long time = task.nextExecutionTime;
+
+        if (nextTimeValid && time < nextTime) {
+            nextTime = time;
+        }
+
+        if (time <= wheelTime) {
+            task.next = null;
+            if (dueTail == null) {
+                dueHead = task;
+            } else {
+                dueTail.next = task;
+            }
+            dueTail = task;
+            return;
+        }
+
+        for (int k = 0; ; k++) {
+            int shift = shift(k);
+            int n = slots[k].length;
+            long bucket = time >> shift;
+            long first = wheelTime >> shift;
+
+            if (bucket - first < n) {
+                int i = (int)bucket & (n - 1);
+                task.next = slots[k][i];
+                slots[k][i] = task;
+                levelSize[k]++;
+                return;
+            }
+
+            if (k == LEVELS - 1) {
+                task.next = overflow;
+                overflow = task;
+                return;
+            }
+        }
     }
 
     /**
-     * Remove the head task from the priority queue.
+     * Takes the next task that is due at the given time off the queue.
+     * Cancelled tasks are returned too, it is up to the caller to skip
+     * them.
+     *
+     * @param currentTime the current time
+     * @return a task due, or null if there are none
      */
-    void removeMin() {
-        final TimerTask task = queue[1];
+    TimerTask poll(long currentTime) {
+        if (dueHead == null && currentTime > wheelTime) {
+            advance(currentTime);
+        }
 
-        queue[1] = queue[size];
-        queue[size--] = null;  // Drop extra reference to prevent memory leak
-        fixDown(1);
+        TimerTask task = dueHead;
+        if (task != null) {
+            dueHead = task.next;
+            if (dueHead == null) {
+                dueTail = null;
+            }
+            task.next = null;
+            size--;
 
-        if (task.isUserClock) {
-            userClockTaskRemoved();
+            if (task.isUserClock) {
+                userClockTaskRemoved();
+            }
         }
+
+        return task;
     }
 
     /**
-     * Sets the nextExecutionTime associated with the head task to the 
-     * specified value, and adjusts priority queue accordingly.
-     * @param newTime new time to apply to head task execution.
+     * Moves the wheel on to the given time, putting the tasks that fall
+     * due on the due list.
+     *
+     * @param time the time to move to
      */
-    void rescheduleMin(long newTime) {
-        final TimerTask task = queue[1];
+    private void advance(long time) {
+        nextTimeValid = false;
 
-        task.nextExecutionTime = newTime;
-        fixDown(1);
+        while (wheelTime < time) {
+            int lowest = 0;
+            while (lowest < LEVELS && levelSize[lowest] == 0) {
+                lowest++;
+            }
 
-        if (task.isUserClock) {
-            // Only the first execution is scheduled against the user clock. 
-            // Subsequent executions are scheduled based on delays.
-            task.isUserClock = false;
-            userClockTaskRemoved();
+            if (lowest == LEVELS) {
+                if (overflow == null) {
+                    wheelTime = time;
+                    break;
+                }
+                lowest = LEVELS - 1;
+            }
+
+            if (lowest > 0) {
+                /*
+                 * Nothing happens until a slot of the lowest level used
+                 * comes; skip to just before it.
+                 */
+                int shift = shift(lowest);
+                long last = (((wheelTime >> shift) + 1) << shift) - 1;
+                if (last >= time) {
+                    wheelTime = time;
+                    break;
+                }
+                wheelTime = last;
+            }
+
+            wheelTime++;
+
+            for (int k = 1; k < LEVELS; k++) {
+                if ((wheelTime & ((1L << shift(k)) - 1)) != 0) {
+                    break;
+                }
+                cascade(k);
+            }
+
+            int i = (int)wheelTime & (slots[0].length - 1);
+            TimerTask task = slots[0][i];
+            slots[0][i] = null;
+            while (task != null) {
+                TimerTask next = task.next;
+                levelSize[0]--;
+                insert(task);
+                task = next;
+            }
         }
     }
 
     /**
-     * Returns true if the priority queue contains no elements.
-     * @return true if queue is empty.
+     * Empties the slot of a level that the current time has entered into
+     * the levels below.  At the highest level the tasks beyond the reach
+     * of the wheel are put back too.  Cancelled tasks are dropped on the
+     * way.
+     *
+     * @param level level of the wheel
      */
-    boolean isEmpty() {
-        return size == 0;
+    private void cascade(int level) {
+        int i = (int)(wheelTime >> shift(level)) & (slots[level].length - 1);
+        TimerTask task = slots[level][i];
+        slots[level][i] = null;
+        levelSize[level] -= length(task);
+
+        if (level == LEVELS - 1 && overflow != null) {
+            TimerTask last = overflow;
+            while (last.next != null) {
+                last = last.next;
+            }
+            last.next = task;
+            task = overflow;
+            overflow = null;
+        }
+
+        while (task != null) {
+            TimerTask next = task.next;
+            if (task.state == TimerTask.CANCELLED) {
+                task.next = null;
+                size--;
+                if (task.isUserClock) {
+                    userClockTaskRemoved();
+                }
+            } else {
+                insert(task);
+            }
+            task = next;
+        }
     }
 
     /**
-     * Removes all elements from the priority queue.
+     * Returns the length of a list of tasks.
+     *
+     * @param task the first task of the list
+     * @return the number of tasks in the list
      */
-    void clear() {
-        // Null out task references to prevent memory leak
-        for (int i = 1; i <= size; i++)
-            queue[i] = null;
-
-        size = 0;
-        userClockTaskCount = 0;
+    private static int length(TimerTask task) {
+        int n = 0;
+        for (; task != null; task = task.next) {
+            n++;
+        }
+        return n;
     }
 
     /**
-     * Establishes the heap invariant (described above) assuming the heap
-     * satisfies the invariant except possibly for the leaf-node indexed by k
-     * (which may have a nextExecutionTime less than its parent's).
+     * Returns the earliest execution time of the tasks in the queue.
+     * The queue must not be empty.
      *
-     * This method functions by "promoting" queue[k] up the hierarchy
-     * (by swapping it with its parent) repeatedly until queue[k]'s
-     * nextExecutionTime is greater than or equal to that of its parent.
-     * @param k index of queued task to be promoted up in the queue.
+     * @return the execution time of the next task
      */
-    private void fixUp(int k) {
-        while (k > 1) {
-            int j = k >> 1;
-            if (queue[j].nextExecutionTime <= queue[k].nextExecutionTime)
-                break;
-            TimerTask tmp = queue[j];  queue[j] = queue[k]; queue[k] = tmp;
-            k = j;
+    long nextExecutionTime() {
+        if (dueHead != null) {
+            return wheelTime;
         }
+
+        if (!nextTimeValid) {
+            long min = Long.MAX_VALUE;
+
+            for (int k = 0; k < LEVELS; k++) {
+                if (levelSize[k] == 0) {
+                    continue;
+                }
+
+                int shift = shift(k);
+                int n = slots[k].length;
+                long first = wheelTime >> shift;
+
+                /*
+                 * The first slot to come that is used holds the earliest
+                 * tasks of the level.
+                 */
+                for (int j = 1; j < n; j++) {
+                    TimerTask task = slots[k][(int)(first + j) & (n - 1)];
+                    if (task != null) {
+                        for (; task != null; task = task.next) {
+                            if (task.nextExecutionTime < min) {
+                                min = task.nextExecutionTime;
+                            }
+                        }
+                        break;
+                    }
+                }
+            }
+
+            for (TimerTask task = overflow; task != null; task = task.next) {
+                if (task.nextExecutionTime < min) {
+                    min = task.nextExecutionTime;
+                }
+            }
+
+            nextTime = min;
+            nextTimeValid = true;
+        }
+
+        return nextTime;
     }
 
     /**
-     * Establishes the heap invariant (described above) in the subtree
-     * rooted at k, which is assumed to satisfy the heap invariant except
-     * possibly for node k itself (which may have a nextExecutionTime greater
-     * than its children's).
+     * Tells if a task just added is the next one to run, so the timer
+     * thread has to wake up earlier than it intended.
      *
-     * This method functions by "demoting" queue[k] down the hierarchy
-     * (by swapping it with its smaller child) repeatedly until queue[k]'s
-     * nextExecutionTime is less than or equal to those of its children.
-     * @param k index of queued task to be demoted in the queue.
+     * @param task the task added
+     * @return true if no task in the queue runs before this one
+     */
+    boolean isNext(TimerTask task) {
+        return task.nextExecutionTime <= nextExecutionTime();
+    }
+
+    /**
+     * Returns true if the priority queue contains no elements.
+     * @return true if the queue is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all elements from the priority queue.
      */
-    private void fixDown(int k) {
-        int j;
-        while ((j = k << 1) <= size) {
-            if (j < size &&
-                queue[j].nextExecutionTime > queue[j+1].nextExecutionTime)
-                j++; // j indexes smallest kid
-            if (queue[k].nextExecutionTime <= queue[j].nextExecutionTime)
-                break;
-            TimerTask tmp = queue[j];  queue[j] = queue[k]; queue[k] = tmp;
-            k = j;
+    void clear() {
+        // Null out task references to prevent memory leak
+        for (int k = 0; k < LEVELS; k++) {
+            TimerTask[] level = slots[k];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = null;
+            }
+            levelSize[k] = 0;
         }
+        overflow = dueHead = dueTail = null;
+        nextTimeValid = false;
+
+        size = 0;
+        userClockTaskCount = 0;
     }
 
     /**
-     * The amount of active tasks scheduled against the user 
+     * The amount of active tasks scheduled against the user
      * clock in this queue.
      */
     private int userClockTaskCount = 0;
@@ -752,22 +1008,64 @@ class TaskQueue {
             return;
         }
 
-        if (userClockSkew < 0) {
-            for (int i = 1; i <= size; i++) {
-                TimerTask task = queue[i];
-                if (task != null && task.isUserClock) {
-                    task.nextExecutionTime -= userClockSkew;
-                    fixUp(i);
+        // Take the user clock tasks out, then put them back at their new time
+        TimerTask moved = null;
+
+        for (int k = 0; k < LEVELS; k++) {
+            TimerTask[] level = slots[k];
+            for (int i = 0; i < level.length; i++) {
+                TimerTask kept = null;
+                TimerTask task = level[i];
+                while (task != null) {
+                    TimerTask next = task.next;
+                    if (task.isUserClock) {
+                        task.next = moved;
+                        moved = task;
+                        levelSize[k]--;
+                    } else {
+                        task.next = kept;
+                        kept = task;
+                    }
+                    task = next;
                 }
+                level[i] = kept;
             }
-        } else {
-            for (int i = size; i >= 1; i--) {
-                TimerTask task = queue[i];
-                if (task != null && task.isUserClock) {
-                    task.nextExecutionTime -= userClockSkew;
-                    fixDown(i);
-                }
+        }
+
+        TimerTask kept = null;
+        TimerTask task = overflow;
+        while (task != null) {
+            TimerTask next = task.next;
+            if (task.isUserClock) {
+                task.next = moved;
+                moved = task;
+            } else {
+                task.next = kept;
+                kept = task;
+            }
+            task = next;
+        }
+        overflow = kept;
+
+        task = dueHead;
+        dueHead = dueTail = null;
+        while (task != null) {
+            TimerTask next = task.next;
+            if (task.isUserClock) {
+                task.next = moved;
+                moved = task;
+            } else {
+                insert(task);
             }
+            task = next;
+        }
+
+        nextTimeValid = false;
+        while (moved != null) {
+            TimerTask next = moved.next;
+            moved.nextExecutionTime -= userClockSkew;
+            insert(moved);
+            moved = next;
         }
     }
 }
@@ -87,6 +87,12 @@ public abstract class TimerTask implements Runnable {
      */
     boolean isUserClock;
 
+    /**
+     * The next task in the same slot of the timer queue, or on its list
+     * of due tasks.
+     */
+    TimerTask next;
+
     /**
      * Creates a new timer task.
      */
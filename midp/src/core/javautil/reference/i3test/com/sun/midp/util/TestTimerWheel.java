@@ -0,0 +1,222 @@
+/*
+ *   
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.midp.util;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * Schedules many tasks on a Timer and checks that each of them runs once,
+ * not before its time, and that cancelled tasks do not run.  The time
+ * taken to schedule the tasks and how late they ran are printed with
+ * info().
+ */
+public class TestTimerWheel extends TestCase {
+
+    /** number of tasks scheduled */
+    static final int TASKS = 10000;
+
+    /** number of repeating tasks scheduled */
+    static final int PERIODIC_TASKS = 1000;
+
+    /** the tasks are due within this many milliseconds */
+    static final int SPREAD = 2000;
+
+    /** time allowed for cancelling tasks */
+    static final int CANCEL_TIME = 500;
+
+    /** longest time to wait for the tasks to run */
+    static final long TIMEOUT = 30000;
+
+    /** number of task executions */
+    int runCount;
+
+    /** number of executions before the scheduled time */
+    int earlyCount;
+
+    /** sum of the times the executions were late by */
+    long totalLate;
+
+    /** the most an execution was late by */
+    long maxLate;
+
+    /**
+     * Counts its executions and how late they are.
+     */
+    class CountingTask extends TimerTask {
+        /** number of executions of this task */
+        int runs;
+
+        public void run() {
+            long late = System.currentTimeMillis() - scheduledExecutionTime();
+            synchronized (TestTimerWheel.this) {
+                runs++;
+                runCount++;
+                // allow for the user and the monotonic clock ticking apart
+                if (late < -1) {
+                    earlyCount++;
+                } else if (late > 0) {
+                    totalLate += late;
+                    if (late > maxLate) {
+                        maxLate = late;
+                    }
+                }
+                TestTimerWheel.this.notifyAll();
+            }
+        }
+    }
+
+    synchronized void reset() {
+        runCount = 0;
+        earlyCount = 0;
+        totalLate = 0;
+        maxLate = 0;
+    }
+
+    /**
+     * Waits until the tasks have run the given number of times, or
+     * TIMEOUT has passed.
+     */
+    synchronized void waitForRuns(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (runCount < count) {
+            long left = end - System.currentTimeMillis();
+            if (left <= 0) {
+                break;
+            }
+            wait(left);
+        }
+    }
+
+    /**
+     * Returns a delay spread evenly, but not in order, over SPREAD.
+     */
+    static long delay(int i) {
+        return (i * 7919L) % SPREAD;
+    }
+
+    void testOneShot() throws InterruptedException {
+        declare("one-shot tasks");
+        reset();
+        Timer timer = new Timer();
+        CountingTask[] tasks = new CountingTask[TASKS];
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = new CountingTask();
+            timer.schedule(tasks[i], delay(i));
+        }
+        long scheduleTime = System.currentTimeMillis() - start;
+
+        waitForRuns(TASKS);
+        long runTime = System.currentTimeMillis() - start;
+        timer.cancel();
+
+        synchronized (this) {
+            assertEquals("tasks not run", TASKS, runCount);
+            assertEquals("tasks run early", 0, earlyCount);
+            for (int i = 0; i < TASKS; i++) {
+                assertEquals("task run twice", 1, tasks[i].runs);
+            }
+            info(TASKS + " tasks: scheduled in " + scheduleTime +
+                 " ms, all run in " + runTime + " ms, late by " +
+                 (totalLate / TASKS) + " ms on average, " + maxLate +
+                 " ms at most");
+        }
+    }
+
+    void testCancel() throws InterruptedException {
+        declare("cancelled tasks");
+        reset();
+        Timer timer = new Timer();
+        CountingTask[] tasks = new CountingTask[TASKS];
+
+        // leave time to cancel before any task is due
+        for (int i = 0; i < TASKS; i++) {
+            tasks[i] = new CountingTask();
+            timer.schedule(tasks[i], CANCEL_TIME + delay(i));
+        }
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < TASKS; i += 2) {
+            tasks[i].cancel();
+        }
+        long cancelTime = System.currentTimeMillis() - start;
+
+        // a task due after all the others
+        CountingTask last = new CountingTask();
+        timer.schedule(last, CANCEL_TIME + SPREAD);
+        waitForRuns(TASKS / 2 + 1);
+        timer.cancel();
+
+        synchronized (this) {
+            assertEquals("last task not run", 1, last.runs);
+            for (int i = 0; i < TASKS; i++) {
+                assertEquals("wrong number of runs", i % 2, tasks[i].runs);
+            }
+            info(TASKS / 2 + " tasks cancelled in " + cancelTime + " ms");
+        }
+    }
+
+    void testPeriodic() throws InterruptedException {
+        declare("repeating tasks");
+        reset();
+        Timer timer = new Timer();
+        CountingTask[] tasks = new CountingTask[PERIODIC_TASKS];
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < PERIODIC_TASKS; i++) {
+            tasks[i] = new CountingTask();
+            timer.scheduleAtFixedRate(tasks[i], delay(i) % 50, 20 + i % 40);
+        }
+
+        Thread.sleep(SPREAD);
+        timer.cancel();
+        long time = System.currentTimeMillis() - start;
+
+        synchronized (this) {
+            assertEquals("tasks run early", 0, earlyCount);
+            for (int i = 0; i < PERIODIC_TASKS; i++) {
+                assertTrue("task not repeated", tasks[i].runs > 1);
+            }
+            info(PERIODIC_TASKS + " repeating tasks: " + runCount +
+                 " runs in " + time + " ms, late by " +
+                 (totalLate / Math.max(runCount, 1)) +
+                 " ms on average, " + maxLate + " ms at most");
+        }
+    }
+
+    /**
+     * Runs all the tests.
+     */
+    public void runTests() throws Throwable {
+        testOneShot();
+        testCancel();
+        testPeriodic();
+    }
+}
@@ -30,22 +30,31 @@ import com.sun.cldc.i18n.StreamReader;
 
 import java.io.*;
 
-/** Reader for UTF-8 encoded input streams. */
+/**
+ * Reader for UTF-8 encoded input streams.
+ * The bytes are read from the input stream in blocks into an internal
+ * buffer and decoded from there; runs of ASCII characters are copied
+ * without further checks.
+ */
 public class UTF_8_Reader extends StreamReader {
-    /** signals that no byte is available, but not the end of stream */
-    private static final int NO_BYTE = -2;
     /** 'replacement character' [Unicode 1.1.0] */ 
     private static final int RC = 0xFFFD; 
-    /** read ahead buffer to hold a part of char from the last read.
-     * The only case this buffer is needed is like following:
-     * after a number of characters (at least one) have been read,
-     * the next character is encoded by 4 bytes, of which only 3 are
-     * already available in the input stream. In this case read()
-     * will finish without waiting for the last byte of the character.
-     */
-    private int[] readAhead;
     /* the number of UTF8 bytes that may encode one character */
     private static final int MAX_BYTES_PER_CHAR = 4;
+    /** size of the internal byte buffer */
+    private static final int BUFFER_SIZE = 256;
+    /**
+     * Bytes read from the input stream but not decoded yet are
+     * buf[bufPos] ... buf[bufEnd - 1]. A character whose bytes are not
+     * all available yet stays in the buffer until the next read.
+     */
+    private byte[] buf;
+    /** position of the next byte to decode */
+    private int bufPos;
+    /** end of the bytes in buf */
+    private int bufEnd;
+    /** buffer for read() */
+    private char[] oneChar = new char[1];
     /**
      * If non-zero, the last read code point must be represented by two
      * surrogate code units, and the low surrogate code unit has not yet
@@ -55,10 +64,12 @@ public class UTF_8_Reader extends StreamReader {
 
     /** information saved by mark() and later used by reset() */
     protected class MarkInfo {
-        /** a copy of the enclosing instance's readAhead buffer
-         *  at the moment of execution of mark()
+        /** a copy of the bytes in the enclosing instance's buffer
+         *  that were not decoded at the moment of execution of mark()
          */
-        int[] readAhead = new int[MAX_BYTES_PER_CHAR];
+        byte[] buf = new byte[BUFFER_SIZE];
+        /** the number of bytes in buf */
+        int length = 0;
         /** a copy of the enclosing instance's pendingSurrogate
          *  at the moment of execution of mark()
          */
@@ -71,14 +82,15 @@ public class UTF_8_Reader extends StreamReader {
 
     /** Constructs a UTF-8 reader. */
     public UTF_8_Reader() {
-        readAhead = new int[MAX_BYTES_PER_CHAR];
+        buf = new byte[BUFFER_SIZE];
     }
 
     public Reader open(InputStream in, String enc)
         throws UnsupportedEncodingException {
         super.open(in, enc);
         markIsSet = false;
-        prepareForNextChar(NO_BYTE);
+        pendingSurrogate = 0;
+        bufPos = bufEnd = 0;
         return this;
     }
 
@@ -88,6 +100,24 @@ public class UTF_8_Reader extends StreamReader {
      */
     private static final int[] minimalValidValue
             = {0x00, 0x80, 0x800, 0x10000 /*, 0x200000*/};
+
+    /**
+     * Read a single UTF8 character.
+     *
+     * @return the converted character or -1 at the end of the stream
+     * @exception IOException is thrown if the input stream 
+     * could not be read for the raw unconverted character
+     */
+    public int read() throws IOException {
+        if (pendingSurrogate == 0 && bufPos < bufEnd && buf[bufPos] >= 0) {
+            return buf[bufPos++];
+        }
+        if (read(oneChar, 0, 1) == -1) {
+            return -1;
+        }
+        return oneChar[0];
+    }
+
     /**
      * Read a block of UTF8 characters.
      *
@@ -102,9 +132,9 @@ public class UTF_8_Reader extends StreamReader {
         int count = 0;
         int firstByte;
         int extraBytes;
-        int currentChar = 0;
+        int currentChar;
         int nextByte;
-        int headByte = NO_BYTE;
+        int used;
 
         if (len == 0) {
             return 0;
@@ -119,74 +149,95 @@ public class UTF_8_Reader extends StreamReader {
         }
 
         while (count < len) {
-            // must wait for the first character, and
-            // other characters are read only if they are available
-            final boolean mustBlockTillGetsAChar = (0 == count);
-            firstByte = getByteOfCurrentChar(0, mustBlockTillGetsAChar);
-            if (firstByte < 0) {
-                if (firstByte == -1 && count == 0) {
+            /* copy a run of ASCII characters */
+            int pos = bufPos;
+            int end = bufEnd;
+            if (end - pos > len - count) {
+                end = pos + len - count;
+            }
+            while (pos < end && buf[pos] >= 0) {
+                cbuf[off + count++] = (char)buf[pos++];
+            }
+            bufPos = pos;
+            if (count == len) {
+                break;
+            }
+
+            if (bufPos == bufEnd) {
+                // must wait for the first character, and
+                // other characters are read only if they are available
+                int n = fill(0 == count);
+                if (n == 0) {
+                    return count;
+                }
+                if (n == -1) {
                     // end of stream
-                    return -1;
+                    return (count == 0) ? -1 : count;
                 }
-
-                return count;
+                continue;
             }
-            /* Let's reduce amount of case-mode comparisons */
-            if ((firstByte&0x80) == 0) {
-                extraBytes = 0;
-                currentChar = firstByte;
-            } else {
-                switch (firstByte >> 4) {
-                case 12: case 13:
-                    /* 11 bits: 110x xxxx   10xx xxxx */
-                    extraBytes = 1;
-                    currentChar = firstByte & 0x1F;
-                    break;
+
+            firstByte = buf[bufPos] & 0xff;
+            switch (firstByte >> 4) {
+            case 12: case 13:
+                /* 11 bits: 110x xxxx   10xx xxxx */
+                extraBytes = 1;
+                currentChar = firstByte & 0x1F;
+                break;
     
-                case 14:
-                    /* 16 bits: 1110 xxxx  10xx xxxx  10xx xxxx */
-                    extraBytes = 2;
-                    currentChar = firstByte & 0x0F;
-                    break;
+            case 14:
+                /* 16 bits: 1110 xxxx  10xx xxxx  10xx xxxx */
+                extraBytes = 2;
+                currentChar = firstByte & 0x0F;
+                break;
 
-                case 15:
-                    if ((firstByte&0x08)==0) {
-                        /* 21 bits: 1111 0xxx  10xx xxxx  10xx xxxx  10xx xxxx */
-                        extraBytes = 3;
-                        currentChar = firstByte & 0x07;
-                        break;
-                    } // else as default
+            case 15:
+                if ((firstByte&0x08)==0) {
+                    /* 21 bits: 1111 0xxx  10xx xxxx  10xx xxxx  10xx xxxx */
+                    extraBytes = 3;
+                    currentChar = firstByte & 0x07;
+                    break;
+                } // else as default
 
-                default:
-                    /* we do replace malformed character with special symbol */
-                    extraBytes = 0;
-                    currentChar = RC;
-                }
+            default:
+                /* we do replace malformed character with special symbol */
+                extraBytes = 0;
+                currentChar = RC;
             }
 
-            for (int j = 1; j <= extraBytes; j++) {
-                nextByte = getByteOfCurrentChar(j, mustBlockTillGetsAChar);
-                if (nextByte == NO_BYTE) {
+            /* the character may be split across blocks of the input */
+            if (bufEnd - bufPos <= extraBytes) {
+                int n = fill(0 == count);
+                if (n == 0) {
                     // done for now, comeback later for the rest of char
                     return count;
                 }
+                if (n > 0) {
+                    continue;
+                }
+                // end of stream, decode the bytes that are there
+            }
 
-                if (nextByte == -1) {
+            used = 1;
+            for (int j = 1; j <= extraBytes; j++) {
+                if (bufPos + j == bufEnd) {
                     // end of stream in the middle of char -- set 'RC'
                     currentChar = RC;
                     break;
                 }
 
+                nextByte = buf[bufPos + j];
                 if ((nextByte & 0xC0) != 0x80) {
-                    // invalid byte - move it at head of next read sequence
+                    // invalid byte - it starts the next sequence
                     currentChar = RC;
-                    headByte = nextByte;
                     break;
                 }
 
                 // each extra byte has 6 bits more of the char
                 currentChar = (currentChar << 6) + (nextByte & 0x3F);
+                used++;
             }
+            bufPos += used;
 
             if (currentChar < minimalValidValue[extraBytes]) {
                 // the character is malformed: it should be encoded
@@ -216,55 +267,57 @@ public class UTF_8_Reader extends StreamReader {
                 cbuf[off + count] = (char)currentChar;
                 count++;
             }
-            prepareForNextChar(headByte);
         }
         return count;
     }
 
     /**
-     * Get one of the raw bytes for the current character.
-     * The byte first gets read into the read ahead buffer, unless
-     * it's already there.
+     * Read more bytes from the input stream into the buffer, after the
+     * bytes that have not been decoded yet.
      *
-     * @param byteOfChar which raw byte to get 0 for the first, 3 for the last.
-     *                   The bytes must be accessed sequentially, that is,
-     *                   the only possible order of byteOfChar values
-     *                   in a series of calls is 0, 1, 2, 3.
-     * @param allowBlockingRead  false allows returning NO_BYTE if no byte is
+     * @param allowBlockingRead  false allows returning 0 if no byte is
      *                   available in the input stream; true forces reading.
-     * @return a byte value, NO_BYTE for no byte available or -1 for end of
-     *          stream
+     * @return the number of bytes read, 0 for no byte available or -1
+     *          for end of stream
      *
      * @exception  IOException   if an I/O error occurs.
      */
-    private int getByteOfCurrentChar(int byteOfChar, boolean allowBlockingRead) throws IOException {
-        if (readAhead[byteOfChar] != NO_BYTE) {
-            return readAhead[byteOfChar];
+    private int fill(boolean allowBlockingRead) throws IOException {
+        if (bufPos > 0) {
+            System.arraycopy(buf, bufPos, buf, 0, bufEnd - bufPos);
+            bufEnd -= bufPos;
+            bufPos = 0;
         }
 
         /*
-         * allowBlockingRead will be true for the first character.
-         * Our read method must block until it gets one char so don't call
-         * available() for the first character.
+         * Read only the bytes that are available, so that no more than
+         * the first character has to be waited for; allowBlockingRead
+         * will be true for the first character.
          */
-        if (allowBlockingRead || in.available() > 0) {
-            readAhead[byteOfChar] = in.read();
+        int n = in.available();
+        if (n <= 0) {
+            if (!allowBlockingRead) {
+                return 0;
+            }
+            n = 1;
         }
-
-        return readAhead[byteOfChar];
+        if (n > buf.length - bufEnd) {
+            n = buf.length - bufEnd;
+        }
+        n = in.read(buf, bufEnd, n);
+        if (n > 0) {
+            bufEnd += n;
+        }
+        return n;
     }
 
     /**
-     * Prepare the reader for the next character by clearing the look
-     * ahead buffer.
-     * @param headByte value of first byte. If previous sequence is interrupted
-     * by malformed byte - this byte should be moved at head of next sequence
+     * Tell whether this reader is ready to be read.
+     *
+     * @return true if a character can be read without blocking
      */
-    private void prepareForNextChar(int headByte) {
-        readAhead[0] = headByte;
-        for (int i=1; i<MAX_BYTES_PER_CHAR; i++) {
-            readAhead[i]=NO_BYTE;
-        }
+    public boolean ready() {
+        return pendingSurrogate != 0 || bufPos < bufEnd || super.ready();
     }
 
     /**
@@ -280,24 +333,29 @@ public class UTF_8_Reader extends StreamReader {
                 markInfo = new MarkInfo();
             }
             markInfo.pendingSurrogate = pendingSurrogate;
-            System.arraycopy(readAhead,0,markInfo.readAhead,0,MAX_BYTES_PER_CHAR);
+            markInfo.length = bufEnd - bufPos;
+            System.arraycopy(buf, bufPos, markInfo.buf, 0, markInfo.length);
             markIsSet = true;
-            in.mark(readAheadLimit*MAX_BYTES_PER_CHAR);
+            // the buffer may read ahead of the characters read
+            in.mark(readAheadLimit*MAX_BYTES_PER_CHAR + BUFFER_SIZE);
         } else {
             throw new IOException("mark() not supported");
         }
     }
 
     /**
-     * Reset the read ahead marks is not supported for UTF8 readers.
-     * @exception IOException is thrown, for all calls to this method
-     * because marking is not supported for UTF8 readers
+     * Reset the stream to the position of the last mark().
+     *
+     * @exception IOException is thrown if no mark has been set or
+     * marking is not supported by the underlying input stream
      */
     public void reset() throws IOException {
         if (in.markSupported()) {
             if (markIsSet) {
                 pendingSurrogate = markInfo.pendingSurrogate;
-                System.arraycopy(markInfo.readAhead,0,readAhead,0,MAX_BYTES_PER_CHAR);
+                System.arraycopy(markInfo.buf, 0, buf, 0, markInfo.length);
+                bufPos = 0;
+                bufEnd = markInfo.length;
                 in.reset();
             } else {
                 throw new IOException("reset(): no mark has been set");
@@ -44,6 +44,9 @@ public class UTF_8_Writer extends com.sun.cldc.i18n.StreamWriter {
     /** This value replaces invalid characters
      * (that is, surrogates code units without a pair) */
     static final private int replacementValue = 0x3f;
+    /** largest buffer a write() encodes into */
+    private static final int BUFFER_SIZE = 256;
+
     /**
      * Write a portion of an array of characters.
      *
@@ -54,13 +57,23 @@ public class UTF_8_Writer extends com.sun.cldc.i18n.StreamWriter {
      * @exception  IOException  If an I/O error occurs
      */
     public void write(char cbuf[], int off, int len) throws IOException {
-        byte[] outputByte = new byte[4];     // Never more than 4 encoded bytes
+        // The characters are encoded into a buffer of this call, which is
+        // written to the output stream whenever it fills up and at the end
+        // of write(); nothing stays buffered between calls.
+        int size = len < (BUFFER_SIZE - 5) / 4 ? len * 4 + 5 : BUFFER_SIZE;
+        byte[] outputByte = new byte[size];
         int inputChar;
-        int outputSize;
-        int count = 0;
+        int pos = 0;
+        int end = off + len;
 
-        while (count < len) {
-            inputChar = 0xffff & cbuf[off + count];
+        while (off < end) {
+            // Never more than 4 encoded bytes for one character
+            // plus the replacement of an unpaired surrogate
+            if (pos > size - 5) {
+                out.write(outputByte, 0, pos);
+                pos = 0;
+            }
+            inputChar = 0xffff & cbuf[off++];
             if (0 != pendingSurrogate) {
                 if (0xdc00<=inputChar && inputChar<=0xdfff) {
                 //000u uuuu xxxx xxxx xxxx xxxx
@@ -70,43 +83,45 @@ public class UTF_8_Writer extends com.sun.cldc.i18n.StreamWriter {
                     inputChar = (highHalf << 10) | lowHalf;
                 } else {
                     // write replacement value instead of unpaired surrogate
-                    outputByte[0] = replacementValue;
-                    outputSize = 1;
-                    out.write(outputByte, 0, outputSize);
+                    outputByte[pos++] = replacementValue;
                 }
                 pendingSurrogate = 0;
             }
             if (inputChar < 0x80) {
-                outputByte[0] = (byte)inputChar;
-                outputSize = 1;
+                outputByte[pos++] = (byte)inputChar;
+                // copy a run of ASCII characters
+                int run = end - off;
+                if (run > size - pos) {
+                    run = size - pos;
+                }
+                while (run-- > 0 && (inputChar = cbuf[off]) < 0x80) {
+                    outputByte[pos++] = (byte)inputChar;
+                    off++;
+                }
             } else if (inputChar < 0x800) {
-                outputByte[0] = (byte)(0xc0 | ((inputChar >> 6) & 0x1f));
-                outputByte[1] = (byte)(0x80 | (inputChar & 0x3f));
-                outputSize = 2;
+                outputByte[pos++] = (byte)(0xc0 | ((inputChar >> 6) & 0x1f));
+                outputByte[pos++] = (byte)(0x80 | (inputChar & 0x3f));
             } else if (0xd800<=inputChar && inputChar<=0xdbff) {
                 pendingSurrogate = inputChar;
-                outputSize = 0;
             } else if (0xdc00<=inputChar && inputChar<=0xdfff) {
                 // unpaired surrogate
-                outputByte[0] = replacementValue;
-                outputSize = 1;
+                outputByte[pos++] = replacementValue;
             } else if (inputChar < 0x10000) {
-                outputByte[0] = (byte)(0xe0 | ((inputChar >> 12) & 0x0f));
-                outputByte[1] = (byte)(0x80 | ((inputChar >> 6) & 0x3f));
-                outputByte[2] = (byte)(0x80 | (inputChar & 0x3f));
-                outputSize = 3;
+                outputByte[pos++] = (byte)(0xe0 | ((inputChar >> 12) & 0x0f));
+                outputByte[pos++] = (byte)(0x80 | ((inputChar >> 6) & 0x3f));
+                outputByte[pos++] = (byte)(0x80 | (inputChar & 0x3f));
             } else {
                 /* 21 bits: 1111 0xxx  10xx xxxx  10xx xxxx  10xx xxxx
                  * a aabb  bbbb cccc  ccdd dddd
                 */
-                outputByte[0] = (byte)(0xf0 | ((inputChar >> 18) & 0x07));
-                outputByte[1] = (byte)(0x80 | ((inputChar >> 12) & 0x3f));
-                outputByte[2] = (byte)(0x80 | ((inputChar >> 6) & 0x3f));
-                outputByte[3] = (byte)(0x80 | (inputChar & 0x3f));
-                outputSize = 4;
+                outputByte[pos++] = (byte)(0xf0 | ((inputChar >> 18) & 0x07));
+                outputByte[pos++] = (byte)(0x80 | ((inputChar >> 12) & 0x3f));
+                outputByte[pos++] = (byte)(0x80 | ((inputChar >> 6) & 0x3f));
+                outputByte[pos++] = (byte)(0x80 | (inputChar & 0x3f));
             }
-            out.write(outputByte, 0, outputSize);
-            count++;
+        }
+        if (pos > 0) {
+            out.write(outputByte, 0, pos);
         }
     }
 
@@ -81,6 +81,12 @@ final class ConnectionRegistry
     /** Cached reference to the midlet suite storage instance. */
     private static MIDletSuiteStorage storage;
 
+    /** Index of the native registry entries. */
+    private static final RegistryIndex index = new RegistryIndex();
+
+    /** Initial size of the buffer for reading all the registry entries. */
+    private static final int LIST_ALL_SIZE = 2048;
+
     /**
      * Start listening for push notifications. Will throw a security
      * exception if called by any thing other than the MIDletSuiteLoader.
@@ -446,8 +452,13 @@ final class ConnectionRegistry
                   + "," + filter
                   + "," + suiteIdToString(midletSuite);
 
+        int before = generation0();
         int ret = add0(asciiRegistration);
-        if (ret == -1) {
+        if (ret == 0) {
+            index.added(before, generation0(),
+                new RegistryIndex.Entry(connection, midlet, filter,
+                                        midletSuite.getID()));
+        } else if (ret == -1) {
             // in case of Bluetooth URL, unregistration within Bluetooth
             // PushRegistry was already performed by add0()
             throw new IOException("Connection already registered: " + connection);
@@ -476,7 +487,9 @@ final class ConnectionRegistry
             String connection) {
 
         int ret =  del0(connection, suiteIdToString(midletSuite));
-        if (ret == -2) {
+        if (ret == 0) {
+            index.invalidate();
+        } else if (ret == -2) {
             throw new SecurityException("wrong suite");
         }
         return ret != -1;
@@ -532,6 +545,10 @@ final class ConnectionRegistry
     public static String [] listConnections(MIDletSuite midletSuite,
             boolean available) {
 
+        if (!available) {
+            return getIndex().listConnections(midletSuite.getID());
+        }
+
         return connectionsToArray(listConnections(midletSuite.getID(),
                                available));
     }
@@ -554,6 +571,20 @@ final class ConnectionRegistry
         String connections = null;
         byte[] connlist;
 
+        if (!available) {
+            String[] list = getIndex().listConnections(id);
+            if (list.length == 0) {
+                return null;
+            }
+
+            StringBuffer sb = new StringBuffer(list[0]);
+            for (int i = 1; i < list.length; i++) {
+                sb.append(',').append(list[i]);
+            }
+
+            return sb.toString();
+        }
+
         nativeID = Util.toCString(suiteIdToString(id));
         connlist = new byte[512];
 
@@ -618,6 +649,11 @@ final class ConnectionRegistry
      */
     public static String getMIDlet(MIDletSuite midletSuite, String connection) {
 
+        RegistryIndex.Entry entry = getIndex().get(connection);
+        if (entry != null) {
+            return entry.midlet;
+        }
+
         String midlet = null;
         byte[] asciiConn = Util.toCString(connection);
         byte[] registryEntry = new byte[512];
@@ -654,6 +690,11 @@ final class ConnectionRegistry
      */
     public static String getFilter(MIDletSuite midletSuite, String connection) {
 
+        RegistryIndex.Entry entry = getIndex().get(connection);
+        if (entry != null) {
+            return entry.filter;
+        }
+
         String filter = null;
         byte[] asciiConn = Util.toCString(connection);
         byte[] registryEntry = new byte[512];
@@ -742,6 +783,51 @@ final class ConnectionRegistry
         return suiteIdToString(midletSuite.getID());
     }
 
+    /**
+     * Gets the index of the registry entries, reading the native
+     * registry again if it has changed since the index was last
+     * up to date. Connections registered under a URL that only
+     * starts with the one looked up are not found in the index,
+     * the native registry is asked for those.
+     *
+     * @return the index of the registry entries
+     */
+    private static RegistryIndex getIndex() {
+        int current = generation0();
+
+        if (!index.isCurrent(current)) {
+            byte[] entries = new byte[LIST_ALL_SIZE];
+            int length = listAll0(entries);
+
+            while (length > entries.length) {
+                entries = new byte[length + LIST_ALL_SIZE];
+                current = generation0();
+                length = listAll0(entries);
+            }
+
+            index.load(current, new String(entries, 0, length));
+        }
+
+        return index;
+    }
+
+    /**
+     * Starts a batch of registrations. The registry is written to
+     * persistent storage once, when the batch ends, instead of after
+     * each change. Batches may be nested and each one must be ended
+     * with {@link #endBatch}.
+     */
+    static void beginBatch() {
+        beginBatch0();
+    }
+
+    /**
+     * Ends a batch of registrations started with {@link #beginBatch}.
+     */
+    static void endBatch() {
+        endBatch0();
+    }
+
     /**
      * Native connection registry add connection function.
      * @param connection string to register
@@ -839,4 +925,30 @@ final class ConnectionRegistry
      * @param id suite's ID
      */
     static native void delAllForSuite0(int id);
+
+    /**
+     * Native connection registry function to get the generation of
+     * the registry.
+     * @return a number that changes each time a connection is
+     *         registered or unregistered
+     */
+    private static native int generation0();
+
+    /**
+     * Native connection registry function to list all the entries.
+     * @param entries receives the entries, one per line
+     * @return the length of the entries; if it is greater than the
+     *         length of <code>entries</code> nothing has been stored
+     */
+    private static native int listAll0(byte[] entries);
+
+    /**
+     * Native connection registry function to start a batch of changes.
+     */
+    private static native void beginBatch0();
+
+    /**
+     * Native connection registry function to end a batch of changes.
+     */
+    private static native void endBatch0();
 }
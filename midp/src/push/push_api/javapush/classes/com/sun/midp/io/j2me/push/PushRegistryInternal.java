@@ -192,6 +192,24 @@ public final class PushRegistryInternal {
         ConnectionRegistry.delAllForSuite0(id);
     }
 
+    /**
+     * Starts a batch of push registrations. The push registry is written
+     * to persistent storage once, when the batch ends. Each call must
+     * be matched by a call to {@link #endBatch}.
+     */
+    public static void beginBatch() {
+        checkInvocationAllowed();
+        ConnectionRegistry.beginBatch();
+    }
+
+    /**
+     * Ends a batch of push registrations started by {@link #beginBatch}.
+     */
+    public static void endBatch() {
+        checkInvocationAllowed();
+        ConnectionRegistry.endBatch();
+    }
+
     /**
      * Sets the flag which enables push launches to take place.
      *
@@ -0,0 +1,259 @@
+/*
+ *
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.midp.io.j2me.push;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+import com.sun.midp.midlet.MIDletSuite;
+
+/**
+ * In-memory index of the push registrations by connection and by
+ * <code>MIDlet</code> suite.
+ *
+ * <p>
+ * The native push registry stays the master copy, as it is shared by
+ * all the isolates.  The index records the generation of the registry
+ * it was read at and is read again when the registry has moved on.
+ * Registrations added by the caller are put into the index directly when
+ * no one else has changed the registry in between.
+ * </p>
+ */
+final class RegistryIndex {
+
+    /**
+     * A push registration.
+     */
+    static final class Entry {
+        /** Connection URL. */
+        final String connection;
+
+        /** Class name of the <code>MIDlet</code> to launch. */
+        final String midlet;
+
+        /** Filter for the senders allowed to launch the MIDlet. */
+        final String filter;
+
+        /** ID of the <code>MIDlet</code> suite. */
+        final int suiteId;
+
+        /**
+         * Creates a registration.
+         *
+         * @param connection connection URL
+         * @param midlet class name of the <code>MIDlet</code>
+         * @param filter filter of allowed senders
+         * @param suiteId ID of the <code>MIDlet</code> suite
+         */
+        Entry(String connection, String midlet, String filter, int suiteId) {
+            this.connection = connection;
+            this.midlet = midlet;
+            this.filter = filter;
+            this.suiteId = suiteId;
+        }
+    }
+
+    /** Registrations by connection URL. */
+    private final Hashtable byConnection = new Hashtable();
+
+    /** Vectors of registrations by suite ID. */
+    private final Hashtable bySuite = new Hashtable();
+
+    /** Generation of the native registry the index is up to date with. */
+    private int generation;
+
+    /** False until the index has been read, and when it has to be again. */
+    private boolean valid;
+
+    /**
+     * Tells if the index is up to date with the native registry.
+     *
+     * @param current current generation of the native registry
+     * @return true if the index need not be read again
+     */
+    synchronized boolean isCurrent(int current) {
+        return valid && generation == current;
+    }
+
+    /**
+     * Replaces the contents of the index.
+     *
+     * @param current generation of the native registry read before the
+     *                entries
+     * @param entries registry entries, one per line, each as
+     *                "connection,midlet,filter,suiteId"
+     */
+    synchronized void load(int current, String entries) {
+        byConnection.clear();
+        bySuite.clear();
+
+        int start = 0;
+        int length = entries.length();
+        while (start < length) {
+            int end = entries.indexOf('\n', start);
+            if (end == -1) {
+                end = length;
+            }
+
+            Entry entry = parse(entries.substring(start, end));
+            if (entry != null) {
+                put(entry, false);
+            }
+
+            start = end + 1;
+        }
+
+        generation = current;
+        valid = true;
+    }
+
+    /**
+     * Parses a registry entry.
+     *
+     * @param line "connection,midlet,filter,suiteId", with the suite ID
+     *             in hexadecimal
+     * @return the registration, or null if the entry is malformed
+     */
+    static Entry parse(String line) {
+        int comma1 = line.indexOf(',', 0);
+        int comma2 = line.indexOf(',', comma1 + 1);
+        int comma3 = line.indexOf(',', comma2 + 1);
+
+        if (comma1 == -1 || comma2 == -1 || comma3 == -1) {
+            return null;
+        }
+
+        int id;
+        try {
+            // the native registry writes suite IDs as 8 hex digits
+            id = (int)Long.parseLong(line.substring(comma3 + 1).trim(), 16);
+        } catch (NumberFormatException nfe) {
+            id = MIDletSuite.UNUSED_SUITE_ID;
+        }
+
+        return new Entry(line.substring(0, comma1).trim(),
+                         line.substring(comma1 + 1, comma2).trim(),
+                         line.substring(comma2 + 1, comma3).trim(),
+                         id);
+    }
+
+    /**
+     * Records a registration the caller has added to the native registry.
+     *
+     * @param before generation of the native registry before the change
+     * @param after generation of the native registry after the change
+     * @param entry the registration added
+     */
+    synchronized void added(int before, int after, Entry entry) {
+        if (isNextChange(before, after)) {
+            // the native registry puts new entries first
+            put(entry, true);
+            generation = after;
+        }
+    }
+
+    /**
+     * Marks the index to be read again.  Used when a registration has
+     * been removed: the native registry removes the first connection
+     * that starts with the URL given, which may not be the one the
+     * index has under that URL.
+     */
+    synchronized void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Tells if a change is the only one since the index was last up to
+     * date.  If it is not, the index is marked to be read again.
+     *
+     * @param before generation of the native registry before the change
+     * @param after generation of the native registry after the change
+     * @return true if the change can be applied to the index
+     */
+    private boolean isNextChange(int before, int after) {
+        if (valid && generation == before && after == before + 1) {
+            return true;
+        }
+
+        valid = false;
+        return false;
+    }
+
+    /**
+     * Adds a registration to the tables.
+     *
+     * @param entry the registration
+     * @param first true to list the registration before the others of
+     *              the suite
+     */
+    private void put(Entry entry, boolean first) {
+        byConnection.put(entry.connection, entry);
+
+        Integer key = new Integer(entry.suiteId);
+        Vector entries = (Vector)bySuite.get(key);
+        if (entries == null) {
+            entries = new Vector(4);
+            bySuite.put(key, entries);
+        }
+        if (first) {
+            entries.insertElementAt(entry, 0);
+        } else {
+            entries.addElement(entry);
+        }
+    }
+
+    /**
+     * Looks up the registration of a connection.
+     *
+     * @param connection connection URL
+     * @return the registration, or null if the connection is not
+     *         registered under exactly this URL
+     */
+    synchronized Entry get(String connection) {
+        return (Entry)byConnection.get(connection);
+    }
+
+    /**
+     * Lists the connections registered by a suite.
+     *
+     * @param suiteId ID of the <code>MIDlet</code> suite
+     * @return a new array of connection URLs
+     */
+    synchronized String[] listConnections(int suiteId) {
+        Vector entries = (Vector)bySuite.get(new Integer(suiteId));
+        if (entries == null) {
+            return new String[0];
+        }
+
+        String[] connections = new String[entries.size()];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = ((Entry)entries.elementAt(i)).connection;
+        }
+
+        return connections;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.midp.io.j2me.push;
+
+import com.sun.midp.i3test.TestCase;
+
+/**
+ * Loads many registrations into a RegistryIndex and checks the lookups
+ * by connection and by suite.  The time taken to load the index and to
+ * look the registrations up is printed with info().
+ */
+public class TestRegistryIndex extends TestCase {
+
+    /** number of suites with registrations */
+    static final int SUITES = 100;
+
+    /** number of registrations of each suite */
+    static final int PER_SUITE = 20;
+
+    /** number of times every registration is looked up */
+    static final int ROUNDS = 10;
+
+    /**
+     * Gets the connection URL of a registration.
+     *
+     * @param suite suite ID
+     * @param n number of the registration within the suite
+     * @return the connection URL
+     */
+    static String connection(int suite, int n) {
+        return "socket://:" + (10000 + suite * PER_SUITE + n);
+    }
+
+    /**
+     * Converts a suite ID to the form the native registry writes it in.
+     *
+     * @param suite suite ID
+     * @return the ID as 8 upper case hex digits
+     */
+    static String suiteIdString(int suite) {
+        String hex = Integer.toHexString(suite).toUpperCase();
+        return "00000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Builds the native registry entries for all the registrations.
+     *
+     * @return the entries, one per line
+     */
+    static String entries() {
+        StringBuffer sb = new StringBuffer();
+        for (int suite = 1; suite <= SUITES; suite++) {
+            for (int n = 0; n < PER_SUITE; n++) {
+                sb.append(connection(suite, n));
+                sb.append(",Midlet").append(n);
+                sb.append(",*,");
+                sb.append(suiteIdString(suite));
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads the index and looks up every registration.
+     */
+    void testLookup() {
+        declare("lookup");
+
+        String entries = entries();
+        RegistryIndex index = new RegistryIndex();
+
+        long start = System.currentTimeMillis();
+        index.load(1, entries);
+        long loadTime = System.currentTimeMillis() - start;
+
+        assertTrue("current", index.isCurrent(1));
+        assertFalse("not current", index.isCurrent(2));
+
+        int found = 0;
+        start = System.currentTimeMillis();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int suite = 1; suite <= SUITES; suite++) {
+                for (int n = 0; n < PER_SUITE; n++) {
+                    RegistryIndex.Entry entry =
+                        index.get(connection(suite, n));
+                    if (entry != null && entry.suiteId == suite &&
+                            entry.midlet.equals("Midlet" + n) &&
+                            entry.filter.equals("*")) {
+                        found++;
+                    }
+                }
+            }
+        }
+        long getTime = System.currentTimeMillis() - start;
+
+        assertEquals("found", SUITES * PER_SUITE * ROUNDS, found);
+        assertNull("unknown connection", index.get("socket://:1"));
+
+        start = System.currentTimeMillis();
+        for (int suite = 1; suite <= SUITES; suite++) {
+            String[] list = index.listConnections(suite);
+            assertEquals("suite " + suite, PER_SUITE, list.length);
+        }
+        long listTime = System.currentTimeMillis() - start;
+
+        assertEquals("no connections", 0,
+                     index.listConnections(SUITES + 1).length);
+
+        info(SUITES * PER_SUITE + " registrations: loaded in " + loadTime +
+             " ms, " + SUITES * PER_SUITE * ROUNDS + " lookups in " +
+             getTime + " ms, " + SUITES + " lists in " + listTime + " ms");
+    }
+
+    /**
+     * Checks that a registration is added only when it is the next
+     * change to the registry.
+     */
+    void testChanges() {
+        declare("changes");
+
+        RegistryIndex index = new RegistryIndex();
+        index.load(5, entries());
+
+        RegistryIndex.Entry entry =
+            new RegistryIndex.Entry("datagram://:7000", "Added", "*", 1);
+        index.added(5, 6, entry);
+        assertTrue("current after add", index.isCurrent(6));
+        assertSame("added", entry, index.get("datagram://:7000"));
+        assertEquals("listed first", "datagram://:7000",
+                     index.listConnections(1)[0]);
+
+        // someone else changed the registry in between
+        index.added(8, 9,
+            new RegistryIndex.Entry("datagram://:7001", "Added", "*", 1));
+        assertFalse("stale after missed change", index.isCurrent(9));
+
+        index.load(9, entries());
+        index.invalidate();
+        assertFalse("stale after remove", index.isCurrent(9));
+    }
+
+    /**
+     * Checks that malformed entries are skipped.
+     */
+    void testParse() {
+        declare("parse");
+
+        assertNull("malformed", RegistryIndex.parse("socket://:1,Midlet"));
+
+        RegistryIndex.Entry entry =
+            RegistryIndex.parse("sms://:5000, Midlet ,+123*, 00000007");
+        assertNotNull("entry", entry);
+        assertEquals("connection", "sms://:5000", entry.connection);
+        assertEquals("midlet", "Midlet", entry.midlet);
+        assertEquals("filter", "+123*", entry.filter);
+        assertEquals("suite", 7, entry.suiteId);
+
+        entry = RegistryIndex.parse("sms://:5001,Midlet,*,0000000A");
+        assertEquals("suite 10", 10, entry.suiteId);
+
+        entry = RegistryIndex.parse("sms://:5002,Midlet,*,00000010");
+        assertEquals("suite 16", 16, entry.suiteId);
+
+        entry = RegistryIndex.parse("sms://:5003,Midlet,*,000000FF");
+        assertEquals("suite 255", 255, entry.suiteId);
+    }
+
+    /**
+     * Runs all the tests.
+     */
+    public void runTests() throws Throwable {
+        testLookup();
+        testChanges();
+        testParse();
+    }
+}
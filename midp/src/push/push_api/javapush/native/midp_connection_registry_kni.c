@@ -483,3 +483,79 @@ KNIDECL(com_sun_midp_io_j2me_push_ConnectionRegistry_delAllForSuite0) {
     KNI_ReturnVoid();
 }
 
+
+/**
+ * Gets the generation of the push registry, which changes each time a
+ * connection is registered or unregistered.
+ * <p>
+ * Java declaration:
+ * <pre>
+ *     generation0()I
+ * </pre>
+ *
+ * @return the generation of the push registry
+ */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_midp_io_j2me_push_ConnectionRegistry_generation0) {
+    KNI_ReturnInt(pushgeneration());
+}
+
+/**
+ * Gets all the push registry entries, separated by new line characters.
+ * <p>
+ * Java declaration:
+ * <pre>
+ *     listAll0([B)I
+ * </pre>
+ *
+ * @param entries A byte array to store the entries
+ *
+ * @return the length of the entries; if it is greater than the length
+ *         of <tt>entries</tt> nothing has been stored
+ */
+KNIEXPORT KNI_RETURNTYPE_INT
+KNIDECL(com_sun_midp_io_j2me_push_ConnectionRegistry_listAll0) {
+    int ret;
+
+    KNI_StartHandles(1);
+    KNI_DeclareHandle(entries);
+    KNI_GetParameterAsObject(1, entries);
+
+    ret = pushlistall((char*)JavaByteArray(entries),
+                      KNI_GetArrayLength(entries));
+
+    KNI_EndHandles();
+
+    KNI_ReturnInt(ret);
+}
+
+/**
+ * Starts a batch of changes to the push registry; the registry is
+ * written to persistent storage when the batch ends.
+ * <p>
+ * Java declaration:
+ * <pre>
+ *     beginBatch0()V
+ * </pre>
+ */
+KNIEXPORT KNI_RETURNTYPE_VOID
+KNIDECL(com_sun_midp_io_j2me_push_ConnectionRegistry_beginBatch0) {
+    pushbeginbatch();
+
+    KNI_ReturnVoid();
+}
+
+/**
+ * Ends a batch of changes to the push registry.
+ * <p>
+ * Java declaration:
+ * <pre>
+ *     endBatch0()V
+ * </pre>
+ */
+KNIEXPORT KNI_RETURNTYPE_VOID
+KNIDECL(com_sun_midp_io_j2me_push_ConnectionRegistry_endBatch0) {
+    pushendbatch();
+
+    KNI_ReturnVoid();
+}
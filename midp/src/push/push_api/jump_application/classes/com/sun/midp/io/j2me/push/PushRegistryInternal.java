@@ -103,6 +103,17 @@ public final class PushRegistryInternal {
      */
     public static void unregisterConnections(final int id) { }
 
+    /**
+     * Starts a batch of push registrations. Each call must be matched
+     * by a call to {@link #endBatch}.
+     */
+    public static void beginBatch() { }
+
+    /**
+     * Ends a batch of push registrations started by {@link #beginBatch}.
+     */
+    public static void endBatch() { }
+
     /**
      * Sets the flag which enables push launches to take place.
      *
@@ -75,6 +75,37 @@ int pushadd(char* str);
  */
 int pushdel(char* str, char* store);
 
+/**
+ * Start a batch of changes to the push registry. The file is not
+ * written until the matching pushendbatch(). Batches may be nested.
+ */
+void pushbeginbatch();
+
+/**
+ * End a batch of changes to the push registry, writing the file if
+ * the outermost batch has changed it.
+ */
+void pushendbatch();
+
+/**
+ * Get a number that changes each time an entry is added to or
+ * removed from the push registry.
+ *
+ * @return the generation of the push registry
+ */
+int pushgeneration();
+
+/**
+ * Copy all the push entries, separated by new line characters, into
+ * the given buffer. Nothing is copied if the buffer is too small.
+ *
+ * @param buf The buffer to copy the entries to
+ * @param len The size of the buffer
+ * @return the number of characters of the entries, greater than
+ *         <tt>len</tt> if they did not fit
+ */
+int pushlistall(char* buf, int len);
+
 /**
  * Test for incoming events, and block current Java platform thread if
  * none have occurred. The method also initializes any new timers that
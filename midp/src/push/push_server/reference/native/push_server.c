@@ -215,6 +215,19 @@ typedef struct _alarmentry {
 static PushEntry *pushlist = NULL;
 static AlarmEntry *alarmlist = NULL;
 
+/**
+ * Incremented each time an entry is added to or removed from the push
+ * list, so that callers caching the registrations can tell when their
+ * copy is out of date.
+ */
+static int pushgenerationcount = 0;
+
+/** Nesting depth of pushbeginbatch() calls. */
+static int pushbatchdepth = 0;
+
+/** Set if the push list has changed since the file was last written. */
+static int pushdirty = 0;
+
 typedef enum {
     NET_STATUS_DOWN       = -3,
     NET_STATUS_GOING_DOWN = -2, /* network finalization is in progress */
@@ -238,6 +251,9 @@ static network_status_t networkStatus = NET_STATUS_UNKNOWN;
 static int isNetworkUp();
 
 static int pushlength = 0;
+static void pushsave();
+static void pushsavelater();
+static void pushsaveadded(PushEntry *pe);
 static int pushProcessPort(PushEntry* pe);
 static void pushStartListening();
 static int alarmopen();
@@ -564,6 +580,10 @@ static int pushOpenInternal(int startListening) {
  * registrations in the push registry file.
  */
 void pushclose() {
+    if (pushdirty) {
+        pushsave();
+    }
+    pushbatchdepth = 0;
     pushListFree();
     alarmListFree();
 #if ENABLE_JSR_82
@@ -581,6 +601,7 @@ static void pushsave() {
     int  pushfd;
     PushEntry *p;
 
+    pushdirty = 0;
     pushfd = storage_open(&errStr, &pushpathname, OPEN_READ_WRITE_TRUNCATE);
     if (errStr == NULL){
         /* Write a new list of push registrations to the persistent file */
@@ -598,6 +619,128 @@ static void pushsave() {
     }
 }
 
+/**
+ * Saves the push registrations, or only notes that they need saving
+ * if a batch of changes is in progress.
+ */
+static void pushsavelater() {
+    if (pushbatchdepth > 0) {
+        pushdirty = 1;
+    } else {
+        pushsave();
+    }
+}
+
+/**
+ * Saves a push registration that has just been added by appending it to
+ * the persistent file, instead of writing the whole list again.
+ *
+ * @param pe the entry added
+ */
+static void pushsaveadded(PushEntry *pe) {
+    int pushfd;
+    long size;
+
+    if (pushbatchdepth > 0 || pushdirty) {
+        pushsavelater();
+        return;
+    }
+
+    pushfd = storage_open(&errStr, &pushpathname, OPEN_READ_WRITE);
+    if (errStr == NULL) {
+        size = storageSizeOf(&errStr, pushfd);
+        if (errStr == NULL) {
+            storagePosition(&errStr, pushfd, size);
+        }
+        if (errStr == NULL) {
+            storageWrite(&errStr, pushfd, pe->value, strlen(pe->value));
+        }
+        if (errStr == NULL) {
+            storageWrite(&errStr, pushfd, "\n", 1);
+        }
+        if (errStr != NULL) {
+            storageFreeError(errStr);
+            errStr = NULL;
+            /* The file may be damaged now, write all of it again */
+            pushdirty = 1;
+        }
+        storageClose(&errStr, pushfd);
+        storageFreeError(errStr);
+    } else {
+        storageFreeError(errStr);
+        pushdirty = 1;
+    }
+
+    if (pushdirty) {
+        pushsave();
+    }
+}
+
+/**
+ * Starts a batch of changes to the push registry. The persistent file
+ * is not written until the matching call to pushendbatch().
+ * Batches may be nested.
+ */
+void pushbeginbatch() {
+    pushbatchdepth++;
+}
+
+/**
+ * Ends a batch of changes to the push registry, writing the persistent
+ * file if the outermost batch has changed it.
+ */
+void pushendbatch() {
+    if (pushbatchdepth > 0) {
+        pushbatchdepth--;
+    }
+
+    if (pushbatchdepth == 0 && pushdirty) {
+        pushsave();
+    }
+}
+
+/**
+ * Returns a number that changes each time an entry is added to or
+ * removed from the push registry.
+ *
+ * @return the generation of the push registry
+ */
+int pushgeneration() {
+    return pushgenerationcount;
+}
+
+/**
+ * Copies all the push entries, separated by new line characters, into
+ * the given buffer. Nothing is copied if the buffer is too small.
+ *
+ * @param buf the buffer to copy the entries to
+ * @param len the size of the buffer
+ * @return the number of characters of the entries, which is greater than
+ *         <tt>len</tt> if they did not fit
+ */
+int pushlistall(char *buf, int len) {
+    PushEntry *p;
+    int total = 0;
+    int n;
+
+    for (p = pushlist; p != NULL ; p = p->next) {
+        total += strlen(p->value) + 1;
+    }
+
+    if (total > len) {
+        return total;
+    }
+
+    for (p = pushlist; p != NULL ; p = p->next) {
+        n = strlen(p->value);
+        memcpy(buf, p->value, n);
+        buf[n] = '\n';
+        buf += n + 1;
+    }
+
+    return total;
+}
+
 /**
  * Adds one entry to the push registry.
  * If the entry already exists return IO_ERROR_LEN (midpString.h).
@@ -796,8 +939,9 @@ int pushadd(char *str) {
     pe->next = pushlist;
     pushlist = pe;
     pushlength++;
+    pushgenerationcount++;
 
-    pushsave();
+    pushsaveadded(pe);
 
     return 0;
 }
@@ -829,7 +973,7 @@ int pushdel(char *str, char *store) {
             bt_push_unregister_url(str);
 #endif
             pushDeleteEntry(p, pPrevNext);
-            pushsave();
+            pushsavelater();
             return 0;
         }
 
@@ -907,6 +1051,7 @@ static void pushDeleteEntry(PushEntry *p, PushEntry **pPrevNext) {
     midpFree(p);
 
     pushlength--;
+    pushgenerationcount++;
 
 }
 
@@ -2074,6 +2219,7 @@ static int parsePushList(int pushfd){
          */
         pushlist = pe;
         pushlength++;
+        pushgenerationcount++;
     }
 
     /* This check is required for the case when readLine() didn't put
@@ -2780,7 +2926,7 @@ static void pushDeleteSuiteLive(SuiteIdType id){
         pPrevNext = &pushp->next;
     }
 
-    pushsave();
+    pushsavelater();
 
     /* Find all of the alarm entries to remove. */
     for (alarmp = alarmlist; alarmp != NULL; alarmp = alarmnext){
@@ -129,6 +129,41 @@ int pushdel(char *str, char *store) {
     return 0;
 }
 
+/**
+ * Starts a batch of changes to the push registry.
+ */
+void pushbeginbatch() {
+}
+
+/**
+ * Ends a batch of changes to the push registry.
+ */
+void pushendbatch() {
+}
+
+/**
+ * Returns a number that changes each time an entry is added to or
+ * removed from the push registry.
+ *
+ * @return the generation of the push registry
+ */
+int pushgeneration() {
+    return 0;
+}
+
+/**
+ * Copies all the push entries into the given buffer.
+ *
+ * @param buf The buffer to copy the entries to
+ * @param len The size of the buffer
+ * @return the number of characters of the entries
+ */
+int pushlistall(char *buf, int len) {
+    (void)buf;
+    (void)len;
+    return 0;
+}
+
 /**
  *  Fetch the datagram data into a buffer.
  *
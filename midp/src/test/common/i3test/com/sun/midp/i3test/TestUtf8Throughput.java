@@ -0,0 +1,141 @@
+/*
+ *
+ *
+ * Copyright  1990-2007 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included at /legal/license.txt).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 4150 Network Circle, Santa
+ * Clara, CA 95054 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.midp.i3test;
+
+import com.sun.cldc.i18n.StreamReader;
+import com.sun.cldc.i18n.StreamWriter;
+import com.sun.cldc.i18n.j2me.UTF_8_Reader;
+import com.sun.cldc.i18n.j2me.UTF_8_Writer;
+import java.io.*;
+
+/**
+ * Measures the time the UTF-8 reader and writer take to convert a
+ * text of ASCII, Cyrillic and CJK characters, and checks that the
+ * text survives the conversion. The times are printed with info().
+ */
+public class TestUtf8Throughput extends TestCase {
+
+    /** number of characters in each text */
+    static final int TEXT_LENGTH = 32 * 1024;
+
+    /** number of times each text is converted */
+    static final int REPEAT = 8;
+
+    /** markup such as XML or JSON parsers read */
+    static final String ASCII_TEXT =
+        "<item id=\"42\"><name>hello, world</name><value>3.14</value></item>\n";
+
+    /** "privet, mir" */
+    static final String CYRILLIC_TEXT =
+        "привет, мир\n";
+
+    /** "ni hao shi jie" */
+    static final String CJK_TEXT = "你好世界。\n";
+
+    /**
+     * Makes a text of TEXT_LENGTH characters by repeating a sample.
+     */
+    char[] makeText(String sample) {
+        char[] text = new char[TEXT_LENGTH];
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            text[i] = sample.charAt(i % sample.length());
+        }
+        return text;
+    }
+
+    byte[] encode(char[] text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamWriter w = new UTF_8_Writer();
+        w.open(out, "UTF_8");
+        w.write(text, 0, text.length);
+        w.close();
+        return out.toByteArray();
+    }
+
+    char[] decode(byte[] bytes, int blockSize) throws IOException {
+        char[] text = new char[TEXT_LENGTH];
+        char[] block = new char[blockSize];
+        StreamReader r = new UTF_8_Reader();
+        r.open(new ByteArrayInputStream(bytes), "UTF_8");
+        int len = 0;
+        int n;
+        while ((n = r.read(block, 0, blockSize)) != -1) {
+            System.arraycopy(block, 0, text, len, n);
+            len += n;
+        }
+        r.close();
+        assertEquals("wrong number of characters", TEXT_LENGTH, len);
+        return text;
+    }
+
+    void testText(String name, String sample) throws IOException {
+        declare("UTF-8 " + name);
+        char[] text = makeText(sample);
+        byte[] bytes = null;
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < REPEAT; i++) {
+            bytes = encode(text);
+        }
+        long encodeTime = System.currentTimeMillis() - start;
+
+        char[] decoded = null;
+        start = System.currentTimeMillis();
+        for (int i = 0; i < REPEAT; i++) {
+            decoded = decode(bytes, 512);
+        }
+        long decodeTime = System.currentTimeMillis() - start;
+
+        // single characters, as a parser reading with read() does
+        start = System.currentTimeMillis();
+        StreamReader r = new UTF_8_Reader();
+        r.open(new ByteArrayInputStream(bytes), "UTF_8");
+        int count = 0;
+        while (r.read() != -1) {
+            count++;
+        }
+        r.close();
+        long readTime = System.currentTimeMillis() - start;
+
+        assertEquals("wrong number of characters", TEXT_LENGTH, count);
+        assertEquals("text changed", new String(text), new String(decoded));
+
+        info(name + ": " + bytes.length + " bytes, " +
+             REPEAT + " x write " + encodeTime + " ms, " +
+             REPEAT + " x read(char[]) " + decodeTime + " ms, " +
+             "read() " + readTime + " ms");
+    }
+
+    /**
+     * Runs all the tests.
+     */
+    public void runTests() throws Throwable {
+        testText("ASCII", ASCII_TEXT);
+        testText("Cyrillic", CYRILLIC_TEXT);
+        testText("CJK", CJK_TEXT);
+    }
+}
@@ -93,6 +93,25 @@ public class TestUtfReaders extends TestCase {
         }catch(Throwable t) { t.printStackTrace(); }
     }
 
+    /**
+     * A byte that cannot continue a UTF-8 sequence starts the next
+     * character, and the characters after it are read once.
+     */
+    public void testMalformedUtf8() {
+        try{
+            declare("test malformed UTF_8");
+            byte[] b = {0x41, (byte)0xE4, 0x42, 0x43, (byte)0xD0, 0x44};
+            final StreamReader r =
+                    (StreamReader)Class.forName("com.sun.cldc.i18n.j2me.UTF_8_Reader").newInstance();
+            r.open(new ByteArrayInputStream(b), "UTF_8");
+            char[] c = new char[16];
+            int n = r.read(c, 0, c.length);
+            assertEquals("malformed sequences must be replaced",
+                         "A\uFFFDBC\uFFFDD", new String(c, 0, n));
+            assertEquals("end of stream expected", -1, r.read(c, 0, c.length));
+        }catch(Throwable t) { t.printStackTrace(); }
+    }
+
     /**
      * Runs all the tests.
      */
@@ -105,6 +124,7 @@ public class TestUtfReaders extends TestCase {
                 testMark(j,str[j],enc[i]);
             }
         }
+        testMalformedUtf8();
     }
 
 }